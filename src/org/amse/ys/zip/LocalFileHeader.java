@@ -28,6 +28,7 @@ public class LocalFileHeader {
 
 	public String FileName;
 	int DataOffset;
+	int LocalHeaderOffset;
 
     LocalFileHeader() {
     }
@@ -60,11 +61,15 @@ public class LocalFileHeader {
                 NameLength = stream.read2Bytes();
                 ExtraLength = stream.read2Bytes();
                 int comment = stream.read2Bytes();
-				stream.skip(12);
+				stream.skip(8);
+				LocalHeaderOffset = stream.read4Bytes();
 				FileName = stream.readString(NameLength);
 				stream.skip(ExtraLength);
 				stream.skip(comment);
-				break;
+				// local header might have extra field of different length,
+				// so data offset is computed on first access
+				DataOffset = -1;
+				return;
 			}
 			case FILE_HEADER_SIGNATURE:
                 Version = stream.read2Bytes();
@@ -91,4 +96,14 @@ public class LocalFileHeader {
 		}
 		DataOffset = stream.offset();
     }
+
+	void readDataOffset(MyBufferedInputStream stream) throws IOException {
+		if (DataOffset >= 0) {
+			return;
+		}
+		stream.setPosition(LocalHeaderOffset + 26);
+		final int nameLength = stream.read2Bytes();
+		final int extraLength = stream.read2Bytes();
+		DataOffset = LocalHeaderOffset + 30 + nameLength + extraLength;
+	}
 }
@@ -36,6 +36,10 @@ public final class ZipFile {
 	};
 
     private boolean myAllFilesAreRead;
+    private boolean myCentralDirectoryIsChecked;
+
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
 
     public ZipFile(String filePath) {
 		this(new FileInputStreamHolder(filePath));
@@ -45,7 +49,7 @@ public final class ZipFile {
         myStreamHolder = streamHolder;
     }
 
-    public Collection<LocalFileHeader> headers() {
+    public synchronized Collection<LocalFileHeader> headers() {
         try {
             readAllHeaders();
         } catch (IOException e) {
@@ -75,7 +79,7 @@ public final class ZipFile {
     }
 
     private void readAllHeaders() throws IOException {
-        if (myAllFilesAreRead) {
+        if (myAllFilesAreRead || readCentralDirectory()) {
             return;
         }
         myAllFilesAreRead = true;
@@ -93,6 +97,93 @@ public final class ZipFile {
 		}
     }
 
+    /**
+     * Builds headers map from the central directory at the end of archive.
+     * Returns false if the archive has no (or has broken) central directory;
+     * in this case caller should scan local headers sequentially.
+     */
+    private boolean readCentralDirectory() {
+        if (myCentralDirectoryIsChecked) {
+            return myAllFilesAreRead;
+        }
+        myCentralDirectoryIsChecked = true;
+
+		MyBufferedInputStream baseStream = null;
+		try {
+			baseStream = getBaseStream();
+			baseStream.setPosition(0);
+			final int archiveSize = baseStream.available();
+			if (archiveSize < END_OF_CENTRAL_DIRECTORY_SIZE) {
+				return false;
+			}
+
+			final int tailSize = Math.min(archiveSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+			final int tailOffset = archiveSize - tailSize;
+			final byte[] tail = new byte[tailSize];
+			baseStream.setPosition(tailOffset);
+			for (int offset = 0; offset < tailSize; ) {
+				final int count = baseStream.read(tail, offset, tailSize - offset);
+				if (count <= 0) {
+					return false;
+				}
+				offset += count;
+			}
+
+			int eocd = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE;
+			for (; eocd >= 0; --eocd) {
+				if (read4Bytes(tail, eocd) == LocalFileHeader.END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+					break;
+				}
+			}
+			if (eocd < 0) {
+				return false;
+			}
+			final int entriesNumber = read2Bytes(tail, eocd + 10);
+			final int directorySize = read4Bytes(tail, eocd + 12);
+			final int directoryOffset = read4Bytes(tail, eocd + 16);
+			if (directoryOffset < 0 || directorySize < 0 ||
+				directoryOffset + directorySize > tailOffset + eocd) {
+				return false;
+			}
+
+			baseStream.setPosition(directoryOffset);
+			final ArrayList<LocalFileHeader> headers = new ArrayList<LocalFileHeader>(entriesNumber);
+			for (int i = 0; i < entriesNumber; ++i) {
+				final LocalFileHeader header = new LocalFileHeader();
+				header.readFrom(baseStream);
+				if (header.Signature != LocalFileHeader.FOLDER_HEADER_SIGNATURE ||
+					header.LocalHeaderOffset < 0 ||
+					header.LocalHeaderOffset >= directoryOffset) {
+					return false;
+				}
+				headers.add(header);
+			}
+
+			myFileHeaders.clear();
+			for (LocalFileHeader header : headers) {
+				if (header.FileName != null) {
+					myFileHeaders.put(header.FileName, header);
+				}
+			}
+			myAllFilesAreRead = true;
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (baseStream != null) {
+				storeBaseStream(baseStream);
+			}
+		}
+    }
+
+	private static int read2Bytes(byte[] data, int offset) {
+		return (data[offset] & 0xFF) + ((data[offset + 1] & 0xFF) << 8);
+	}
+
+	private static int read4Bytes(byte[] data, int offset) {
+		return read2Bytes(data, offset) + (read2Bytes(data, offset + 2) << 16);
+	}
+
     /**
      * Finds descriptor of the last header and installs sizes of files
      */
@@ -132,7 +223,8 @@ public final class ZipFile {
 		return createZipInputStream(getHeader(entryName));
     }
 
-    public LocalFileHeader getHeader(String entryName) throws IOException {
+    public synchronized LocalFileHeader getHeader(String entryName) throws IOException {
+        readCentralDirectory();
         if (!myFileHeaders.isEmpty()) {
             LocalFileHeader header = myFileHeaders.get(entryName);
             if (header != null) {
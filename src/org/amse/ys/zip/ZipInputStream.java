@@ -11,6 +11,7 @@ class ZipInputStream extends InputStream {
     public ZipInputStream(ZipFile parent, LocalFileHeader header) throws IOException {
 		myParent = parent;
         myBaseStream = parent.getBaseStream();
+        header.readDataOffset(myBaseStream);
         myBaseStream.setPosition(header.DataOffset);
         myDecompressor = Decompressor.init(myBaseStream, header);
     }
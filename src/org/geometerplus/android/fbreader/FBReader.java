@@ -197,7 +197,8 @@ public final class FBReader extends ZLAndroidActivity {
 					final TextSearchPopup popup = (TextSearchPopup)fbReader.getPopupById(TextSearchPopup.ID);
 					popup.initPosition();
 					fbReader.TextSearchPatternOption.setValue(pattern);
-					if (fbReader.getTextView().search(pattern, true, false, false, false) != 0) {
+					final boolean wholeWord = fbReader.TextSearchWholeWordOption.getValue();
+					if (fbReader.getTextView().search(pattern, true, wholeWord, false, false, false) != 0) {
 						runOnUiThread(new Runnable() {
 							public void run() {
 								fbReader.showPopup(popup.getId());
@@ -27,6 +27,9 @@ class ShowTOCAction extends RunActivityAction {
 	}
 
 	public boolean isVisible() {
-		return (Reader.Model != null) && Reader.Model.TOCTree.hasChildren();
+		return
+			(Reader.Model != null) &&
+			Reader.Model.isComplete() &&
+			Reader.Model.TOCTree.hasChildren();
 	}
 }
@@ -26,7 +26,6 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.view.*;
 
-import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.image.*;
 import org.geometerplus.zlibrary.core.util.MimeType;
 import org.geometerplus.zlibrary.core.util.ZLColor;
@@ -68,13 +67,7 @@ public class ImageViewActivity extends Activity {
 		final Uri uri = intent.getData();
 		if (ZLFileImage.SCHEME.equals(uri.getScheme())) {
 			try {
-				final String[] data = uri.getPath().split("\000");
-				final ZLFileImage image = new ZLFileImage(
-					MimeType.IMAGE_AUTO,
-					ZLFile.createFileByPath(data[0]),
-					Integer.parseInt(data[1]),
-					Integer.parseInt(data[2])
-				);
+				final ZLFileImage image = ZLFileImage.byUrlPath(MimeType.IMAGE_AUTO, uri.getPath());
 				final ZLImageData imageData = ZLImageManager.Instance().getImageData(image);
 				myBitmap = ((ZLAndroidImageData)imageData).getFullSizeBitmap();
 			} catch (Exception e) {
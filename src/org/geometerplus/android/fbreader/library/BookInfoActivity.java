@@ -72,8 +72,6 @@ public class BookInfoActivity extends Activity {
 		myHideOpenButton = getIntent().getBooleanExtra(HIDE_OPEN_BUTTON_KEY, false);
 		myFile = ZLFile.createFileByPath(path);
 
-		myImage = Library.getCover(myFile);
-
 		if (SQLiteBooksDatabase.Instance() == null) {
 			new SQLiteBooksDatabase(this, "LIBRARY");
 		}
@@ -176,6 +174,9 @@ public class BookInfoActivity extends Activity {
 		coverView.setVisibility(View.GONE);
 		coverView.setImageDrawable(null);
 
+		if (myImage == null) {
+			myImage = Library.getCover(myFile, maxWidth, maxHeight);
+		}
 		if (myImage == null) {
 			return;
 		}
@@ -19,6 +19,9 @@
 
 package org.geometerplus.android.fbreader.network;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import android.view.*;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -47,6 +50,17 @@ class NetworkLibraryAdapter extends TreeAdapter {
 	private int myCoverWidth = -1;
 	private int myCoverHeight = -1;
 
+	private static final int COVER_CACHE_SIZE = 32;
+	// image id -> decoded cover, from the least recently shown to the most recently shown;
+	// removed bitmaps are not recycled since they can still be used by a view
+	private final LinkedHashMap<String,Bitmap> myCoverCache =
+		new LinkedHashMap<String,Bitmap>(COVER_CACHE_SIZE, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Bitmap> eldest) {
+				return size() > COVER_CACHE_SIZE;
+			}
+		};
+
 	private final Runnable myInvalidateViewsRunnable = new Runnable() {
 		public void run() {
 			((NetworkLibraryActivity)getActivity()).getListView().invalidateViews();
@@ -102,7 +116,10 @@ class NetworkLibraryAdapter extends TreeAdapter {
 			if (cover instanceof ZLLoadableImage) {
 				final ZLLoadableImage img = (ZLLoadableImage)cover;
 				if (img.isSynchronized()) {
-					data = mgr.getImageData(img);
+					coverBitmap = myCoverCache.get(img.getId());
+					if (coverBitmap == null) {
+						data = mgr.getImageData(img);
+					}
 				} else {
 					img.startSynchronization(myInvalidateViewsRunnable);
 				}
@@ -111,6 +128,9 @@ class NetworkLibraryAdapter extends TreeAdapter {
 			}
 			if (data != null) {
 				coverBitmap = data.getBitmap(2 * width, 2 * height);
+				if (coverBitmap != null && cover instanceof ZLLoadableImage) {
+					myCoverCache.put(((ZLLoadableImage)cover).getId(), coverBitmap);
+				}
 			}
 		}
 		if (coverBitmap != null) {
@@ -112,6 +112,10 @@ public class PreferenceActivity extends ZLPreferenceActivity {
 			this, baseStyle.AutoHyphenationOption,
 			textScreen.Resource, "autoHyphenations"
 		));
+		textScreen.addPreference(new ZLBooleanPreference(
+			this, fbReader.TextSearchWholeWordOption,
+			textScreen.Resource, "searchWholeWords"
+		));
 
 		final Screen moreStylesScreen = textScreen.createPreferenceScreen("more");
 
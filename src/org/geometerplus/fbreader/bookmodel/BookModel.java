@@ -19,36 +19,69 @@
 
 package org.geometerplus.fbreader.bookmodel;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 import org.geometerplus.zlibrary.core.image.*;
+import org.geometerplus.zlibrary.core.util.MimeType;
 
 import org.geometerplus.zlibrary.text.model.*;
 
 import org.geometerplus.fbreader.library.Book;
 import org.geometerplus.fbreader.formats.*;
-import org.geometerplus.fbreader.Paths;
 
 public final class BookModel {
-	public static BookModel createModel(Book book) {
-		FormatPlugin plugin = PluginCollection.Instance().getPlugin(book.File);
+	// text size after the start paragraph to be read before the model is shown
+	private static final int FIRST_PAGES_TEXT_SIZE = 16384;
+	private static final int READING_CHECK_INTERVAL = 50;
+	private static final String SEARCH_INDEX_FILE_NAME = "search.index";
+
+	/**
+	 * Returns the model as soon as its main text contains the paragraph
+	 * with given index and a few pages after it. The rest of the book is
+	 * read in background; if the model is returned incomplete, onCompletion
+	 * is called from the reading thread after the book is read.
+	 * Returns null if the book cannot be read.
+	 */
+	public static BookModel createModel(Book book, int paragraphIndex, Runnable onCompletion) {
+		final FormatPlugin plugin = PluginCollection.Instance().getPlugin(book.File);
 		if (plugin == null) {
 			return null;
 		}
-		BookModel model = new BookModel(book);
-		if (plugin.readModel(model)) {
+		final BookModelCache cache = new BookModelCache(book);
+		BookModel model = cache.load();
+		if (model != null) {
+			plugin.restoreModel(model);
+			model.startIndexing();
+			return model;
+		}
+		model = new BookModel(book, cache.getDirectory());
+		model.startReading(plugin, cache, onCompletion);
+		if (model.waitForText(paragraphIndex)) {
 			return model;
 		}
+		model.cancelReading();
 		return null;
 	}
 
 	private final ZLImageMap myImageMap = new ZLImageMap(); 
+	private final CharStorageCache myStorageCache = new CharStorageCache(CharStorageCache.defaultMemoryBudget());
 	
 	public final Book Book;
 	public final ZLTextModel BookTextModel;
 	public final TOCTree TOCTree = new TOCTree();
 
-	private final HashMap<String,ZLTextModel> myFootnotes = new HashMap<String,ZLTextModel>();
+	private final String myCacheDirectory;
+	private final LinkedHashMap<String,ZLTextModel> myFootnotes = new LinkedHashMap<String,ZLTextModel>();
+
+	private volatile boolean myIsComplete;
+	private final Object myReadingLock = new Object();
+	private Thread myReadingThread;
+	private volatile Thread myIndexingThread;
+	private volatile boolean myReadingCancelled;
+	private boolean myReadingFinished;
+	private boolean myReadingSucceeded;
 
 	public static final class Label {
 		public final String ModelId;
@@ -60,32 +93,257 @@ public final class BookModel {
 		}
 	}
 	
-	//private static String linksFileName(int index) {
-	//	return Constants.CACHE_DIRECTORY + "/links" + index + ".cache";
-	//}
+	private BookModel(Book book, String cacheDirectory) {
+		Book = book;
+		myCacheDirectory = cacheDirectory;
+		BookTextModel = new ZLTextWritablePlainModel(null, book.getLanguage(), 1024, 65536, cacheDirectory, "cache", myStorageCache, myImageMap);
+		myInternalHyperlinks = new CachedCharStorage(32768, cacheDirectory, "links", myStorageCache);
+	}
 
-	private BookModel(Book book) {
+	BookModel(Book book, String cacheDirectory, DataInputStream index) throws IOException {
 		Book = book;
-		BookTextModel = new ZLTextWritablePlainModel(null, book.getLanguage(), 1024, 65536, Paths.cacheDirectory(), "cache", myImageMap);
-		//for (int i = 0; i < 50; ++i) {
-		//	new File(linksFileName(i)).delete();
-		//}
+		myCacheDirectory = cacheDirectory;
+		final String language = book.getLanguage();
+		BookTextModel = new ZLTextWritablePlainModel(null, language, index, 65536, cacheDirectory, "cache", myStorageCache, myImageMap);
+		for (int count = index.readInt(); count > 0; --count) {
+			final String id = index.readUTF();
+			myFootnotes.put(id, new ZLTextWritablePlainModel(id, language, index, 512, cacheDirectory, "cache" + myFootnotes.size(), myStorageCache, myImageMap));
+		}
+		myInternalHyperlinks = new CachedCharStorage(32768, cacheDirectory, "links", myStorageCache, index.readInt());
+		for (int count = index.readInt(); count > 0; --count) {
+			final String id = index.readUTF();
+			final MimeType mimeType = MimeType.get(index.readUTF());
+			final ZLImage image = ZLFileImage.byUrlPath(mimeType, index.readUTF());
+			if (image == null) {
+				throw new IOException("Cannot restore image " + id);
+			}
+			myImageMap.put(id, image);
+		}
+		readTOC(index, TOCTree);
+		myIsComplete = true;
 	}
 
-	public ZLTextModel getFootnoteModel(String id) {
+	private void startReading(final FormatPlugin plugin, final BookModelCache cache, final Runnable onCompletion) {
+		myReadingThread = new Thread("BookModel.read") {
+			public void run() {
+				boolean success = false;
+				try {
+					success = plugin.readModel(BookModel.this);
+				} catch (CancellationException e) {
+				} finally {
+					synchronized (myReadingLock) {
+						myReadingFinished = true;
+						myReadingSucceeded = success;
+						myReadingLock.notifyAll();
+					}
+				}
+				if (myReadingCancelled) {
+					return;
+				}
+				complete();
+				if (success) {
+					cache.save(BookModel.this);
+					if (onCompletion != null) {
+						onCompletion.run();
+					}
+					startIndexing();
+				}
+			}
+		};
+		myReadingThread.start();
+	}
+
+	/**
+	 * Loads search index of the main text from the cache directory,
+	 * or builds (and stores) it, in background; the model should be complete.
+	 */
+	private void startIndexing() {
+		final ZLTextPlainModel model = (ZLTextPlainModel)BookTextModel;
+		final File file = new File(myCacheDirectory, SEARCH_INDEX_FILE_NAME);
+		final Thread thread = new Thread("BookModel.index") {
+			public void run() {
+				ZLTextSearchIndex index = ZLTextSearchIndex.load(file, model.getParagraphsNumber());
+				if (index == null) {
+					index = ZLTextSearchIndex.build(model);
+					if (index == null) {
+						// search falls back to reading the text
+						return;
+					}
+					index.save(file);
+				}
+				model.setSearchIndex(index);
+			}
+		};
+		thread.setPriority(Thread.MIN_PRIORITY);
+		myIndexingThread = thread;
+		if (!myReadingCancelled) {
+			thread.start();
+		}
+	}
+
+	private boolean waitForText(int paragraphIndex) {
+		synchronized (myReadingLock) {
+			while (!myReadingFinished && !hasTextAfter(paragraphIndex)) {
+				try {
+					myReadingLock.wait(READING_CHECK_INTERVAL);
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+			return !myReadingFinished || myReadingSucceeded;
+		}
+	}
+
+	private boolean hasTextAfter(int paragraphIndex) {
+		final ZLTextModel model = BookTextModel;
+		final int paragraphsNumber = model.getParagraphsNumber();
+		if (paragraphsNumber <= paragraphIndex) {
+			return false;
+		}
+		final int textBefore = (paragraphIndex > 0) ? model.getTextLength(paragraphIndex - 1) : 0;
+		return model.getTextLength(paragraphsNumber - 1) - textBefore >= FIRST_PAGES_TEXT_SIZE;
+	}
+
+	private synchronized void complete() {
+		((ZLTextWritablePlainModel)BookTextModel).complete();
+		for (ZLTextModel footnote : myFootnotes.values()) {
+			((ZLTextWritablePlainModel)footnote).complete();
+		}
+		myIsComplete = true;
+	}
+
+	/**
+	 * Returns false while the book is being read. Until the model is complete,
+	 * its text models grow, and TOC and labels are not final.
+	 */
+	public boolean isComplete() {
+		return myIsComplete;
+	}
+
+	/**
+	 * Stops background reading (and indexing) of the book, if any;
+	 * the model is left incomplete.
+	 */
+	public void cancelReading() {
+		myReadingCancelled = true;
+		final Thread indexingThread = myIndexingThread;
+		if (indexingThread != null) {
+			indexingThread.interrupt();
+		}
+		final Thread thread = myReadingThread;
+		if (thread == null) {
+			return;
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+		}
+	}
+
+	void checkReadingCancelled() {
+		if (myReadingCancelled) {
+			throw new CancellationException();
+		}
+	}
+
+	/**
+	 * Returns false if the model refers to something (e.g. images extracted
+	 * to temporary files) that cannot be restored without re-reading the book
+	 */
+	boolean isCacheable() {
+		for (ZLImage image : myImageMap.values()) {
+			if (image.getClass() != ZLFileImage.class) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	synchronized void writeIndex(DataOutputStream index) throws IOException {
+		((ZLTextPlainModel)BookTextModel).writeIndex(index);
+		index.writeInt(myFootnotes.size());
+		for (Map.Entry<String,ZLTextModel> entry : myFootnotes.entrySet()) {
+			index.writeUTF(entry.getKey());
+			((ZLTextPlainModel)entry.getValue()).writeIndex(index);
+		}
+		if (myCurrentLinkBlock != null) {
+			myInternalHyperlinks.freezeLastBlock();
+		}
+		index.writeInt(myInternalHyperlinks.size());
+		index.writeInt(myImageMap.size());
+		for (Map.Entry<String,ZLImage> entry : myImageMap.entrySet()) {
+			final ZLFileImage image = (ZLFileImage)entry.getValue();
+			index.writeUTF(entry.getKey());
+			index.writeUTF(image.mimeType().Name);
+			index.writeUTF(image.getUrlPath());
+		}
+		writeTOC(index, TOCTree);
+	}
+
+	private void readTOC(DataInputStream index, TOCTree parent) throws IOException {
+		for (int count = index.readInt(); count > 0; --count) {
+			final TOCTree tree = new TOCTree(parent);
+			if (index.readBoolean()) {
+				tree.setText(index.readUTF());
+			}
+			if (index.readBoolean()) {
+				final String modelId = index.readBoolean() ? index.readUTF() : null;
+				final ZLTextModel model = (modelId != null) ? myFootnotes.get(modelId) : BookTextModel;
+				tree.setReference(model, index.readInt());
+			}
+			readTOC(index, tree);
+		}
+	}
+
+	private void writeTOC(DataOutputStream index, TOCTree parent) throws IOException {
+		final List<TOCTree> subTrees = parent.subTrees();
+		index.writeInt(subTrees.size());
+		for (TOCTree tree : subTrees) {
+			final String text = tree.getText();
+			index.writeBoolean(text != null);
+			if (text != null) {
+				index.writeUTF(text);
+			}
+			final TOCTree.Reference reference = tree.getReference();
+			index.writeBoolean(reference != null);
+			if (reference != null) {
+				final String modelId = reference.Model.getId();
+				index.writeBoolean(modelId != null);
+				if (modelId != null) {
+					index.writeUTF(modelId);
+				}
+				index.writeInt(reference.ParagraphIndex);
+			}
+			writeTOC(index, tree);
+		}
+	}
+
+	public String getCacheDirectory() {
+		return myCacheDirectory;
+	}
+
+	public CharStorageCache getStorageCache() {
+		return myStorageCache;
+	}
+
+	public synchronized ZLTextModel getFootnoteModel(String id) {
 		ZLTextModel model = myFootnotes.get(id);
 		if (model == null) {
-			model = new ZLTextWritablePlainModel(id, Book.getLanguage(), 8, 512, Paths.cacheDirectory(), "cache" + myFootnotes.size(), myImageMap); 
-			myFootnotes.put(id, model); 
+			final ZLTextWritablePlainModel footnote = new ZLTextWritablePlainModel(id, Book.getLanguage(), 8, 512, myCacheDirectory, "cache" + myFootnotes.size(), myStorageCache, myImageMap); 
+			if (myIsComplete) {
+				footnote.complete();
+			}
+			myFootnotes.put(id, footnote); 
+			model = footnote;
 		}
 		return model;
 	}
 	
-	private final CharStorage myInternalHyperlinks = new CachedCharStorage(32768, Paths.cacheDirectory(), "links");
+	private final CharStorage myInternalHyperlinks;
 	private char[] myCurrentLinkBlock;
 	private int myCurrentLinkBlockOffset;
 
-	void addHyperlinkLabel(String label, ZLTextModel model, int paragraphNumber) {
+	synchronized void addHyperlinkLabel(String label, ZLTextModel model, int paragraphNumber) {
 		final String modelId = model.getId();
 		final int labelLength = label.length();
 		final int idLength = (modelId != null) ? modelId.length() : 0;
@@ -124,7 +382,7 @@ public final class BookModel {
 		myResolver = resolver;
 	}
 
-	public Label getLabel(String id) {
+	public synchronized Label getLabel(String id) {
 		Label label = getLabelInternal(id);
 		if (label == null && myResolver != null) {
 			for (String candidate : myResolver.getCandidates(id)) {
@@ -134,6 +392,14 @@ public final class BookModel {
 				}
 			}
 		}
+		if (label != null && !myIsComplete) {
+			// the paragraph might be not readable yet
+			final ZLTextModel model =
+				(label.ModelId != null) ? myFootnotes.get(label.ModelId) : BookTextModel;
+			if (model == null || label.ParagraphIndex >= model.getParagraphsNumber()) {
+				return null;
+			}
+		}
 		return label;
 	}
 
@@ -163,6 +429,8 @@ public final class BookModel {
 	}
 	
 	void addImage(String id, ZLImage image) {
-		myImageMap.put(id, image);
+		synchronized (myImageMap) {
+			myImageMap.put(id, image);
+		}
 	}
 }
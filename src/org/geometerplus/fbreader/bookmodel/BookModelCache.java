@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.bookmodel;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.*;
+
+import org.geometerplus.fbreader.library.Book;
+import org.geometerplus.fbreader.Paths;
+
+final class BookModelCache {
+	private static final int VERSION = 1;
+	private static final int MAX_MODELS_NUMBER = 10;
+	private static final String INDEX_FILE_NAME = "model.index";
+
+	private final Book myBook;
+	private final String myPath;
+	private final long mySize;
+	private final long myModificationTime;
+	private final String myDirectory;
+
+	BookModelCache(Book book) {
+		myBook = book;
+		myPath = book.File.getPath();
+		mySize = book.File.size();
+		final ZLPhysicalFile physicalFile = book.File.getPhysicalFile();
+		myModificationTime = (physicalFile != null) ? physicalFile.lastModified() : 0;
+		myDirectory = modelsDirectory() + "/" + Integer.toHexString(myPath.hashCode());
+	}
+
+	private static String modelsDirectory() {
+		return Paths.cacheDirectory() + "/models";
+	}
+
+	String getDirectory() {
+		return myDirectory;
+	}
+
+	BookModel load() {
+		final File indexFile = new File(myDirectory, INDEX_FILE_NAME);
+		if (!indexFile.exists()) {
+			clearDirectory(new File(myDirectory));
+			return null;
+		}
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 16384));
+			if (stream.readInt() != VERSION ||
+				!myPath.equals(stream.readUTF()) ||
+				stream.readLong() != mySize ||
+				stream.readLong() != myModificationTime) {
+				stream.close();
+				stream = null;
+				clearDirectory(new File(myDirectory));
+				return null;
+			}
+			final BookModel model = new BookModel(myBook, myDirectory, stream);
+			indexFile.setLastModified(System.currentTimeMillis());
+			return model;
+		} catch (IOException e) {
+			clearDirectory(new File(myDirectory));
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	void save(BookModel model) {
+		if (!model.isCacheable()) {
+			return;
+		}
+		final File indexFile = new File(myDirectory, INDEX_FILE_NAME);
+		final File tmpFile = new File(myDirectory, INDEX_FILE_NAME + ".tmp");
+		try {
+			final DataOutputStream stream =
+				new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 16384));
+			try {
+				stream.writeInt(VERSION);
+				stream.writeUTF(myPath);
+				stream.writeLong(mySize);
+				stream.writeLong(myModificationTime);
+				model.writeIndex(stream);
+			} finally {
+				stream.close();
+			}
+			if (!tmpFile.renameTo(indexFile)) {
+				tmpFile.delete();
+			}
+		} catch (Exception e) {
+			tmpFile.delete();
+		}
+		removeOldModels();
+	}
+
+	private static void clearDirectory(File directory) {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+	}
+
+	private static long indexTime(File directory) {
+		return new File(directory, INDEX_FILE_NAME).lastModified();
+	}
+
+	private static void removeOldModels() {
+		final File[] directories = new File(modelsDirectory()).listFiles();
+		if (directories == null || directories.length <= MAX_MODELS_NUMBER) {
+			return;
+		}
+		final long[] times = new long[directories.length];
+		for (int i = 0; i < directories.length; ++i) {
+			times[i] = indexTime(directories[i]);
+		}
+		final long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		final long threshold = sorted[directories.length - MAX_MODELS_NUMBER];
+		for (int i = 0; i < directories.length; ++i) {
+			if (times[i] < threshold) {
+				clearDirectory(directories[i]);
+				directories[i].delete();
+			}
+		}
+	}
+}
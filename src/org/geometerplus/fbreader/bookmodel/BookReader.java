@@ -58,6 +58,14 @@ public class BookReader {
 		myCurrentContentsTree = model.TOCTree;
 	}
 
+	/**
+	 * Number of paragraphs written to the main text so far. While the book
+	 * is being read, Model.BookTextModel.getParagraphsNumber() can be less.
+	 */
+	public final int getMainTextParagraphsNumber() {
+		return ((ZLTextWritableModel)Model.BookTextModel).getWrittenParagraphsNumber();
+	}
+
 	public final void setByteDecoder(CharsetDecoder decoder) {
 		myByteDecoder = decoder;
 	}
@@ -113,6 +121,7 @@ public class BookReader {
 	}
 
 	public final void beginParagraph(byte kind) {
+		Model.checkReadingCancelled();
 		endParagraph();
 		final ZLTextWritableModel textModel = myCurrentTextModel;
 		if (textModel != null) {
@@ -140,7 +149,7 @@ public class BookReader {
 	private final void insertEndParagraph(byte kind) {
 		final ZLTextWritableModel textModel = myCurrentTextModel;
 		if (textModel != null && mySectionContainsRegularContents) {
-			int size = textModel.getParagraphsNumber();
+			int size = textModel.getWrittenParagraphsNumber();
 			if (size > 0 && textModel.getParagraph(size - 1).getKind() != kind) {
 				textModel.createParagraph(kind);
 				mySectionContainsRegularContents = false;
@@ -291,7 +300,7 @@ public class BookReader {
 	public final void addHyperlinkLabel(String label) {
 		final ZLTextWritableModel textModel = myCurrentTextModel;
 		if (textModel != null) {
-			int paragraphNumber = textModel.getParagraphsNumber();
+			int paragraphNumber = textModel.getWrittenParagraphsNumber();
 			if (myTextParagraphExists) {
 				--paragraphNumber;
 			}
@@ -322,10 +331,10 @@ public class BookReader {
 	}
 
 	public final void beginContentsParagraph(ZLTextModel bookTextModel, int referenceNumber) {
-		final ZLTextModel textModel = myCurrentTextModel;
+		final ZLTextWritableModel textModel = myCurrentTextModel;
 		if (textModel == bookTextModel) {
 			if (referenceNumber == -1) {
-				referenceNumber = textModel.getParagraphsNumber();
+				referenceNumber = textModel.getWrittenParagraphsNumber();
 			}
 			TOCTree parentTree = myCurrentContentsTree;
 			if (parentTree.Level > 0) {
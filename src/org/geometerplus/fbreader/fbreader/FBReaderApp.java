@@ -29,8 +29,10 @@ import org.geometerplus.zlibrary.core.options.*;
 import org.geometerplus.zlibrary.core.util.ZLColor;
 
 import org.geometerplus.zlibrary.text.hyphenation.ZLTextHyphenator;
+import org.geometerplus.zlibrary.text.view.ZLTextPosition;
 import org.geometerplus.zlibrary.text.view.ZLTextWordCursor;
 
+import org.geometerplus.fbreader.Paths;
 import org.geometerplus.fbreader.bookmodel.BookModel;
 import org.geometerplus.fbreader.library.*;
 
@@ -39,6 +41,8 @@ public final class FBReaderApp extends ZLApplication {
 		new ZLBooleanOption("LookNFeel", "AllowScreenBrightnessAdjustment", true);
 	public final ZLStringOption TextSearchPatternOption =
 		new ZLStringOption("TextSearch", "Pattern", "");
+	public final ZLBooleanOption TextSearchWholeWordOption =
+		new ZLBooleanOption("TextSearch", "WholeWord", false);
 
 	public final ZLBooleanOption UseSeparateBindingsOption =
 		new ZLBooleanOption("KeysOptions", "UseSeparateBindings", false);
@@ -220,6 +224,7 @@ public final class FBReaderApp extends ZLApplication {
 
 			if (Model != null) {
 				Model.Book.storePosition(BookTextView.getStartCursor());
+				Model.cancelReading();
 			}
 			BookTextView.setModel(null);
 			FootnoteView.setModel(null);
@@ -228,11 +233,24 @@ public final class FBReaderApp extends ZLApplication {
 			Model = null;
 			System.gc();
 			System.gc();
-			Model = BookModel.createModel(book);
+			final ZLTextPosition position = book.getStoredPosition();
+			int paragraphIndex = (position != null) ? position.getParagraphIndex() : 0;
+			if (bookmark != null) {
+				paragraphIndex = (bookmark.ModelId == null)
+					? Math.max(paragraphIndex, bookmark.getParagraphIndex())
+					: Integer.MAX_VALUE;
+			}
+			// the rest of the book is read while the first pages are shown
+			Model = BookModel.createModel(book, paragraphIndex, new Runnable() {
+				public void run() {
+					getViewWidget().repaint();
+				}
+			});
 			if (Model != null) {
+				ZLTextHyphenator.Instance().setCacheDirectory(Paths.cacheDirectory() + "/hyphenation");
 				ZLTextHyphenator.Instance().load(book.getLanguage());
 				BookTextView.setModel(Model.BookTextModel);
-				BookTextView.gotoPosition(book.getStoredPosition());
+				BookTextView.gotoPosition(position);
 				if (bookmark == null) {
 					setView(BookTextView);
 				} else {
@@ -21,6 +21,7 @@ package org.geometerplus.fbreader.fbreader;
 
 import java.util.*;
 
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
 import org.geometerplus.zlibrary.core.util.ZLColor;
 import org.geometerplus.zlibrary.core.library.ZLibrary;
 import org.geometerplus.zlibrary.core.view.ZLPaintContext;
@@ -49,6 +50,12 @@ public final class FBView extends ZLTextView {
 		}
 	}
 
+	@Override
+	protected String getPageIndexDirectory() {
+		final BookModel model = myReader.Model;
+		return model != null ? model.getCacheDirectory() : null;
+	}
+
 	private int myStartY;
 	private boolean myIsBrightnessAdjustmentInProgress;
 	private int myStartBrightness;
@@ -425,6 +432,24 @@ public final class FBView extends ZLTextView {
 		};
 
 		private ArrayList<TOCTree> myTOCMarks;
+		// x coordinates of TOC marks for the gauge position and width they were computed for
+		private int[] myTOCMarkCoords;
+		private int myTOCMarkCoordsLeft;
+		private int myTOCMarkCoordsWidth;
+
+		// values shown in the context by the last paint() call
+		private ZLPaintContext myPaintedContext;
+		private String myPaintedInfo;
+		private int myPaintedProgress;
+		private int myPaintedBookLength;
+		private int myPaintedLeft;
+		private int myPaintedRight;
+		private int myPaintedHeight;
+		private String myPaintedFont;
+		private ZLColor myPaintedTextColor;
+		private ZLColor myPaintedFillColor;
+		private Object myPaintedBackground;
+		private boolean myPaintedTOCMarks;
 
 		public int getHeight() {
 			return myReader.FooterHeightOption.getValue();
@@ -432,6 +457,8 @@ public final class FBView extends ZLTextView {
 
 		public synchronized void resetTOCMarks() {
 			myTOCMarks = null;
+			myTOCMarkCoords = null;
+			myPaintedContext = null;
 		}
 
 		private final int MAX_TOC_MARKS_NUMBER = 100;
@@ -463,6 +490,28 @@ public final class FBView extends ZLTextView {
 			}
 		}
 
+		private int[] tocMarkCoords(int left, int gaugeWidth) {
+			if (myTOCMarkCoords != null &&
+				myTOCMarkCoordsLeft == left &&
+				myTOCMarkCoordsWidth == gaugeWidth) {
+				return myTOCMarkCoords;
+			}
+			final int fullLength = sizeOfFullText();
+			final int[] coords = new int[myTOCMarks.size()];
+			int count = 0;
+			for (TOCTree tocItem : myTOCMarks) {
+				TOCTree.Reference reference = tocItem.getReference();
+				if (reference != null) {
+					final int refCoord = sizeOfTextBeforeParagraph(reference.ParagraphIndex);
+					coords[count++] = left + (int)(1.0 * gaugeWidth * refCoord / fullLength);
+				}
+			}
+			myTOCMarkCoords = ZLArrayUtils.createCopy(coords, count, count);
+			myTOCMarkCoordsLeft = left;
+			myTOCMarkCoordsWidth = gaugeWidth;
+			return myTOCMarkCoords;
+		}
+
 		public synchronized void paint(ZLPaintContext context) {
 			final FBReaderApp reader = myReader;
 			if (reader == null) {
@@ -483,11 +532,7 @@ public final class FBView extends ZLTextView {
 			final int height = getHeight();
 			final int lineWidth = height <= 10 ? 1 : 2;
 			final int delta = height <= 10 ? 0 : 1;
-			context.setFont(
-				reader.FooterFontOption.getValue(),
-				height <= 10 ? height + 3 : height + 1,
-				height > 10, false, false
-			);
+			final String font = reader.FooterFontOption.getValue();
 
 			final int pagesProgress = computeCurrentPage();
 			final int bookLength = computePageNumber();
@@ -513,8 +558,44 @@ public final class FBView extends ZLTextView {
 			}
 			final String infoString = info.toString();
 
-			final int infoWidth = context.getStringWidth(infoString);
 			final ZLFile wallpaper = getWallpaperFile();
+			final Object background = wallpaper != null ? wallpaper : getBackgroundColor();
+			// TOC is being built until the model is complete
+			final boolean showTOCMarks = reader.FooterShowTOCMarksOption.getValue() && model.isComplete();
+
+			if (context == myPaintedContext &&
+				pagesProgress == myPaintedProgress &&
+				bookLength == myPaintedBookLength &&
+				left == myPaintedLeft &&
+				right == myPaintedRight &&
+				height == myPaintedHeight &&
+				showTOCMarks == myPaintedTOCMarks &&
+				infoString.equals(myPaintedInfo) &&
+				font.equals(myPaintedFont) &&
+				fgColor.equals(myPaintedTextColor) &&
+				fillColor.equals(myPaintedFillColor) &&
+				background.equals(myPaintedBackground)) {
+				return;
+			}
+			myPaintedContext = context;
+			myPaintedProgress = pagesProgress;
+			myPaintedBookLength = bookLength;
+			myPaintedLeft = left;
+			myPaintedRight = right;
+			myPaintedHeight = height;
+			myPaintedTOCMarks = showTOCMarks;
+			myPaintedInfo = infoString;
+			myPaintedFont = font;
+			myPaintedTextColor = fgColor;
+			myPaintedFillColor = fillColor;
+			myPaintedBackground = background;
+
+			context.setFont(
+				font,
+				height <= 10 ? height + 3 : height + 1,
+				height > 10, false, false
+			);
+			final int infoWidth = context.getStringWidth(infoString);
 			if (wallpaper != null) {
 				context.clear(wallpaper, wallpaper instanceof ZLResourceFile);
 			} else {
@@ -542,19 +623,12 @@ public final class FBView extends ZLTextView {
 			context.setFillColor(fillColor);
 			context.fillRectangle(left + 1, height - 2 * lineWidth, gaugeInternalRight, lineWidth + 1);
 
-			if (reader.FooterShowTOCMarksOption.getValue()) {
+			if (showTOCMarks) {
 				if (myTOCMarks == null) {
 					updateTOCMarks(model);
 				}
-				final int fullLength = sizeOfFullText();
-				for (TOCTree tocItem : myTOCMarks) {
-					TOCTree.Reference reference = tocItem.getReference();
-					if (reference != null) {
-						final int refCoord = sizeOfTextBeforeParagraph(reference.ParagraphIndex);
-						final int xCoord =
-							left + 2 * lineWidth + (int)(1.0 * myGaugeWidth * refCoord / fullLength);
-						context.drawLine(xCoord, height - lineWidth, xCoord, lineWidth);
-					}
+				for (int xCoord : tocMarkCoords(left + 2 * lineWidth, myGaugeWidth)) {
+					context.drawLine(xCoord, height - lineWidth, xCoord, lineWidth);
 				}
 			}
 		}
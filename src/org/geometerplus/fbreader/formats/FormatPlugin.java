@@ -28,6 +28,11 @@ public abstract class FormatPlugin {
 	public abstract boolean acceptsFile(ZLFile file);
 	public abstract	boolean readMetaInfo(Book book);
 	public abstract boolean readModel(BookModel model);
+	/**
+	 * Called instead of readModel() for models restored from the cache
+	 */
+	public void restoreModel(BookModel model) {
+	}
 	public abstract ZLImage readCover(ZLFile file);
 	public abstract String readAnnotation(ZLFile file);
 
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2010-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.formats.fb2;
+
+import java.io.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.filesystem.ZLPhysicalFile;
+import org.geometerplus.zlibrary.core.image.ZLFileImage;
+import org.geometerplus.zlibrary.core.util.MimeType;
+
+/**
+ * Finds a <binary> section by its id without XML parsing. Binary sections
+ * are stored after the bodies, so a plain file is scanned backward from
+ * its end; a compressed entry can be read forward only. The encoding
+ * must be ASCII-compatible; null is returned if the section is not found.
+ */
+final class FB2BinaryLocator {
+	private static final byte[] BINARY_TAG = { '<', 'b', 'i', 'n', 'a', 'r', 'y' };
+	private static final byte[] BODY_END_TAG = { '<', '/', 'b', 'o', 'd', 'y', '>' };
+
+	private static final int BLOCK_SIZE = 16384;
+	// tags longer than this are not recognized
+	private static final int MAX_TAG_LENGTH = 1024;
+
+	private FB2BinaryLocator() {
+	}
+
+	static ZLFileImage find(ZLFile file, String id) {
+		for (int i = 0; i < id.length(); ++i) {
+			if (id.charAt(i) >= 0x80) {
+				return null;
+			}
+		}
+		try {
+			return file instanceof ZLPhysicalFile
+				? findBackward(file, id) : findForward(file, id);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static ZLFileImage findBackward(ZLFile file, String id) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r");
+		try {
+			final long fileLength = raf.length();
+			final byte[] buffer = new byte[BLOCK_SIZE + MAX_TAG_LENGTH];
+			// each block is read with MAX_TAG_LENGTH bytes of the next one,
+			// so a tag started in the block is read completely
+			for (long blockEnd = fileLength; blockEnd > 0; ) {
+				final long blockStart = Math.max(blockEnd - BLOCK_SIZE, 0);
+				final int length = (int)(Math.min(blockEnd + MAX_TAG_LENGTH, fileLength) - blockStart);
+				raf.seek(blockStart);
+				raf.readFully(buffer, 0, length);
+				final int tagsEnd = (int)(blockEnd - blockStart);
+				for (int index = lastTagIndex(buffer, tagsEnd, length); index != -1;
+						index = lastTagIndex(buffer, index, length)) {
+					if (startsWith(buffer, index, length, BODY_END_TAG)) {
+						return null;
+					}
+					final int tagEnd = indexOf(buffer, '>', index, length);
+					if (tagEnd == -1) {
+						continue;
+					}
+					final String contentType = matchBinaryTag(buffer, index, tagEnd, id);
+					if (contentType != null) {
+						final long dataStart = blockStart + tagEnd + 1;
+						raf.seek(dataStart);
+						return image(file, contentType, dataStart, lengthTillTag(raf, buffer));
+					}
+				}
+				blockEnd = blockStart;
+			}
+			return null;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static ZLFileImage findForward(ZLFile file, String id) throws IOException {
+		final InputStream stream = file.getInputStream();
+		try {
+			final byte[] buffer = new byte[BLOCK_SIZE + MAX_TAG_LENGTH];
+			// buffer[0] is at this offset in the stream
+			long bufferOffset = 0;
+			int length = 0;
+			while (true) {
+				final int count = stream.read(buffer, length, buffer.length - length);
+				if (count > 0) {
+					length += count;
+				}
+				final boolean isEOF = count <= 0;
+				// tags started after tagsEnd can be incomplete, they are processed with the next block
+				final int tagsEnd = isEOF ? length : Math.max(length - MAX_TAG_LENGTH, 0);
+				for (int index = 0; (index = binaryTagIndex(buffer, index, tagsEnd, length)) != -1; ++index) {
+					final int tagEnd = indexOf(buffer, '>', index, length);
+					if (tagEnd == -1) {
+						continue;
+					}
+					final String contentType = matchBinaryTag(buffer, index, tagEnd, id);
+					if (contentType != null) {
+						final int dataEnd = indexOf(buffer, '<', tagEnd + 1, length);
+						final long dataLength;
+						if (dataEnd != -1) {
+							dataLength = dataEnd - tagEnd - 1;
+						} else {
+							dataLength = length - tagEnd - 1 + lengthTillTag(stream);
+						}
+						return image(file, contentType, bufferOffset + tagEnd + 1, dataLength);
+					}
+				}
+				if (isEOF) {
+					return null;
+				}
+				if (tagsEnd > 0) {
+					System.arraycopy(buffer, tagsEnd, buffer, 0, length - tagsEnd);
+					bufferOffset += tagsEnd;
+					length -= tagsEnd;
+				}
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static ZLFileImage image(ZLFile file, String contentType, long offset, long length) {
+		if (offset + length > Integer.MAX_VALUE) {
+			return null;
+		}
+		final MimeType mimeType = MimeType.get(contentType);
+		return new ZLFileImage(
+			mimeType != null ? mimeType : MimeType.IMAGE_AUTO,
+			file, ZLFileImage.ENCODING_BASE64, (int)offset, (int)length
+		);
+	}
+
+	// number of bytes before the next '<'
+	private static long lengthTillTag(RandomAccessFile raf, byte[] buffer) throws IOException {
+		long length = 0;
+		while (true) {
+			final int count = raf.read(buffer);
+			if (count <= 0) {
+				return length;
+			}
+			final int index = indexOf(buffer, '<', 0, count);
+			if (index != -1) {
+				return length + index;
+			}
+			length += count;
+		}
+	}
+
+	private static long lengthTillTag(InputStream stream) throws IOException {
+		long length = 0;
+		while (true) {
+			final int b = stream.read();
+			if (b == -1 || b == '<') {
+				return length;
+			}
+			++length;
+		}
+	}
+
+	/**
+	 * Returns the content-type of the binary section ("" if it is not specified)
+	 * if the tag buffer[start..end] opens the section with given id, null otherwise.
+	 */
+	private static String matchBinaryTag(byte[] buffer, int start, int end, String id) {
+		final int afterName = start + BINARY_TAG.length;
+		if (afterName >= end || !isSpace(buffer[afterName])) {
+			return null;
+		}
+		if (!id.equals(attributeValue(buffer, afterName, end, "id"))) {
+			return null;
+		}
+		final String contentType = attributeValue(buffer, afterName, end, "content-type");
+		return contentType != null ? contentType : "";
+	}
+
+	private static String attributeValue(byte[] buffer, int start, int end, String name) {
+		for (int i = start; i < end; ++i) {
+			if (!isSpace(buffer[i - 1]) || !startsWith(buffer, i, end, name)) {
+				continue;
+			}
+			int j = i + name.length();
+			while (j < end && isSpace(buffer[j])) {
+				++j;
+			}
+			if (j == end || buffer[j] != '=') {
+				continue;
+			}
+			++j;
+			while (j < end && isSpace(buffer[j])) {
+				++j;
+			}
+			if (j == end || (buffer[j] != '"' && buffer[j] != '\'')) {
+				continue;
+			}
+			final int valueEnd = indexOf(buffer, buffer[j], j + 1, end);
+			if (valueEnd == -1) {
+				return null;
+			}
+			try {
+				return new String(buffer, j + 1, valueEnd - j - 1, "ISO-8859-1");
+			} catch (UnsupportedEncodingException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private static boolean startsWith(byte[] buffer, int start, int end, String prefix) {
+		if (start + prefix.length() > end) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); ++i) {
+			if (buffer[start + i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean startsWith(byte[] buffer, int start, int end, byte[] prefix) {
+		if (start + prefix.length > end) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; ++i) {
+			if (buffer[start + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] buffer, int b, int start, int end) {
+		for (int i = start; i < end; ++i) {
+			if (buffer[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// index of the first "<binary" started in [start, tagsEnd)
+	private static int binaryTagIndex(byte[] buffer, int start, int tagsEnd, int length) {
+		for (int i = start; i < tagsEnd; ++i) {
+			if (buffer[i] == '<' && startsWith(buffer, i, length, BINARY_TAG)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// index of the last "<binary" or "</body>" started before 'before'
+	private static int lastTagIndex(byte[] buffer, int before, int length) {
+		for (int i = before - 1; i >= 0; --i) {
+			if (buffer[i] == '<' &&
+				(startsWith(buffer, i, length, BINARY_TAG) || startsWith(buffer, i, length, BODY_END_TAG))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
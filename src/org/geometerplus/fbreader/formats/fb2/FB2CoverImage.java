@@ -35,7 +35,12 @@ class FB2CoverImage extends ZLImageProxy {
 
 	@Override
 	public ZLSingleImage getRealImage() {
-		return new BackgroundReader().readCover(myFile);
+		final String reference = new BackgroundReader().readCoverReference(myFile);
+		if (reference == null) {
+			return null;
+		}
+		final ZLSingleImage image = FB2BinaryLocator.find(myFile, reference);
+		return image != null ? image : new BackgroundReader().readCover(myFile);
 	}
 
 	@Override
@@ -50,11 +55,22 @@ class FB2CoverImage extends ZLImageProxy {
 
 	private static class BackgroundReader extends ZLXMLReaderAdapter {
 		private boolean myReadCoverPage;
+		private boolean myReadDescriptionOnly;
 		private String myImageReference;
 		private Base64EncodedImage myImage;
 
+		// reads the description only
+		String readCoverReference(ZLFile file) {
+			myReadCoverPage = false;
+			myReadDescriptionOnly = true;
+			myImageReference = null;
+			read(file);
+			return myImageReference;
+		}
+
 		Base64EncodedImage readCover(ZLFile file) {
 			myReadCoverPage = false;
+			myReadDescriptionOnly = false;
 			myImageReference = null;
 			read(file);
 			return myImage;
@@ -100,7 +116,7 @@ class FB2CoverImage extends ZLImageProxy {
 				myReadCoverPage = false;
 				break;
 			case FB2Tag.DESCRIPTION:
-				if (myImageReference == null) {
+				if (myImageReference == null || myReadDescriptionOnly) {
 					return true;
 				}
 				break;
@@ -22,6 +22,7 @@ package org.geometerplus.fbreader.formats.fb2;
 import java.util.*;
 
 import org.geometerplus.zlibrary.core.constants.XMLNamespaces;
+import org.geometerplus.zlibrary.core.image.ZLFileImage;
 import org.geometerplus.zlibrary.core.library.ZLibrary;
 import org.geometerplus.zlibrary.core.util.*;
 import org.geometerplus.zlibrary.core.xml.*;
@@ -42,6 +43,12 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 	
 	private byte myHyperlinkType;
 	
+	// binary section being read; images are not copied, only their places in the file are stored
+	private String myCurrentImageId;
+	private MimeType myCurrentImageType;
+	private long myCurrentImageOffset;
+	private int myCurrentImageLength;
+	// used instead if offsets in the file are unknown
 	private Base64EncodedImage myCurrentImage;
 	private boolean myInsideCoverpage = false;
 	private String myCoverImageReference;
@@ -75,9 +82,8 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 		if (length == 0) {
 			return;
 		}
-		final Base64EncodedImage image = myCurrentImage;
-		if (image != null) {
-			image.addData(ch, start, length);
+		if (myCurrentImageId != null) {
+			addImageData(ch, start, length);
 		} else {
 			myBookReader.addData(ch, start, length, false);
 		}		
@@ -87,14 +93,30 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 		if (length == 0) {
 			return;
 		}
-		final Base64EncodedImage image = myCurrentImage;
-		if (image != null) {
-			image.addData(ch, start, length);
+		if (myCurrentImageId != null) {
+			addImageData(ch, start, length);
 		} else {
 			myBookReader.addData(ch, start, length, true);
 		}		
 	}
 
+	private void addImageData(char[] ch, int start, int length) {
+		if (myCurrentImage != null) {
+			myCurrentImage.addData(ch, start, length);
+			return;
+		}
+		if (myCurrentImageOffset == -1) {
+			myCurrentImageOffset = getStreamOffset(start);
+			if (myCurrentImageOffset == -1) {
+				myCurrentImage = new Base64EncodedImage(myCurrentImageType);
+				myCurrentImage.addData(ch, start, length);
+				return;
+			}
+		}
+		// base64 data is ASCII, so one char is one byte in any supported encoding
+		myCurrentImageLength += length;
+	}
+
 	public boolean endElementHandler(String tagName) {
 		final byte tag = myTagStack[--myTagStackSize];
 		switch (tag) {
@@ -197,8 +219,18 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 			case FB2Tag.BINARY:
 				if (myCurrentImage != null) {
 					myCurrentImage.close();
+					myBookReader.addImage(myCurrentImageId, myCurrentImage);
 					myCurrentImage = null;
+				} else if (myCurrentImageId != null && myCurrentImageOffset != -1) {
+					myBookReader.addImage(myCurrentImageId, new ZLFileImage(
+						myCurrentImageType,
+						myBookReader.Model.Book.File,
+						ZLFileImage.ENCODING_BASE64,
+						(int)myCurrentImageOffset,
+						myCurrentImageLength
+					));
 				}
+				myCurrentImageId = null;
 				break;	
 				
 			default:
@@ -325,7 +357,7 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 				
 			case FB2Tag.BODY:
 				++myBodyCounter;
-				myParagraphsBeforeBodyNumber = myBookReader.Model.BookTextModel.getParagraphsNumber();
+				myParagraphsBeforeBodyNumber = myBookReader.getMainTextParagraphsNumber();
 				final String name = attributes.getValue("name");
 				if (myBodyCounter == 1 || !"notes".equals(name)) {
 					myBookReader.setMainTextModel();
@@ -376,7 +408,7 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 					}
 					imgRef = imgRef.substring(1);
 					if (!imgRef.equals(myCoverImageReference) ||
-							myParagraphsBeforeBodyNumber != myBookReader.Model.BookTextModel.getParagraphsNumber()) {
+							myParagraphsBeforeBodyNumber != myBookReader.getMainTextParagraphsNumber()) {
 						myBookReader.addImageReference(imgRef, offset);
 					}
 					if (myInsideCoverpage) {
@@ -389,8 +421,10 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 				final String contentType = attributes.getValue("content-type");
 				final String imgId = attributes.getValue("id");
 				if (contentType != null && id != null) {
-					myCurrentImage = new Base64EncodedImage(MimeType.get(contentType));
-					myBookReader.addImage(imgId, myCurrentImage);
+					myCurrentImageId = imgId;
+					myCurrentImageType = MimeType.get(contentType);
+					myCurrentImageOffset = -1;
+					myCurrentImageLength = 0;
 				}
 				break;	
 
@@ -106,7 +106,7 @@ final class FB2Tag {
 		ourTagByName.put("description", DESCRIPTION);
 	}
 
-	public static byte getTagByName(String name) {
+	public static synchronized byte getTagByName(String name) {
 		final HashMap<String,Byte> tagByName = ourTagByName;
 		Byte num = tagByName.get(name);
 		if (num == null) {
@@ -86,7 +86,12 @@ public class HtmlReader extends BookReader implements ZLHtmlReader {
 	}
 
 	public boolean readBook() throws IOException {
-		return ZLHtmlProcessor.read(this, getInputStream());
+		final InputStream stream = getInputStream();
+		try {
+			return ZLHtmlProcessor.read(this, stream);
+		} finally {
+			stream.close();
+		}
 	}
 
 	public InputStream getInputStream() throws IOException {
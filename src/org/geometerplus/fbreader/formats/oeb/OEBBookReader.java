@@ -20,6 +20,7 @@
 package org.geometerplus.fbreader.formats.oeb;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.geometerplus.zlibrary.core.constants.XMLNamespaces;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
@@ -28,7 +29,7 @@ import org.geometerplus.zlibrary.core.util.MimeType;
 import org.geometerplus.zlibrary.core.xml.*;
 
 import org.geometerplus.fbreader.bookmodel.*;
-import org.geometerplus.fbreader.formats.xhtml.XHTMLReader;
+import org.geometerplus.fbreader.formats.xhtml.*;
 import org.geometerplus.fbreader.formats.util.MiscUtil;
 
 class Reference {
@@ -54,22 +55,29 @@ class OEBBookReader extends ZLXMLReaderAdapter implements XMLNamespaces {
 	private String myFilePrefix;
 	private String myNCXTOCFileName;
 
+	static final BookModel.LabelResolver LABEL_RESOLVER = new BookModel.LabelResolver() {
+		public List<String> getCandidates(String id) {
+			final int index = id.indexOf("#");
+			return index > 0
+				? Collections.<String>singletonList(id.substring(0, index))
+				: Collections.<String>emptyList();
+		}
+	};
+
 	OEBBookReader(BookModel model) {
 		myModelReader = new BookReader(model);
-		model.setLabelResolver(new BookModel.LabelResolver() {
-			public List<String> getCandidates(String id) {
-				final int index = id.indexOf("#");
-				return index > 0
-					? Collections.<String>singletonList(id.substring(0, index))
-					: Collections.<String>emptyList();
-			}
-		});
+		model.setLabelResolver(LABEL_RESOLVER);
 	}
 
 	private TreeMap<String,Integer> myFileNumbers = new TreeMap<String,Integer>();
 	private TreeMap<String,Integer> myTOCLabels = new TreeMap<String,Integer>();
 
 	boolean readBook(ZLFile file) {
+		return readBook(file, Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARSING_THREADS));
+	}
+
+	// threadsNumber == 1 means all the files are parsed on the calling thread
+	boolean readBook(ZLFile file, int threadsNumber) {
 		myFilePrefix = MiscUtil.htmlDirectoryPrefix(file);
 
 		myIdToHref.clear();
@@ -86,19 +94,49 @@ class OEBBookReader extends ZLXMLReaderAdapter implements XMLNamespaces {
 		myModelReader.setMainTextModel();
 		myModelReader.pushKind(FBTextKind.REGULAR);
 
+		final ArrayList<ZLFile> xhtmlFiles = new ArrayList<ZLFile>(myHtmlFileNames.size());
 		for (String name : myHtmlFileNames) {
 			final ZLFile xhtmlFile = ZLFile.createFileByPath(myFilePrefix + name);
 			if (xhtmlFile == null) {
 				// NPE fix: null for bad attributes in .opf XML file
 				return false;
 			}
-			final XHTMLReader reader = new XHTMLReader(myModelReader, myFileNumbers);
-			final String referenceName = reader.getFileAlias(MiscUtil.archiveEntryName(xhtmlFile.getPath()));
+			xhtmlFiles.add(xhtmlFile);
+		}
 
-			myModelReader.addHyperlinkLabel(referenceName);
-			myTOCLabels.put(referenceName, myModelReader.Model.BookTextModel.getParagraphsNumber());
-			reader.readFile(xhtmlFile, referenceName + '#');
-			myModelReader.insertEndOfSectionParagraph();
+		final ExecutorService executor = threadsNumber > 1 && xhtmlFiles.size() > 1
+			? Executors.newFixedThreadPool(threadsNumber) : null;
+		try {
+			// files are parsed in parallel, but the model is built
+			// strictly in spine order, so the result does not depend on threads
+			final ArrayList<Future<XHTMLEventBuffer>> parsed =
+				new ArrayList<Future<XHTMLEventBuffer>>(xhtmlFiles.size());
+			final int lookAhead = 2 * threadsNumber;
+			for (int i = 0; i < xhtmlFiles.size(); ++i) {
+				if (executor != null) {
+					while (parsed.size() < Math.min(i + lookAhead, xhtmlFiles.size())) {
+						parsed.add(executor.submit(parsingTask(xhtmlFiles.get(parsed.size()))));
+					}
+				}
+
+				final ZLFile xhtmlFile = xhtmlFiles.get(i);
+				final XHTMLReader reader = new XHTMLReader(myModelReader, myFileNumbers);
+				final String referenceName = reader.getFileAlias(MiscUtil.archiveEntryName(xhtmlFile.getPath()));
+
+				myModelReader.addHyperlinkLabel(referenceName);
+				myTOCLabels.put(referenceName, myModelReader.getMainTextParagraphsNumber());
+				final XHTMLEventBuffer events = executor != null ? parsedEvents(parsed, i) : null;
+				if (events != null) {
+					reader.readFile(xhtmlFile, referenceName + '#', events);
+				} else {
+					reader.readFile(xhtmlFile, referenceName + '#');
+				}
+				myModelReader.insertEndOfSectionParagraph();
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
 		}
 
 		generateTOC();
@@ -106,6 +144,32 @@ class OEBBookReader extends ZLXMLReaderAdapter implements XMLNamespaces {
 		return true;
 	}
 
+	private static final int MAX_PARSING_THREADS = 4;
+
+	private static Callable<XHTMLEventBuffer> parsingTask(final ZLFile file) {
+		return new Callable<XHTMLEventBuffer>() {
+			public XHTMLEventBuffer call() {
+				final XHTMLEventBuffer events = new XHTMLEventBuffer();
+				events.read(file);
+				return events;
+			}
+		};
+	}
+
+	// returns null if parsing failed; the file is parsed again on this thread in such case
+	private static XHTMLEventBuffer parsedEvents(ArrayList<Future<XHTMLEventBuffer>> parsed, int index) {
+		try {
+			return parsed.get(index).get();
+		} catch (InterruptedException e) {
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		} finally {
+			// release events buffer as soon as it is replayed
+			parsed.set(index, null);
+		}
+	}
+
 	private BookModel.Label getTOCLabel(String id) {
 		final int index = id.indexOf('#');
 		final String path = (index >= 0) ? id.substring(0, index) : id;
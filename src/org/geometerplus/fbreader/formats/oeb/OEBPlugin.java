@@ -70,6 +70,12 @@ public class OEBPlugin extends FormatPlugin {
 		return (opfFile != null) ? new OEBBookReader(model).readBook(opfFile) : false;
 	}
 
+	@Override
+	public void restoreModel(BookModel model) {
+		model.Book.File.setCached(true);
+		model.setLabelResolver(OEBBookReader.LABEL_RESOLVER);
+	}
+
 	@Override
 	public ZLImage readCover(ZLFile file) {
 		final ZLFile opfFile = getOpfFile(file);
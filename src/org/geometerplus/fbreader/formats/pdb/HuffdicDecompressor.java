@@ -19,95 +19,197 @@
 
 package org.geometerplus.fbreader.formats.pdb;
 
-import java.io.*;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-public abstract class HuffdicDecompressor {
-	public static int decompress(InputStream stream, byte[] targetBuffer, int compressedSize) throws IOException {
-		final byte[] sourceBuffer = new byte[compressedSize];
+/**
+ * Decoder for HUFF/CDIC compressed Mobipocket text records.
+ * The HUFF record holds the code tables, CDIC records hold the phrases;
+ * a phrase may be compressed itself, such phrases are expanded on first use.
+ * An instance can be shared by several decompressing threads.
+ */
+final class HuffdicDecompressor {
+	private static final int MAX_DEPTH = 32;
+
+	private final int[] myCodeLength = new int[256];
+	private final boolean[] myIsTerminal = new boolean[256];
+	private final long[] myTableMaxCode = new long[256];
+	private final long[] myMinCode = new long[33];
+	private final long[] myMaxCode = new long[33];
+
+	private final byte[][] myPhraseRecord;
+	private final int[] myPhraseOffset;
+	private final int[] myPhraseLength;
+	private final boolean[] myPhraseIsLiteral;
+	private final AtomicReferenceArray<byte[]> myExpandedPhrases;
+
+	HuffdicDecompressor(byte[][] records) throws IOException {
+		final byte[] huff = records[0];
+		if (!hasSignature(huff, "HUFF", 0x18)) {
+			throw new IOException("Invalid HUFF record");
+		}
+		final int tableOffset = PdbUtil.readInt(huff, 8);
+		final int codesOffset = PdbUtil.readInt(huff, 12);
+		if (tableOffset < 0 || tableOffset + 4 * 256 > huff.length ||
+			codesOffset < 0 || codesOffset + 4 * 64 > huff.length) {
+			throw new IOException("Invalid HUFF record");
+		}
+		for (int i = 0; i < 256; ++i) {
+			final int entry = PdbUtil.readInt(huff, tableOffset + 4 * i);
+			final int codeLength = entry & 0x1F;
+			if (codeLength == 0) {
+				throw new IOException("Invalid HUFF code length");
+			}
+			myCodeLength[i] = codeLength;
+			myIsTerminal[i] = (entry & 0x80) != 0;
+			myTableMaxCode[i] = (((entry >>> 8) + 1L) << (32 - codeLength)) - 1;
+		}
+		for (int codeLength = 1; codeLength <= 32; ++codeLength) {
+			final int offset = codesOffset + 8 * (codeLength - 1);
+			myMinCode[codeLength] =
+				(PdbUtil.readInt(huff, offset) & 0xFFFFFFFFL) << (32 - codeLength);
+			myMaxCode[codeLength] =
+				(((PdbUtil.readInt(huff, offset + 4) & 0xFFFFFFFFL) + 1) << (32 - codeLength)) - 1;
+		}
 
-		if (stream.read(sourceBuffer) != compressedSize) {
-			return 0;
+		int count = 0;
+		for (int i = 1; i < records.length; ++i) {
+			if (!hasSignature(records[i], "CDIC", 0x10)) {
+				throw new IOException("Invalid CDIC record");
+			}
+			count = Math.max(count, PdbUtil.readInt(records[i], 8));
+		}
+		myPhraseRecord = new byte[count][];
+		myPhraseOffset = new int[count];
+		myPhraseLength = new int[count];
+		myPhraseIsLiteral = new boolean[count];
+		myExpandedPhrases = new AtomicReferenceArray<byte[]>(count);
+
+		int index = 0;
+		for (int i = 1; i < records.length && index < count; ++i) {
+			final byte[] cdic = records[i];
+			final int bits = PdbUtil.readInt(cdic, 12);
+			final int n = Math.min(bits < 31 ? 1 << bits : count, count - index);
+			for (int j = 0; j < n; ++j, ++index) {
+				final int offset = 16 + PdbUtil.readShort(cdic, 16 + 2 * j);
+				final int header = PdbUtil.readShort(cdic, offset);
+				final int length = header & 0x7FFF;
+				if (offset + 2 + length > cdic.length) {
+					throw new IOException("Invalid CDIC record");
+				}
+				myPhraseRecord[index] = cdic;
+				myPhraseOffset[index] = offset + 2;
+				myPhraseLength[index] = length;
+				myPhraseIsLiteral[index] = (header & 0x8000) != 0;
+			}
+		}
+	}
+
+	private static boolean hasSignature(byte[] record, String magic, int headerLength) {
+		if (record.length < 16) {
+			return false;
+		}
+		for (int i = 0; i < 4; ++i) {
+			if (record[i] != magic.charAt(i)) {
+				return false;
+			}
 		}
+		return PdbUtil.readInt(record, 4) == headerLength;
+	}
 
-		int sourceIndex = 0;
+	/**
+	 * @return decompressed size, or -1 if targetBuffer is too short
+	 */
+	int decompress(byte[] sourceBuffer, int compressedSize, byte[] targetBuffer) throws IOException {
+		return unpack(sourceBuffer, 0, compressedSize, targetBuffer, 0);
+	}
+
+	private int unpack(byte[] data, int start, int length, byte[] target, int depth) throws IOException {
+		final int end = start + length;
+		long bitsLeft = 8L * length;
+		int position = start;
+		long window = ((long)word(data, position, end) << 32) | (word(data, position + 4, end) & 0xFFFFFFFFL);
+		int shift = 32;
 		int targetIndex = 0;
 
-		int count0 = 0;
-		int count1 = 0;
-		int count2 = 0;
-		int count3 = 0;
-		try {
-			while (true) {
-				final byte token = sourceBuffer[sourceIndex++];
-				switch (token) {
-					default:
-						++count0;
-						targetBuffer[targetIndex++] = token;
-						break;
-					case 1: case 2: case 3: case 4:
-					case 5: case 6: case 7: case 8:
-						++count1;
-						System.arraycopy(sourceBuffer, sourceIndex, targetBuffer, targetIndex, token);
-						sourceIndex += token;
-						targetIndex += token;
-						break;
-					case -64: case -63: case -62: case -61:
-					case -60: case -59: case -58: case -57:
-					case -56: case -55: case -54: case -53:
-					case -52: case -51: case -50: case -49:
-					case -48: case -47: case -46: case -45:
-					case -44: case -43: case -42: case -41:
-					case -40: case -39: case -38: case -37:
-					case -36: case -35: case -34: case -33:
-					case -32: case -31: case -30: case -29:
-					case -28: case -27: case -26: case -25:
-					case -24: case -23: case -22: case -21:
-					case -20: case -19: case -18: case -17:
-					case -16: case -15: case -14: case -13:
-					case -12: case -11: case -10: case -9:
-					case -8: case -7: case -6: case -5:
-					case -4: case -3: case -2: case -1:
-						++count2;
-						targetBuffer[targetIndex++] = ' ';
-						targetBuffer[targetIndex++] = (byte)(token ^ 0x80);
-						break;
-					case -128: case -127: case -126: case -125:
-					case -124: case -123: case -122: case -121:
-					case -120: case -119: case -118: case -117:
-					case -116: case -115: case -114: case -113:
-					case -112: case -111: case -110: case -109:
-					case -108: case -107: case -106: case -105:
-					case -104: case -103: case -102: case -101:
-					case -100: case -99: case -98: case -97:
-					case -96: case -95: case -94: case -93:
-					case -92: case -91: case -90: case -89:
-					case -88: case -87: case -86: case -85:
-					case -84: case -83: case -82: case -81:
-					case -80: case -79: case -78: case -77:
-					case -76: case -75: case -74: case -73:
-					case -72: case -71: case -70: case -69:
-					case -68: case -67: case -66: case -65:
-						++count3;
-						final int N = ((token & 0x3F) << 8) + (sourceBuffer[sourceIndex++] & 0xFF);
-						int copyLength = (N & 7) + 3;
-						int srcIndex = targetIndex - (N >> 3);
-						if (targetIndex >= srcIndex + copyLength) {
-							System.arraycopy(targetBuffer, srcIndex, targetBuffer, targetIndex, copyLength);
-							targetIndex += copyLength;
-						} else {
-							while (copyLength-- > 0) {
-								targetBuffer[targetIndex++] = targetBuffer[srcIndex++];
-							}
-						}
-						break;
+		while (true) {
+			if (shift <= 0) {
+				position += 4;
+				window = (window << 32) | (word(data, position + 4, end) & 0xFFFFFFFFL);
+				shift += 32;
+			}
+			final long code = (window >>> shift) & 0xFFFFFFFFL;
+			final int top = (int)(code >>> 24);
+			int codeLength = myCodeLength[top];
+			long maxCode = myTableMaxCode[top];
+			if (!myIsTerminal[top]) {
+				while (codeLength < 32 && code < myMinCode[codeLength]) {
+					++codeLength;
 				}
+				maxCode = myMaxCode[codeLength];
+			}
+			shift -= codeLength;
+			bitsLeft -= codeLength;
+			if (bitsLeft < 0) {
+				return targetIndex;
+			}
+
+			final long phrase = (maxCode - code) >>> (32 - codeLength);
+			if (phrase < 0 || phrase >= myPhraseLength.length) {
+				throw new IOException("Invalid HUFF code");
+			}
+			final int index = (int)phrase;
+			final byte[] source;
+			final int offset;
+			final int size;
+			if (myPhraseIsLiteral[index]) {
+				source = myPhraseRecord[index];
+				offset = myPhraseOffset[index];
+				size = myPhraseLength[index];
+			} else {
+				source = expandedPhrase(index, depth);
+				offset = 0;
+				size = source.length;
 			}
-		} catch (Exception e) {
-			if (targetIndex > targetBuffer.length) {
-				targetIndex = targetBuffer.length;
+			if (targetIndex + size > target.length) {
+				return -1;
 			}
+			System.arraycopy(source, offset, target, targetIndex, size);
+			targetIndex += size;
 		}
+	}
 
-		return targetIndex;
+	private byte[] expandedPhrase(int index, int depth) throws IOException {
+		byte[] expanded = myExpandedPhrases.get(index);
+		if (expanded != null) {
+			return expanded;
+		}
+		if (depth == MAX_DEPTH) {
+			throw new IOException("HUFF phrases are nested too deep");
+		}
+
+		final int length = myPhraseLength[index];
+		byte[] buffer = new byte[4 * length + 16];
+		int size;
+		while ((size = unpack(myPhraseRecord[index], myPhraseOffset[index], length, buffer, depth + 1)) == -1) {
+			buffer = new byte[2 * buffer.length];
+		}
+		expanded = new byte[size];
+		System.arraycopy(buffer, 0, expanded, 0, size);
+		// several threads can expand the same phrase; the results are identical
+		myExpandedPhrases.set(index, expanded);
+		return expanded;
+	}
+
+	// 4 bytes starting at position, big-endian; bytes after end are zeroes
+	private static int word(byte[] data, int position, int end) {
+		if (position + 4 <= end) {
+			return PdbUtil.readInt(data, position);
+		}
+		int value = 0;
+		for (int i = position; i < position + 4; ++i) {
+			value = (value << 8) | (i < end ? data[i] & 0xFF : 0);
+		}
+		return value;
 	}
 }
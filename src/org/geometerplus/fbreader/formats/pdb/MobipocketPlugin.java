@@ -205,14 +205,18 @@ public class MobipocketPlugin extends PdbPlugin {
 			}
 
 			MobipocketStream myMobipocketStream = new MobipocketStream(file);
-			int start = myMobipocketStream.getImageOffset(coverIndex);
-			if (start >= 0) {
-				int len = myMobipocketStream.getImageLength(coverIndex);
-				if (len > 0) {
-					return new ZLFileImage(MimeType.IMAGE_AUTO, file, start, len);
+			try {
+				int start = myMobipocketStream.getImageOffset(coverIndex);
+				if (start >= 0) {
+					int len = myMobipocketStream.getImageLength(coverIndex);
+					if (len > 0) {
+						return new ZLFileImage(MimeType.IMAGE_AUTO, file, start, len);
+					}
 				}
+				return null; 
+			} finally {
+				myMobipocketStream.close();
 			}
-			return null; 
 		} catch (IOException e) {
 			return null;
 		} finally {
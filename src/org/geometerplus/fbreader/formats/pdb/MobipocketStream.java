@@ -24,25 +24,34 @@ import java.io.IOException;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 
 class MobipocketStream extends PalmDocLikeStream {
-	private final int myFileSize;
 	private final int myImageStartIndex;
 
 	MobipocketStream(ZLFile file) throws IOException {
 		super(file);
-		myFileSize = (int)file.size();
 
-		myCompressionType = PdbUtil.readShort(myBase);
-		PdbUtil.skip(myBase, 6);
-		myMaxRecordIndex = Math.min(PdbUtil.readShort(myBase), myHeader.Offsets.length - 1);
-		final int maxRecordSize = PdbUtil.readShort(myBase);
-		if (maxRecordSize == 0) {
+		final byte[] header = myRecords.read(0);
+		if (header.length < 112) {
+			throw new IOException("The header is too short");
+		}
+		myCompressionType = PdbUtil.readShort(header, 0);
+		myMaxRecordIndex = Math.min(PdbUtil.readShort(header, 8), myHeader.Offsets.length - 1);
+		myRecordSize = PdbUtil.readShort(header, 10);
+		if (myRecordSize == 0) {
 			throw new IOException("The records are too short");
 		}
-		myBuffer = new byte[maxRecordSize];
 		myRecordIndex = 0;
+		myImageStartIndex = PdbUtil.readInt(header, 108);
 
-		PdbUtil.skip(myBase, 96);
-		myImageStartIndex = (int)PdbUtil.readInt(myBase);
+		final int mobiHeaderLength = PdbUtil.readInt(header, 20);
+		if (mobiHeaderLength >= 0xE4 && header.length >= 0xF4 && PdbUtil.readInt(header, 36) >= 5) {
+			myExtraDataFlags = PdbUtil.readShort(header, 0xF2);
+		}
+		// MOBI header fields, offsets from the start of record 0;
+		// EXTH flags follow at 128, see MobipocketPlugin
+		if (myCompressionType == CompressionType.HUFFDIC && header.length >= 120) {
+			myHuffRecordIndex = PdbUtil.readInt(header, 112);
+			myHuffRecordCount = PdbUtil.readInt(header, 116);
+		}
 	}
 
 	int getImageOffset(int index) {
@@ -55,10 +64,7 @@ class MobipocketStream extends PalmDocLikeStream {
 
 	int getImageLength(int index) {
 		try {
-			final int i = index + myImageStartIndex;
-			final int start = myHeader.Offsets[i];
-			final int end = (i == myHeader.Offsets.length) ? myFileSize : myHeader.Offsets[i + 1];
-			return end - start;
+			return myRecords.recordLength(index + myImageStartIndex);
 		} catch (ArrayIndexOutOfBoundsException e) {
 			return -1;
 		}
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2009-2011 Geometer Plus <contact@geometerplus.com>
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -20,6 +20,8 @@
 package org.geometerplus.fbreader.formats.pdb;
 
 import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.*;
 
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 
@@ -32,12 +34,39 @@ abstract class PalmDocLikeStream extends PdbStream {
 		int HUFFDIC = 17480;
 	}
 	protected int myCompressionType;
+	protected int myRecordSize;
+	// flags of trailing entries appended to text records, see trailingEntriesSize()
+	protected int myExtraDataFlags;
+	// HUFF record and CDIC records following it
+	protected int myHuffRecordIndex;
+	protected int myHuffRecordCount;
+	private HuffdicDecompressor myHuffdicDecompressor;
 
-	private final long myFileSize;
+	protected final PdbRecords myRecords;
+
+	private static final int MAX_DECOMPRESSING_THREADS = 4;
+	private ExecutorService myExecutor;
+	private final LinkedList<Future<DecodedRecord>> myDecodedRecords =
+		new LinkedList<Future<DecodedRecord>>();
+	private int myNextRecordToDecode;
+	private int myLookAhead;
+	// record buffers are reused, so reading a book allocates
+	// only as many of them as there are records in flight
+	private final LinkedList<byte[]> myFreeBuffers = new LinkedList<byte[]>();
 
 	PalmDocLikeStream(ZLFile file) throws IOException {
 		super(file);
-		myFileSize = file.size();
+		myRecords = new PdbRecords(file, myHeader);
+	}
+
+	private static final class DecodedRecord {
+		final byte[] Data;
+		final int Length;
+
+		DecodedRecord(byte[] data, int length) {
+			Data = data;
+			Length = length;
+		}
 	}
 
 	protected final boolean fillBuffer() {
@@ -45,41 +74,191 @@ abstract class PalmDocLikeStream extends PdbStream {
 			if (myRecordIndex + 1 > myMaxRecordIndex) {
 				return false;
 			}
+			final DecodedRecord record = nextRecord();
+			if (record == null) {
+				return false;
+			}
 			++myRecordIndex;
-			final int currentOffset = myHeader.Offsets[myRecordIndex];
+			releaseBuffer(myBuffer);
+			myBuffer = record.Data;
+			myBufferLength = (short)record.Length;
+			myBufferOffset = 0;
+		}
+		
+		return true;
+	}
 
+	// records are decompressed in parallel, a few records ahead of the reader;
+	// single-core devices and uncompressed books decode records on this thread
+	private DecodedRecord nextRecord() {
+		if (myNextRecordToDecode == 0) {
+			myNextRecordToDecode = myRecordIndex + 1;
+			if (myCompressionType == CompressionType.HUFFDIC) {
+				try {
+					myHuffdicDecompressor = createHuffdicDecompressor();
+				} catch (IOException e) {
+					return null;
+				}
+			}
+			final int threadsNumber =
+				Math.min(Runtime.getRuntime().availableProcessors(), MAX_DECOMPRESSING_THREADS);
+			if (threadsNumber > 1 &&
+				myCompressionType != CompressionType.NONE &&
+				myMaxRecordIndex > myNextRecordToDecode) {
+				myExecutor = Executors.newFixedThreadPool(threadsNumber);
+				myLookAhead = 2 * threadsNumber;
+			}
+		}
+
+		if (myExecutor == null) {
 			try {
-				myBase.skip(currentOffset - myBase.offset());
-				final int nextOffset =
-					(myRecordIndex + 1 < myHeader.Offsets.length) ?
-						myHeader.Offsets[myRecordIndex + 1] :
-						(int)myFileSize;
-				if (nextOffset < currentOffset) {
-					return false;
+				return decodeRecord(myRecordIndex + 1);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		while (myDecodedRecords.size() < myLookAhead &&
+			   myNextRecordToDecode <= myMaxRecordIndex) {
+			myDecodedRecords.add(myExecutor.submit(decodingTask(myNextRecordToDecode++)));
+		}
+		if (myNextRecordToDecode > myMaxRecordIndex) {
+			// all records are submitted; let the threads finish
+			myExecutor.shutdown();
+		}
+		try {
+			return myDecodedRecords.removeFirst().get();
+		} catch (InterruptedException e) {
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	private HuffdicDecompressor createHuffdicDecompressor() throws IOException {
+		if (myHuffRecordCount <= 0 || myHuffRecordIndex <= 0 ||
+			myHuffRecordIndex + myHuffRecordCount > myRecords.size()) {
+			return null;
+		}
+		final byte[][] records = new byte[myHuffRecordCount][];
+		for (int i = 0; i < myHuffRecordCount; ++i) {
+			records[i] = myRecords.read(myHuffRecordIndex + i);
+		}
+		return new HuffdicDecompressor(records);
+	}
+
+	private Callable<DecodedRecord> decodingTask(final int index) {
+		return new Callable<DecodedRecord>() {
+			public DecodedRecord call() throws IOException {
+				return decodeRecord(index);
+			}
+		};
+	}
+
+	private byte[] obtainBuffer() {
+		synchronized (myFreeBuffers) {
+			while (!myFreeBuffers.isEmpty()) {
+				final byte[] buffer = myFreeBuffers.removeFirst();
+				if (buffer.length >= myRecordSize) {
+					return buffer;
 				}
-				final short recordSize = (short)Math.min(nextOffset - currentOffset, myBuffer.length);
+			}
+		}
+		return new byte[myRecordSize];
+	}
 
-				switch (myCompressionType) {
-					case CompressionType.NONE:
-						myBase.read(myBuffer, 0, recordSize);
-						myBufferLength = recordSize;
-						break;
-					case CompressionType.DOC:
-						myBufferLength = (short)DocDecompressor.decompress(myBase, myBuffer, recordSize);
+	private void releaseBuffer(byte[] buffer) {
+		if (buffer != null) {
+			synchronized (myFreeBuffers) {
+				myFreeBuffers.add(buffer);
+			}
+		}
+	}
+
+	// returns null for unsupported compression type
+	private DecodedRecord decodeRecord(int index) throws IOException {
+		final byte[] data = myRecords.read(index, obtainBuffer());
+		final int dataLength = myRecords.recordLength(index);
+		final int size = dataLength - trailingEntriesSize(data, dataLength);
+		if (size < 0) {
+			releaseBuffer(data);
+			throw new IOException("Invalid record: " + index);
+		}
+
+		switch (myCompressionType) {
+			case CompressionType.NONE:
+				return new DecodedRecord(data, Math.min(size, Short.MAX_VALUE));
+			case CompressionType.DOC:
+			{
+				final byte[] target = obtainBuffer();
+				final int length = DocDecompressor.decompress(data, size, target);
+				releaseBuffer(data);
+				return new DecodedRecord(target, length);
+			}
+			case CompressionType.HUFFDIC:
+			{
+				if (myHuffdicDecompressor == null) {
+					releaseBuffer(data);
+					return null;
+				}
+				byte[] target = obtainBuffer();
+				int length;
+				while ((length = myHuffdicDecompressor.decompress(data, size, target)) == -1) {
+					if (target.length >= Short.MAX_VALUE / 2) {
+						releaseBuffer(data);
+						throw new IOException("Record is too long: " + index);
+					}
+					target = new byte[2 * target.length];
+				}
+				releaseBuffer(data);
+				return new DecodedRecord(target, length);
+			}
+			default:
+				// Unsupported compression type
+				releaseBuffer(data);
+				return null;
+		}
+	}
+
+	/**
+	 * Size of the entries appended to a text record. Bit 0 of the flags
+	 * means multibyte character overlap, each other bit is an entry
+	 * with its size written backward-encoded at the very end of the record.
+	 */
+	private int trailingEntriesSize(byte[] data, int length) {
+		int size = 0;
+		for (int flags = myExtraDataFlags >> 1; flags != 0; flags >>= 1) {
+			if ((flags & 1) != 0) {
+				int value = 0;
+				for (int bits = 0, position = length - size; bits < 28 && position > 0; bits += 7) {
+					final int b = data[--position];
+					value |= (b & 0x7F) << bits;
+					if ((b & 0x80) != 0) {
 						break;
-					//case CompressionType.HUFFDIC:
-					//	myBufferLength = (short)HuffdicDecompressor.decompress(myBase, myBuffer, recordSize);
-					//	break;
-					default:
-						// Unsupported compression type
-						return false;
+					}
+				}
+				size += value;
+				if (size > length) {
+					return length;
 				}
-			} catch (IOException e) {
-				return false;
 			}
-			myBufferOffset = 0;
 		}
-		
-		return true;
+		if ((myExtraDataFlags & 1) != 0 && size < length) {
+			size += (data[length - size - 1] & 0x3) + 1;
+		}
+		return size;
+	}
+
+	public void close() throws IOException {
+		if (myExecutor != null) {
+			myExecutor.shutdownNow();
+			myExecutor = null;
+		}
+		myDecodedRecords.clear();
+		synchronized (myFreeBuffers) {
+			myFreeBuffers.clear();
+		}
+		myRecords.close();
+		super.close();
 	}
 }
@@ -51,9 +51,12 @@ public class PdbHeader {
 		}
 		Offsets = new int[numRecords];
 
+		final byte[] entries = new byte[8 * numRecords];
+		if (!PdbUtil.readFully(stream, entries, entries.length)) {
+			throw new IOException("PdbHeader: cannot read record list");
+		}
 		for (int i = 0; i < numRecords; ++i) {
-			Offsets[i] = (int)PdbUtil.readInt(stream);
-			PdbUtil.skip(stream, 4);
+			Offsets[i] = PdbUtil.readInt(entries, 8 * i);
 		}
 	}
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.formats.pdb;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.filesystem.ZLPhysicalFile;
+import org.geometerplus.zlibrary.core.util.ZLInputStreamWithOffset;
+
+/**
+ * Reads records of a pdb file by index. Physical files are read
+ * with seek; for archive entries the stream is reopened when
+ * a record before the current position is requested.
+ */
+final class PdbRecords {
+	private final ZLFile myFile;
+	private final int[] myOffsets;
+	private final int myFileSize;
+
+	private RandomAccessFile myRandomAccessFile;
+	private ZLInputStreamWithOffset myStream;
+
+	PdbRecords(ZLFile file, PdbHeader header) {
+		myFile = file;
+		myOffsets = header.Offsets;
+		myFileSize = (int)file.size();
+	}
+
+	int size() {
+		return myOffsets.length;
+	}
+
+	int recordLength(int index) {
+		final int start = myOffsets[index];
+		final int end = index + 1 < myOffsets.length ? myOffsets[index + 1] : myFileSize;
+		return end - start;
+	}
+
+	byte[] read(int index) throws IOException {
+		return read(index, null);
+	}
+
+	/**
+	 * Reads record into the beginning of buffer, the record length is recordLength(index).
+	 * @return buffer, or a new array if buffer is null or too short
+	 */
+	synchronized byte[] read(int index, byte[] buffer) throws IOException {
+		final int length = recordLength(index);
+		if (length < 0) {
+			throw new IOException("Invalid record offset: " + index);
+		}
+		final byte[] data = buffer != null && buffer.length >= length ? buffer : new byte[length];
+		final int offset = myOffsets[index];
+		if (myFile instanceof ZLPhysicalFile) {
+			if (myRandomAccessFile == null) {
+				myRandomAccessFile = new RandomAccessFile(myFile.getPath(), "r");
+			}
+			myRandomAccessFile.seek(offset);
+			myRandomAccessFile.readFully(data, 0, length);
+			return data;
+		}
+
+		if (myStream != null && myStream.offset() > offset) {
+			myStream.close();
+			myStream = null;
+		}
+		if (myStream == null) {
+			myStream = new ZLInputStreamWithOffset(myFile.getInputStream());
+		}
+		PdbUtil.skip(myStream, offset - myStream.offset());
+		if (!PdbUtil.readFully(myStream, data, length)) {
+			throw new IOException("Unexpected end of stream");
+		}
+		return data;
+	}
+
+	synchronized void close() throws IOException {
+		if (myRandomAccessFile != null) {
+			myRandomAccessFile.close();
+			myRandomAccessFile = null;
+		}
+		if (myStream != null) {
+			myStream.close();
+			myStream = null;
+		}
+	}
+}
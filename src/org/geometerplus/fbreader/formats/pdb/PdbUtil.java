@@ -23,7 +23,13 @@ import java.io.*;
 
 public abstract class PdbUtil {
 	public static void skip(InputStream stream, int numBytes) throws IOException {
-		numBytes -= stream.skip(numBytes);
+		while (numBytes > 0) {
+			final long skipped = stream.skip(numBytes);
+			if (skipped <= 0) {
+				break;
+			}
+			numBytes -= skipped;
+		}
 		for (; numBytes > 0; --numBytes) {
 			if (stream.read() == -1) {
 				throw new IOException("Unexpected end of stream");
@@ -31,18 +37,45 @@ public abstract class PdbUtil {
 		}
 	}
 
+	/**
+	 * Reads exactly length bytes into the beginning of buffer.
+	 * @return false if the stream ends earlier
+	 */
+	public static boolean readFully(InputStream stream, byte[] buffer, int length) throws IOException {
+		for (int offset = 0; offset < length; ) {
+			final int count = stream.read(buffer, offset, length - offset);
+			if (count <= 0) {
+				return false;
+			}
+			offset += count;
+		}
+		return true;
+	}
+
 	public static int readShort(InputStream stream) throws IOException {
 		final byte[] tmp = new byte[2];
-		stream.read(tmp, 0, 2);
-		return (tmp[1] & 0xFF) + ((tmp[0] & 0xFF) << 8);
+		if (!readFully(stream, tmp, 2)) {
+			throw new IOException("Unexpected end of stream");
+		}
+		return readShort(tmp, 0);
 	}
 
 	public static long readInt(InputStream stream) throws IOException {
 		final byte[] tmp = new byte[4];
-		stream.read(tmp, 0, 4);
-		return (((long)(tmp[0] & 0xFF)) << 24) +
-			  + ((tmp[1] & 0xFF) << 16) +
-			  + ((tmp[2] & 0xFF) << 8) +
-			  + (tmp[3] & 0xFF);
+		if (!readFully(stream, tmp, 4)) {
+			throw new IOException("Unexpected end of stream");
+		}
+		return readInt(tmp, 0) & 0xFFFFFFFFL;
+	}
+
+	public static int readShort(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 8) + (data[offset + 1] & 0xFF);
+	}
+
+	public static int readInt(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 24) +
+			((data[offset + 1] & 0xFF) << 16) +
+			((data[offset + 2] & 0xFF) << 8) +
+			(data[offset + 3] & 0xFF);
 	}
 }
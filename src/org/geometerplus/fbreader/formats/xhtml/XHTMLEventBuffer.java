@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.formats.xhtml;
+
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+import org.geometerplus.zlibrary.core.xml.*;
+
+/**
+ * Records parser events of an XHTML file, so the file could be parsed
+ * on a worker thread and then replayed into XHTMLReader on the thread
+ * that builds the model.
+ */
+public final class XHTMLEventBuffer extends ZLXMLReaderAdapter {
+	private static final byte START_ELEMENT = 0;
+	private static final byte END_ELEMENT = 1;
+	private static final byte CHARACTER_DATA = 2;
+	private static final byte CHARACTER_DATA_FINAL = 3;
+	private static final byte NAMESPACE_MAP = 4;
+
+	private byte[] myKinds = new byte[1024];
+	// tag name, attributes array or namespace map, depending on event kind
+	private Object[] myObjects = new Object[1024];
+	// for character data: offset in myChars and length
+	private int[] myOffsets = new int[1024];
+	private int[] myLengths = new int[1024];
+	private int myEventsNumber;
+
+	private char[] myChars = new char[8192];
+	private int myCharsLength;
+
+	private int addEvent(byte kind, Object object) {
+		final int index = myEventsNumber++;
+		if (index == myKinds.length) {
+			final int newLength = index << 1;
+			myKinds = ZLArrayUtils.createCopy(myKinds, index, newLength);
+			final Object[] objects = new Object[newLength];
+			System.arraycopy(myObjects, 0, objects, 0, index);
+			myObjects = objects;
+			myOffsets = ZLArrayUtils.createCopy(myOffsets, index, newLength);
+			myLengths = ZLArrayUtils.createCopy(myLengths, index, newLength);
+		}
+		myKinds[index] = kind;
+		myObjects[index] = object;
+		return index;
+	}
+
+	private void addCharacterData(byte kind, char[] ch, int start, int length) {
+		final int index = addEvent(kind, null);
+		if (myCharsLength + length > myChars.length) {
+			myChars = ZLArrayUtils.createCopy(myChars, myCharsLength, Math.max(myChars.length << 1, myCharsLength + length));
+		}
+		System.arraycopy(ch, start, myChars, myCharsLength, length);
+		myOffsets[index] = myCharsLength;
+		myLengths[index] = length;
+		myCharsLength += length;
+	}
+
+	@Override
+	public boolean startElementHandler(String tag, ZLStringMap attributes) {
+		final int size = attributes.getSize();
+		String[] pairs = null;
+		if (size > 0) {
+			pairs = new String[2 * size];
+			for (int i = 0; i < size; ++i) {
+				final String key = attributes.getKey(i);
+				pairs[2 * i] = key;
+				pairs[2 * i + 1] = attributes.getValue(key);
+			}
+		}
+		addEvent(START_ELEMENT, new Object[] { tag, pairs });
+		return false;
+	}
+
+	@Override
+	public boolean endElementHandler(String tag) {
+		addEvent(END_ELEMENT, tag);
+		return false;
+	}
+
+	@Override
+	public void characterDataHandler(char[] ch, int start, int length) {
+		addCharacterData(CHARACTER_DATA, ch, start, length);
+	}
+
+	@Override
+	public void characterDataHandlerFinal(char[] ch, int start, int length) {
+		addCharacterData(CHARACTER_DATA_FINAL, ch, start, length);
+	}
+
+	@Override
+	public void namespaceMapChangedHandler(Map<String,String> namespaceMap) {
+		addEvent(NAMESPACE_MAP, new HashMap<String,String>(namespaceMap));
+	}
+
+	/**
+	 * Passes recorded events to the reader in the order they were received.
+	 */
+	@SuppressWarnings("unchecked")
+	void replay(ZLXMLReader reader) {
+		final ZLStringMap attributes = new ZLStringMap();
+		final char[] chars = myChars;
+		reader.startDocumentHandler();
+		for (int i = 0; i < myEventsNumber; ++i) {
+			switch (myKinds[i]) {
+				case START_ELEMENT:
+				{
+					final Object[] data = (Object[])myObjects[i];
+					final String[] pairs = (String[])data[1];
+					if (pairs != null) {
+						for (int j = 0; j < pairs.length; j += 2) {
+							attributes.put(pairs[j], pairs[j + 1]);
+						}
+					}
+					reader.startElementHandler((String)data[0], attributes);
+					attributes.clear();
+					break;
+				}
+				case END_ELEMENT:
+					reader.endElementHandler((String)myObjects[i]);
+					break;
+				case CHARACTER_DATA:
+					reader.characterDataHandler(chars, myOffsets[i], myLengths[i]);
+					break;
+				case CHARACTER_DATA_FINAL:
+					reader.characterDataHandlerFinal(chars, myOffsets[i], myLengths[i]);
+					break;
+				case NAMESPACE_MAP:
+					reader.namespaceMapChangedHandler((Map<String,String>)myObjects[i]);
+					break;
+			}
+		}
+		reader.endDocumentHandler();
+	}
+
+	@Override
+	public List<String> externalDTDs() {
+		return XHTMLReader.xhtmlDTDs();
+	}
+
+	@Override
+	public boolean dontCacheAttributeValues() {
+		return true;
+	}
+
+	@Override
+	public boolean processNamespaces() {
+		return true;
+	}
+}
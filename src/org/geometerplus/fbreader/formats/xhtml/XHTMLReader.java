@@ -145,7 +145,7 @@ public class XHTMLReader extends ZLXMLReaderAdapter {
 		return num.toString();
 	}
 
-	public boolean readFile(ZLFile file, String referencePrefix) {
+	private void startFile(ZLFile file, String referencePrefix) {
 		fillTagTable();
 
 		myReferencePrefix = referencePrefix;
@@ -155,10 +155,21 @@ public class XHTMLReader extends ZLXMLReaderAdapter {
 
 		myPreformatted = false;
 		myInsideBody = false;
+	}
 
+	public boolean readFile(ZLFile file, String referencePrefix) {
+		startFile(file, referencePrefix);
 		return read(file);
 	}
 
+	/**
+	 * Same as readFile(), but takes events recorded by a parser running on another thread.
+	 */
+	public void readFile(ZLFile file, String referencePrefix, XHTMLEventBuffer events) {
+		startFile(file, referencePrefix);
+		events.replay(this);
+	}
+
 	@Override
 	public boolean startElementHandler(String tag, ZLStringMap attributes) {
 		String id = attributes.getValue("id");
@@ -223,7 +234,7 @@ cycle:
 
 	private static ArrayList<String> ourExternalDTDs = new ArrayList<String>();
 
-	public static List<String> xhtmlDTDs() {
+	public static synchronized List<String> xhtmlDTDs() {
 		if (ourExternalDTDs.isEmpty()) {
 			ourExternalDTDs.add("formats/xhtml/xhtml-lat1.ent");
 			ourExternalDTDs.add("formats/xhtml/xhtml-special.ent");
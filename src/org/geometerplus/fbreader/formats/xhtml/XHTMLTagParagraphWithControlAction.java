@@ -36,7 +36,7 @@ class XHTMLTagParagraphWithControlAction extends XHTMLTagAction {
 			case FBTextKind.TITLE:
 			case FBTextKind.H1:
 			case FBTextKind.H2:
-				if (modelReader.Model.BookTextModel.getParagraphsNumber() > 1) {
+				if (modelReader.getMainTextParagraphsNumber() > 1) {
 					modelReader.insertEndOfSectionParagraph();
 				}
 				modelReader.enterTitle();
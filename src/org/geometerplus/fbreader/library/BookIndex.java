@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.fbreader.library;
+
+import java.util.*;
+
+/**
+ * Word index over book titles, series names, authors, tags and file names.
+ * A query matches a book if every query word is a prefix of some word
+ * of the book's fields (case-insensitive).
+ */
+final class BookIndex {
+	private final TreeMap<String,HashSet<Book>> myBooksByWord = new TreeMap<String,HashSet<Book>>();
+	private final HashMap<Book,String[]> myWordsByBook = new HashMap<Book,String[]>();
+
+	// splits lower-cased text into runs of letters and digits
+	static void addWords(String text, Collection<String> words) {
+		if (text == null) {
+			return;
+		}
+		text = text.toLowerCase();
+		final int length = text.length();
+		int start = -1;
+		for (int i = 0; i <= length; ++i) {
+			final boolean isWordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+			if (isWordChar) {
+				if (start == -1) {
+					start = i;
+				}
+			} else if (start != -1) {
+				words.add(text.substring(start, i));
+				start = -1;
+			}
+		}
+	}
+
+	// returns empty array if pattern contains no letters or digits
+	static String[] queryWords(String pattern) {
+		final TreeSet<String> wordSet = new TreeSet<String>();
+		addWords(pattern, wordSet);
+		// a word which is a prefix of another query word adds no restriction;
+		// such a word directly precedes (one of) its extensions in sorted order
+		final ArrayList<String> words = new ArrayList<String>(wordSet);
+		final ArrayList<String> significant = new ArrayList<String>(words.size());
+		String previous = null;
+		for (int i = words.size() - 1; i >= 0; --i) {
+			final String w = words.get(i);
+			if (previous == null || !previous.startsWith(w)) {
+				significant.add(w);
+			}
+			previous = w;
+		}
+		return significant.toArray(new String[significant.size()]);
+	}
+
+	private static String[] bookWords(Book book) {
+		final HashSet<String> words = new HashSet<String>();
+		addWords(book.getTitle(), words);
+		final SeriesInfo seriesInfo = book.getSeriesInfo();
+		if (seriesInfo != null) {
+			addWords(seriesInfo.Name, words);
+		}
+		for (Author author : book.authors()) {
+			addWords(author.DisplayName, words);
+		}
+		for (Tag tag : book.tags()) {
+			addWords(tag.Name, words);
+		}
+		addWords(book.File.getLongName(), words);
+		return words.toArray(new String[words.size()]);
+	}
+
+	synchronized void add(Book book) {
+		remove(book);
+		final String[] words = bookWords(book);
+		myWordsByBook.put(book, words);
+		for (String w : words) {
+			HashSet<Book> books = myBooksByWord.get(w);
+			if (books == null) {
+				books = new HashSet<Book>();
+				myBooksByWord.put(w, books);
+			}
+			books.add(book);
+		}
+	}
+
+	synchronized void remove(Book book) {
+		final String[] words = myWordsByBook.remove(book);
+		if (words == null) {
+			return;
+		}
+		for (String w : words) {
+			final HashSet<Book> books = myBooksByWord.get(w);
+			if (books != null) {
+				books.remove(book);
+				if (books.isEmpty()) {
+					myBooksByWord.remove(w);
+				}
+			}
+		}
+	}
+
+	synchronized boolean matches(Book book, String[] queryWords) {
+		final String[] words = myWordsByBook.get(book);
+		if (words == null) {
+			return false;
+		}
+		for (String q : queryWords) {
+			boolean found = false;
+			for (String w : words) {
+				if (w.startsWith(q)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	synchronized List<Book> find(String[] queryWords) {
+		if (queryWords.length == 0) {
+			return Collections.emptyList();
+		}
+
+		// intersection starts from the query word with the fewest matching index words
+		final ArrayList<SortedMap<String,HashSet<Book>>> ranges =
+			new ArrayList<SortedMap<String,HashSet<Book>>>(queryWords.length);
+		for (String q : queryWords) {
+			final SortedMap<String,HashSet<Book>> range = myBooksByWord.subMap(q, q + Character.MAX_VALUE);
+			if (range.isEmpty()) {
+				return Collections.emptyList();
+			}
+			ranges.add(range);
+		}
+		int smallest = 0;
+		for (int i = 1; i < ranges.size(); ++i) {
+			if (ranges.get(i).size() < ranges.get(smallest).size()) {
+				smallest = i;
+			}
+		}
+
+		final LinkedHashSet<Book> result = new LinkedHashSet<Book>();
+		for (HashSet<Book> books : ranges.get(smallest).values()) {
+			result.addAll(books);
+		}
+		if (queryWords.length > 1) {
+			for (Iterator<Book> it = result.iterator(); it.hasNext(); ) {
+				if (!matches(it.next(), queryWords)) {
+					it.remove();
+				}
+			}
+		}
+		return new ArrayList<Book>(result);
+	}
+}
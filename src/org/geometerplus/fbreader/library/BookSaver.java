@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.fbreader.library;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Single writer thread used by library build: books (and file infos
+ * they refer to) are saved in fixed-size batches, one transaction
+ * for the books of a batch, while the scanner continues reading other files.
+ */
+final class BookSaver {
+	private static final int BATCH_SIZE = 64;
+	private static final int MAX_QUEUED_BATCHES = 4;
+	private static final List<Book> END_OF_QUEUE = new ArrayList<Book>(0);
+
+	private final BooksDatabase myDatabase;
+	private final FileInfoSet myFileInfos;
+	private final BlockingQueue<List<Book>> myQueue =
+		new ArrayBlockingQueue<List<Book>>(MAX_QUEUED_BATCHES);
+	private final Thread myThread;
+	private ArrayList<Book> myBatch = new ArrayList<Book>(BATCH_SIZE);
+
+	BookSaver(BooksDatabase database, FileInfoSet fileInfos) {
+		myDatabase = database;
+		myFileInfos = fileInfos;
+		myThread = new Thread("Library.save") {
+			public void run() {
+				saveBatches();
+			}
+		};
+		myThread.setPriority((Thread.MIN_PRIORITY + Thread.NORM_PRIORITY) / 2);
+		myThread.start();
+	}
+
+	// add() and close() must be called from the same (scanning) thread
+	void add(Book book) {
+		myBatch.add(book);
+		if (myBatch.size() == BATCH_SIZE) {
+			enqueue(myBatch);
+			myBatch = new ArrayList<Book>(BATCH_SIZE);
+		}
+	}
+
+	// saves the rest of books and file infos, and waits until everything is written
+	void close() {
+		if (!myBatch.isEmpty()) {
+			enqueue(myBatch);
+			myBatch = new ArrayList<Book>(0);
+		}
+		enqueue(END_OF_QUEUE);
+		while (myThread.isAlive()) {
+			try {
+				myThread.join();
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	private void enqueue(List<Book> batch) {
+		// if the writer has died, there is nobody to wait for
+		while (myThread.isAlive()) {
+			try {
+				if (myQueue.offer(batch, 1, TimeUnit.SECONDS)) {
+					return;
+				}
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	private void saveBatches() {
+		while (true) {
+			final List<Book> batch;
+			try {
+				batch = myQueue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (batch == END_OF_QUEUE) {
+				break;
+			}
+			save(batch);
+		}
+		// file infos of files that contain no books
+		myFileInfos.save();
+	}
+
+	private void save(final List<Book> batch) {
+		// books refer to their files by id, so file infos go first; they are saved
+		// in a transaction of their own, not to wait for the file info set
+		// monitor while a transaction is open
+		myFileInfos.save();
+		myDatabase.executeAsATransaction(new Runnable() {
+			public void run() {
+				for (Book book : batch) {
+					book.save();
+				}
+				myDatabase.setExistingFlag(batch, true);
+			}
+		});
+	}
+}
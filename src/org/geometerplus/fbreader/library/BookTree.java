@@ -78,7 +78,7 @@ public class BookTree extends LibraryTree {
 
 	@Override
 	protected ZLImage createCover() {
-		return Library.getCover(Book.File);
+		return Library.getCover(Book.File, CoverThumbnails.LIST_WIDTH, CoverThumbnails.LIST_HEIGHT);
 	}
 
 	@Override
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.library;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.filesystem.ZLPhysicalFile;
+import org.geometerplus.zlibrary.core.image.*;
+import org.geometerplus.zlibrary.core.util.MimeType;
+
+import org.geometerplus.fbreader.formats.FormatPlugin;
+import org.geometerplus.fbreader.formats.PluginCollection;
+
+/**
+ * Book covers scaled down to a few fixed sizes. A thumbnail file name is
+ * made of the book file path hash, size and modification time, so a changed
+ * book gets new thumbnails; an empty file marks a book without cover.
+ */
+final class CoverThumbnails {
+	static final int LIST_WIDTH = 160;
+	static final int LIST_HEIGHT = 240;
+
+	private static final int[] WIDTHS = { LIST_WIDTH, 320 };
+	private static final int[] HEIGHTS = { LIST_HEIGHT, 480 };
+	private static final String NO_COVER_SUFFIX = ".none";
+
+	private final File myDirectory;
+
+	CoverThumbnails(File directory) {
+		myDirectory = directory;
+	}
+
+	static String key(ZLFile file) {
+		final ZLPhysicalFile physicalFile = file.getPhysicalFile();
+		if (physicalFile == null) {
+			return null;
+		}
+		return Integer.toHexString(file.getPath().hashCode())
+			+ "-" + file.size() + "-" + physicalFile.lastModified();
+	}
+
+	private File thumbnailFile(String key, int sizeIndex) {
+		return new File(myDirectory, key + "." + WIDTHS[sizeIndex] + "x" + HEIGHTS[sizeIndex]);
+	}
+
+	private File noCoverFile(String key) {
+		return new File(myDirectory, key + NO_COVER_SUFFIX);
+	}
+
+	/**
+	 * Returns the smallest existing thumbnail that is not smaller than
+	 * maxWidth x maxHeight, or null if there is no such thumbnail.
+	 */
+	ZLImage get(ZLFile file, int maxWidth, int maxHeight) {
+		final String key = key(file);
+		if (key == null) {
+			return null;
+		}
+		for (int i = 0; i < WIDTHS.length; ++i) {
+			if (WIDTHS[i] >= maxWidth && HEIGHTS[i] >= maxHeight) {
+				final File thumbnail = thumbnailFile(key, i);
+				if (thumbnail.exists()) {
+					return new ZLFileImage(MimeType.IMAGE_AUTO, ZLFile.createFileByPath(thumbnail.getPath()));
+				}
+			}
+		}
+		return null;
+	}
+
+	// true if the book is known to have no cover
+	boolean hasNoCover(ZLFile file) {
+		final String key = key(file);
+		return key != null && noCoverFile(key).exists();
+	}
+
+	/**
+	 * Creates missing thumbnails for the book; returns false if this platform
+	 * has no image manager, so no covers can be decoded at all. A cover that
+	 * cannot be read or decoded is marked as missing.
+	 */
+	boolean create(ZLFile file) {
+		final String key = key(file);
+		if (key == null || noCoverFile(key).exists()) {
+			return true;
+		}
+		boolean isComplete = true;
+		for (int i = 0; i < WIDTHS.length; ++i) {
+			if (!thumbnailFile(key, i).exists()) {
+				isComplete = false;
+				break;
+			}
+		}
+		if (isComplete) {
+			return true;
+		}
+
+		final ZLImageManager manager = ZLImageManager.Instance();
+		if (manager == null) {
+			return false;
+		}
+		myDirectory.mkdirs();
+		final ZLImage cover = readCover(file);
+		if (cover == null) {
+			write(noCoverFile(key), new byte[0]);
+			return true;
+		}
+		for (int i = 0; i < WIDTHS.length; ++i) {
+			final File thumbnail = thumbnailFile(key, i);
+			if (thumbnail.exists()) {
+				continue;
+			}
+			final byte[] data = manager.createThumbnail(cover, WIDTHS[i], HEIGHTS[i]);
+			if (data == null) {
+				// corrupted or unsupported image, do not try it again
+				write(noCoverFile(key), new byte[0]);
+				return true;
+			}
+			write(thumbnail, data);
+		}
+		return true;
+	}
+
+	private static ZLImage readCover(ZLFile file) {
+		final FormatPlugin plugin = PluginCollection.Instance().getPlugin(file);
+		final ZLImage cover = plugin != null ? plugin.readCover(file) : null;
+		if (cover instanceof ZLImageProxy) {
+			return ((ZLImageProxy)cover).getRealImage();
+		} else if (cover instanceof ZLLoadableImage) {
+			((ZLLoadableImage)cover).synchronize();
+		}
+		return cover;
+	}
+
+	private static void write(File file, byte[] data) {
+		final File tmpFile = new File(file.getPath() + ".tmp");
+		try {
+			final OutputStream stream = new FileOutputStream(tmpFile);
+			try {
+				stream.write(data);
+			} finally {
+				stream.close();
+			}
+			tmpFile.renameTo(file);
+		} catch (IOException e) {
+			tmpFile.delete();
+		}
+	}
+
+	// removes thumbnails of books that are not in the library or have been changed
+	void removeAllExcept(Set<String> keys) {
+		final File[] files = myDirectory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File f : files) {
+			final String name = f.getName();
+			final int index = name.indexOf('.');
+			if (index == -1 || !keys.contains(name.substring(0, index)) || name.endsWith(".tmp")) {
+				f.delete();
+			}
+		}
+	}
+}
@@ -23,7 +23,8 @@ import org.geometerplus.zlibrary.core.tree.ZLTree;
 
 public final class FileInfo extends ZLTree<FileInfo> {
 	public final String Name;
-	public long Id;
+	// assigned by the thread that saves the info, read by others
+	public volatile long Id;
 	public long FileSize = -1;
 
 	FileInfo(String name, FileInfo parent) {
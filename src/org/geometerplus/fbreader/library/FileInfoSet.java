@@ -79,24 +79,47 @@ public final class FileInfoSet {
 		}
 	}
 
+	// serializes save() calls, so that infos taken by one call are written
+	// before another call returns; never taken while the set monitor is held
+	private final Object mySaveLock = new Object();
+
+	/**
+	 * Writes changed infos to the database. The set monitor is released before
+	 * the transaction begins, and is not requested while it is open: otherwise
+	 * a thread that holds the monitor and waits for the database would block
+	 * a thread that holds the database and waits for the monitor.
+	 */
 	public void save() {
-		final BooksDatabase database = BooksDatabase.Instance();
-		database.executeAsATransaction(new Runnable() {
-			public void run() {
+		synchronized (mySaveLock) {
+			final ArrayList<FileInfo> toRemove;
+			final ArrayList<FileInfo> toSave;
+			synchronized (this) {
+				if (myInfosToRemove.isEmpty() && myInfosToSave.isEmpty()) {
+					return;
+				}
+				toRemove = new ArrayList<FileInfo>(myInfosToRemove);
 				for (FileInfo info : myInfosToRemove) {
-					database.removeFileInfo(info.Id);
 					myInfosByPair.remove(new Pair(info.Name, info.Parent));
 				}
 				myInfosToRemove.clear();
-				for (FileInfo info : myInfosToSave) {
-					database.saveFileInfo(info);
-				}
+				toSave = new ArrayList<FileInfo>(myInfosToSave);
 				myInfosToSave.clear();
 			}
-		});
+			final BooksDatabase database = BooksDatabase.Instance();
+			database.executeAsATransaction(new Runnable() {
+				public void run() {
+					for (FileInfo info : toRemove) {
+						database.removeFileInfo(info.Id);
+					}
+					for (FileInfo info : toSave) {
+						database.saveFileInfo(info);
+					}
+				}
+			});
+		}
 	}
 
-	public boolean check(ZLPhysicalFile file, boolean processChildren) {
+	public synchronized boolean check(ZLPhysicalFile file, boolean processChildren) {
 		if (file == null) {
 			return true;
 		}
@@ -117,7 +140,7 @@ public final class FileInfoSet {
 		}
 	}
 
-	public List<ZLFile> archiveEntries(ZLFile file) {
+	public synchronized List<ZLFile> archiveEntries(ZLFile file) {
 		final FileInfo info = get(file);
 		if (!info.hasChildren()) {
 			return Collections.emptyList();
@@ -156,15 +179,26 @@ public final class FileInfoSet {
 	}
 
 	public long getId(ZLFile file) {
-		final FileInfo info = get(file);
-		if (info == null) {
-			return -1;
-		}
-		if (info.Id == -1) {
-			save();
+		final FileInfo info;
+		synchronized (this) {
+			info = get(file);
+			if (info == null) {
+				return -1;
+			}
+			if (info.Id != -1) {
+				return info.Id;
+			}
 		}
+		save();
 		return info.Id;
-	}	
+	}
+
+	// same as getId(), but does not save new infos (-1 is returned for them);
+	// the library scanner uses it to avoid a transaction per new file
+	synchronized long getSavedId(ZLFile file) {
+		final FileInfo info = get(file);
+		return (info != null) ? info.Id : -1;
+	}
 
 	private ZLFile getFile(FileInfo info) {
 		if (info == null) {
@@ -178,7 +212,7 @@ public final class FileInfoSet {
 		return file;
 	}
 
-	public ZLFile getFile(long id) {
+	public synchronized ZLFile getFile(long id) {
 		return getFile(myInfosById.get(id));
 	}
 
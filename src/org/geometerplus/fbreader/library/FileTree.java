@@ -98,7 +98,7 @@ public class FileTree extends LibraryTree {
 
 	@Override
 	public ZLImage createCover() {
-		return Library.getCover(myFile);
+		return Library.getCover(myFile, CoverThumbnails.LIST_WIDTH, CoverThumbnails.LIST_HEIGHT);
 	}
 
 	public ZLFile getFile() {
@@ -22,6 +22,7 @@ package org.geometerplus.fbreader.library;
 import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.geometerplus.zlibrary.core.filesystem.*;
 import org.geometerplus.zlibrary.core.image.ZLImage;
@@ -39,7 +40,9 @@ public final class Library {
 			BookRemoved,
 			StatusChanged,
 			Found,
-			NotFound
+			NotFound,
+			// library build is in progress; see getScannedFilesNumber()
+			Progress
 		}
 
 		void onLibraryChanged(Code code);
@@ -67,6 +70,7 @@ public final class Library {
 	}
 
 	private final List<Book> myBooks = new LinkedList<Book>();
+	private final BookIndex myIndex = new BookIndex();
 	private final RootTree myRootTree = new RootTree(this);
 	private boolean myDoGroupTitlesByFirstLetter;
 
@@ -76,6 +80,11 @@ public final class Library {
 	private final static int STATUS_SEARCHING = 2;
 	private volatile int myStatusMask = 0;
 
+	private static final int PROGRESS_EVENT_INTERVAL = 500; // milliseconds
+	private long myLastProgressEventTime;
+	private volatile int myFilesToScanNumber;
+	private volatile int myScannedFilesNumber;
+
 	private synchronized void setStatus(int status) {
 		myStatusMask = status;
 		fireModelChangedEvent(ChangeListener.Code.StatusChanged);
@@ -137,42 +146,146 @@ public final class Library {
 		return ZLResourceFile.createResourceFile("data/help/MiniHelp.en.fb2");
 	}
 
-	private void collectBooks(
+	// a file to look for books in, with everything the scanning thread
+	// needs to know about it (file infos are not accessed by scanning threads)
+	private static final class ScanEntry {
+		final ZLFile File;
+		final Book OrphanedBook;
+		final List<ScanEntry> Children = new LinkedList<ScanEntry>();
+
+		ScanEntry(ZLFile file, Book orphanedBook) {
+			File = file;
+			OrphanedBook = orphanedBook;
+		}
+	}
+
+	// returns null if the file is already in the library
+	private static ScanEntry scanEntry(
 		ZLFile file, FileInfoSet fileInfos,
-		Map<Long,Book> savedBooksByFileId, Map<Long,Book> orphanedBooksByFileId,
-		Set<Book> newBooks,
-		boolean doReadMetaInfo
+		Map<Long,Book> savedBooksByFileId, Map<Long,Book> orphanedBooksByFileId
 	) {
-		final long fileId = fileInfos.getId(file);
+		final long fileId = fileInfos.getSavedId(file);
 		if (savedBooksByFileId.get(fileId) != null) {
-			return;
+			return null;
+		}
+
+		final ScanEntry entry = new ScanEntry(file, orphanedBooksByFileId.get(fileId));
+		if (file.isArchive()) {
+			for (ZLFile child : fileInfos.archiveEntries(file)) {
+				final ScanEntry childEntry = scanEntry(
+					child, fileInfos, savedBooksByFileId, orphanedBooksByFileId
+				);
+				if (childEntry != null) {
+					entry.Children.add(childEntry);
+				}
+			}
 		}
+		return entry;
+	}
 
-		Book book = orphanedBooksByFileId.get(fileId);
+	private static void collectBooks(ScanEntry entry, boolean doReadMetaInfo, List<Book> books) {
+		Book book = entry.OrphanedBook;
 		if (book != null && (!doReadMetaInfo || book.readMetaInfo())) {
-			addBookToLibrary(book);
-			fireModelChangedEvent(ChangeListener.Code.BookAdded);
-			newBooks.add(book);
+			books.add(book);
 			return;
 		}
 
-		book = new Book(file);
+		book = new Book(entry.File);
 		if (book.readMetaInfo()) {
-			addBookToLibrary(book);
-			fireModelChangedEvent(ChangeListener.Code.BookAdded);
-			newBooks.add(book);
+			books.add(book);
 			return;
 		}
 
-		if (file.isArchive()) {
-			for (ZLFile entry : fileInfos.archiveEntries(file)) {
-				collectBooks(
-					entry, fileInfos,
-					savedBooksByFileId, orphanedBooksByFileId,
-					newBooks,
-					doReadMetaInfo
+		for (ScanEntry child : entry.Children) {
+			collectBooks(child, doReadMetaInfo, books);
+		}
+	}
+
+	private static final int MAX_SCANNING_THREADS = 4;
+
+	private static final class ScanTask implements Callable<ScanTask> {
+		final ZLPhysicalFile File;
+		private final ScanEntry myEntry;
+		private final boolean myDoReadMetaInfo;
+		final List<Book> Books = new LinkedList<Book>();
+
+		ScanTask(ZLPhysicalFile file, ScanEntry entry, boolean doReadMetaInfo) {
+			File = file;
+			myEntry = entry;
+			myDoReadMetaInfo = doReadMetaInfo;
+		}
+
+		public ScanTask call() {
+			collectBooks(myEntry, myDoReadMetaInfo, Books);
+			return this;
+		}
+	}
+
+	// returns null if scanning failed
+	private static ScanTask scannedTask(CompletionService<ScanTask> completionService) {
+		try {
+			return completionService.take().get();
+		} catch (InterruptedException e) {
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	private void onFileScanned(ScanTask task, BookSaver saver) {
+		if (task != null) {
+			for (Book book : task.Books) {
+				addBookToLibrary(book);
+				saver.add(book);
+			}
+			task.File.setCached(false);
+		}
+		++myScannedFilesNumber;
+		fireProgressEvent();
+	}
+
+	private void collectBooks(
+		List<ZLPhysicalFile> physicalFiles, FileInfoSet fileInfos,
+		Map<Long,Book> savedBooksByFileId, Map<Long,Book> orphanedBooksByFileId,
+		BookSaver saver
+	) {
+		myFilesToScanNumber = physicalFiles.size();
+		myScannedFilesNumber = 0;
+
+		// plugins are created lazily, so do it before scanning threads start
+		PluginCollection.Instance();
+
+		// metadata are read in parallel; file infos, library tree and
+		// database are accessed from this thread and the saver thread only
+		final int threadsNumber =
+			Math.min(Runtime.getRuntime().availableProcessors(), MAX_SCANNING_THREADS);
+		final ExecutorService executor = Executors.newFixedThreadPool(threadsNumber);
+		final CompletionService<ScanTask> completionService =
+			new ExecutorCompletionService<ScanTask>(executor);
+		final int maxPendingTasks = 2 * threadsNumber;
+		int pendingTasks = 0;
+		try {
+			for (ZLPhysicalFile file : physicalFiles) {
+				final boolean doReadMetaInfo = !fileInfos.check(file, true);
+				final ScanEntry entry = scanEntry(
+					file, fileInfos, savedBooksByFileId, orphanedBooksByFileId
 				);
+				if (entry == null) {
+					file.setCached(false);
+					onFileScanned(null, saver);
+					continue;
+				}
+				completionService.submit(new ScanTask(file, entry, doReadMetaInfo));
+				if (++pendingTasks == maxPendingTasks) {
+					onFileScanned(scannedTask(completionService), saver);
+					--pendingTasks;
+				}
+			}
+			for (; pendingTasks > 0; --pendingTasks) {
+				onFileScanned(scannedTask(completionService), saver);
 			}
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
@@ -211,6 +324,7 @@ public final class Library {
 
 	private synchronized void addBookToLibrary(Book book) {
 		myBooks.add(book);
+		myIndex.add(book);
 
 		List<Author> authors = book.authors();
 		if (authors.isEmpty()) {
@@ -259,11 +373,27 @@ public final class Library {
 
 		final SearchResultsTree found =
 			(SearchResultsTree)getFirstLevelTree(ROOT_FOUND);
-		if (found != null && book.matches(found.getPattern())) {
+		if (found != null && matches(book, found.getPattern())) {
 			found.getBookSubTree(book, true);
 		}
 	}
 
+	public int getFilesToScanNumber() {
+		return myFilesToScanNumber;
+	}
+
+	public int getScannedFilesNumber() {
+		return myScannedFilesNumber;
+	}
+
+	private void fireProgressEvent() {
+		final long now = System.currentTimeMillis();
+		if (now - myLastProgressEventTime >= PROGRESS_EVENT_INTERVAL) {
+			myLastProgressEventTime = now;
+			fireModelChangedEvent(ChangeListener.Code.Progress);
+		}
+	}
+
 	private void fireModelChangedEvent(ChangeListener.Code code) {
 		synchronized (myListeners) {
 			for (ChangeListener l : myListeners) {
@@ -296,6 +426,7 @@ public final class Library {
 		}
 
 		myBooks.remove(book);
+		myIndex.remove(book);
 		refreshInTree(ROOT_FAVORITES, book);
 		refreshInTree(ROOT_RECENT, book);
 		removeFromTree(ROOT_FOUND, book);
@@ -362,8 +493,8 @@ public final class Library {
 			myDoGroupTitlesByFirstLetter = savedBooksByFileId.values().size() > letterSet.size() * 5 / 4;
 		}
 
+		final BookSaver saver = new BookSaver(db, fileInfos);
 		final Set<Book> orphanedBooks = new HashSet<Book>();
-		int count = 0;
 		for (Book book : savedBooksByFileId.values()) {
 			synchronized (this) {
 				if (book.File.exists()) {
@@ -374,7 +505,7 @@ public final class Library {
 					}
 					if (!fileInfos.check(file, true)) {
 						if (book.readMetaInfo()) {
-							book.save();
+							saver.add(book);
 						} else {
 							doAdd = false;
 						}
@@ -382,9 +513,7 @@ public final class Library {
 					}
 					if (doAdd) {
 						addBookToLibrary(book);
-						if (++count % 16 == 0) {
-							fireModelChangedEvent(ChangeListener.Code.BookAdded);
-						}
+						fireProgressEvent();
 					}
 				} else {
 					myRootTree.removeBook(book, true);
@@ -398,21 +527,19 @@ public final class Library {
 
 		// Step 3: collect books from physical files; add new, update already added,
 		//         unmark orphaned as existing again, collect newly added
+		//         (new books are saved by the saver thread in batches)
 		final Map<Long,Book> orphanedBooksByFileId = db.loadBooks(fileInfos, false);
-		final Set<Book> newBooks = new HashSet<Book>();
-
-		final List<ZLPhysicalFile> physicalFilesList = collectPhysicalFiles();
-		for (ZLPhysicalFile file : physicalFilesList) {
-			collectBooks(
-				file, fileInfos,
-				savedBooksByFileId, orphanedBooksByFileId,
-				newBooks,
-				!fileInfos.check(file, true)
-			);
-			file.setCached(false);
-		}
-		
-		// Step 4: add help file
+		collectBooks(
+			collectPhysicalFiles(), fileInfos,
+			savedBooksByFileId, orphanedBooksByFileId,
+			saver
+		);
+
+		// Step 4: wait until all changes are saved into database;
+		//         the help book lookup below may save file infos itself
+		saver.close();
+
+		// Step 5: add help file
 		final ZLFile helpFile = getHelpFile();
 		Book helpBook = savedBooksByFileId.get(fileInfos.getId(helpFile));
 		if (helpBook == null) {
@@ -422,17 +549,36 @@ public final class Library {
 		addBookToLibrary(helpBook);
 		fireModelChangedEvent(ChangeListener.Code.BookAdded);
 
-		// Step 5: save changes into database
-		fileInfos.save();
+		// Step 6: create cover thumbnails for new and changed books
+		startThumbnailsCreation();
+	}
 
-		db.executeAsATransaction(new Runnable() {
+	private void startThumbnailsCreation() {
+		final List<ZLFile> files = new ArrayList<ZLFile>();
+		synchronized (this) {
+			for (Book book : myBooks) {
+				files.add(book.File);
+			}
+		}
+		final Thread creator = new Thread("Library.thumbnails") {
 			public void run() {
-				for (Book book : newBooks) {
-					book.save();
+				final CoverThumbnails thumbnails = thumbnails();
+				final HashSet<String> keys = new HashSet<String>();
+				for (ZLFile file : files) {
+					if (!thumbnails.create(file)) {
+						// no image manager, no thumbnails can be created
+						return;
+					}
+					final String key = CoverThumbnails.key(file);
+					if (key != null) {
+						keys.add(key);
+					}
 				}
+				thumbnails.removeAllExcept(keys);
 			}
-		});
-		db.setExistingFlag(newBooks, true);
+		};
+		creator.setPriority(Thread.MIN_PRIORITY);
+		creator.start();
 	}
 
 	private volatile boolean myBuildStarted = false;
@@ -500,26 +646,42 @@ public final class Library {
 			fireModelChangedEvent(ChangeListener.Code.Found);
 			return;
 		}
-		
-		FirstLevelTree newSearchResults = null;
-		for (Book book : myBooks) {
-			if (book.matches(pattern)) {
-				synchronized (this) {
-					if (newSearchResults == null) {
-						if (oldSearchResults != null) {
-							oldSearchResults.removeSelf();
-						}
-						newSearchResults = new SearchResultsTree(myRootTree, ROOT_FOUND, pattern);
-						fireModelChangedEvent(ChangeListener.Code.Found);
+
+		final String[] words = BookIndex.queryWords(pattern);
+		final List<Book> found;
+		if (words.length > 0) {
+			found = myIndex.find(words);
+		} else {
+			// nothing to look up in the index, e.g. the pattern is a punctuation mark
+			found = new LinkedList<Book>();
+			synchronized (this) {
+				for (Book book : myBooks) {
+					if (book.matches(pattern)) {
+						found.add(book);
 					}
-					newSearchResults.getBookSubTree(book, true);
-					fireModelChangedEvent(ChangeListener.Code.BookAdded);
 				}
 			}
 		}
-		if (newSearchResults == null) {
+		if (found.isEmpty()) {
 			fireModelChangedEvent(ChangeListener.Code.NotFound);
+			return;
+		}
+
+		synchronized (this) {
+			if (oldSearchResults != null) {
+				oldSearchResults.removeSelf();
+			}
+			final FirstLevelTree newSearchResults = new SearchResultsTree(myRootTree, ROOT_FOUND, pattern);
+			for (Book book : found) {
+				newSearchResults.getBookSubTree(book, true);
+			}
 		}
+		fireModelChangedEvent(ChangeListener.Code.Found);
+	}
+
+	private boolean matches(Book book, String pattern) {
+		final String[] words = BookIndex.queryWords(pattern);
+		return words.length > 0 ? myIndex.matches(book, words) : book.matches(pattern);
 	}
 
 	public static void addBookToRecentList(Book book) {
@@ -591,6 +753,7 @@ public final class Library {
 			return;
 		}
 		myBooks.remove(book);
+		myIndex.remove(book);
 		if (getFirstLevelTree(ROOT_RECENT).removeBook(book, false)) {
 			final BooksDatabase db = BooksDatabase.Instance();
 			final List<Long> ids = db.loadRecentBookIds();
@@ -610,6 +773,31 @@ public final class Library {
 		new HashMap<String,WeakReference<ZLImage>>();
 	private static final WeakReference<ZLImage> NULL_IMAGE = new WeakReference<ZLImage>(null);
 
+	private static CoverThumbnails ourThumbnails;
+
+	private static synchronized CoverThumbnails thumbnails() {
+		if (ourThumbnails == null) {
+			ourThumbnails = new CoverThumbnails(new File(Paths.cacheDirectory(), "thumbnails"));
+		}
+		return ourThumbnails;
+	}
+
+	/**
+	 * Returns a stored thumbnail if there is one not smaller than
+	 * maxWidth x maxHeight, the original cover otherwise.
+	 */
+	public static ZLImage getCover(ZLFile file, int maxWidth, int maxHeight) {
+		if (file == null) {
+			return null;
+		}
+		final CoverThumbnails thumbnails = thumbnails();
+		final ZLImage thumbnail = thumbnails.get(file, maxWidth, maxHeight);
+		if (thumbnail != null) {
+			return thumbnail;
+		}
+		return thumbnails.hasNoCover(file) ? null : getCover(file);
+	}
+
 	public static ZLImage getCover(ZLFile file) {
 		if (file == null) {
 			return null;
@@ -22,12 +22,11 @@ package org.geometerplus.fbreader.network;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.image.ZLFileImage;
 import org.geometerplus.zlibrary.core.image.ZLLoadableImage;
-import org.geometerplus.zlibrary.core.network.ZLNetworkManager;
-import org.geometerplus.zlibrary.core.network.ZLNetworkException;
 import org.geometerplus.zlibrary.core.util.MimeType;
 
 import org.geometerplus.fbreader.Paths;
@@ -35,10 +34,27 @@ import org.geometerplus.fbreader.Paths;
 public final class NetworkImage extends ZLLoadableImage {
 	public final String Url;
 
+	private static final long CACHE_SIZE = 16 * 1024 * 1024;
+	private static NetworkImageCache ourCache;
+
+	private static synchronized NetworkImageCache cache() {
+		if (ourCache == null) {
+			final File networkCacheDirectory = new File(Paths.networkCacheDirectory());
+			ourCache = new NetworkImageCache(
+				new File(networkCacheDirectory, "covers"), CACHE_SIZE,
+				networkCacheDirectory, Arrays.asList(
+					NetworkLibrary.HTTP_CACHE_DIRECTORY_NAME,
+					new File(Base64EncodedImage.makeImagesDir()).getName()
+				)
+			);
+		}
+		return ourCache;
+	}
+
 	public NetworkImage(String url, MimeType mimeType) {
 		super(mimeType);
 		Url = url;
-		new File(Paths.networkCacheDirectory()).mkdirs();
+		cache().directory().mkdirs();
 	}
 
 	private static final String TOESCAPE = "<>:\"|?*\\";
@@ -58,7 +74,7 @@ public final class NetworkImage extends ZLLoadableImage {
 			path.delete(0, 4);
 		}
 		path.insert(0, File.separator);
-		path.insert(0, Paths.networkCacheDirectory());
+		path.insert(0, cache().directory().getPath());
 
 		int index = path.length();
 
@@ -185,22 +201,10 @@ public final class NetworkImage extends ZLLoadableImage {
 				}
 			}
 			final File imageFile = new File(path);
-			if (imageFile.exists()) {
-				final long diff = System.currentTimeMillis() - imageFile.lastModified();
-				final long valid = 7 * 24 * 60 * 60 * 1000; // one week in milliseconds; FIXME: hardcoded const
-				if (diff >= 0 && diff <= valid) {
-					return;
-				}
-				imageFile.delete();
-			}
-			if (doFast) {
+			if (cache().isValid(imageFile) || doFast) {
 				return;
 			}
-
-			try {
-				ZLNetworkManager.Instance().downloadToFile(Url, imageFile);
-			} catch (ZLNetworkException e) {
-			}
+			cache().download(Url, imageFile);
 		} finally {
 			setSynchronized();
 		}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2010-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.network;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.network.ZLNetworkManager;
+import org.geometerplus.zlibrary.core.network.ZLNetworkException;
+
+/**
+ * Disk cache for downloaded images. Files are written under a temporary name
+ * and renamed when complete, so a partial download is never served.
+ * The index file keeps file sizes in access order; least recently used
+ * files are removed when the cache exceeds its size.
+ *
+ * Older versions stored images in host directories right under the network
+ * cache directory, with no size limit; these are removed once, when the cache
+ * is used for the first time.
+ */
+final class NetworkImageCache {
+	private static final int VERSION = 1;
+	private static final String INDEX_FILE_NAME = "covers.index";
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private static final long VALIDITY_PERIOD = 7 * 24 * 60 * 60 * 1000; // one week in milliseconds
+
+	private final File myDirectory;
+	private final long myMaxSize;
+	private final File myLegacyDirectory;
+	// names of legacy directory entries that belong to other caches
+	private final Collection<String> myLegacyExceptions;
+
+	// path relative to the cache directory -> file size, from the least recently used to the most recently used
+	private LinkedHashMap<String,Long> myFileSizes;
+	private long myTotalSize;
+
+	// paths of files being downloaded now
+	private final HashSet<String> myDownloads = new HashSet<String>();
+
+	NetworkImageCache(File directory, long maxSize, File legacyDirectory, Collection<String> legacyExceptions) {
+		myDirectory = directory;
+		myMaxSize = maxSize;
+		myLegacyDirectory = legacyDirectory;
+		myLegacyExceptions = legacyExceptions;
+	}
+
+	File directory() {
+		return myDirectory;
+	}
+
+	private String relativePath(File file) {
+		final String path = file.getPath();
+		final String prefix = myDirectory.getPath() + File.separator;
+		return path.startsWith(prefix) ? path.substring(prefix.length()) : null;
+	}
+
+	/**
+	 * Returns true if the file has been downloaded during the validity period;
+	 * an expired file is removed.
+	 */
+	boolean isValid(File file) {
+		if (!file.exists()) {
+			return false;
+		}
+		final long diff = System.currentTimeMillis() - file.lastModified();
+		if (diff >= 0 && diff <= VALIDITY_PERIOD) {
+			touch(file);
+			return true;
+		}
+		remove(file);
+		return false;
+	}
+
+	/**
+	 * Downloads the url into the file. If the same file is being downloaded
+	 * by another thread, waits for that download instead of starting a new one.
+	 */
+	void download(String url, File file) {
+		final String path = file.getPath();
+		synchronized (myDownloads) {
+			while (myDownloads.contains(path)) {
+				try {
+					myDownloads.wait();
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			if (isValid(file)) {
+				return;
+			}
+			myDownloads.add(path);
+		}
+
+		final File tmpFile = new File(path + TMP_SUFFIX);
+		try {
+			ZLNetworkManager.Instance().downloadToFile(url, tmpFile);
+			file.delete();
+			if (tmpFile.renameTo(file)) {
+				add(file);
+			}
+		} catch (ZLNetworkException e) {
+		} finally {
+			tmpFile.delete();
+			synchronized (myDownloads) {
+				myDownloads.remove(path);
+				myDownloads.notifyAll();
+			}
+		}
+	}
+
+	private synchronized void touch(File file) {
+		loadIndex();
+		final String key = relativePath(file);
+		// the new order is saved with the next added file
+		if (key == null || myFileSizes.get(key) == null) {
+			add(file);
+		}
+	}
+
+	private synchronized void add(File file) {
+		loadIndex();
+		final String key = relativePath(file);
+		if (key == null) {
+			return;
+		}
+		final Long oldSize = myFileSizes.remove(key);
+		if (oldSize != null) {
+			myTotalSize -= oldSize;
+		}
+		final long size = file.length();
+		myFileSizes.put(key, size);
+		myTotalSize += size;
+		shrink();
+		saveIndex();
+	}
+
+	private synchronized void remove(File file) {
+		loadIndex();
+		final String key = relativePath(file);
+		if (key != null) {
+			final Long size = myFileSizes.remove(key);
+			if (size != null) {
+				myTotalSize -= size;
+			}
+		}
+		file.delete();
+	}
+
+	private void shrink() {
+		for (Iterator<Map.Entry<String,Long>> it = myFileSizes.entrySet().iterator(); it.hasNext(); ) {
+			if (myTotalSize <= myMaxSize) {
+				break;
+			}
+			final Map.Entry<String,Long> entry = it.next();
+			myTotalSize -= entry.getValue();
+			it.remove();
+			final File file = new File(myDirectory, entry.getKey());
+			file.delete();
+			// removes the host directory if it is empty
+			file.getParentFile().delete();
+		}
+	}
+
+	private void loadIndex() {
+		if (myFileSizes != null) {
+			return;
+		}
+		myFileSizes = new LinkedHashMap<String,Long>(64, 0.75f, true);
+		myTotalSize = 0;
+		final boolean isFirstUse = !new File(myDirectory, INDEX_FILE_NAME).exists();
+		if (isFirstUse) {
+			removeLegacyFiles();
+		}
+		if (!readIndex()) {
+			myFileSizes.clear();
+			myTotalSize = 0;
+			scanDirectory();
+		}
+		shrink();
+		if (isFirstUse) {
+			// so legacy files are looked for only once
+			saveIndex();
+		}
+	}
+
+	private boolean readIndex() {
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(new File(myDirectory, INDEX_FILE_NAME)), 8192
+			));
+			if (stream.readInt() != VERSION) {
+				return false;
+			}
+			for (int count = stream.readInt(); count > 0; --count) {
+				final String key = stream.readUTF();
+				final long size = stream.readLong();
+				if (new File(myDirectory, key).exists()) {
+					myFileSizes.put(key, size);
+					myTotalSize += size;
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private void removeLegacyFiles() {
+		final File[] entries = myLegacyDirectory.listFiles();
+		if (entries == null) {
+			return;
+		}
+		for (File dir : entries) {
+			if (!dir.isDirectory() || dir.equals(myDirectory) || myLegacyExceptions.contains(dir.getName())) {
+				continue;
+			}
+			final File[] files = dir.listFiles();
+			if (files != null) {
+				for (File f : files) {
+					f.delete();
+				}
+			}
+			dir.delete();
+		}
+	}
+
+	// rebuilds the index from the files; the download time is used as the access time
+	private void scanDirectory() {
+		final ArrayList<File> files = new ArrayList<File>();
+		final File[] hostDirs = myDirectory.listFiles();
+		if (hostDirs == null) {
+			return;
+		}
+		for (File dir : hostDirs) {
+			final File[] dirFiles = dir.listFiles();
+			if (dirFiles == null) {
+				continue;
+			}
+			for (File f : dirFiles) {
+				if (f.getName().endsWith(TMP_SUFFIX)) {
+					f.delete();
+				} else {
+					files.add(f);
+				}
+			}
+		}
+		Collections.sort(files, new Comparator<File>() {
+			public int compare(File f0, File f1) {
+				final long diff = f0.lastModified() - f1.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		for (File f : files) {
+			final String key = relativePath(f);
+			final long size = f.length();
+			myFileSizes.put(key, size);
+			myTotalSize += size;
+		}
+	}
+
+	private void saveIndex() {
+		final File indexFile = new File(myDirectory, INDEX_FILE_NAME);
+		final File tmpFile = new File(myDirectory, INDEX_FILE_NAME + TMP_SUFFIX);
+		try {
+			final DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmpFile), 8192
+			));
+			try {
+				stream.writeInt(VERSION);
+				stream.writeInt(myFileSizes.size());
+				for (Map.Entry<String,Long> entry : myFileSizes.entrySet()) {
+					stream.writeUTF(entry.getKey());
+					stream.writeLong(entry.getValue());
+				}
+			} finally {
+				stream.close();
+			}
+			indexFile.delete();
+			tmpFile.renameTo(indexFile);
+		} catch (IOException e) {
+			tmpFile.delete();
+		}
+	}
+}
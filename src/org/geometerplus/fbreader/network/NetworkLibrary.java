@@ -19,15 +19,17 @@
 
 package org.geometerplus.fbreader.network;
 
+import java.io.File;
 import java.util.*;
 
 import org.geometerplus.zlibrary.core.library.ZLibrary;
 import org.geometerplus.zlibrary.core.util.ZLNetworkUtil;
 import org.geometerplus.zlibrary.core.options.ZLStringOption;
-import org.geometerplus.zlibrary.core.network.ZLNetworkException;
+import org.geometerplus.zlibrary.core.network.*;
 import org.geometerplus.zlibrary.core.language.ZLLanguageUtil;
 import org.geometerplus.zlibrary.core.resources.ZLResource;
 
+import org.geometerplus.fbreader.Paths;
 import org.geometerplus.fbreader.tree.FBTree;
 import org.geometerplus.fbreader.network.tree.*;
 import org.geometerplus.fbreader.network.opds.OPDSLinkReader;
@@ -195,6 +197,9 @@ public class NetworkLibrary {
 
 	private final SearchItem mySearchItem = new AllCatalogsSearchItem();
 
+	static final String HTTP_CACHE_DIRECTORY_NAME = "http";
+	private static final long HTTP_CACHE_SIZE = 4 * 1024 * 1024;
+
 	private NetworkLibrary() {
 	}
 
@@ -207,6 +212,10 @@ public class NetworkLibrary {
 			return;
 		}
 
+		ZLNetworkManager.Instance().setCache(new ZLNetworkCache(
+			new File(Paths.networkCacheDirectory(), HTTP_CACHE_DIRECTORY_NAME), HTTP_CACHE_SIZE
+		));
+
 		try {
 			myLinks.addAll(OPDSLinkReader.loadOPDSLinks(OPDSLinkReader.CacheMode.LOAD));
 		} catch (ZLNetworkException e) {
@@ -20,39 +20,134 @@
 package org.geometerplus.zlibrary.core.image;
 
 import java.io.*;
+import java.util.*;
 
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
-import org.geometerplus.zlibrary.core.util.MimeType;
-import org.geometerplus.zlibrary.core.util.SliceInputStream;
+import org.geometerplus.zlibrary.core.util.*;
 
 public class ZLFileImage extends ZLSingleImage {
 	public static final String SCHEME = "imagefile";
 
+	public static final String ENCODING_NONE = "";
+	public static final String ENCODING_BASE64 = "base64";
+
+	public static ZLFileImage byUrlPath(MimeType mimeType, String urlPath) {
+		try {
+			final String[] data = urlPath.split("\000");
+			return new ZLFileImage(
+				mimeType,
+				ZLFile.createFileByPath(data[0]),
+				data.length > 3 ? data[3] : ENCODING_NONE,
+				Integer.parseInt(data[1]),
+				Integer.parseInt(data[2])
+			);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	// decoded data of recently shown encoded images
+	private static final int DECODED_CACHE_SIZE = 2 * 1024 * 1024;
+	private static final int MAX_CACHED_IMAGE_SIZE = 512 * 1024;
+	private static final LinkedHashMap<String,byte[]> ourDecodedCache =
+		new LinkedHashMap<String,byte[]>(16, 0.75f, true);
+	private static int ourDecodedCacheSize;
+
+	private static synchronized byte[] getDecodedData(String key) {
+		return ourDecodedCache.get(key);
+	}
+
+	private static synchronized void putDecodedData(String key, byte[] data) {
+		final byte[] old = ourDecodedCache.put(key, data);
+		if (old != null) {
+			ourDecodedCacheSize -= old.length;
+		}
+		ourDecodedCacheSize += data.length;
+		for (Iterator<byte[]> it = ourDecodedCache.values().iterator(); it.hasNext(); ) {
+			if (ourDecodedCacheSize <= DECODED_CACHE_SIZE) {
+				break;
+			}
+			ourDecodedCacheSize -= it.next().length;
+			it.remove();
+		}
+	}
+
 	private final ZLFile myFile;
+	private final String myEncoding;
 	private final int myOffset;
 	private final int myLength;
 	
-	public ZLFileImage(MimeType mimeType, ZLFile file, int offset, int length) {
+	/**
+	 * Image stored in a part of the file; encoded images
+	 * (e.g. base64 data of FB2 binary sections) are decoded on reading.
+	 */
+	public ZLFileImage(MimeType mimeType, ZLFile file, String encoding, int offset, int length) {
 		super(mimeType);
 		myFile = file;
+		myEncoding = encoding;
 		myOffset = offset;
 		myLength = length;
 	}
 
+	public ZLFileImage(MimeType mimeType, ZLFile file, int offset, int length) {
+		this(mimeType, file, ENCODING_NONE, offset, length);
+	}
+
 	public ZLFileImage(MimeType mimeType, ZLFile file) {
 		this(mimeType, file, 0, (int)file.size());
 	}
 
 	public String getURI() {
-		return SCHEME + "://" + myFile.getPath() + "\000" + myOffset + "\000" + myLength;
+		return SCHEME + "://" + getUrlPath();
+	}
+
+	public String getUrlPath() {
+		final String path = myFile.getPath() + "\000" + myOffset + "\000" + myLength;
+		return ENCODING_NONE.equals(myEncoding) ? path : path + "\000" + myEncoding;
 	}
 
 	@Override
 	public InputStream inputStream() {
 		try {
-			return new SliceInputStream(myFile.getInputStream(), myOffset, myLength);
+			if (!ENCODING_BASE64.equals(myEncoding)) {
+				return sliceStream();
+			}
+			// small images are decoded once and kept in memory,
+			// since bitmap decoder reads the image several times
+			final int maxSize = myLength / 4 * 3 + 3;
+			if (maxSize > MAX_CACHED_IMAGE_SIZE) {
+				return new Base64InputStream(sliceStream());
+			}
+			final String key = getUrlPath();
+			byte[] data = getDecodedData(key);
+			if (data == null) {
+				data = readDecodedData(new Base64InputStream(sliceStream()), maxSize);
+				putDecodedData(key, data);
+			}
+			return new ByteArrayInputStream(data);
 		} catch (IOException e) {
 			return null;
 		}
 	}
+
+	private InputStream sliceStream() throws IOException {
+		return new SliceInputStream(myFile.getInputStream(), myOffset, myLength);
+	}
+
+	private static byte[] readDecodedData(InputStream stream, int maxSize) throws IOException {
+		try {
+			final byte[] buffer = new byte[maxSize];
+			int size = 0;
+			while (size < maxSize) {
+				final int count = stream.read(buffer, size, maxSize - size);
+				if (count <= 0) {
+					break;
+				}
+				size += count;
+			}
+			return ZLArrayUtils.createCopy(buffer, size, size);
+		} finally {
+			stream.close();
+		}
+	}
 }
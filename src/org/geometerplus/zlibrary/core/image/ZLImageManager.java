@@ -32,6 +32,14 @@ public abstract class ZLImageManager {
 
 	public abstract ZLImageData getImageData(ZLImage image);
 	protected abstract void startImageLoading(ZLLoadableImage image, Runnable postLoadingRunnable);
+
+	/**
+	 * Returns the image scaled down to fit into maxWidth x maxHeight and encoded
+	 * as PNG or JPEG, or null if the image cannot be decoded.
+	 */
+	public byte[] createThumbnail(ZLImage image, int maxWidth, int maxHeight) {
+		return null;
+	}
 	
 	protected final static class PalmImageHeader {
 		public final int Width;
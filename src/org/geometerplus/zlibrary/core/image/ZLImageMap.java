@@ -24,7 +24,8 @@ import java.util.*;
 public final class ZLImageMap extends HashMap<String,ZLImage> {
 	private static final long serialVersionUID = -4488377408233803199L;
 
-	public ZLImage getImage(String id) {
+	// synchronized, since images can be added while the map is in use
+	public synchronized ZLImage getImage(String id) {
 		return (ZLImage)super.get(id);
 	}
 }
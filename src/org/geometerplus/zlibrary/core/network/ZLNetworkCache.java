@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2010-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.core.network;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.http.*;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+/**
+ * Disk cache for responses to GET requests. Every response is stored as
+ * a pair of files: <hash>.head with the URL, validators and expiration time,
+ * and <hash>.body with the (decoded) content. Fresh responses are returned
+ * without network access, stale ones are revalidated by conditional requests.
+ * Least recently used responses are removed when the cache exceeds its size.
+ */
+public final class ZLNetworkCache {
+	private static final int VERSION = 1;
+	private static final String HEAD_SUFFIX = ".head";
+	private static final String BODY_SUFFIX = ".body";
+
+	private final File myDirectory;
+	private final long myMaxSize;
+	private final long myMaxEntrySize;
+
+	// entry name -> size of its files, from the least recently used to the most recently used
+	private LinkedHashMap<String,Long> myEntrySizes;
+	private long myTotalSize;
+
+	public ZLNetworkCache(File directory, long maxSize) {
+		myDirectory = directory;
+		myMaxSize = maxSize;
+		myMaxEntrySize = maxSize / 4;
+	}
+
+	final class Entry {
+		final String Name;
+		final String URL;
+		final String ETag;
+		final String LastModified;
+		final long ExpirationTime;
+
+		Entry(String name, String url, String eTag, String lastModified, long expirationTime) {
+			Name = name;
+			URL = url;
+			ETag = eTag;
+			LastModified = lastModified;
+			ExpirationTime = expirationTime;
+		}
+
+		boolean isFresh() {
+			return System.currentTimeMillis() < ExpirationTime;
+		}
+
+		boolean canBeRevalidated() {
+			return ETag != null || LastModified != null;
+		}
+
+		// the stored content can be used for the current request only, see release()
+		boolean isTransient() {
+			return ExpirationTime < 0;
+		}
+
+		File bodyFile() {
+			return new File(myDirectory, Name + BODY_SUFFIX);
+		}
+	}
+
+	private static String entryName(String url) {
+		return Integer.toHexString(url.hashCode());
+	}
+
+	private synchronized void loadIndex() {
+		if (myEntrySizes != null) {
+			return;
+		}
+		myEntrySizes = new LinkedHashMap<String,Long>(64, 0.75f, true);
+		myTotalSize = 0;
+		final File[] files = myDirectory.listFiles();
+		if (files == null) {
+			return;
+		}
+		final ArrayList<File> bodies = new ArrayList<File>();
+		for (File f : files) {
+			final String name = f.getName();
+			if (name.endsWith(BODY_SUFFIX)) {
+				bodies.add(f);
+			} else if (name.endsWith(".tmp")) {
+				f.delete();
+			}
+		}
+		// bodies are touched on every hit, so modification time is the access order
+		Collections.sort(bodies, new Comparator<File>() {
+			public int compare(File f0, File f1) {
+				final long diff = f0.lastModified() - f1.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		for (File body : bodies) {
+			final String name = body.getName();
+			final String entryName = name.substring(0, name.length() - BODY_SUFFIX.length());
+			final long size = body.length() + new File(myDirectory, entryName + HEAD_SUFFIX).length();
+			myEntrySizes.put(entryName, size);
+			myTotalSize += size;
+		}
+		shrink();
+	}
+
+	private void shrink() {
+		for (Iterator<Map.Entry<String,Long>> it = myEntrySizes.entrySet().iterator(); it.hasNext(); ) {
+			if (myTotalSize <= myMaxSize) {
+				break;
+			}
+			final Map.Entry<String,Long> entry = it.next();
+			myTotalSize -= entry.getValue();
+			it.remove();
+			removeFiles(entry.getKey());
+		}
+	}
+
+	private void removeFiles(String entryName) {
+		new File(myDirectory, entryName + HEAD_SUFFIX).delete();
+		new File(myDirectory, entryName + BODY_SUFFIX).delete();
+	}
+
+	synchronized Entry get(String url) {
+		loadIndex();
+		final String name = entryName(url);
+		if (myEntrySizes.get(name) == null) {
+			return null;
+		}
+		final Entry entry = readHead(name);
+		if (entry == null || !url.equals(entry.URL) || !entry.bodyFile().exists()) {
+			return null;
+		}
+		entry.bodyFile().setLastModified(System.currentTimeMillis());
+		return entry;
+	}
+
+	private Entry readHead(String name) {
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(new File(myDirectory, name + HEAD_SUFFIX)), 1024
+			));
+			if (stream.readInt() != VERSION) {
+				return null;
+			}
+			final String url = stream.readUTF();
+			final String eTag = stream.readUTF();
+			final String lastModified = stream.readUTF();
+			final long expirationTime = stream.readLong();
+			return new Entry(
+				name, url,
+				eTag.length() > 0 ? eTag : null,
+				lastModified.length() > 0 ? lastModified : null,
+				expirationTime
+			);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private boolean writeHead(Entry entry) {
+		final File headFile = new File(myDirectory, entry.Name + HEAD_SUFFIX);
+		final File tmpFile = new File(myDirectory, entry.Name + HEAD_SUFFIX + ".tmp");
+		try {
+			final DataOutputStream stream = new DataOutputStream(new FileOutputStream(tmpFile));
+			try {
+				stream.writeInt(VERSION);
+				stream.writeUTF(entry.URL);
+				stream.writeUTF(entry.ETag != null ? entry.ETag : "");
+				stream.writeUTF(entry.LastModified != null ? entry.LastModified : "");
+				stream.writeLong(entry.ExpirationTime);
+			} finally {
+				stream.close();
+			}
+			headFile.delete();
+			return tmpFile.renameTo(headFile);
+		} catch (IOException e) {
+			tmpFile.delete();
+			return false;
+		}
+	}
+
+	void addValidators(Entry entry, HttpRequest request) {
+		if (entry.ETag != null) {
+			request.setHeader("If-None-Match", entry.ETag);
+		}
+		if (entry.LastModified != null) {
+			request.setHeader("If-Modified-Since", entry.LastModified);
+		}
+	}
+
+	/**
+	 * Called on 304 response: the stored content is valid for the new expiration time.
+	 * If the response must not be stored, the returned entry is transient:
+	 * its content is still used for the current request, and then removed by release().
+	 */
+	synchronized Entry refresh(Entry entry, HttpResponse response) {
+		final long expirationTime = expirationTime(response);
+		final Header eTag = response.getFirstHeader("ETag");
+		final Entry refreshed = new Entry(
+			entry.Name, entry.URL,
+			eTag != null ? eTag.getValue() : entry.ETag,
+			entry.LastModified,
+			expirationTime
+		);
+		if (expirationTime < 0 || !writeHead(refreshed)) {
+			return new Entry(entry.Name, entry.URL, null, null, -1);
+		}
+		return refreshed;
+	}
+
+	// removes the transient entry after its content has been used
+	synchronized void release(Entry entry) {
+		if (entry.isTransient()) {
+			remove(entry.Name);
+		}
+	}
+
+	private void remove(String entryName) {
+		final Long size = myEntrySizes.remove(entryName);
+		if (size != null) {
+			myTotalSize -= size;
+		}
+		removeFiles(entryName);
+	}
+
+	/**
+	 * Returns expiration time for the response (0 if it should be revalidated
+	 * on each use), or -1 if the response should not be stored.
+	 */
+	// DateUtils is deprecated since HttpClient 4.3, Android bundles 4.0
+	@SuppressWarnings("deprecation")
+	private static long expirationTime(HttpResponse response) {
+		final long now = System.currentTimeMillis();
+		boolean hasMaxAge = false;
+		long expirationTime = 0;
+		for (Header header : response.getHeaders("Cache-Control")) {
+			for (HeaderElement element : header.getElements()) {
+				final String name = element.getName();
+				if ("no-store".equalsIgnoreCase(name)) {
+					return -1;
+				} else if ("no-cache".equalsIgnoreCase(name) || "must-revalidate".equalsIgnoreCase(name)) {
+					return 0;
+				} else if ("max-age".equalsIgnoreCase(name) && element.getValue() != null) {
+					try {
+						expirationTime = now + 1000L * Long.parseLong(element.getValue().trim());
+						hasMaxAge = true;
+					} catch (NumberFormatException e) {
+					}
+				}
+			}
+		}
+		if (hasMaxAge) {
+			return expirationTime;
+		}
+
+		final Header expires = response.getFirstHeader("Expires");
+		if (expires != null) {
+			try {
+				final long expiresTime = DateUtils.parseDate(expires.getValue()).getTime();
+				// the server clock is used for both dates, so the difference does not depend on local clock
+				final Header date = response.getFirstHeader("Date");
+				final long dateTime = date != null ? DateUtils.parseDate(date.getValue()).getTime() : now;
+				return Math.max(now + expiresTime - dateTime, 0);
+			} catch (DateParseException e) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	final class Writer {
+		private final Entry myEntry;
+		private final File myTmpFile;
+		private OutputStream myStream;
+		private long mySize;
+		private boolean myIsComplete;
+
+		private Writer(Entry entry, File tmpFile) throws IOException {
+			myEntry = entry;
+			myTmpFile = tmpFile;
+			myStream = new BufferedOutputStream(new FileOutputStream(tmpFile), 8192);
+		}
+
+		// the content is written into cache while it is read from the returned stream
+		InputStream tee(final InputStream stream) {
+			return new FilterInputStream(stream) {
+				@Override
+				public int read() throws IOException {
+					final int b = super.read();
+					if (b == -1) {
+						myIsComplete = true;
+					} else {
+						write(new byte[] { (byte)b }, 0, 1);
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException {
+					final int size = super.read(buffer, offset, length);
+					if (size == -1) {
+						myIsComplete = true;
+					} else {
+						write(buffer, offset, size);
+					}
+					return size;
+				}
+
+				@Override
+				public long skip(long n) throws IOException {
+					// skipped content is not stored, so the response cannot be cached
+					abort();
+					return super.skip(n);
+				}
+			};
+		}
+
+		private void write(byte[] buffer, int offset, int length) {
+			if (myStream == null) {
+				return;
+			}
+			mySize += length;
+			if (mySize > myMaxEntrySize) {
+				abort();
+				return;
+			}
+			try {
+				myStream.write(buffer, offset, length);
+			} catch (IOException e) {
+				abort();
+			}
+		}
+
+		void abort() {
+			if (myStream != null) {
+				try {
+					myStream.close();
+				} catch (IOException e) {
+				}
+				myStream = null;
+			}
+			myTmpFile.delete();
+		}
+
+		// stores the response if it has been read completely
+		void commit() {
+			if (myStream == null) {
+				return;
+			}
+			if (!myIsComplete) {
+				abort();
+				return;
+			}
+			try {
+				myStream.close();
+			} catch (IOException e) {
+				myStream = null;
+				myTmpFile.delete();
+				return;
+			}
+			myStream = null;
+			synchronized (ZLNetworkCache.this) {
+				remove(myEntry.Name);
+				final File bodyFile = myEntry.bodyFile();
+				if (!myTmpFile.renameTo(bodyFile) || !writeHead(myEntry)) {
+					myTmpFile.delete();
+					removeFiles(myEntry.Name);
+					return;
+				}
+				final long size = bodyFile.length() + new File(myDirectory, myEntry.Name + HEAD_SUFFIX).length();
+				myEntrySizes.put(myEntry.Name, size);
+				myTotalSize += size;
+				shrink();
+			}
+		}
+	}
+
+	/**
+	 * Returns null if the response should not be stored: no-store,
+	 * no validators and no freshness, varying content, or too large.
+	 */
+	Writer writer(String url, HttpResponse response, long contentLength) {
+		if (contentLength > myMaxEntrySize) {
+			return null;
+		}
+		final long expirationTime = expirationTime(response);
+		if (expirationTime < 0) {
+			return null;
+		}
+		for (Header header : response.getHeaders("Vary")) {
+			for (HeaderElement element : header.getElements()) {
+				if (!"Accept-Encoding".equalsIgnoreCase(element.getName())) {
+					return null;
+				}
+			}
+		}
+		final Header eTag = response.getFirstHeader("ETag");
+		final Header lastModified = response.getFirstHeader("Last-Modified");
+		final Entry entry = new Entry(
+			entryName(url), url,
+			eTag != null ? eTag.getValue() : null,
+			lastModified != null ? lastModified.getValue() : null,
+			expirationTime
+		);
+		if (!entry.canBeRevalidated() && expirationTime <= System.currentTimeMillis()) {
+			return null;
+		}
+		synchronized (this) {
+			loadIndex();
+			if (!myDirectory.exists() && !myDirectory.mkdirs()) {
+				return null;
+			}
+		}
+		try {
+			return new Writer(entry, File.createTempFile(entry.Name, ".tmp", myDirectory));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
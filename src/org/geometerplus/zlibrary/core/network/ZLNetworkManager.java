@@ -20,6 +20,7 @@
 package org.geometerplus.zlibrary.core.network;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.GZIPInputStream;
 import java.io.*;
 import java.net.*;
@@ -28,12 +29,17 @@ import org.apache.http.*;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.*;
 import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.conn.params.*;
+import org.apache.http.conn.scheme.*;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.*;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.params.*;
 import org.apache.http.protocol.HttpContext;
@@ -129,17 +135,68 @@ public class ZLNetworkManager {
 		myCredentialsCreator = creator;
 	}
 
+	private static final int MAX_CONNECTIONS = 16;
+	private static final int MAX_CONNECTIONS_PER_HOST = 4;
+	private static final int MAX_CONCURRENT_REQUESTS = 6;
+	// seconds
+	private static final int IDLE_CONNECTION_TIMEOUT = 30;
+
+	private HttpClient myHttpClient;
+	private volatile ZLNetworkCache myCache;
+
+	// responses to GET requests are stored in the cache (if it is set)
+	public void setCache(ZLNetworkCache cache) {
+		myCache = cache;
+	}
+
+	// returns false if the cached content cannot be read
+	private static boolean handleCachedStream(ZLNetworkRequest request, ZLNetworkCache.Entry entry) throws IOException, ZLNetworkException {
+		final File body = entry.bodyFile();
+		final InputStream stream;
+		try {
+			stream = new FileInputStream(body);
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+		try {
+			request.handleStream(stream, (int)body.length());
+		} finally {
+			stream.close();
+		}
+		return true;
+	}
+
+	// one client for all the requests, so connections are kept alive between them;
+	// these classes are deprecated since HttpClient 4.3, Android bundles 4.0
+	@SuppressWarnings("deprecation")
+	private synchronized HttpClient httpClient() {
+		if (myHttpClient == null) {
+			final HttpParams params = new BasicHttpParams();
+			HttpConnectionParams.setSoTimeout(params, 30000);
+			HttpConnectionParams.setConnectionTimeout(params, 15000);
+			ConnManagerParams.setTimeout(params, 15000);
+			ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+			ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS_PER_HOST));
+			final SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+			registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+			myHttpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
+		}
+		return myHttpClient;
+	}
+
+	@SuppressWarnings("deprecation")
 	public void perform(ZLNetworkRequest request) throws ZLNetworkException {
 		boolean success = false;
-		DefaultHttpClient httpClient = null;
+		HttpRequestBase httpRequest = null;
 		HttpEntity entity = null;
+		final long startTime = System.currentTimeMillis();
+		request.ResponseTime = -1;
+		request.TotalTime = -1;
 		try {
 			request.doBefore();
-			final HttpParams params = new BasicHttpParams();
-			HttpConnectionParams.setSoTimeout(params, 30000);
-			HttpConnectionParams.setConnectionTimeout(params, 15000);
-			httpClient = new DefaultHttpClient(params);
-			final HttpRequestBase httpRequest;
+			final HttpClient httpClient = httpClient();
+			httpClient.getConnectionManager().closeIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.SECONDS);
 			if (request.PostData !=  null) {
 				httpRequest = new HttpPost(request.URL);
 				((HttpPost)httpRequest).setEntity(new StringEntity(request.PostData, "utf-8"));
@@ -164,15 +221,30 @@ public class ZLNetworkManager {
 			} else {
 				httpRequest = new HttpGet(request.URL);
 			}
+			final ZLNetworkCache cache = (httpRequest instanceof HttpGet && request.UseCache) ? myCache : null;
+			ZLNetworkCache.Entry cacheEntry = (cache != null) ? cache.get(request.URL) : null;
+			if (cacheEntry != null) {
+				if (cacheEntry.isFresh() && handleCachedStream(request, cacheEntry)) {
+					success = true;
+					return;
+				}
+				if (cacheEntry.canBeRevalidated()) {
+					cache.addValidators(cacheEntry, httpRequest);
+				} else {
+					cacheEntry = null;
+				}
+			}
 			httpRequest.setHeader("User-Agent", ZLNetworkUtil.getUserAgent());
 			httpRequest.setHeader("Accept-Encoding", "gzip");
 			httpRequest.setHeader("Accept-Language", Locale.getDefault().getLanguage());
-			httpClient.setCredentialsProvider(new MyCredentialsProvider(httpRequest));
+			// authentication state is kept per request, cookies are shared
+			final HttpContext httpContext = new BasicHttpContext(myHttpContext);
+			httpContext.setAttribute(ClientContext.CREDS_PROVIDER, new MyCredentialsProvider(httpRequest));
 			HttpResponse response = null;
 			IOException lastException = null;
-			for (int retryCounter = 0; retryCounter < 3 && entity == null; ++retryCounter) {
+			for (int retryCounter = 0; retryCounter < 3 && response == null; ++retryCounter) {
 				try {
-					response = httpClient.execute(httpRequest, myHttpContext);
+					response = httpClient.execute(httpRequest, httpContext);
 					entity = response.getEntity();
 					lastException = null;
 				} catch (IOException e) {
@@ -183,6 +255,20 @@ public class ZLNetworkManager {
 				throw lastException;
 			}
 			final int responseCode = response.getStatusLine().getStatusCode();
+			request.ResponseTime = System.currentTimeMillis() - startTime;
+
+			if (cacheEntry != null && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				cacheEntry = cache.refresh(cacheEntry, response);
+				try {
+					if (handleCachedStream(request, cacheEntry)) {
+						success = true;
+						return;
+					}
+				} finally {
+					cache.release(cacheEntry);
+				}
+				throw new ZLNetworkException(true, response.getStatusLine().toString());
+			}
 
 			InputStream stream = null;
 			if (entity != null && responseCode == HttpURLConnection.HTTP_OK) {
@@ -190,14 +276,28 @@ public class ZLNetworkManager {
 			}
 
 			if (stream != null) {
+				final ZLNetworkCache.Writer cacheWriter =
+					(cache != null) ? cache.writer(request.URL, response, entity.getContentLength()) : null;
+				boolean handled = false;
 				try {
 					final Header encoding = entity.getContentEncoding();
 					if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
 						stream = new GZIPInputStream(stream);
 					}
+					if (cacheWriter != null) {
+						stream = cacheWriter.tee(stream);
+					}
 					request.handleStream(stream, (int)entity.getContentLength());
+					handled = true;
 				} finally {
 					stream.close();
+					if (cacheWriter != null) {
+						if (handled) {
+							cacheWriter.commit();
+						} else {
+							cacheWriter.abort();
+						}
+					}
 				}
 				success = true;
 			} else {
@@ -219,14 +319,17 @@ public class ZLNetworkManager {
 			}
 			throw new ZLNetworkException(code, ZLNetworkUtil.hostFromUrl(request.URL), e);
 		} finally {
+			request.TotalTime = System.currentTimeMillis() - startTime;
 			request.doAfter(success);
-			if (httpClient != null) {
-				httpClient.getConnectionManager().shutdown();
-			}
 			if (entity != null) {
-				try {
-					entity.consumeContent();
-				} catch (IOException e) {
+				if (success) {
+					// the rest of the content is read to return the connection to the pool
+					try {
+						entity.consumeContent();
+					} catch (IOException e) {
+					}
+				} else {
+					httpRequest.abort();
 				}
 			}
 		}
@@ -240,16 +343,43 @@ public class ZLNetworkManager {
 			perform(requests.get(0));
 			return;
 		}
-		HashSet<String> errors = new HashSet<String>();
-		// TODO: implement concurrent execution !!!
-		for (ZLNetworkRequest r: requests) {
+
+		final ExecutorService executor =
+			Executors.newFixedThreadPool(Math.min(requests.size(), MAX_CONCURRENT_REQUESTS));
+		final ArrayList<Future<Object>> results = new ArrayList<Future<Object>>(requests.size());
+		for (final ZLNetworkRequest r : requests) {
+			results.add(executor.submit(new Callable<Object>() {
+				public Object call() throws ZLNetworkException {
+					perform(r);
+					return null;
+				}
+			}));
+		}
+		executor.shutdown();
+
+		final LinkedHashSet<String> errors = new LinkedHashSet<String>();
+		RuntimeException runtimeException = null;
+		for (Future<Object> result : results) {
 			try {
-				perform(r);
-			} catch (ZLNetworkException e) {
-				e.printStackTrace();
-				errors.add(e.getMessage());
+				result.get();
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				throw new ZLNetworkException(true, e.toString());
+			} catch (ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof ZLNetworkException) {
+					cause.printStackTrace();
+					errors.add(cause.getMessage());
+				} else if (cause instanceof RuntimeException) {
+					runtimeException = (RuntimeException)cause;
+				} else {
+					errors.add(String.valueOf(cause));
+				}
 			}
 		}
+		if (runtimeException != null) {
+			throw runtimeException;
+		}
 		if (errors.size() > 0) {
 			StringBuilder message = new StringBuilder();
 			for (String e : errors) {
@@ -272,6 +402,11 @@ public class ZLNetworkManager {
 
 	public final void downloadToFile(String url, String sslCertificate, final File outFile, final int bufferSize) throws ZLNetworkException {
 		perform(new ZLNetworkRequest(url, sslCertificate, null) {
+			{
+				// the file is the cache
+				UseCache = false;
+			}
+
 			public void handleStream(InputStream inputStream, int length) throws IOException, ZLNetworkException {
 				OutputStream outStream = new FileOutputStream(outFile);
 				try {
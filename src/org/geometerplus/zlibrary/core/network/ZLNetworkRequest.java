@@ -30,6 +30,14 @@ public abstract class ZLNetworkRequest {
 	public final String PostData;
 	public final Map<String,String> PostParameters = new HashMap<String,String>();
 
+	// timing of the last perform() call in milliseconds, -1 if unknown:
+	// time till the response status is received, and the whole time
+	volatile long ResponseTime = -1;
+	volatile long TotalTime = -1;
+
+	// false for requests that store the content themselves
+	boolean UseCache = true;
+
 	protected ZLNetworkRequest(String url) {
 		this(url, null, null);
 	}
@@ -48,6 +56,14 @@ public abstract class ZLNetworkRequest {
 		return URL;
 	}
 
+	public long getResponseTime() {
+		return ResponseTime;
+	}
+
+	public long getTotalTime() {
+		return TotalTime;
+	}
+
 	public void doBefore() throws ZLNetworkException {
 	}
 	
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes base64 data on the fly. Whitespace and other characters outside
+ * of the base64 alphabet are skipped; decoding stops at padding, at '<'
+ * (so the stream can be started inside an XML element) or at the end
+ * of the base stream.
+ */
+public class Base64InputStream extends InputStream {
+	private static final byte SKIP = -1;
+	private static final byte STOP = -2;
+	private static final byte[] ourTable = new byte[256];
+	static {
+		for (int i = 0; i < 256; ++i) {
+			ourTable[i] = SKIP;
+		}
+		for (int i = 0; i < 26; ++i) {
+			ourTable['A' + i] = (byte)i;
+			ourTable['a' + i] = (byte)(i + 26);
+		}
+		for (int i = 0; i < 10; ++i) {
+			ourTable['0' + i] = (byte)(i + 52);
+		}
+		ourTable['+'] = 62;
+		ourTable['/'] = 63;
+		ourTable['='] = STOP;
+		ourTable['<'] = STOP;
+	}
+
+	private final InputStream myBaseStream;
+	private final byte[] myBuffer = new byte[8192];
+	private int myBufferOffset;
+	private int myBufferLength;
+	private boolean myIsFinished;
+
+	// decoded bytes not returned yet
+	private int myDecoded;
+	private int myDecodedNumber;
+
+	public Base64InputStream(InputStream base) {
+		myBaseStream = base;
+	}
+
+	// returns next 6-bit value, or STOP
+	private int nextValue() throws IOException {
+		while (true) {
+			if (myBufferOffset == myBufferLength) {
+				myBufferLength = myBaseStream.read(myBuffer);
+				myBufferOffset = 0;
+				if (myBufferLength <= 0) {
+					myBufferLength = 0;
+					return STOP;
+				}
+			}
+			final byte value = ourTable[myBuffer[myBufferOffset++] & 0xFF];
+			if (value != SKIP) {
+				return value;
+			}
+		}
+	}
+
+	// decodes next group of up to 4 characters; returns false at the end of data
+	private boolean decodeGroup() throws IOException {
+		if (myIsFinished) {
+			return false;
+		}
+		int bits = 0;
+		int count = 0;
+		for (; count < 4; ++count) {
+			final int value = nextValue();
+			if (value == STOP) {
+				myIsFinished = true;
+				break;
+			}
+			bits = (bits << 6) | value;
+		}
+		switch (count) {
+			default:
+				return false;
+			case 2:
+				myDecoded = bits >> 4;
+				myDecodedNumber = 1;
+				return true;
+			case 3:
+				myDecoded = bits >> 2;
+				myDecodedNumber = 2;
+				return true;
+			case 4:
+				myDecoded = bits;
+				myDecodedNumber = 3;
+				return true;
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (myDecodedNumber == 0 && !decodeGroup()) {
+			return -1;
+		}
+		return (myDecoded >> (8 * --myDecodedNumber)) & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		int count = 0;
+		while (count < len) {
+			if (myDecodedNumber == 0 && !decodeGroup()) {
+				break;
+			}
+			while (myDecodedNumber > 0 && count < len) {
+				b[off + count++] = (byte)(myDecoded >> (8 * --myDecodedNumber));
+			}
+		}
+		return count > 0 ? count : -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		myBaseStream.close();
+	}
+}
@@ -47,12 +47,14 @@ public final class MimeType {
 		}
 
 		if (parameters == null) {
-			MimeType type = ourSimpleTypesMap.get(name);
-			if (type == null) {
-				type = new MimeType(name, null);
-				ourSimpleTypesMap.put(name, type);
+			synchronized (ourSimpleTypesMap) {
+				MimeType type = ourSimpleTypesMap.get(name);
+				if (type == null) {
+					type = new MimeType(name, null);
+					ourSimpleTypesMap.put(name, type);
+				}
+				return type;
 			}
-			return type;
 		}
 
 		return new MimeType(name, parameters);
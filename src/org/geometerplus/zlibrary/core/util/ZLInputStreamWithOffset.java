@@ -35,12 +35,17 @@ public class ZLInputStreamWithOffset extends InputStream {
 	}
 
 	public long skip(long n) throws IOException {
-		long shift = myDecoratedStream.skip(n);
-		if (shift > 0) {
-			myOffset += (int)shift;
-		}
-		while ((shift < n) && (read() != -1)) {
-			++shift;
+		long shift = 0;
+		while (shift < n) {
+			final long skipped = myDecoratedStream.skip(n - shift);
+			if (skipped > 0) {
+				shift += skipped;
+				myOffset += (int)skipped;
+			} else if (read() != -1) {
+				++shift;
+			} else {
+				break;
+			}
 		}
 		return shift;
 	}
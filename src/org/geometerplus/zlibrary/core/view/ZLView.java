@@ -35,6 +35,8 @@ abstract public class ZLView {
 
 	abstract public interface FooterArea {
 		int getHeight();
+		// the context is kept between calls while it paints into the same bitmap,
+		// so the footer can skip painting if nothing has been changed
 		void paint(ZLPaintContext context);
 	}
 
@@ -51,6 +51,15 @@ final class ZLMutableString {
 		myLength = newLength;
 	}
 
+	public void append(char c) {
+		final int len = myLength;
+		if (myData.length == len) {
+			myData = ZLArrayUtils.createCopy(myData, len, 2 * len + 1);
+		}
+		myData[len] = c;
+		myLength = len + 1;
+	}
+
 	public void clear() {
 		myLength = 0;
 	}
@@ -72,19 +81,12 @@ final class ZLMutableString {
 	}
 
 	public int hashCode() {
-		final int len = myLength;
+		// all the chars are used: attribute values like "#note12"
+		// differ only in their tails
 		final char[] data = myData;
-		int code = len * 31;
-		if (len > 1) {
-			code += data[0];
-			code *= 31;
-			code += data[1];
-			if (len > 2) {
-				code *= 31;
-				code += data[2];
-			}
-		} else if (len > 0) {
-			code += data[0];
+		int code = myLength;
+		for (int i = myLength; --i >= 0; ) {
+			code = code * 31 + data[i];
 		}
 		return code;
 	}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.xml;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * Decodes UTF-8 and single-byte encodings directly from raw bytes,
+ * without the per-call overhead of InputStreamReader and CharsetDecoder.
+ */
+final class ZLXMLByteReader extends Reader {
+	private static final char REPLACEMENT = '\uFFFD';
+
+	private static final HashMap<String,char[]> ourTables = new HashMap<String,char[]>();
+
+	/**
+	 * Returns byte-to-char table for a single-byte charset, or null for other charsets.
+	 */
+	private static synchronized char[] table(Charset charset) {
+		final String name = charset.name();
+		if (ourTables.containsKey(name)) {
+			return ourTables.get(name);
+		}
+		char[] table = null;
+		if (charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f) {
+			final byte[] bytes = new byte[256];
+			for (int i = 0; i < 256; ++i) {
+				bytes[i] = (byte)i;
+			}
+			final String decoded = new String(bytes, charset);
+			if (decoded.length() == 256) {
+				table = decoded.toCharArray();
+			}
+		}
+		ourTables.put(name, table);
+		return table;
+	}
+
+	static Reader create(InputStream stream, String encoding, int bufferSize) throws IOException {
+		final Charset charset;
+		try {
+			charset = Charset.forName(encoding);
+		} catch (IllegalArgumentException e) {
+			throw new UnsupportedEncodingException(encoding);
+		}
+		if ("UTF-8".equals(charset.name())) {
+			return new ZLXMLByteReader(stream, null, bufferSize);
+		}
+		final char[] table = table(charset);
+		if (table != null) {
+			return new ZLXMLByteReader(stream, table, bufferSize);
+		}
+		return new InputStreamReader(stream, charset);
+	}
+
+	private final InputStream myStream;
+	// null for UTF-8
+	private final char[] myTable;
+	private final int myBufferSize;
+	// allocated on first read(char[]...), not used for byte scanning
+	private byte[] myBytes;
+	private int myOffset;
+	private int myLength;
+	private boolean myEndOfStream;
+	// low surrogate that did not fit into previous read
+	private char myPendingChar;
+	// number of bytes read from the stream
+	private long myBytesRead;
+	// stream offset of the first char returned by the last read() call
+	private long myReadStart;
+
+	private ZLXMLByteReader(InputStream stream, char[] table, int bufferSize) {
+		myStream = stream;
+		myTable = table;
+		myBufferSize = Math.max(bufferSize, 16);
+	}
+
+	/**
+	 * Returns true iff the charset is single-byte and bytes 0x00-0x7F are ASCII
+	 * chars, so markup can be scanned in raw bytes. UTF-8 input is decoded to
+	 * chars instead: scanning it in bytes was not faster on FB2 and was slower
+	 * and allocated more on XHTML, see ZLXMLParserBenchmark.
+	 */
+	boolean canScanBytes() {
+		final char[] table = myTable;
+		if (table == null) {
+			return false;
+		}
+		for (int i = 0; i < 0x80; ++i) {
+			if (table[i] != i) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads raw bytes bypassing the decoder; must not be mixed with read(char[]...).
+	 */
+	int readBytes(byte[] buffer, int offset, int length) throws IOException {
+		final int count = myStream.read(buffer, offset, length);
+		if (count > 0) {
+			myBytesRead += count;
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes bytes[start, end) of a single-byte charset into buffer from given
+	 * offset; returns number of chars.
+	 */
+	int decode(byte[] bytes, int start, int end, char[] buffer, int offset) {
+		final char[] table = myTable;
+		int index = offset;
+		for (int i = start; i < end; ++i) {
+			buffer[index++] = table[bytes[i] & 0xFF];
+		}
+		return index - offset;
+	}
+
+	// keeps unprocessed bytes and reads more; returns false at end of stream
+	private boolean fill() throws IOException {
+		if (myEndOfStream) {
+			return false;
+		}
+		if (myBytes == null) {
+			myBytes = new byte[myBufferSize];
+		}
+		final int rest = myLength - myOffset;
+		if (rest > 0 && myOffset > 0) {
+			System.arraycopy(myBytes, myOffset, myBytes, 0, rest);
+		}
+		myOffset = 0;
+		myLength = rest;
+		final int count = myStream.read(myBytes, rest, myBytes.length - rest);
+		if (count <= 0) {
+			myEndOfStream = true;
+			return false;
+		}
+		myLength += count;
+		myBytesRead += count;
+		return true;
+	}
+
+	/**
+	 * Returns stream offset of the char at given position of the buffer;
+	 * buffer[start] must be the first char returned by the last read() call.
+	 * The result is exact for well-formed input only.
+	 */
+	long streamOffset(char[] buffer, int start, int position) {
+		return myReadStart + encodedLength(buffer, start, position);
+	}
+
+	/**
+	 * Returns number of bytes that encode buffer[start, end).
+	 */
+	int encodedLength(char[] buffer, int start, int end) {
+		if (myTable != null) {
+			return end - start;
+		}
+		int offset = 0;
+		for (int i = start; i < end; ++i) {
+			final char c = buffer[i];
+			if (c < 0x80) {
+				++offset;
+			} else if (c < 0x800) {
+				offset += 2;
+			} else if (c >= 0xD800 && c < 0xDC00) {
+				// high surrogate, the pair is encoded by 4 bytes
+				offset += 4;
+			} else if (c < 0xDC00 || c >= 0xE000) {
+				offset += 3;
+			}
+		}
+		return offset;
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		int index = offset;
+		final int end = offset + length;
+		myReadStart = myBytesRead - (myLength - myOffset);
+		if (myPendingChar != 0) {
+			buffer[index++] = myPendingChar;
+			myPendingChar = 0;
+		}
+		if (myOffset == myLength && !fill() && index == offset) {
+			return -1;
+		}
+		if (myTable != null) {
+			final char[] table = myTable;
+			final byte[] bytes = myBytes;
+			final int count = Math.min(end - index, myLength - myOffset);
+			for (int i = myOffset; i < myOffset + count; ++i) {
+				buffer[index++] = table[bytes[i] & 0xFF];
+			}
+			myOffset += count;
+			return index - offset;
+		}
+		return readUtf8(buffer, index, end) - offset;
+	}
+
+	private int readUtf8(char[] buffer, int index, int end) throws IOException {
+		final byte[] bytes = myBytes;
+		int i = myOffset;
+		int length = myLength;
+		while (index < end) {
+			// ASCII fast path
+			final int limit = Math.min(length, i + end - index);
+			while (i < limit && bytes[i] >= 0) {
+				buffer[index++] = (char)bytes[i++];
+			}
+			if (index == end) {
+				break;
+			}
+			if (i == length) {
+				myOffset = i;
+				if (!fill()) {
+					return index;
+				}
+				i = 0;
+				length = myLength;
+				continue;
+			}
+
+			final int b = bytes[i] & 0xFF;
+			final int sequenceLength;
+			int code;
+			if (b >= 0xF0 && b <= 0xF4) {
+				sequenceLength = 4;
+				code = b & 0x07;
+			} else if (b >= 0xE0) {
+				sequenceLength = b <= 0xEF ? 3 : 1;
+				code = b & 0x0F;
+			} else if (b >= 0xC2) {
+				sequenceLength = 2;
+				code = b & 0x1F;
+			} else {
+				sequenceLength = 1;
+				code = -1;
+			}
+			if (sequenceLength == 1) {
+				buffer[index++] = REPLACEMENT;
+				++i;
+				continue;
+			}
+			if (i + sequenceLength > length) {
+				myOffset = i;
+				if (fill()) {
+					i = 0;
+					length = myLength;
+					continue;
+				}
+				// truncated sequence at the end of stream
+				length = myLength;
+				i = length;
+				myOffset = length;
+				buffer[index++] = REPLACEMENT;
+				continue;
+			}
+			int j = 1;
+			for (; j < sequenceLength; ++j) {
+				final int c = bytes[i + j] & 0xFF;
+				if ((c & 0xC0) != 0x80) {
+					break;
+				}
+				code = (code << 6) | (c & 0x3F);
+			}
+			if (j < sequenceLength ||
+				(sequenceLength == 3 && code < 0x800) ||
+				(sequenceLength == 4 && (code < 0x10000 || code > 0x10FFFF))) {
+				buffer[index++] = REPLACEMENT;
+				i += j;
+				continue;
+			}
+			i += sequenceLength;
+			if (code < 0x10000) {
+				buffer[index++] = (char)code;
+			} else {
+				code -= 0x10000;
+				buffer[index++] = (char)(0xD800 + (code >> 10));
+				final char low = (char)(0xDC00 + (code & 0x3FF));
+				if (index < end) {
+					buffer[index++] = low;
+				} else {
+					myPendingChar = low;
+				}
+			}
+		}
+		myOffset = i;
+		return index;
+	}
+
+	@Override
+	public void close() throws IOException {
+		myStream.close();
+	}
+}
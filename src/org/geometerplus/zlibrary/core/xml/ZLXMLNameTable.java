@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.xml;
+
+/**
+ * Maps raw bytes of tag, attribute and entity names to interned strings,
+ * so a name seen before is matched by comparing bytes, without decoding.
+ */
+final class ZLXMLNameTable {
+	private byte[][] myKeys = new byte[256][];
+	private String[] myValues = new String[256];
+	private int mySize;
+
+	private static int hash(byte[] bytes, int start, int end) {
+		int code = end - start;
+		for (int i = start; i < end; ++i) {
+			code = code * 31 + bytes[i];
+		}
+		return code ^ (code >>> 16);
+	}
+
+	String get(byte[] bytes, int start, int end) {
+		final byte[][] keys = myKeys;
+		final int mask = keys.length - 1;
+		final int length = end - start;
+		for (int index = hash(bytes, start, end) & mask; ; index = (index + 1) & mask) {
+			final byte[] key = keys[index];
+			if (key == null) {
+				return null;
+			}
+			if (key.length == length) {
+				int i = length;
+				while (--i >= 0 && key[i] == bytes[start + i]) {
+				}
+				if (i < 0) {
+					return myValues[index];
+				}
+			}
+		}
+	}
+
+	void put(byte[] bytes, int start, int end, String value) {
+		if (2 * (mySize + 1) > myKeys.length) {
+			final byte[][] keys = myKeys;
+			final String[] values = myValues;
+			myKeys = new byte[2 * keys.length][];
+			myValues = new String[2 * keys.length];
+			mySize = 0;
+			for (int i = 0; i < keys.length; ++i) {
+				if (keys[i] != null) {
+					put(keys[i], 0, keys[i].length, values[i]);
+				}
+			}
+		}
+		final byte[] key = new byte[end - start];
+		System.arraycopy(bytes, start, key, 0, key.length);
+		final int mask = myKeys.length - 1;
+		int index = hash(key, 0, key.length) & mask;
+		while (myKeys[index] != null) {
+			index = (index + 1) & mask;
+		}
+		myKeys[index] = key;
+		myValues[index] = value;
+		++mySize;
+	}
+
+	int size() {
+		return mySize;
+	}
+}
@@ -67,7 +67,9 @@ final class ZLXMLParser {
 		return s;
 	}
 
-	private final InputStreamReader myStreamReader;
+	private final Reader myStreamReader;
+	// not null iff markup is scanned in raw bytes
+	private final ZLXMLByteReader myByteReader;
 	private final ZLXMLReader myXMLReader;
 	private final boolean myProcessNamespaces;
 
@@ -94,6 +96,36 @@ final class ZLXMLParser {
 		queue.add(buffer);
 	}
 
+	private static HashMap<String,Queue<ZLXMLNameTable>> ourNameTablePool =
+		new HashMap<String,Queue<ZLXMLNameTable>>();
+	// a table that grew larger is dropped, not to keep names of a broken file forever
+	private static final int MAX_POOLED_NAMES = 2048;
+
+	// name tables are reused between files, so the names of tags and attributes
+	// seen in previous files are matched without decoding
+	private static synchronized ZLXMLNameTable getNameTable(String encoding) {
+		final Queue<ZLXMLNameTable> queue = ourNameTablePool.get(encoding);
+		if (queue != null) {
+			final ZLXMLNameTable table = queue.poll();
+			if (table != null) {
+				return table;
+			}
+		}
+		return new ZLXMLNameTable();
+	}
+
+	private static synchronized void storeNameTable(String encoding, ZLXMLNameTable table) {
+		if (table.size() > MAX_POOLED_NAMES) {
+			return;
+		}
+		Queue<ZLXMLNameTable> queue = ourNameTablePool.get(encoding);
+		if (queue == null) {
+			queue = new LinkedList<ZLXMLNameTable>();
+			ourNameTablePool.put(encoding, queue);
+		}
+		queue.add(table);
+	}
+
 	private static synchronized ZLMutableString getMutableString() {
 		ZLMutableString string = ourStringPool.poll();
 		return (string != null) ? string : new ZLMutableString();
@@ -105,6 +137,8 @@ final class ZLXMLParser {
 
 	private final char[] myBuffer;
 	private int myBufferDescriptionLength;
+	private final String myEncoding;
+	private ZLXMLNameTable myNameTable;
 	private final ZLMutableString myTagName = getMutableString();
 	private final ZLMutableString myCData = getMutableString();
 	private final ZLMutableString myAttributeName = getMutableString();
@@ -117,9 +151,18 @@ final class ZLXMLParser {
 		storeString(myAttributeName);
 		storeString(myAttributeValue);
 		storeString(myEntityName);
+		if (myNameTable != null) {
+			storeNameTable(myEncoding, myNameTable);
+			myNameTable = null;
+		}
 	}
 
 	public ZLXMLParser(ZLXMLReader xmlReader, InputStream stream, int bufferSize) throws IOException {
+		this(xmlReader, stream, bufferSize, true);
+	}
+
+	// scanBytes == false forces decoding of the whole input before parsing
+	ZLXMLParser(ZLXMLReader xmlReader, InputStream stream, int bufferSize, boolean scanBytes) throws IOException {
 		myXMLReader = xmlReader;
 		myProcessNamespaces = xmlReader.processNamespaces();
 
@@ -129,7 +172,11 @@ final class ZLXMLParser {
 		boolean found = false;
 		int len = 0;
 		while (len < 256) {
-			char c = (char)stream.read();
+			final int b = stream.read();
+			if (b == -1) {
+				break;
+			}
+			final char c = (char)b;
 			buffer[len++] = c;
 			if (c == '>') {
 				found = true;
@@ -154,7 +201,50 @@ final class ZLXMLParser {
 			}
 		}
 
-		myStreamReader = new InputStreamReader(stream, encoding);
+		myStreamReader = ZLXMLByteReader.create(stream, encoding, bufferSize);
+		if (scanBytes && myStreamReader instanceof ZLXMLByteReader &&
+			((ZLXMLByteReader)myStreamReader).canScanBytes()) {
+			myByteReader = (ZLXMLByteReader)myStreamReader;
+		} else {
+			myByteReader = null;
+		}
+		myEncoding = encoding.toLowerCase();
+		myDescriptionLength = len;
+	}
+
+	// true if markup is scanned in raw bytes, see doItInBytes()
+	boolean scansBytes() {
+		return myByteReader != null;
+	}
+
+	// number of bytes read before the stream reader was created
+	private final int myDescriptionLength;
+	// buffer position of the first char of the last read chunk
+	private int myChunkStart;
+	private boolean myChunkIsDescription;
+	// CDATA text and entity values are passed from separate buffers, their offsets are unknown
+	private boolean myTextIsCopied;
+
+	/**
+	 * Returns offset in the stream of the char at given position of the buffer,
+	 * valid during a handler call; -1 for CDATA text and entity values, or if it
+	 * cannot be computed for the encoding.
+	 */
+	long getStreamOffset(int bufferPosition) {
+		if (myTextIsCopied) {
+			return -1;
+		}
+		if (myByteReader != null) {
+			return myTextStreamOffset + myByteReader.encodedLength(myTextBuffer, 0, bufferPosition);
+		}
+		if (myChunkIsDescription) {
+			return bufferPosition - myChunkStart;
+		}
+		if (!(myStreamReader instanceof ZLXMLByteReader)) {
+			return -1;
+		}
+		return myDescriptionLength +
+			((ZLXMLByteReader)myStreamReader).streamOffset(myBuffer, myChunkStart, bufferPosition);
 	}
 
 	private static char[] getEntityValue(HashMap<String,char[]> entityMap, String name) {
@@ -201,10 +291,18 @@ final class ZLXMLParser {
 	}
 
 	void doIt() throws IOException {
+		if (myByteReader != null) {
+			doItInBytes();
+		} else {
+			doItInChars();
+		}
+	}
+
+	private void doItInChars() throws IOException {
 		final ZLXMLReader xmlReader = myXMLReader;
 		final HashMap<String,char[]> entityMap = getDTDMap(xmlReader.externalDTDs());
 		xmlReader.addExternalEntities(entityMap);
-		final InputStreamReader streamReader = myStreamReader;
+		final Reader streamReader = myStreamReader;
 		final boolean processNamespaces = myProcessNamespaces;
 		HashMap<String,String> oldNamespaceMap = processNamespaces ? new HashMap<String,String>() : null;
 		HashMap<String,String> currentNamespaceMap = null;
@@ -228,8 +326,10 @@ final class ZLXMLParser {
 			if (myBufferDescriptionLength > 0) {
 				count = myBufferDescriptionLength;
 				myBufferDescriptionLength = 0;
+				myChunkIsDescription = true;
 			} else {
 				count = streamReader.read(buffer);
+				myChunkIsDescription = false;
 			}
 			if (count <= 0) {
 				streamReader.close();
@@ -242,6 +342,7 @@ final class ZLXMLParser {
 				System.arraycopy(buffer, 0, buffer, startPosition, count);
 				count = buffer.length;
 			}
+			myChunkStart = startPosition;
 			try {
 				for (int i = startPosition - 1;;) {
 mainSwitchLabel:
@@ -318,7 +419,9 @@ mainSwitchLabel:
 								if (len > 8) {
 									char data[] = cData.myData;
 									if (new String(data, 0, 6).equals("CDATA[")) {
+										myTextIsCopied = true;
 										xmlReader.characterDataHandler(data, 6, len - 8);
+										myTextIsCopied = false;
 									}
 								}
 								cData.clear();
@@ -614,7 +717,9 @@ mainSwitchLabel:
 													tagName.append(value, 0, value.length);
 													break;
 												case TEXT:
+													myTextIsCopied = true;
 													xmlReader.characterDataHandler(value, 0, value.length);
+													myTextIsCopied = false;
 													break;
 											}
 										}
@@ -742,6 +847,538 @@ mainSwitchLabel:
 		}
 	}
 
+	// stream offset of the first byte of text passed to the current handler call
+	private long myTextStreamOffset;
+	// decoded text passed to handlers in byte scanning mode
+	private char[] myTextBuffer;
+
+	private String internName(byte[] bytes, int start, int end) {
+		final ZLXMLNameTable table = myNameTable;
+		String name = table.get(bytes, start, end);
+		if (name == null) {
+			final char[] chars = myTextBuffer;
+			name = new String(chars, 0, myByteReader.decode(bytes, start, end, chars, 0)).intern();
+			table.put(bytes, start, end, name);
+		}
+		return name;
+	}
+
+	private int decodeText(byte[] bytes, int start, int end, long streamOffset) {
+		myTextStreamOffset = streamOffset;
+		return myByteReader.decode(bytes, start, end, myTextBuffer, 0);
+	}
+
+	private void appendDecoded(ZLMutableString string, byte[] bytes, int start, int end) {
+		final char[] chars = myTextBuffer;
+		string.append(chars, 0, myByteReader.decode(bytes, start, end, chars, 0));
+	}
+
+	/**
+	 * Same state machine as doItInChars(), running over raw bytes of a single-byte
+	 * encoding. Markup chars are ASCII, so names are matched against the name
+	 * table bytes, and only text and attribute values are decoded.
+	 * Unlike the char parser, entity references are not expanded inside names.
+	 */
+	private void doItInBytes() throws IOException {
+		final ZLXMLReader xmlReader = myXMLReader;
+		final HashMap<String,char[]> entityMap = getDTDMap(xmlReader.externalDTDs());
+		xmlReader.addExternalEntities(entityMap);
+		final ZLXMLByteReader byteReader = myByteReader;
+		final boolean processNamespaces = myProcessNamespaces;
+		HashMap<String,String> oldNamespaceMap = processNamespaces ? new HashMap<String,String>() : null;
+		HashMap<String,String> currentNamespaceMap = null;
+		final ArrayList<HashMap<String,String>> namespaceMapStack = new ArrayList<HashMap<String,String>>();
+		final ZLMutableString cData = myCData;
+		final ZLMutableString attributeValue = myAttributeValue;
+		final boolean dontCacheAttributeValues = xmlReader.dontCacheAttributeValues();
+		final Map<ZLMutableString,String> strings = new HashMap<ZLMutableString, String>();
+		final ZLStringMap attributes = new ZLStringMap();
+		String[] tagStack = new String[10];
+		int tagStackSize = 0;
+		String tagName = null;
+		String attributeName = null;
+
+		myNameTable = getNameTable(myEncoding);
+		myTextBuffer = myBuffer;
+		byte[] bytes = new byte[myBuffer.length];
+		// unfinished name or char sequence, kept at the beginning of the buffer
+		int kept = 0;
+		// stream offset of bytes[0]
+		// byte scanning needs an encoding declaration, so the bytes
+		// read by constructor contain the declaration only
+		long keptOffset = myDescriptionLength;
+
+		byte state = START_DOCUMENT;
+		byte savedState = START_DOCUMENT;
+		while (true) {
+			final int read = byteReader.readBytes(bytes, kept, bytes.length - kept);
+			if (read <= 0) {
+				byteReader.close();
+				return;
+			}
+			final int count = kept + read;
+			// data is moved to the end of buffer, the loop stops on index overflow
+			final int base = bytes.length - count;
+			if (base > 0) {
+				System.arraycopy(bytes, 0, bytes, base, count);
+			}
+			// stream offset of bytes[base]
+			final long baseOffset = keptOffset;
+			int startPosition = base;
+			try {
+				for (int i = base - 1;;) {
+mainSwitchLabel:
+					switch (state) {
+						case START_DOCUMENT:
+							while (true) {
+								switch (bytes[++i]) {
+									case '<':
+										state = LANGLE;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+								}
+							}
+						case LANGLE:
+							switch (bytes[++i]) {
+								case '/':
+									state = END_TAG;
+									startPosition = i + 1;
+									break;
+								case '!':
+									state = EXCL_TAG_START;
+									break;
+								case '?':
+									state = Q_TAG;
+									break;
+								default:
+									state = START_TAG;
+									startPosition = i;
+									break;
+							}
+							break;
+						case EXCL_TAG_START:
+							switch (bytes[++i]) {
+								case '-':
+									state = COMMENT;
+									break;
+								case '[':
+									state = CDATA;
+									startPosition = i + 1;
+									break;
+								default:
+									state = EXCL_TAG;
+									break;
+							}
+							break;
+						case EXCL_TAG:
+							while (true) {
+								switch (bytes[++i]) {
+									case '>':
+										state = TEXT;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+								}
+							}
+						case CDATA:
+							while (true) {
+								switch (bytes[++i]) {
+									case ']':
+										state = END_OF_CDATA1;
+										break mainSwitchLabel;
+								}
+							}
+						case END_OF_CDATA1:
+							if (bytes[++i] == ']') {
+								state = END_OF_CDATA2;
+							} else {
+								state = CDATA;
+							}
+							break;
+						case END_OF_CDATA2:
+							if (bytes[++i] == '>') {
+								appendDecoded(cData, bytes, startPosition, i);
+								int len = cData.myLength;
+								if (len > 8) {
+									char data[] = cData.myData;
+									if (new String(data, 0, 6).equals("CDATA[")) {
+										myTextIsCopied = true;
+										xmlReader.characterDataHandler(data, 6, len - 8);
+										myTextIsCopied = false;
+									}
+								}
+								cData.clear();
+								state = TEXT;
+								startPosition = i + 1;
+							} else {
+								state = CDATA;
+							}
+							break;
+						case COMMENT:
+							while (true) {
+								switch (bytes[++i]) {
+									case '-':
+										state = END_OF_COMMENT1;
+										break mainSwitchLabel;
+								}
+							}
+						case END_OF_COMMENT1:
+							if (bytes[++i] == '-') {
+								state = END_OF_COMMENT2;
+							} else {
+								state = COMMENT;
+							}
+							break mainSwitchLabel;
+						case END_OF_COMMENT2:
+							switch (bytes[++i]) {
+								case '>':
+									state = TEXT;
+									startPosition = i + 1;
+									break;
+								case '-':
+									break;
+								default:
+									state = COMMENT;
+									break;
+							}
+							break;
+						case Q_TAG:
+							while (true) {
+								switch (bytes[++i]) {
+									case '?':
+										state = END_OF_Q_TAG;
+										break mainSwitchLabel;
+								}
+							}
+						case END_OF_Q_TAG:
+							if (bytes[++i] == '>') {
+								state = TEXT;
+								startPosition = i + 1;
+							} else {
+								state = Q_TAG;
+							}
+							break mainSwitchLabel;
+						case START_TAG:
+							while (true) {
+								switch (bytes[++i]) {
+									case 0x0008:
+									case 0x0009:
+									case 0x000A:
+									case 0x000B:
+									case 0x000C:
+									case 0x000D:
+									case ' ':
+										state = WS_AFTER_START_TAG_NAME;
+										tagName = internName(bytes, startPosition, i);
+										break mainSwitchLabel;
+									case '>':
+										state = TEXT;
+										tagName = internName(bytes, startPosition, i);
+										if (tagStackSize == tagStack.length) {
+											tagStack = ZLArrayUtils.createCopy(tagStack, tagStackSize, tagStackSize << 1);
+										}
+										tagStack[tagStackSize++] = tagName;
+										if (processNamespaces) {
+											if (currentNamespaceMap != null) {
+												oldNamespaceMap = currentNamespaceMap;
+											}
+											namespaceMapStack.add(currentNamespaceMap);
+										}
+										if (processStartTag(xmlReader, tagName, attributes, currentNamespaceMap)) {
+											byteReader.close();
+											return;
+										}
+										currentNamespaceMap = null;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+									case '/':
+										state = SLASH;
+										if (processFullTag(xmlReader, internName(bytes, startPosition, i), attributes)) {
+											byteReader.close();
+											return;
+										}
+										currentNamespaceMap = null;
+										break mainSwitchLabel;
+								}
+							}
+						case WS_AFTER_START_TAG_NAME:
+							switch (bytes[++i]) {
+								case '>':
+									if (tagStackSize == tagStack.length) {
+										tagStack = ZLArrayUtils.createCopy(tagStack, tagStackSize, tagStackSize << 1);
+									}
+									tagStack[tagStackSize++] = tagName;
+									if (processNamespaces) {
+										if (currentNamespaceMap != null) {
+											oldNamespaceMap = currentNamespaceMap;
+										}
+										namespaceMapStack.add(currentNamespaceMap);
+									}
+									if (processStartTag(xmlReader, tagName, attributes, currentNamespaceMap)) {
+										byteReader.close();
+										return;
+									}
+									currentNamespaceMap = null;
+									state = TEXT;
+									startPosition = i + 1;
+									break;
+								case '/':
+									state = SLASH;
+									if (processFullTag(xmlReader, tagName, attributes)) {
+										byteReader.close();
+										return;
+									}
+									currentNamespaceMap = null;
+									break;
+								case 0x0008:
+								case 0x0009:
+								case 0x000A:
+								case 0x000B:
+								case 0x000C:
+								case 0x000D:
+								case ' ':
+									break;
+								default:
+									state = ATTRIBUTE_NAME;
+									startPosition = i;
+									break;
+							}
+							break;
+						case ATTRIBUTE_NAME:
+							while (true) {
+								switch (bytes[++i]) {
+									case '=':
+										attributeName = internName(bytes, startPosition, i);
+										state = WAIT_ATTRIBUTE_VALUE;
+										break mainSwitchLabel;
+									case 0x0008:
+									case 0x0009:
+									case 0x000A:
+									case 0x000B:
+									case 0x000C:
+									case 0x000D:
+									case ' ':
+										attributeName = internName(bytes, startPosition, i);
+										state = WAIT_EQUALS;
+										break mainSwitchLabel;
+								}
+							}
+						case WAIT_EQUALS:
+							while (true) {
+								switch (bytes[++i]) {
+									case '=':
+										state = WAIT_ATTRIBUTE_VALUE;
+										break mainSwitchLabel;
+								}
+							}
+						case WAIT_ATTRIBUTE_VALUE:
+							while (true) {
+								switch (bytes[++i]) {
+									case '"':
+										state = ATTRIBUTE_VALUE_QUOT;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+									case '\'':
+										state = ATTRIBUTE_VALUE_APOS;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+								}
+							}
+						case WS_AFTER_ATTRIBUTE_VALUE:
+							switch (bytes[++i]) {
+								case 0x0008:
+								case 0x0009:
+								case 0x000A:
+								case 0x000B:
+								case 0x000C:
+								case 0x000D:
+								case ' ':
+									state = WS_AFTER_START_TAG_NAME;
+									break;
+								case '/':
+								case '>':
+									state = WS_AFTER_START_TAG_NAME;
+									--i;
+									break;
+								case '"':
+									if (i > base) {
+										attributeValue.append((char)bytes[i - 1]);
+									}
+									break mainSwitchLabel;
+								default:
+									state = ATTRIBUTE_NAME;
+									break mainSwitchLabel;
+							}
+							if (processNamespaces && attributeName.equals("xmlns")) {
+								if (currentNamespaceMap == null) {
+									currentNamespaceMap = new HashMap<String,String>(oldNamespaceMap);
+								}
+								currentNamespaceMap.put("", attributeValue.toString());
+								attributeValue.clear();
+							} else if (processNamespaces && attributeName.startsWith("xmlns:")) {
+								if (currentNamespaceMap == null) {
+									currentNamespaceMap = new HashMap<String,String>(oldNamespaceMap);
+								}
+								currentNamespaceMap.put(attributeName.substring(6), attributeValue.toString());
+								attributeValue.clear();
+							} else if (dontCacheAttributeValues) {
+								attributes.put(attributeName, attributeValue.toString());
+								attributeValue.clear();
+							} else {
+								attributes.put(attributeName, convertToString(strings, attributeValue));
+							}
+							break;
+						case ATTRIBUTE_VALUE_QUOT:
+							while (true) {
+								switch (bytes[++i]) {
+									case '"':
+										appendDecoded(attributeValue, bytes, startPosition, i);
+										state = WS_AFTER_ATTRIBUTE_VALUE;
+										break mainSwitchLabel;
+									case '&':
+										appendDecoded(attributeValue, bytes, startPosition, i);
+										savedState = ATTRIBUTE_VALUE_QUOT;
+										state = ENTITY_REF;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+								}
+							}
+						case ATTRIBUTE_VALUE_APOS:
+							while (true) {
+								switch (bytes[++i]) {
+									case '\'':
+										appendDecoded(attributeValue, bytes, startPosition, i);
+										state = WS_AFTER_ATTRIBUTE_VALUE;
+										break mainSwitchLabel;
+									case '&':
+										appendDecoded(attributeValue, bytes, startPosition, i);
+										savedState = ATTRIBUTE_VALUE_APOS;
+										state = ENTITY_REF;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+								}
+							}
+						case ENTITY_REF:
+							while (true) {
+								switch (bytes[++i]) {
+									case ';':
+										final char[] value = getEntityValue(entityMap, internName(bytes, startPosition, i));
+										state = savedState;
+										startPosition = i + 1;
+										if ((value != null) && (value.length != 0)) {
+											switch (state) {
+												case ATTRIBUTE_VALUE_QUOT:
+												case ATTRIBUTE_VALUE_APOS:
+													attributeValue.append(value, 0, value.length);
+													break;
+												case TEXT:
+													myTextIsCopied = true;
+													xmlReader.characterDataHandler(value, 0, value.length);
+													myTextIsCopied = false;
+													break;
+											}
+										}
+										break mainSwitchLabel;
+								}
+							}
+						case SLASH:
+							while (true) {
+								switch (bytes[++i]) {
+									case '>':
+										state = TEXT;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+								}
+							}
+						case END_TAG:
+							while (true) {
+								switch (bytes[++i]) {
+									case '>':
+										if (tagStackSize > 0) {
+											if (processNamespaces &&
+													(namespaceMapStack.remove(tagStackSize - 1) != null)) {
+												for (int j = namespaceMapStack.size() - 1; j >= 0; --j) {
+													HashMap<String,String> element = namespaceMapStack.get(j);
+													if (element != null) {
+														oldNamespaceMap = element;
+														currentNamespaceMap = oldNamespaceMap;
+														break;
+													}
+												}
+											}
+											if (processEndTag(xmlReader, tagStack[--tagStackSize], currentNamespaceMap)) {
+												byteReader.close();
+												return;
+											}
+											currentNamespaceMap = null;
+										}
+										state = TEXT;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+								}
+							}
+						case TEXT:
+							while (true) {
+								switch (bytes[++i]) {
+									case '<':
+										if (i > startPosition) {
+											xmlReader.characterDataHandlerFinal(myTextBuffer, 0,
+												decodeText(bytes, startPosition, i, baseOffset + startPosition - base));
+										}
+										state = LANGLE;
+										break mainSwitchLabel;
+									case '&':
+										if (i > startPosition) {
+											xmlReader.characterDataHandler(myTextBuffer, 0,
+												decodeText(bytes, startPosition, i, baseOffset + startPosition - base));
+										}
+										savedState = TEXT;
+										state = ENTITY_REF;
+										startPosition = i + 1;
+										break mainSwitchLabel;
+								}
+							}
+					}
+				}
+			} catch (ArrayIndexOutOfBoundsException e) {
+				final int length = bytes.length;
+				int keepFrom = length;
+				if (length > startPosition) {
+					switch (state) {
+						case START_TAG:
+						case ATTRIBUTE_NAME:
+						case ENTITY_REF:
+							keepFrom = startPosition;
+							break;
+						case ATTRIBUTE_VALUE_QUOT:
+						case ATTRIBUTE_VALUE_APOS:
+							appendDecoded(attributeValue, bytes, startPosition, length);
+							break;
+						case CDATA:
+						case END_OF_CDATA1:
+						case END_OF_CDATA2:
+							appendDecoded(cData, bytes, startPosition, length);
+							break;
+						case TEXT:
+							xmlReader.characterDataHandler(myTextBuffer, 0,
+								decodeText(bytes, startPosition, length, baseOffset + startPosition - base));
+							break;
+					}
+				}
+				kept = length - keepFrom;
+				keptOffset = baseOffset + keepFrom - base;
+				if (2 * kept > length) {
+					// a name longer than half of the buffer
+					final byte[] larger = new byte[2 * length];
+					System.arraycopy(bytes, keepFrom, larger, 0, kept);
+					bytes = larger;
+					myTextBuffer = new char[larger.length];
+				} else if (kept > 0) {
+					System.arraycopy(bytes, keepFrom, bytes, 0, kept);
+				}
+			}
+		}
+	}
+
 	private static boolean processFullTag(ZLXMLReader xmlReader, String tagName, ZLStringMap attributes) {
 		if (xmlReader.startElementHandler(tagName, attributes)) {
 			return true;
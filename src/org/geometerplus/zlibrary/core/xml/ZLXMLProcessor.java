@@ -35,8 +35,13 @@ public abstract class ZLXMLProcessor {
 
 	public static boolean read(ZLXMLReader reader, InputStream stream, int bufferSize) {
 		ZLXMLParser parser = null;
+		final ZLXMLReaderAdapter adapter =
+			(reader instanceof ZLXMLReaderAdapter) ? (ZLXMLReaderAdapter)reader : null;
 		try {
 			parser = new ZLXMLParser(reader, stream, bufferSize);
+			if (adapter != null) {
+				adapter.myParser = parser;
+			}
 			reader.startDocumentHandler();
 			parser.doIt();
 			reader.endDocumentHandler();
@@ -44,6 +49,9 @@ public abstract class ZLXMLProcessor {
 			//System.out.println(e);
 			return false;
 		} finally {
+			if (adapter != null) {
+				adapter.myParser = null;
+			}
 			if (parser != null) {
 				parser.finish();
 			}
@@ -26,6 +26,8 @@ import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 
 public abstract class ZLXMLReaderAdapter implements ZLXMLReader {
 	private Map<String,String> myNamespaceMap = Collections.emptyMap();
+	// parser running this reader, set by ZLXMLProcessor
+	ZLXMLParser myParser;
 
  	public boolean read(ZLFile file) {
 		return ZLXMLProcessor.read(this, file);
@@ -35,6 +37,17 @@ public abstract class ZLXMLReaderAdapter implements ZLXMLReader {
 		return ZLXMLProcessor.read(this, stream, 65536);
 	}
 	
+	/**
+	 * Returns offset in the source stream of the char at given position
+	 * of the buffer passed to the current characterDataHandler() call,
+	 * or -1 if the offset is unknown (e.g. for CDATA text and entity values, or
+	 * for multibyte encodings other than UTF-8).
+	 */
+	protected final long getStreamOffset(int bufferPosition) {
+		final ZLXMLParser parser = myParser;
+		return (parser != null) ? parser.getStreamOffset(bufferPosition) : -1;
+	}
+
 	public boolean dontCacheAttributeValues() {
 		return false;
 	}
@@ -44,14 +44,35 @@ public abstract class ZLTextHyphenator {
 	protected ZLTextHyphenator() {
 	}
 
+	private String myCacheDirectory;
+
+	/**
+	 * Sets directory for compiled pattern images; images are not stored if it is not set.
+	 */
+	public synchronized void setCacheDirectory(String directory) {
+		myCacheDirectory = directory;
+	}
+
+	protected synchronized String getCacheDirectory() {
+		return myCacheDirectory;
+	}
+
 	public abstract List<String> languageCodes();
 	public abstract void load(final String languageCode);
 	public abstract void unload();
 
-	public ZLTextHyphenationInfo getInfo(final ZLTextWord word) {
+	// scratch buffers reused between calls
+	private boolean[] myIsLetter = new boolean[32];
+	private char[] myPattern = new char[34];
+
+	public synchronized ZLTextHyphenationInfo getInfo(final ZLTextWord word) {
 		final int len = word.Length;
-		final boolean[] isLetter = new boolean[len];
-		final char[] pattern = new char[len + 2];
+		if (myIsLetter.length < len) {
+			myIsLetter = new boolean[len + 16];
+			myPattern = new char[len + 18];
+		}
+		final boolean[] isLetter = myIsLetter;
+		final char[] pattern = myPattern;
 		final char[] data = word.Data;
 		pattern[0] = ' ';
 		for (int i = 0, j = word.Offset; i < len; ++i, ++j) {
@@ -60,6 +81,7 @@ public abstract class ZLTextHyphenator {
 				isLetter[i] = true;
 				pattern[i + 1] = Character.toLowerCase(symbol);
 			} else {
+				isLetter[i] = false;
 				pattern[i + 1] = ' ';
 			}
 		}
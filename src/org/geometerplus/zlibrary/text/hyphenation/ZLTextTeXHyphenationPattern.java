@@ -23,16 +23,6 @@ public final class ZLTextTeXHyphenationPattern {
 	int myLength;
 	final char[] mySymbols;
 	private final byte[] myValues;
-	int myHashCode;
-
-	void update(char[] pattern, int offset, int length) {
-		// We assert
-		// 		1. this pattern doesn't use values
-		// 		length <= original pattern length
-		System.arraycopy(pattern, offset, mySymbols, 0, length);
-		myLength = length;
-		myHashCode = 0;
-	}
 
 	public ZLTextTeXHyphenationPattern(char[] pattern, int offset, int length, boolean useValues) {
 		if (useValues) {
@@ -68,48 +58,6 @@ public final class ZLTextTeXHyphenationPattern {
 		}
 	}
 	
-	void apply(byte[] mask, int position) {
-		final int patternLength = myLength;
-		final byte[] values = myValues;
-		for (int i = 0, j = position; i <= patternLength; ++i, ++j) {
-			final byte val = values[i];
-			if (mask[j] < val) {
-				mask[j] = val;
-			}
-		}
-	}
-
-	public boolean equals(Object o) {
-		ZLTextTeXHyphenationPattern pattern = (ZLTextTeXHyphenationPattern)o;
-		int len = myLength;
-		if (len != pattern.myLength) {
-			return false;
-		}
-		final char[] symbols0 = mySymbols;
-		final char[] symbols1 = pattern.mySymbols;
-		while (len-- != 0) {
-			if (symbols0[len] != symbols1[len]) {
-				return false;
-			}
-		}
-		return true;
-	}
-
-	public int hashCode() {
-		int hash = myHashCode;
-		if (hash == 0) {
-			final char[] symbols = mySymbols;
-			hash = 0;
-			int index = myLength;
-			while (index-- != 0) {
-				hash *= 31;
-				hash += symbols[index];
-			}
-			myHashCode = hash;
-		}
-		return hash;
-	}
-
 	public int getLength() {
 		return myLength;
 	}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.hyphenation;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+/**
+ * Hyphenation patterns compiled into a trie.
+ * Children of a node are consecutive nodes sorted by symbol;
+ * a node ending a pattern refers to the pattern values in a shared byte array.
+ * The trie could be saved into a binary image; the image is mapped into memory
+ * and copied into arrays once, since the walk over NIO buffers is much slower.
+ */
+final class ZLTextTeXHyphenationTrie {
+	private static final int MAGIC = 0x48595048; // "HYPH"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 20;
+
+	private final char[] mySymbols;
+	private final int[] myFirstChild;
+	private final int[] myChildrenNumber;
+	// offset of values of the pattern ending in the node, or -1
+	private final int[] myValuesOffset;
+	private final byte[] myValues;
+
+	private ZLTextTeXHyphenationTrie(char[] symbols, int[] firstChild, int[] childrenNumber, int[] valuesOffset, byte[] values) {
+		mySymbols = symbols;
+		myFirstChild = firstChild;
+		myChildrenNumber = childrenNumber;
+		myValuesOffset = valuesOffset;
+		myValues = values;
+	}
+
+	private static int compare(ZLTextTeXHyphenationPattern p0, ZLTextTeXHyphenationPattern p1) {
+		final char[] symbols0 = p0.mySymbols;
+		final char[] symbols1 = p1.mySymbols;
+		final int len = Math.min(p0.myLength, p1.myLength);
+		for (int i = 0; i < len; ++i) {
+			if (symbols0[i] != symbols1[i]) {
+				return symbols0[i] - symbols1[i];
+			}
+		}
+		return p0.myLength - p1.myLength;
+	}
+
+	static ZLTextTeXHyphenationTrie compile(List<ZLTextTeXHyphenationPattern> list) {
+		if (list.isEmpty()) {
+			return null;
+		}
+		final ZLTextTeXHyphenationPattern[] patterns =
+			list.toArray(new ZLTextTeXHyphenationPattern[list.size()]);
+		Arrays.sort(patterns, new Comparator<ZLTextTeXHyphenationPattern>() {
+			public int compare(ZLTextTeXHyphenationPattern p0, ZLTextTeXHyphenationPattern p1) {
+				return ZLTextTeXHyphenationTrie.compare(p0, p1);
+			}
+		});
+
+		// every node is a distinct prefix of some pattern
+		int nodesNumber = 1;
+		int valuesSize = 0;
+		for (int i = 0; i < patterns.length; ++i) {
+			final ZLTextTeXHyphenationPattern pattern = patterns[i];
+			int common = 0;
+			if (i > 0) {
+				final ZLTextTeXHyphenationPattern previous = patterns[i - 1];
+				final int len = Math.min(previous.myLength, pattern.myLength);
+				while (common < len && previous.mySymbols[common] == pattern.mySymbols[common]) {
+					++common;
+				}
+			}
+			nodesNumber += pattern.myLength - common;
+			valuesSize += pattern.myLength + 1;
+		}
+
+		final char[] symbols = new char[nodesNumber];
+		final int[] firstChild = new int[nodesNumber];
+		final int[] childrenNumber = new int[nodesNumber];
+		final int[] valuesOffset = new int[nodesNumber];
+		final byte[] values = new byte[valuesSize];
+		Arrays.fill(valuesOffset, -1);
+
+		// nodes are laid out in breadth-first order;
+		// for every queued node we keep the range of patterns starting with its prefix
+		final int[] rangeStart = new int[nodesNumber];
+		final int[] rangeEnd = new int[nodesNumber];
+		final int[] depth = new int[nodesNumber];
+		rangeEnd[0] = patterns.length;
+		int valuesEnd = 0;
+		int nextNode = 1;
+		for (int node = 0; node < nextNode; ++node) {
+			final int d = depth[node];
+			int from = rangeStart[node];
+			final int to = rangeEnd[node];
+			// sorting puts the pattern equal to the prefix first
+			while (from < to && patterns[from].myLength == d) {
+				final byte[] patternValues = patterns[from].getValues();
+				System.arraycopy(patternValues, 0, values, valuesEnd, d + 1);
+				valuesOffset[node] = valuesEnd;
+				valuesEnd += d + 1;
+				++from;
+			}
+			firstChild[node] = nextNode;
+			while (from < to) {
+				final char symbol = patterns[from].mySymbols[d];
+				int groupEnd = from + 1;
+				while (groupEnd < to && patterns[groupEnd].mySymbols[d] == symbol) {
+					++groupEnd;
+				}
+				symbols[nextNode] = symbol;
+				rangeStart[nextNode] = from;
+				rangeEnd[nextNode] = groupEnd;
+				depth[nextNode] = d + 1;
+				++nextNode;
+				++childrenNumber[node];
+				from = groupEnd;
+			}
+		}
+
+		return new ZLTextTeXHyphenationTrie(
+			symbols, firstChild, childrenNumber, valuesOffset,
+			ZLArrayUtils.createCopy(values, valuesEnd, valuesEnd)
+		);
+	}
+
+	/**
+	 * Writes binary image of the trie; stamp identifies the patterns source.
+	 */
+	void write(File file, String stamp) throws IOException {
+		final int nodesNumber = mySymbols.length;
+		final DataOutputStream stream =
+			new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			stream.writeInt(MAGIC);
+			stream.writeInt(VERSION);
+			stream.writeInt(nodesNumber);
+			stream.writeInt(myValues.length);
+			stream.writeInt(stamp.length());
+			stream.writeChars(stamp);
+			for (int i = 0; i < nodesNumber; ++i) {
+				stream.writeChar(mySymbols[i]);
+			}
+			if ((stamp.length() + nodesNumber) % 2 != 0) {
+				stream.writeChar(0);
+			}
+			for (int i = 0; i < nodesNumber; ++i) {
+				stream.writeInt(myFirstChild[i]);
+			}
+			for (int i = 0; i < nodesNumber; ++i) {
+				stream.writeInt(myChildrenNumber[i]);
+			}
+			for (int i = 0; i < nodesNumber; ++i) {
+				stream.writeInt(myValuesOffset[i]);
+			}
+			stream.write(myValues);
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static int[] readInts(ByteBuffer buffer, int offset, int length) {
+		final int[] array = new int[length];
+		buffer.position(offset);
+		buffer.asIntBuffer().get(array);
+		return array;
+	}
+
+	/**
+	 * Reads binary image of the trie; returns null if the image
+	 * is missing, broken, or was built from another patterns source.
+	 */
+	static ZLTextTeXHyphenationTrie map(File file, String stamp) {
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			final FileInputStream stream = new FileInputStream(file);
+			try {
+				final FileChannel channel = stream.getChannel();
+				final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.capacity() < HEADER_SIZE ||
+					buffer.getInt(0) != MAGIC ||
+					buffer.getInt(4) != VERSION) {
+					return null;
+				}
+				final int nodesNumber = buffer.getInt(8);
+				final int valuesSize = buffer.getInt(12);
+				final int stampLength = buffer.getInt(16);
+				if (stampLength != stamp.length()) {
+					return null;
+				}
+				for (int i = 0; i < stampLength; ++i) {
+					if (buffer.getChar(HEADER_SIZE + 2 * i) != stamp.charAt(i)) {
+						return null;
+					}
+				}
+				int offset = HEADER_SIZE + 2 * stampLength;
+				final int symbolsOffset = offset;
+				offset += 2 * (nodesNumber + (stampLength + nodesNumber) % 2);
+				final int intsSize = 4 * nodesNumber;
+				if (offset + 3 * intsSize + valuesSize != buffer.capacity()) {
+					return null;
+				}
+				// bulk gets, so loading costs a few copies of the image
+				final char[] symbols = new char[nodesNumber];
+				buffer.position(symbolsOffset);
+				buffer.asCharBuffer().get(symbols);
+				final byte[] values = new byte[valuesSize];
+				buffer.position(offset + 3 * intsSize);
+				buffer.get(values);
+				return new ZLTextTeXHyphenationTrie(
+					symbols,
+					readInts(buffer, offset, nodesNumber),
+					readInts(buffer, offset + intsSize, nodesNumber),
+					readInts(buffer, offset + 2 * intsSize, nodesNumber),
+					values
+				);
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private int findChild(int node, char symbol) {
+		final char[] symbols = mySymbols;
+		int low = myFirstChild[node];
+		int high = low + myChildrenNumber[node] - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final char s = symbols[middle];
+			if (s < symbol) {
+				low = middle + 1;
+			} else if (s > symbol) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Applies all the patterns matching substrings of the string;
+	 * values array should be at least (length + 1) long and zero-filled.
+	 */
+	void apply(char[] string, int length, byte[] values) {
+		final int[] valuesOffset = myValuesOffset;
+		final byte[] patternValues = myValues;
+		for (int offset = 0; offset < length - 1; offset++) {
+			int node = 0;
+			for (int i = offset; i < length; ++i) {
+				node = findChild(node, string[i]);
+				if (node == -1) {
+					break;
+				}
+				final int start = valuesOffset[node];
+				if (start != -1) {
+					for (int j = 0, k = offset; j <= i - offset + 1; ++j, ++k) {
+						final byte val = patternValues[start + j];
+						if (values[k] < val) {
+							values[k] = val;
+						}
+					}
+				}
+			}
+		}
+	}
+}
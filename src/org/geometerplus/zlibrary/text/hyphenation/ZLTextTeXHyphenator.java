@@ -19,19 +19,28 @@
 
 package org.geometerplus.zlibrary.text.hyphenation;
 
+import java.io.*;
 import java.util.*;
 
+import org.geometerplus.zlibrary.core.library.ZLibrary;
 import org.geometerplus.zlibrary.core.util.ZLMiscUtil;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.filesystem.ZLResourceFile;
 
 final class ZLTextTeXHyphenator extends ZLTextHyphenator {
-	private final HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern> myPatternTable = 
-		new HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern>();
+	// patterns collected while reading XML file
+	private ArrayList<ZLTextTeXHyphenationPattern> myPatterns;
+	private ZLTextTeXHyphenationTrie myTrie;
+	// loaded tries are kept, so switching languages back costs nothing
+	private final HashMap<String,ZLTextTeXHyphenationTrie> myLoadedTries =
+		new HashMap<String,ZLTextTeXHyphenationTrie>();
+
+	private byte[] myValuesBuffer = new byte[32];
+
 	private String myLanguage;
 
 	void addPattern(ZLTextTeXHyphenationPattern pattern) {
-		myPatternTable.put(pattern, pattern);
+		myPatterns.add(pattern);
 	}
 
 	private List<String> myLanguageCodes;
@@ -53,7 +62,7 @@ final class ZLTextTeXHyphenator extends ZLTextHyphenator {
 		return Collections.unmodifiableList(myLanguageCodes);
 	}
 
-	public void load(final String language) {
+	public synchronized void load(final String language) {
 		if (ZLMiscUtil.equals(language, myLanguage)) {
 			return;
 		}
@@ -61,42 +70,69 @@ final class ZLTextTeXHyphenator extends ZLTextHyphenator {
 		unload();
 
 		if (language != null) {
+			myTrie = myLoadedTries.get(language);
+			if (myTrie != null) {
+				return;
+			}
+
+			final String directory = getCacheDirectory();
+			final File imageFile = directory != null
+				? new File(directory, language + ".hyph") : null;
+			// images are rebuilt after application update
+			final String stamp = ZLibrary.Instance().getVersionName() + ":" + language;
+			if (imageFile != null) {
+				myTrie = ZLTextTeXHyphenationTrie.map(imageFile, stamp);
+				if (myTrie != null) {
+					myLoadedTries.put(language, myTrie);
+					return;
+				}
+			}
+
+			myPatterns = new ArrayList<ZLTextTeXHyphenationPattern>();
 			new ZLTextHyphenationReader(this).read(ZLResourceFile.createResourceFile(
 		  		"hyphenationPatterns/" + language + ".pattern"
 			)); 
+			myTrie = ZLTextTeXHyphenationTrie.compile(myPatterns);
+			myPatterns = null;
+
+			if (myTrie != null && imageFile != null) {
+				final File tmpFile = new File(directory, language + ".hyph.tmp");
+				try {
+					new File(directory).mkdirs();
+					myTrie.write(tmpFile, stamp);
+					if (tmpFile.renameTo(imageFile)) {
+						myLoadedTries.put(language, myTrie);
+					} else {
+						tmpFile.delete();
+					}
+				} catch (IOException e) {
+					tmpFile.delete();
+				}
+			}
 		}
 	}	
 
-	public void unload() {
-		myPatternTable.clear();
+	public synchronized void unload() {
+		myTrie = null;
 	}
 
-	public void hyphenate(char[] stringToHyphenate, boolean[] mask, int length) {
-		if (myPatternTable.isEmpty()) {
+	public synchronized void hyphenate(char[] stringToHyphenate, boolean[] mask, int length) {
+		if (myTrie == null) {
 			for (int i = 0; i < length - 1; i++) {
 				mask[i] = false;
 			}
 			return;
 		}
 
-		byte[] values = new byte[length + 1];
-
-		final HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern> table = myPatternTable;
-		ZLTextTeXHyphenationPattern pattern =
-			new ZLTextTeXHyphenationPattern(stringToHyphenate, 0, length, false);
-		for (int offset = 0; offset < length - 1; offset++) {
-			int len = length - offset + 1;
-			pattern.update(stringToHyphenate, offset, len - 1);
-			while (--len > 0) {
-				pattern.myLength = len;
-				pattern.myHashCode = 0;
-				ZLTextTeXHyphenationPattern toApply =
-					(ZLTextTeXHyphenationPattern)table.get(pattern);
-				if (toApply != null) {
-					toApply.apply(values, offset);
-				}
-			}
+		byte[] values = myValuesBuffer;
+		if (values.length < length + 1) {
+			values = new byte[length + 11];
+			myValuesBuffer = values;
+		} else {
+			Arrays.fill(values, 0, length + 1, (byte)0);
 		}
+
+		myTrie.apply(stringToHyphenate, length, values);
  	
 		for (int i = 0; i < length - 1; i++) {
 			mask[i] = (values[i + 1] % 2) == 1;
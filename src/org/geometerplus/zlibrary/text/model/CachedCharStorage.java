@@ -19,8 +19,10 @@
 
 package org.geometerplus.zlibrary.text.model;
 
-import java.lang.ref.WeakReference;
+import java.lang.ref.SoftReference;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 final class CachedCharStorageException extends RuntimeException {
@@ -31,88 +33,129 @@ final class CachedCharStorageException extends RuntimeException {
 	}
 }
 
+// synchronized, since blocks are read while the book is still being written
 public final class CachedCharStorage implements CharStorage {
 	private final int myBlockSize;
-	private final ArrayList<WeakReference<char[]>> myArray = new ArrayList<WeakReference<char[]>>();
+	private final ArrayList<SoftReference<char[]>> myArray = new ArrayList<SoftReference<char[]>>();
 	private final String myDirectoryName;
 	private final String myFileExtension;
+	private final CharStorageCache myCache;
+	private ByteBuffer myWriteBuffer;
 
 	private String fileName(int index) {
 		return myDirectoryName + index + myFileExtension;
 	}
 
-	public CachedCharStorage(int blockSize, String directoryName, String fileExtension) {
+	public CachedCharStorage(int blockSize, String directoryName, String fileExtension, CharStorageCache cache) {
 		myBlockSize = blockSize;
+		myCache = cache;
 		myDirectoryName = directoryName + '/';
 		myFileExtension = '.' + fileExtension;
 		new File(directoryName).mkdirs();
 	}
 
-	public int size() {
+	/**
+	 * Creates storage over blocks already written to the directory
+	 */
+	public CachedCharStorage(int blockSize, String directoryName, String fileExtension, CharStorageCache cache, int blocksNumber) {
+		this(blockSize, directoryName, fileExtension, cache);
+		myArray.ensureCapacity(blocksNumber);
+		for (int i = 0; i < blocksNumber; ++i) {
+			myArray.add(new SoftReference<char[]>(null));
+		}
+	}
+
+	public synchronized int size() {
 		return myArray.size();
 	}
 
-	public char[] block(int index) {
+	public synchronized char[] block(int index) {
 		char[] block = myArray.get(index).get();
 		if (block == null) {
+			block = readBlock(index);
+			myArray.set(index, new SoftReference<char[]>(block));
+			myCache.onMiss(block);
+		} else {
+			myCache.onHit(block);
+		}
+		return block;
+	}
+
+	/**
+	 * Returns the block without counting it in the cache and without
+	 * keeping it if it has to be read; used for reading the whole text
+	 * in background, so that the pages being read stay in the cache.
+	 */
+	synchronized char[] uncachedBlock(int index) {
+		final char[] block = myArray.get(index).get();
+		return (block != null) ? block : readBlock(index);
+	}
+
+	private char[] readBlock(int index) {
+		try {
+			final FileInputStream stream = new FileInputStream(fileName(index));
 			try {
-				File file = new File(fileName(index));
-				int size = (int)file.length();
-				if (size < 0) {
-					throw new CachedCharStorageException("Error during reading " + fileName(index));
-				}
-				block = new char[size / 2];
-				InputStreamReader reader =
-					new InputStreamReader(
-						new FileInputStream(file),
-						"UTF-16LE"
-					);
-				if (reader.read(block) != block.length) {
-					throw new CachedCharStorageException("Error during reading " + fileName(index));
-				}
-				reader.close();
-			} catch (FileNotFoundException e) {
-				throw new CachedCharStorageException("Error during reading " + fileName(index));
-			} catch (IOException e) {
-				throw new CachedCharStorageException("Error during reading " + fileName(index));
+				final FileChannel channel = stream.getChannel();
+				final int size = (int)channel.size();
+				final char[] block = new char[size / 2];
+				channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+					.order(ByteOrder.LITTLE_ENDIAN)
+					.asCharBuffer()
+					.get(block);
+				return block;
+			} finally {
+				stream.close();
 			}
-			myArray.set(index, new WeakReference<char[]>(block));
+		} catch (IOException e) {
+			throw new CachedCharStorageException("Error during reading " + fileName(index));
+		} catch (BufferUnderflowException e) {
+			throw new CachedCharStorageException("Error during reading " + fileName(index));
 		}
-		return block;
 	}
 
-	public char[] createNewBlock(int minimumLength) {
+	public synchronized char[] createNewBlock(int minimumLength) {
 		int blockSize = myBlockSize;
 		if (minimumLength > blockSize) {
 			blockSize = minimumLength;
 		}
 		char[] block = new char[blockSize];
-		myArray.add(new WeakReference<char[]>(block));
+		myArray.add(new SoftReference<char[]>(block));
 		return block;
 	}
 
-	public void freezeLastBlock() {
+	public synchronized void freezeLastBlock() {
 		int index = myArray.size() - 1;
 		if (index >= 0) {
 			char[] block = myArray.get(index).get();
 			if (block == null) {
 				throw new CachedCharStorageException("Block reference in null during freeze");
 			}
+			final int size = block.length * 2;
+			ByteBuffer buffer = myWriteBuffer;
+			if (buffer == null || buffer.capacity() < size) {
+				buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+				myWriteBuffer = buffer;
+			}
+			buffer.clear();
+			buffer.asCharBuffer().put(block);
+			buffer.limit(size);
 			try {
-				final OutputStreamWriter writer =
-					new OutputStreamWriter(
-						new FileOutputStream(fileName(index)),
-						"UTF-16LE"
-					);
-				writer.write(block);
-				writer.close();
+				final FileOutputStream stream = new FileOutputStream(fileName(index));
+				try {
+					final FileChannel channel = stream.getChannel();
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				} finally {
+					stream.close();
+				}
 			} catch (IOException e) {
 				throw new CachedCharStorageException("Error during writing " + fileName(index));
 			}
 		}
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		myArray.clear();
 	}
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.model;
+
+import java.util.*;
+
+/**
+ * Strong tier of block cache shared by several CachedCharStorage objects.
+ * Most recently used blocks are kept here while their total size fits
+ * into the memory budget; other blocks are only softly referenced by
+ * their storages and might be collected by GC.
+ */
+public final class CharStorageCache {
+	public static int defaultMemoryBudget() {
+		final long budget = Runtime.getRuntime().maxMemory() / 16;
+		return (int)Math.max(256 * 1024, Math.min(budget, 4 * 1024 * 1024));
+	}
+
+	// char arrays have identity-based equals() and hashCode(),
+	// so blocks could be used as keys without allocating wrappers
+	private final LinkedHashMap<char[],Boolean> myBlocks =
+		new LinkedHashMap<char[],Boolean>(16, 0.75f, true);
+	private int myMemoryBudget;
+	private int myMemoryUsed;
+
+	private int myHitsNumber;
+	private int myMissesNumber;
+	private long myBytesRead;
+
+	public CharStorageCache(int memoryBudget) {
+		myMemoryBudget = memoryBudget;
+	}
+
+	public synchronized int getMemoryBudget() {
+		return myMemoryBudget;
+	}
+
+	public synchronized void setMemoryBudget(int memoryBudget) {
+		myMemoryBudget = memoryBudget;
+		shrink();
+	}
+
+	public synchronized int getMemoryUsed() {
+		return myMemoryUsed;
+	}
+
+	public synchronized int getHitsNumber() {
+		return myHitsNumber;
+	}
+
+	public synchronized int getMissesNumber() {
+		return myMissesNumber;
+	}
+
+	public synchronized long getBytesRead() {
+		return myBytesRead;
+	}
+
+	synchronized void onHit(char[] block) {
+		++myHitsNumber;
+		if (myBlocks.get(block) == null) {
+			add(block);
+		}
+	}
+
+	synchronized void onMiss(char[] block) {
+		++myMissesNumber;
+		myBytesRead += 2 * block.length;
+		add(block);
+	}
+
+	public synchronized void clear() {
+		myBlocks.clear();
+		myMemoryUsed = 0;
+	}
+
+	private void add(char[] block) {
+		myBlocks.put(block, Boolean.TRUE);
+		myMemoryUsed += 2 * block.length;
+		shrink();
+	}
+
+	private void shrink() {
+		if (myMemoryUsed <= myMemoryBudget) {
+			return;
+		}
+		for (Iterator<char[]> it = myBlocks.keySet().iterator(); it.hasNext(); ) {
+			// the most recently used block is kept even if it exceeds the budget
+			if (myMemoryUsed <= myMemoryBudget || myBlocks.size() == 1) {
+				break;
+			}
+			myMemoryUsed -= 2 * it.next().length;
+			it.remove();
+		}
+	}
+}
@@ -25,6 +25,8 @@ public interface ZLTextModel {
 	String getId();
 	String getLanguage();
 
+	// false while the model is being read; until then paragraphs number can grow
+	boolean isComplete();
 	int getParagraphsNumber();
 	ZLTextParagraph getParagraph(int index);
 
@@ -41,4 +43,5 @@ public interface ZLTextModel {
 	int findParagraphByTextLength(int length);
 	
 	int search(final String text, int startIndex, int endIndex, boolean ignoreCase);
+	int search(final String text, int startIndex, int endIndex, boolean ignoreCase, boolean wholeWord);
 }
@@ -19,6 +19,7 @@
 
 package org.geometerplus.zlibrary.text.model;
 
+import java.io.*;
 import java.util.*;
 
 import org.geometerplus.zlibrary.core.util.*;
@@ -35,13 +36,19 @@ public class ZLTextPlainModel implements ZLTextModel {
 	protected byte[] myParagraphKinds;
 
 	protected int myParagraphsNumber;
+	// number of paragraphs visible to the readers; while the model is being written
+	// it does not include the last paragraph, since that one can still change
+	private volatile int myReadyParagraphsNumber;
+	private volatile boolean myIsComplete;
 
 	protected final CharStorage myStorage;
 	private ArrayList<ZLTextMark> myMarks;
+	private volatile ZLTextSearchIndex mySearchIndex;
 
 	protected final ZLImageMap myImageMap;
 
 	final class EntryIteratorImpl implements ZLTextParagraph.EntryIterator {
+		private final boolean myBypassCache;
 		private int myCounter;
 		private int myLength;
 		private byte myType;
@@ -64,6 +71,15 @@ public class ZLTextPlainModel implements ZLTextModel {
 		private short myFixedHSpaceLength;
 
 		EntryIteratorImpl(int index) {
+			this(index, false);
+		}
+
+		/**
+		 * If bypassCache is true, text blocks are read past the block cache,
+		 * see CachedCharStorage.uncachedBlock()
+		 */
+		EntryIteratorImpl(int index, boolean bypassCache) {
+			myBypassCache = bypassCache && myStorage instanceof CachedCharStorage;
 			myLength = myParagraphLengths[index];
 			myDataIndex = myStartEntryIndices[index];
 			myDataOffset = myStartEntryOffsets[index];
@@ -119,16 +135,22 @@ public class ZLTextPlainModel implements ZLTextModel {
 			return myCounter < myLength;
 		}	
 
+		private char[] block(int index) {
+			return myBypassCache
+				? ((CachedCharStorage)myStorage).uncachedBlock(index)
+				: myStorage.block(index);
+		}
+
 		public void next() {
 			int dataOffset = myDataOffset;
-			char[] data = myStorage.block(myDataIndex);
+			char[] data = block(myDataIndex);
 			if (dataOffset == data.length) {
-				data = myStorage.block(++myDataIndex);
+				data = block(++myDataIndex);
 				dataOffset = 0;
 			}
 			byte type = (byte)data[dataOffset];
 			if (type == 0) {
-				data = myStorage.block(++myDataIndex);
+				data = block(++myDataIndex);
 				dataOffset = 0;
 				type = (byte)data[0];
 			}
@@ -192,7 +214,7 @@ public class ZLTextPlainModel implements ZLTextModel {
 		}
 	}
 
-	protected ZLTextPlainModel(String id, String language, int arraySize, int dataBlockSize, String directoryName, String extension, ZLImageMap imageMap) {
+	protected ZLTextPlainModel(String id, String language, int arraySize, int dataBlockSize, String directoryName, String extension, CharStorageCache cache, ZLImageMap imageMap) {
 		myId = id;
 		myLanguage = language;
 		myStartEntryIndices = new int[arraySize];
@@ -200,10 +222,57 @@ public class ZLTextPlainModel implements ZLTextModel {
 		myParagraphLengths = new int[arraySize];
 		myTextSizes = new int[arraySize];
 		myParagraphKinds = new byte[arraySize];
-		myStorage = new CachedCharStorage(dataBlockSize, directoryName, extension);
+		myStorage = new CachedCharStorage(dataBlockSize, directoryName, extension, cache);
 		myImageMap = imageMap;
 	}
 
+	protected ZLTextPlainModel(String id, String language, DataInputStream index, int dataBlockSize, String directoryName, String extension, CharStorageCache cache, ZLImageMap imageMap) throws IOException {
+		myId = id;
+		myLanguage = language;
+		final int size = index.readInt();
+		myStartEntryIndices = readIntArray(index, size);
+		myStartEntryOffsets = readIntArray(index, size);
+		myParagraphLengths = readIntArray(index, size);
+		myTextSizes = readIntArray(index, size);
+		myParagraphKinds = new byte[size];
+		index.readFully(myParagraphKinds);
+		myParagraphsNumber = size;
+		myStorage = new CachedCharStorage(dataBlockSize, directoryName, extension, cache, index.readInt());
+		myImageMap = imageMap;
+		myReadyParagraphsNumber = size;
+		myIsComplete = true;
+	}
+
+	private static int[] readIntArray(DataInputStream stream, int size) throws IOException {
+		final int[] array = new int[size];
+		for (int i = 0; i < size; ++i) {
+			array[i] = stream.readInt();
+		}
+		return array;
+	}
+
+	private static void writeIntArray(DataOutputStream stream, int[] array, int size) throws IOException {
+		for (int i = 0; i < size; ++i) {
+			stream.writeInt(array[i]);
+		}
+	}
+
+	/**
+	 * Writes paragraph index of the model; text blocks themselves are kept
+	 * in the storage files, so the model can be restored from the index
+	 * without re-reading the book.
+	 */
+	public void writeIndex(DataOutputStream index) throws IOException {
+		final int size = myParagraphsNumber;
+		index.writeInt(size);
+		writeIntArray(index, myStartEntryIndices, size);
+		writeIntArray(index, myStartEntryOffsets, size);
+		writeIntArray(index, myParagraphLengths, size);
+		writeIntArray(index, myTextSizes, size);
+		index.write(myParagraphKinds, 0, size);
+		index.writeInt(myStorage.size());
+	}
+
 	public final String getId() {
 		return myId;
 	}
@@ -212,6 +281,23 @@ public class ZLTextPlainModel implements ZLTextModel {
 		return myLanguage;
 	}
 
+	public final boolean isComplete() {
+		return myIsComplete;
+	}
+
+	/**
+	 * Makes first paragraphs visible to the readers. All the data of these
+	 * paragraphs must be written before the call.
+	 */
+	protected final void publishParagraphs(int number) {
+		myReadyParagraphsNumber = number;
+	}
+
+	protected final void setComplete() {
+		myReadyParagraphsNumber = myParagraphsNumber;
+		myIsComplete = true;
+	}
+
 	public final ZLTextMark getFirstMark() {
 		return ((myMarks == null) || myMarks.isEmpty()) ? null : myMarks.get(0);
 	}
@@ -252,35 +338,87 @@ public class ZLTextPlainModel implements ZLTextModel {
 		return mark;
 	}
 
+	/**
+	 * The index is used by search() if it was built for current paragraphs number;
+	 * until then (or if there is no index) the text is scanned.
+	 */
+	public final void setSearchIndex(ZLTextSearchIndex index) {
+		mySearchIndex = index;
+	}
+
 	public final int search(final String text, int startIndex, int endIndex, boolean ignoreCase) {
-		int count = 0;
-		ZLSearchPattern pattern = new ZLSearchPattern(text, ignoreCase);
+		return search(text, startIndex, endIndex, ignoreCase, false);
+	}
+
+	public final int search(final String text, int startIndex, int endIndex, boolean ignoreCase, boolean wholeWord) {
+		final int paragraphsNumber = myReadyParagraphsNumber;
+		if (startIndex > paragraphsNumber) {
+			startIndex = paragraphsNumber;
+		}
+		if (endIndex > paragraphsNumber) {
+			endIndex = paragraphsNumber;
+		}
+
+		ZLTextSearchIndex index = mySearchIndex;
+		if (index != null && index.getParagraphsNumber() != paragraphsNumber) {
+			index = null;
+		}
+		if (index != null && ignoreCase) {
+			final List<ZLTextMark> marks = index.findWord(text, startIndex, endIndex, wholeWord);
+			if (marks != null) {
+				myMarks = new ArrayList<ZLTextMark>(marks);
+				return myMarks.size();
+			}
+		}
+
+		final ZLSearchPattern pattern = new ZLSearchPattern(text, ignoreCase);
 		myMarks = new ArrayList<ZLTextMark>();
-		if (startIndex > myParagraphsNumber) {
-                	startIndex = myParagraphsNumber;				
+		if (startIndex >= endIndex) {
+			return 0;
+		}
+		final BitSet candidates = (index != null) ? index.candidateParagraphs(text) : null;
+		final EntryIteratorImpl it = new EntryIteratorImpl(startIndex);
+		if (candidates != null) {
+			for (int i = candidates.nextSetBit(startIndex); i != -1 && i < endIndex; i = candidates.nextSetBit(i + 1)) {
+				it.reset(i);
+				searchInParagraph(it, i, pattern, wholeWord);
+			}
+		} else {
+			for (int i = startIndex; i < endIndex; ++i) {
+				it.reset(i);
+				searchInParagraph(it, i, pattern, wholeWord);
+			}
 		}
-		if (endIndex > myParagraphsNumber) {
-			endIndex = myParagraphsNumber;
-		}				
-		int index = startIndex;
-		for (EntryIteratorImpl it = new EntryIteratorImpl(index); index < endIndex; it.reset(++index)) {
-			int offset = 0;
-			while (it.hasNext()) {
-				it.next();
-				if (it.getType() == ZLTextParagraph.Entry.TEXT) {
-					char[] textData = it.getTextData();
-					int textOffset = it.getTextOffset();
-					int textLength = it.getTextLength();
-					for (int pos = ZLSearchUtil.find(textData, textOffset, textLength, pattern); pos != -1; 
-						pos = ZLSearchUtil.find(textData, textOffset, textLength, pattern, pos + 1)) {
-						myMarks.add(new ZLTextMark(index, offset + pos, pattern.getLength()));
-						++count;
+		return myMarks.size();
+	}
+
+	private void searchInParagraph(EntryIteratorImpl it, int index, ZLSearchPattern pattern, boolean wholeWord) {
+		final int patternLength = pattern.getLength();
+		int offset = 0;
+		while (it.hasNext()) {
+			it.next();
+			if (it.getType() == ZLTextParagraph.Entry.TEXT) {
+				char[] textData = it.getTextData();
+				int textOffset = it.getTextOffset();
+				int textLength = it.getTextLength();
+				for (int pos = ZLSearchUtil.find(textData, textOffset, textLength, pattern); pos != -1; 
+					pos = ZLSearchUtil.find(textData, textOffset, textLength, pattern, pos + 1)) {
+					if (wholeWord && !isWholeWord(textData, textOffset, textLength, pos, patternLength)) {
+						continue;
 					}
-					offset += textLength;						
-				}				
-			} 
+					myMarks.add(new ZLTextMark(index, offset + pos, patternLength));
+				}
+				offset += textLength;						
+			}				
+		} 
+	}
+
+	private static boolean isWholeWord(char[] data, int offset, int length, int pos, int matchLength) {
+		if (pos > 0 && ZLTextSearchIndex.isWordChar(data[offset + pos - 1])) {
+			return false;
 		}
-		return count;
+		final int end = pos + matchLength;
+		return end >= length || !ZLTextSearchIndex.isWordChar(data[offset + end]);
 	}
 
 	public final List<ZLTextMark> getMarks() {
@@ -292,7 +430,7 @@ public class ZLTextPlainModel implements ZLTextModel {
 	}
 
 	public final int getParagraphsNumber() {
-		return myParagraphsNumber;
+		return myReadyParagraphsNumber;
 	}
 
 	public final ZLTextParagraph getParagraph(int index) {
@@ -303,7 +441,7 @@ public class ZLTextPlainModel implements ZLTextModel {
 	}
 
 	public final int getTextLength(int index) {
-		return myTextSizes[Math.max(Math.min(index, myParagraphsNumber - 1), 0)];
+		return myTextSizes[Math.max(Math.min(index, myReadyParagraphsNumber - 1), 0)];
 	}
 
 	private static int binarySearch(int[] array, int length, int value) {
@@ -325,10 +463,11 @@ public class ZLTextPlainModel implements ZLTextModel {
 	}
 
 	public final int findParagraphByTextLength(int length) {
-		int index = binarySearch(myTextSizes, myParagraphsNumber, length);
+		final int paragraphsNumber = myReadyParagraphsNumber;
+		int index = binarySearch(myTextSizes, paragraphsNumber, length);
 		if (index >= 0) {
 			return index;
 		}
-		return Math.min(-index - 1, myParagraphsNumber - 1);
+		return Math.min(-index - 1, paragraphsNumber - 1);
 	}
 }
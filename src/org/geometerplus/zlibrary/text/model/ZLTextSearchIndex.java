@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.text.model;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Inverted index of a text model: maps case-folded words (maximal runs of
+ * letters and digits inside a text entry) to the list of their positions.
+ * Positions are (paragraph index, offset) pairs, in the same coordinates
+ * as ZLTextMark, stored as variable-length deltas in one byte array per word.
+ */
+public final class ZLTextSearchIndex {
+	private static final int VERSION = 1;
+
+	static char fold(char ch) {
+		// upper-casing first maps variants like final sigma to the same letter
+		return Character.toLowerCase(Character.toUpperCase(ch));
+	}
+
+	static boolean isWordChar(char ch) {
+		return Character.isLetterOrDigit(ch);
+	}
+
+	// returns null if text contains something but letters and digits
+	static String foldedWord(String text) {
+		final int length = text.length();
+		if (length == 0) {
+			return null;
+		}
+		final char[] folded = new char[length];
+		for (int i = 0; i < length; ++i) {
+			final char ch = text.charAt(i);
+			if (!isWordChar(ch)) {
+				return null;
+			}
+			folded[i] = fold(ch);
+		}
+		return new String(folded);
+	}
+
+	private final int myParagraphsNumber;
+	// sorted
+	private final String[] myWords;
+	private final byte[][] myPositions;
+
+	private ZLTextSearchIndex(int paragraphsNumber, String[] words, byte[][] positions) {
+		myParagraphsNumber = paragraphsNumber;
+		myWords = words;
+		myPositions = positions;
+	}
+
+	public int getParagraphsNumber() {
+		return myParagraphsNumber;
+	}
+
+	private static final class PositionsBuilder {
+		byte[] Data = new byte[8];
+		int Length;
+		int LastParagraph;
+		int LastOffset;
+
+		void add(int paragraph, int offset) {
+			writeNumber(paragraph - LastParagraph);
+			writeNumber(paragraph == LastParagraph ? offset - LastOffset : offset);
+			LastParagraph = paragraph;
+			LastOffset = offset;
+		}
+
+		private void writeNumber(int number) {
+			if (Length + 5 > Data.length) {
+				final byte[] data = new byte[Data.length * 2];
+				System.arraycopy(Data, 0, data, 0, Length);
+				Data = data;
+			}
+			while (number >= 0x80) {
+				Data[Length++] = (byte)(number | 0x80);
+				number >>>= 7;
+			}
+			Data[Length++] = (byte)number;
+		}
+
+		byte[] toArray() {
+			final byte[] array = new byte[Length];
+			System.arraycopy(Data, 0, array, 0, Length);
+			return array;
+		}
+	}
+
+	/**
+	 * Reads the whole model; the model should be complete. Text blocks are
+	 * read past the block cache, so indexing does not evict the pages being read.
+	 * Returns null if the calling thread is interrupted, or the text cannot be read.
+	 */
+	public static ZLTextSearchIndex build(ZLTextPlainModel model) {
+		try {
+			return buildInternal(model);
+		} catch (CachedCharStorageException e) {
+			return null;
+		}
+	}
+
+	private static ZLTextSearchIndex buildInternal(ZLTextPlainModel model) {
+		final int paragraphsNumber = model.getParagraphsNumber();
+		final HashMap<String,PositionsBuilder> builders = new HashMap<String,PositionsBuilder>();
+		char[] word = new char[64];
+		if (paragraphsNumber > 0) {
+			final ZLTextPlainModel.EntryIteratorImpl it = model.new EntryIteratorImpl(0, true);
+			for (int index = 0; index < paragraphsNumber; it.reset(++index)) {
+				if ((index & 0xFF) == 0 && Thread.currentThread().isInterrupted()) {
+					return null;
+				}
+				int offset = 0;
+				while (it.hasNext()) {
+					it.next();
+					if (it.getType() != ZLTextParagraph.Entry.TEXT) {
+						continue;
+					}
+					final char[] data = it.getTextData();
+					final int start = it.getTextOffset();
+					final int length = it.getTextLength();
+					int wordLength = 0;
+					for (int i = 0; i <= length; ++i) {
+						final char ch = i < length ? data[start + i] : ' ';
+						if (isWordChar(ch)) {
+							if (wordLength == word.length) {
+								final char[] longer = new char[2 * word.length];
+								System.arraycopy(word, 0, longer, 0, wordLength);
+								word = longer;
+							}
+							word[wordLength++] = fold(ch);
+						} else if (wordLength > 0) {
+							final String w = new String(word, 0, wordLength);
+							PositionsBuilder builder = builders.get(w);
+							if (builder == null) {
+								builder = new PositionsBuilder();
+								builders.put(w, builder);
+							}
+							builder.add(index, offset + i - wordLength);
+							wordLength = 0;
+						}
+					}
+					offset += length;
+				}
+			}
+		}
+
+		final String[] words = builders.keySet().toArray(new String[builders.size()]);
+		Arrays.sort(words);
+		final byte[][] positions = new byte[words.length][];
+		for (int i = 0; i < words.length; ++i) {
+			positions[i] = builders.get(words[i]).toArray();
+		}
+		return new ZLTextSearchIndex(paragraphsNumber, words, positions);
+	}
+
+	/**
+	 * Returns null if there is no index in the file, or it was built
+	 * for a model with another number of paragraphs.
+	 */
+	public static ZLTextSearchIndex load(File file, int paragraphsNumber) {
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16384));
+			if (stream.readInt() != VERSION || stream.readInt() != paragraphsNumber) {
+				return null;
+			}
+			final int wordsNumber = stream.readInt();
+			final String[] words = new String[wordsNumber];
+			final byte[][] positions = new byte[wordsNumber][];
+			for (int i = 0; i < wordsNumber; ++i) {
+				words[i] = stream.readUTF();
+				positions[i] = new byte[stream.readInt()];
+				stream.readFully(positions[i]);
+			}
+			return new ZLTextSearchIndex(paragraphsNumber, words, positions);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	public void save(File file) {
+		final File tmpFile = new File(file.getPath() + ".tmp");
+		try {
+			final DataOutputStream stream =
+				new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 16384));
+			try {
+				stream.writeInt(VERSION);
+				stream.writeInt(myParagraphsNumber);
+				stream.writeInt(myWords.length);
+				for (int i = 0; i < myWords.length; ++i) {
+					stream.writeUTF(myWords[i]);
+					stream.writeInt(myPositions[i].length);
+					stream.write(myPositions[i]);
+				}
+			} finally {
+				stream.close();
+			}
+			if (!tmpFile.renameTo(file)) {
+				tmpFile.delete();
+			}
+		} catch (IOException e) {
+			tmpFile.delete();
+		}
+	}
+
+	private static abstract class PositionReader {
+		abstract void onPosition(int paragraph, int offset);
+
+		void read(byte[] data) {
+			int paragraph = 0;
+			int offset = 0;
+			for (int i = 0; i < data.length; ) {
+				int delta = 0;
+				for (int shift = 0; ; shift += 7) {
+					final int b = data[i++];
+					delta |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						break;
+					}
+				}
+				int number = 0;
+				for (int shift = 0; ; shift += 7) {
+					final int b = data[i++];
+					number |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						break;
+					}
+				}
+				if (delta != 0) {
+					paragraph += delta;
+					offset = number;
+				} else {
+					offset += number;
+				}
+				onPosition(paragraph, offset);
+			}
+		}
+	}
+
+	/**
+	 * Case-insensitive search of a text consisting of letters and digits only;
+	 * if wholeWord is true, only words equal to the text are matched.
+	 * Returns null if the text contains other characters; such queries
+	 * should be checked against the text of candidateParagraphs().
+	 */
+	List<ZLTextMark> findWord(String text, final int startIndex, final int endIndex, boolean wholeWord) {
+		final String query = foldedWord(text);
+		if (query == null) {
+			return null;
+		}
+		final int queryLength = query.length();
+		final ArrayList<ZLTextMark> marks = new ArrayList<ZLTextMark>();
+		for (int i = 0; i < myWords.length; ++i) {
+			final String word = myWords[i];
+			if (wholeWord ? !word.equals(query) : word.indexOf(query) == -1) {
+				continue;
+			}
+			final String w = word;
+			new PositionReader() {
+				void onPosition(int paragraph, int offset) {
+					if (paragraph < startIndex || paragraph >= endIndex) {
+						return;
+					}
+					for (int pos = w.indexOf(query); pos != -1; pos = w.indexOf(query, pos + 1)) {
+						marks.add(new ZLTextMark(paragraph, offset + pos, queryLength));
+					}
+				}
+			}.read(myPositions[i]);
+		}
+		Collections.sort(marks);
+		return marks;
+	}
+
+	/**
+	 * Returns paragraphs that can contain the text, i.e. paragraphs that
+	 * contain every letter-and-digit run of the text inside of some word.
+	 * Returns null if the text contains no letters and digits.
+	 */
+	BitSet candidateParagraphs(String text) {
+		BitSet candidates = null;
+		final int length = text.length();
+		final StringBuilder run = new StringBuilder();
+		for (int i = 0; i <= length; ++i) {
+			final char ch = i < length ? text.charAt(i) : ' ';
+			if (isWordChar(ch)) {
+				run.append(fold(ch));
+			} else if (run.length() > 0) {
+				final String query = run.toString();
+				run.setLength(0);
+				final BitSet paragraphs = new BitSet(myParagraphsNumber);
+				for (int j = 0; j < myWords.length; ++j) {
+					if (myWords[j].indexOf(query) != -1) {
+						new PositionReader() {
+							void onPosition(int paragraph, int offset) {
+								paragraphs.set(paragraph);
+							}
+						}.read(myPositions[j]);
+					}
+				}
+				if (candidates == null) {
+					candidates = paragraphs;
+				} else {
+					candidates.and(paragraphs);
+				}
+			}
+		}
+		return candidates;
+	}
+}
@@ -20,6 +20,9 @@
 package org.geometerplus.zlibrary.text.model;
 
 public interface ZLTextWritableModel extends ZLTextModel {
+	// unlike getParagraphsNumber(), counts the paragraph being written
+	int getWrittenParagraphsNumber();
+
 	void createParagraph(byte kind);
 
 	void addControl(byte textKind, boolean isStart);
@@ -19,6 +19,8 @@
 
 package org.geometerplus.zlibrary.text.model;
 
+import java.io.*;
+
 import org.geometerplus.zlibrary.core.util.*;
 
 import org.geometerplus.zlibrary.core.image.ZLImageMap;
@@ -27,8 +29,32 @@ public final class ZLTextWritablePlainModel extends ZLTextPlainModel implements
 	private char[] myCurrentDataBlock;
 	private int myBlockOffset;
 
-	public ZLTextWritablePlainModel(String id, String language, int arraySize, int dataBlockSize, String directoryName, String extension, ZLImageMap imageMap) {
-		super(id, language, arraySize, dataBlockSize, directoryName, extension, imageMap);
+	public ZLTextWritablePlainModel(String id, String language, int arraySize, int dataBlockSize, String directoryName, String extension, CharStorageCache cache, ZLImageMap imageMap) {
+		super(id, language, arraySize, dataBlockSize, directoryName, extension, cache, imageMap);
+	}
+
+	public ZLTextWritablePlainModel(String id, String language, DataInputStream index, int dataBlockSize, String directoryName, String extension, CharStorageCache cache, ZLImageMap imageMap) throws IOException {
+		super(id, language, index, dataBlockSize, directoryName, extension, cache, imageMap);
+	}
+
+	@Override
+	public void writeIndex(DataOutputStream index) throws IOException {
+		if (myCurrentDataBlock != null) {
+			myStorage.freezeLastBlock();
+		}
+		super.writeIndex(index);
+	}
+
+	public int getWrittenParagraphsNumber() {
+		return myParagraphsNumber;
+	}
+
+	/**
+	 * Called after the last paragraph is written;
+	 * makes all the paragraphs visible to the readers.
+	 */
+	public void complete() {
+		setComplete();
 	}
 
 	private void extend() {
@@ -55,6 +81,8 @@ public final class ZLTextWritablePlainModel extends ZLTextPlainModel implements
 		myStartEntryOffsets[index] = myBlockOffset;
 		myParagraphLengths[index] = 0;
 		myParagraphKinds[index] = kind;
+		// previous paragraph will not be changed anymore
+		publishParagraphs(index);
 	}
 
 	private char[] getDataBlock(int minimumLength) {
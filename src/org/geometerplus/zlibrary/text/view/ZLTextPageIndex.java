@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.io.*;
+
+/**
+ * Start positions of all pages of a model laid out with given fonts and text area size.
+ * Every page takes three ints (paragraph, element and char index of its start).
+ */
+final class ZLTextPageIndex {
+	private static final int VERSION = 1;
+
+	final String Key;
+	private int[] myStarts = new int[3 * 64];
+	private int myPagesNumber;
+	private boolean myIsComplete;
+
+	ZLTextPageIndex(String key) {
+		Key = key;
+	}
+
+	int getPagesNumber() {
+		return myPagesNumber;
+	}
+
+	boolean isComplete() {
+		return myIsComplete;
+	}
+
+	void addPage(ZLTextPosition start) {
+		if (3 * myPagesNumber == myStarts.length) {
+			final int[] starts = new int[2 * myStarts.length];
+			System.arraycopy(myStarts, 0, starts, 0, myStarts.length);
+			myStarts = starts;
+		}
+		int offset = 3 * myPagesNumber++;
+		myStarts[offset++] = start.getParagraphIndex();
+		myStarts[offset++] = start.getElementIndex();
+		myStarts[offset] = start.getCharIndex();
+	}
+
+	void complete() {
+		if (myStarts.length > 3 * myPagesNumber) {
+			final int[] starts = new int[3 * myPagesNumber];
+			System.arraycopy(myStarts, 0, starts, 0, starts.length);
+			myStarts = starts;
+		}
+		myIsComplete = true;
+	}
+
+	ZLTextFixedPosition getPageStart(int pageIndex) {
+		final int offset = 3 * pageIndex;
+		return new ZLTextFixedPosition(myStarts[offset], myStarts[offset + 1], myStarts[offset + 2]);
+	}
+
+	private int compare(int pageIndex, ZLTextPosition position) {
+		final int offset = 3 * pageIndex;
+		int diff = myStarts[offset] - position.getParagraphIndex();
+		if (diff == 0) {
+			diff = myStarts[offset + 1] - position.getElementIndex();
+			if (diff == 0) {
+				diff = myStarts[offset + 2] - position.getCharIndex();
+			}
+		}
+		return diff;
+	}
+
+	/**
+	 * Returns index of the page containing given position
+	 * (i.e. of the last page starting not after it).
+	 */
+	int findPage(ZLTextPosition position) {
+		int low = 0;
+		int high = myPagesNumber - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			if (compare(middle, position) <= 0) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	private static File file(String directory, String key) {
+		return new File(directory, "pages-" + Integer.toHexString(key.hashCode()) + ".index");
+	}
+
+	static ZLTextPageIndex load(String directory, String key) {
+		final File file = file(directory, key);
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (stream.readInt() != VERSION || !key.equals(stream.readUTF())) {
+				return null;
+			}
+			final ZLTextPageIndex index = new ZLTextPageIndex(key);
+			final int pagesNumber = stream.readInt();
+			final int[] starts = new int[3 * pagesNumber];
+			for (int i = 0; i < starts.length; ++i) {
+				starts[i] = stream.readInt();
+			}
+			index.myStarts = starts;
+			index.myPagesNumber = pagesNumber;
+			index.myIsComplete = true;
+			return index;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	void save(String directory) {
+		final File file = file(directory, Key);
+		try {
+			final DataOutputStream stream =
+				new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				stream.writeInt(VERSION);
+				stream.writeUTF(Key);
+				stream.writeInt(myPagesNumber);
+				for (int i = 0; i < 3 * myPagesNumber; ++i) {
+					stream.writeInt(myStarts[i]);
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			file.delete();
+		}
+	}
+}
@@ -24,6 +24,7 @@ import org.vimgadgets.linebreak.LineBreaker;
 
 import org.geometerplus.zlibrary.core.image.*;
 import org.geometerplus.zlibrary.text.model.*;
+import org.geometerplus.zlibrary.text.hyphenation.*;
 
 public final class ZLTextParagraphCursor {
 	private static final class Processor {
@@ -190,6 +191,8 @@ public final class ZLTextParagraphCursor {
 	public final int Index;
 	public final ZLTextModel Model;
 	private final ArrayList<ZLTextElement> myElements = new ArrayList<ZLTextElement>();
+	// hyphenation infos of the paragraph words, computed on demand
+	private ZLTextHyphenationInfo[] myHyphenationInfos;
 
 	private ZLTextParagraphCursor(ZLTextModel model, int index) {
 		Model = model;
@@ -223,6 +226,7 @@ public final class ZLTextParagraphCursor {
 
 	void clear() {
 		myElements.clear();
+		myHyphenationInfos = null;
 	}
 
 	public boolean isFirst() {
@@ -257,6 +261,18 @@ public final class ZLTextParagraphCursor {
 		}
 	}
 
+	ZLTextHyphenationInfo getHyphenationInfo(int index) {
+		if (myHyphenationInfos == null) {
+			myHyphenationInfos = new ZLTextHyphenationInfo[myElements.size()];
+		}
+		ZLTextHyphenationInfo info = myHyphenationInfos[index];
+		if (info == null) {
+			info = ZLTextHyphenator.Instance().getInfo((ZLTextWord)myElements.get(index));
+			myHyphenationInfos[index] = info;
+		}
+		return info;
+	}
+
 	ZLTextParagraph getParagraph() {
 		return Model.getParagraph(Index);
 	}
@@ -19,43 +19,179 @@
 
 package org.geometerplus.zlibrary.text.view;
 
-import java.lang.ref.WeakReference;
 import java.util.*;
 
 import org.geometerplus.zlibrary.text.model.ZLTextModel;
 
-class ZLTextParagraphCursorCache {
-	private final static class Key {
-		private final ZLTextModel myModel;
-		private final int myIndex;
+final class ZLTextParagraphCursorCache {
+	// maximal number of cursors kept for a model
+	private static final int CAPACITY = 256;
+	// maximal total number of text elements in the cursors kept for a model
+	private static final int ELEMENTS_LIMIT = 64 * 1024;
+	// rough size of a text element (including its reference) in bytes
+	private static final int ELEMENT_SIZE_ESTIMATE = 48;
 
-		public Key(ZLTextModel model, int index) {
-			myModel = model;
-			myIndex = index;
+	// there are only a few models opened at the same time (main text and footnotes),
+	// so linear search by identity is faster than any map
+	private static final ArrayList<ZLTextParagraphCursorCache> ourCaches =
+		new ArrayList<ZLTextParagraphCursorCache>();
+
+	private static ZLTextParagraphCursorCache cache(ZLTextModel model, boolean create) {
+		final ArrayList<ZLTextParagraphCursorCache> caches = ourCaches;
+		for (int i = caches.size() - 1; i >= 0; --i) {
+			final ZLTextParagraphCursorCache cache = caches.get(i);
+			if (cache.myModel == model) {
+				return cache;
+			}
+		}
+		if (!create) {
+			return null;
 		}
+		final ZLTextParagraphCursorCache cache = new ZLTextParagraphCursorCache(model);
+		caches.add(cache);
+		return cache;
+	}
+
+	public static synchronized void put(ZLTextModel model, int index, ZLTextParagraphCursor cursor) {
+		cache(model, true).putInternal(index, cursor);
+	}
+
+	public static synchronized ZLTextParagraphCursor get(ZLTextModel model, int index) {
+		final ZLTextParagraphCursorCache cache = cache(model, false);
+		return (cache != null) ? cache.getInternal(index) : null;
+	}
+
+	public static synchronized void clear() {
+		ourCaches.clear();
+	}
 
-		public boolean equals(Object o) {
-			Key k = (Key)o;
-			return (myModel == k.myModel) && (myIndex == k.myIndex);
+	public static synchronized int memoryEstimate(ZLTextModel model) {
+		final ZLTextParagraphCursorCache cache = cache(model, false);
+		return (cache != null) ? cache.myElementsNumber * ELEMENT_SIZE_ESTIMATE : 0;
+	}
+
+	private static final class Entry {
+		final int Index;
+		final ZLTextParagraphCursor Cursor;
+		final int ElementsNumber;
+		Entry Previous;
+		Entry Next;
+
+		Entry(int index, ZLTextParagraphCursor cursor) {
+			Index = index;
+			Cursor = cursor;
+			ElementsNumber = cursor.getParagraphLength();
 		}
+	}
 
-		public int hashCode() {
-			return myModel.hashCode() + myIndex;
+	private final ZLTextModel myModel;
+	// open addressing table with linear probing
+	private final Entry[] myTable;
+	private final int myMask;
+	// list of entries, from the most recently used one to the least recently used one
+	private Entry myHead;
+	private Entry myTail;
+	private int mySize;
+	private int myElementsNumber;
+
+	private ZLTextParagraphCursorCache(ZLTextModel model) {
+		myModel = model;
+		int tableSize = 1;
+		while (tableSize < 2 * CAPACITY) {
+			tableSize <<= 1;
 		}
+		myTable = new Entry[tableSize];
+		myMask = tableSize - 1;
 	}
 
-	private static final HashMap<Key,WeakReference<ZLTextParagraphCursor>> ourMap = new HashMap<Key,WeakReference<ZLTextParagraphCursor>>();
+	private int slot(int index) {
+		return (index * 0x9E3779B9) >>> 16 & myMask;
+	}
 
-	public static void put(ZLTextModel model, int index, ZLTextParagraphCursor cursor) {
-		ourMap.put(new Key(model, index), new WeakReference<ZLTextParagraphCursor>(cursor));
+	private int find(int index) {
+		final Entry[] table = myTable;
+		for (int i = slot(index); ; i = (i + 1) & myMask) {
+			final Entry entry = table[i];
+			if (entry == null || entry.Index == index) {
+				return i;
+			}
+		}
 	}
 
-	public static ZLTextParagraphCursor get(ZLTextModel model, int index) {
-		WeakReference<ZLTextParagraphCursor> ref = ourMap.get(new Key(model, index));
-		return (ref != null) ? ref.get() : null;
+	private ZLTextParagraphCursor getInternal(int index) {
+		final Entry entry = myTable[find(index)];
+		if (entry == null) {
+			return null;
+		}
+		if (entry != myHead) {
+			unlink(entry);
+			linkFirst(entry);
+		}
+		return entry.Cursor;
+	}
+
+	private void putInternal(int index, ZLTextParagraphCursor cursor) {
+		final int slot = find(index);
+		final Entry old = myTable[slot];
+		if (old != null) {
+			unlink(old);
+			--mySize;
+			myElementsNumber -= old.ElementsNumber;
+		}
+		final Entry entry = new Entry(index, cursor);
+		myTable[slot] = entry;
+		linkFirst(entry);
+		++mySize;
+		myElementsNumber += entry.ElementsNumber;
+
+		while (mySize > 1 && (mySize > CAPACITY || myElementsNumber > ELEMENTS_LIMIT)) {
+			remove(myTail);
+		}
+	}
+
+	private void remove(Entry entry) {
+		unlink(entry);
+		--mySize;
+		myElementsNumber -= entry.ElementsNumber;
+
+		// backward shift deletion keeps probe sequences unbroken without tombstones
+		final Entry[] table = myTable;
+		int hole = find(entry.Index);
+		table[hole] = null;
+		for (int i = (hole + 1) & myMask; table[i] != null; i = (i + 1) & myMask) {
+			final int home = slot(table[i].Index);
+			if (((i - home) & myMask) >= ((i - hole) & myMask)) {
+				table[hole] = table[i];
+				table[i] = null;
+				hole = i;
+			}
+		}
+	}
+
+	private void linkFirst(Entry entry) {
+		entry.Previous = null;
+		entry.Next = myHead;
+		if (myHead != null) {
+			myHead.Previous = entry;
+		}
+		myHead = entry;
+		if (myTail == null) {
+			myTail = entry;
+		}
 	}
 
-	public static void clear() {
-		ourMap.clear();
+	private void unlink(Entry entry) {
+		if (entry.Previous != null) {
+			entry.Previous.Next = entry.Next;
+		} else {
+			myHead = entry.Next;
+		}
+		if (entry.Next != null) {
+			entry.Next.Previous = entry.Previous;
+		} else {
+			myTail = entry.Previous;
+		}
+		entry.Previous = null;
+		entry.Next = null;
 	}
 }
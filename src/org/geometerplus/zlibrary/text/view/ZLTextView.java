@@ -29,6 +29,7 @@ import org.geometerplus.zlibrary.core.util.ZLColor;
 
 import org.geometerplus.zlibrary.text.model.*;
 import org.geometerplus.zlibrary.text.hyphenation.*;
+import org.geometerplus.zlibrary.text.view.style.ZLTextBaseStyle;
 import org.geometerplus.zlibrary.text.view.style.ZLTextStyleCollection;
 
 public abstract class ZLTextView extends ZLTextViewBase {
@@ -55,6 +56,34 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	ZLTextPage myCurrentPage = new ZLTextPage();
 	private ZLTextPage myNextPage = new ZLTextPage();
 
+	// pages following myNextPage, laid out in background while the current page is shown
+	private static final int PREPARED_PAGES_NUMBER = 2;
+	private final LinkedList<ZLTextPage> myPreparedPages = new LinkedList<ZLTextPage>();
+	private final Object myPreparationLock = new Object();
+	private Thread myPreparationThread;
+	private boolean myPreparationRequested;
+
+	// exact page numbers, built in background by the same thread
+	private ZLTextPageIndex myPageIndex;
+	private ZLTextWordCursor myPaginationCursor;
+	private ZLTextPage myPaginationPage;
+	// key of the page index and the text area and paragraphs number it was built for;
+	// model and styles are changed by setModel() and clearCaches(), which drop the key
+	private String myPageIndexKey;
+	private int myPageIndexKeyWidth;
+	private int myPageIndexKeyHeight;
+	private int myPageIndexKeyParagraphsNumber;
+
+	// paragraphs number the pages were laid out for; grows while the model is being read
+	private int myKnownParagraphsNumber;
+
+	// estimation of chars per page and the text area and text sizes it was computed for;
+	// fonts are changed by clearCaches() only
+	private float myCharsPerPage = -1;
+	private int myCharsPerPageWidth;
+	private int myCharsPerPageHeight;
+	private int myCharsPerPageTextSize;
+
 	private final HashMap<ZLTextLineInfo,ZLTextLineInfo> myLineInfoCache = new HashMap<ZLTextLineInfo,ZLTextLineInfo>();
 
 	private ZLTextRegion.Soul mySelectedRegionSoul;
@@ -76,8 +105,15 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		myCurrentPage.reset();
 		myPreviousPage.reset();
 		myNextPage.reset();
+		myPreparedPages.clear();
+		stopPagesPreparation();
+		cancelPagination();
+		myPageIndexKey = null;
+		myCharsPerPage = -1;
+		myKnownParagraphsNumber = 0;
 		if (myModel != null) {
 			final int paragraphsNumber = myModel.getParagraphsNumber();
+			myKnownParagraphsNumber = paragraphsNumber;
 			if (paragraphsNumber > 0) {
 				myCurrentPage.moveStartCursor(ZLTextParagraphCursor.cursor(myModel, 0));
 			}
@@ -110,6 +146,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 
 		myPreviousPage.reset();
 		myNextPage.reset();
+		myPreparedPages.clear();
 		boolean doRepaint = false;
 		if (myCurrentPage.StartCursor.isNull()) {
 			doRepaint = true;
@@ -141,7 +178,11 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		}
 	}
 
-	public synchronized int search(final String text, boolean ignoreCase, boolean wholeText, boolean backward, boolean thisSectionOnly) {
+	public int search(final String text, boolean ignoreCase, boolean wholeText, boolean backward, boolean thisSectionOnly) {
+		return search(text, ignoreCase, false, wholeText, backward, thisSectionOnly);
+	}
+
+	public synchronized int search(final String text, boolean ignoreCase, boolean wholeWord, boolean wholeText, boolean backward, boolean thisSectionOnly) {
 		if (text.length() == 0) {
 			return 0;
 		}
@@ -150,7 +191,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		if (thisSectionOnly) {
 			// TODO: implement
 		}
-		int count = myModel.search(text, startIndex, endIndex, ignoreCase);
+		int count = myModel.search(text, startIndex, endIndex, ignoreCase, wholeWord);
 		myPreviousPage.reset();
 		myNextPage.reset();
 		if (!myCurrentPage.StartCursor.isNull()) {
@@ -214,8 +255,17 @@ public abstract class ZLTextView extends ZLTextViewBase {
 				final ZLTextPage swap = myNextPage;
 				myNextPage = myCurrentPage;
 				myCurrentPage = myPreviousPage;
-				myPreviousPage = swap;
-				myPreviousPage.reset();
+				if (swap.PaintState == PaintStateEnum.READY) {
+					// old next page follows the new one, keep it for the next turn
+					myPreparedPages.addFirst(swap);
+					while (myPreparedPages.size() > PREPARED_PAGES_NUMBER) {
+						myPreparedPages.removeLast();
+					}
+					myPreviousPage = new ZLTextPage();
+				} else {
+					myPreviousPage = swap;
+					myPreviousPage.reset();
+				}
 				if (myCurrentPage.PaintState == PaintStateEnum.NOTHING_TO_PAINT) {
 					preparePaintInfo(myNextPage);
 					myCurrentPage.EndCursor.setCursor(myNextPage.StartCursor);
@@ -242,6 +292,15 @@ public abstract class ZLTextView extends ZLTextViewBase {
 					myCurrentPage.StartCursor.setCursor(myPreviousPage.EndCursor);
 					myCurrentPage.PaintState = PaintStateEnum.START_IS_KNOWN;
 				}
+				final ZLTextPage prepared = myPreparedPages.poll();
+				if (prepared != null) {
+					if (myCurrentPage.PaintState == PaintStateEnum.READY &&
+						isPreparedPageValid(prepared, myCurrentPage.EndCursor)) {
+						myNextPage = prepared;
+					} else {
+						myPreparedPages.clear();
+					}
+				}
 				break;
 			}
 		}
@@ -387,6 +446,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		if (myModel == null || myModel.getParagraphsNumber() == 0) {
 			return;
 		}
+		checkModelExtension();
 
 		ZLTextPage page;
 		switch (pageIndex) {
@@ -444,6 +504,306 @@ public abstract class ZLTextView extends ZLTextViewBase {
 
 		drawSelectionCursor(context, getSelectionCursorPoint(page, ZLTextSelectionCursor.Left));
 		drawSelectionCursor(context, getSelectionCursorPoint(page, ZLTextSelectionCursor.Right));
+
+		if (page == myCurrentPage) {
+			schedulePagesPreparation();
+		}
+	}
+
+	private void schedulePagesPreparation() {
+		synchronized (myPreparationLock) {
+			myPreparationRequested = true;
+			if (myPreparationThread != null) {
+				myPreparationLock.notify();
+				return;
+			}
+			myPreparationThread = new Thread("ZLTextView.preparePages") {
+				public void run() {
+					while (true) {
+						synchronized (myPreparationLock) {
+							while (!myPreparationRequested) {
+								try {
+									myPreparationLock.wait();
+								} catch (InterruptedException e) {
+									return;
+								}
+							}
+							myPreparationRequested = false;
+						}
+						// the view monitor is released between pages,
+						// so a page turn waits for one page layout at most
+						while (!isInterrupted() && (prepareOnePage() || paginateOnePage())) {
+							Thread.yield();
+						}
+						synchronized (myPreparationLock) {
+							if (isInterrupted()) {
+								return;
+							}
+							// another view is shown; painting of this one starts a new thread
+							if (!myPreparationRequested && Application.getCurrentView() != ZLTextView.this) {
+								if (myPreparationThread == this) {
+									myPreparationThread = null;
+								}
+								return;
+							}
+						}
+					}
+				}
+			};
+			myPreparationThread.setDaemon(true);
+			myPreparationThread.setPriority((Thread.MIN_PRIORITY + Thread.NORM_PRIORITY) / 2);
+			myPreparationThread.start();
+		}
+	}
+
+	// the thread is started again by the first paint of the new model
+	private void stopPagesPreparation() {
+		synchronized (myPreparationLock) {
+			if (myPreparationThread != null) {
+				myPreparationThread.interrupt();
+				myPreparationThread = null;
+			}
+			myPreparationRequested = false;
+		}
+	}
+
+	private static boolean endsAtParagraph(ZLTextPage page, int paragraphIndex) {
+		return
+			page.PaintState == PaintStateEnum.READY &&
+			!page.EndCursor.isNull() &&
+			page.EndCursor.isEndOfParagraph() &&
+			page.EndCursor.getParagraphIndex() == paragraphIndex;
+	}
+
+	/**
+	 * While the model is being read, its paragraphs number grows.
+	 * Pages laid out up to the end of the text known at that time
+	 * could be not full, so they are laid out again.
+	 */
+	private void checkModelExtension() {
+		final int known = myKnownParagraphsNumber;
+		final int paragraphsNumber = myModel.getParagraphsNumber();
+		if (paragraphsNumber == known) {
+			return;
+		}
+		myKnownParagraphsNumber = paragraphsNumber;
+		if (endsAtParagraph(myCurrentPage, known - 1) && !myCurrentPage.StartCursor.isNull()) {
+			myCurrentPage.LineInfos.clear();
+			myCurrentPage.EndCursor.reset();
+			myCurrentPage.PaintState = PaintStateEnum.START_IS_KNOWN;
+			myNextPage.reset();
+			myPreparedPages.clear();
+		} else if (endsAtParagraph(myNextPage, known - 1)) {
+			myNextPage.reset();
+			myPreparedPages.clear();
+		} else {
+			for (Iterator<ZLTextPage> it = myPreparedPages.iterator(); it.hasNext(); ) {
+				if (endsAtParagraph(it.next(), known - 1)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private static boolean isLastPage(ZLTextPage page) {
+		return
+			page.EndCursor.isNull() ||
+			(page.EndCursor.isEndOfParagraph() && page.EndCursor.getParagraphCursor().isLast());
+	}
+
+	private boolean isPreparedPageValid(ZLTextPage page, ZLTextWordCursor start) {
+		return
+			page.PaintState == PaintStateEnum.READY &&
+			page.OldWidth == getTextAreaWidth() &&
+			page.OldHeight == getTextAreaHeight() &&
+			!start.isNull() &&
+			page.StartCursor.samePositionAs(start);
+	}
+
+	/**
+	 * Lays out one page around the current one (next, previous,
+	 * then further pages in reading direction).
+	 * Runs under the view monitor since text style and paint context are not thread-safe.
+	 * Returns false if there is nothing to prepare.
+	 */
+	private synchronized boolean prepareOnePage() {
+		if (myModel == null || myContext == null ||
+			Application.getCurrentView() != this ||
+			myCurrentPage.PaintState != PaintStateEnum.READY) {
+			return false;
+		}
+		checkModelExtension();
+		if (myCurrentPage.PaintState != PaintStateEnum.READY) {
+			return false;
+		}
+
+		if (myNextPage.PaintState != PaintStateEnum.READY && !isLastPage(myCurrentPage)) {
+			if (myNextPage.PaintState == PaintStateEnum.NOTHING_TO_PAINT) {
+				myNextPage.StartCursor.setCursor(myCurrentPage.EndCursor);
+				myNextPage.PaintState = PaintStateEnum.START_IS_KNOWN;
+			}
+			preparePaintInfo(myNextPage);
+			return true;
+		}
+
+		if (myPreviousPage.PaintState != PaintStateEnum.READY &&
+			!myCurrentPage.StartCursor.isNull() &&
+			(!myCurrentPage.StartCursor.isStartOfParagraph() ||
+			 !myCurrentPage.StartCursor.getParagraphCursor().isFirst())) {
+			if (myPreviousPage.PaintState == PaintStateEnum.NOTHING_TO_PAINT) {
+				myPreviousPage.EndCursor.setCursor(myCurrentPage.StartCursor);
+				myPreviousPage.PaintState = PaintStateEnum.END_IS_KNOWN;
+			}
+			preparePaintInfo(myPreviousPage);
+			return true;
+		}
+
+		ZLTextPage last = myNextPage;
+		for (Iterator<ZLTextPage> it = myPreparedPages.iterator(); it.hasNext(); ) {
+			final ZLTextPage page = it.next();
+			if (last.PaintState != PaintStateEnum.READY || !isPreparedPageValid(page, last.EndCursor)) {
+				it.remove();
+				while (it.hasNext()) {
+					it.next();
+					it.remove();
+				}
+				break;
+			}
+			last = page;
+		}
+		if (myPreparedPages.size() >= PREPARED_PAGES_NUMBER ||
+			last.PaintState != PaintStateEnum.READY || isLastPage(last)) {
+			return false;
+		}
+
+		final ZLTextPage page = new ZLTextPage();
+		page.StartCursor.setCursor(last.EndCursor);
+		page.PaintState = PaintStateEnum.START_IS_KNOWN;
+		preparePaintInfo(page);
+		myPreparedPages.add(page);
+		return true;
+	}
+
+	/**
+	 * Directory to store page indices in, or null if they should not be stored.
+	 */
+	protected String getPageIndexDirectory() {
+		return null;
+	}
+
+	private String pageIndexKey() {
+		final int width = getTextAreaWidth();
+		final int height = getTextAreaHeight();
+		final int paragraphsNumber = myModel.getParagraphsNumber();
+		if (myPageIndexKey != null &&
+			width == myPageIndexKeyWidth &&
+			height == myPageIndexKeyHeight &&
+			paragraphsNumber == myPageIndexKeyParagraphsNumber) {
+			return myPageIndexKey;
+		}
+
+		final ZLTextBaseStyle style = ZLTextStyleCollection.Instance().getBaseStyle();
+		myPageIndexKey =
+			myModel.getId() + ":" +
+			paragraphsNumber + ":" +
+			myModel.getTextLength(paragraphsNumber - 1) + ":" +
+			style.getFontFamily() + ":" +
+			style.getFontSize() + ":" +
+			style.isBold() + ":" +
+			style.isItalic() + ":" +
+			style.getLineSpacePercent() + ":" +
+			style.getAlignment() + ":" +
+			style.allowHyphenations() + ":" +
+			width + "x" + height;
+		myPageIndexKeyWidth = width;
+		myPageIndexKeyHeight = height;
+		myPageIndexKeyParagraphsNumber = paragraphsNumber;
+		return myPageIndexKey;
+	}
+
+	private void cancelPagination() {
+		myPageIndex = null;
+		myPaginationCursor = null;
+		myPaginationPage = null;
+	}
+
+	/**
+	 * Returns complete page index for current model and layout settings,
+	 * or null if it is not built yet; in the latter case starts building it.
+	 * Until the model is completely read, page numbers are estimated.
+	 */
+	private ZLTextPageIndex exactPageIndex() {
+		if (myModel == null || !myModel.isComplete() ||
+			myModel.getParagraphsNumber() == 0 || myContext == null) {
+			return null;
+		}
+		final String key = pageIndexKey();
+		if (myPageIndex == null || !myPageIndex.Key.equals(key)) {
+			cancelPagination();
+			final String directory = getPageIndexDirectory();
+			if (directory != null) {
+				myPageIndex = ZLTextPageIndex.load(directory, key);
+			}
+			if (myPageIndex == null) {
+				myPageIndex = new ZLTextPageIndex(key);
+				schedulePagesPreparation();
+			}
+		}
+		return myPageIndex.isComplete() ? myPageIndex : null;
+	}
+
+	/**
+	 * Lays out one more page of the pagination pass.
+	 * Paragraphs are visited one by one, so only the current cursor is kept.
+	 * Returns false if the pass is finished or cancelled.
+	 */
+	private synchronized boolean paginateOnePage() {
+		final ZLTextPageIndex index = myPageIndex;
+		if (index == null || index.isComplete() ||
+			myModel == null || myContext == null ||
+			Application.getCurrentView() != this) {
+			return false;
+		}
+		if (!index.Key.equals(pageIndexKey())) {
+			cancelPagination();
+			return false;
+		}
+
+		if (myPaginationCursor == null) {
+			myPaginationCursor = new ZLTextWordCursor(ZLTextParagraphCursor.cursor(myModel, 0));
+			myPaginationPage = new ZLTextPage();
+		}
+		final ZLTextWordCursor start = myPaginationCursor;
+		final ZLTextPage page = myPaginationPage;
+		index.addPage(start);
+		page.reset();
+		page.StartCursor.setCursor(start);
+		page.PaintState = PaintStateEnum.START_IS_KNOWN;
+		preparePaintInfo(page);
+		if (isLastPage(page) || page.EndCursor.samePositionAs(start)) {
+			index.complete();
+			final String directory = getPageIndexDirectory();
+			if (directory != null) {
+				index.save(directory);
+			}
+			myPaginationCursor = null;
+			myPaginationPage = null;
+			Application.getViewWidget().repaint();
+			return false;
+		}
+		start.setCursor(page.EndCursor);
+		return true;
+	}
+
+	private int exactPageNumber(ZLTextPageIndex index, ZLTextPage page) {
+		preparePaintInfo(page);
+		if (page.StartCursor.isNull()) {
+			return 1;
+		}
+		if (isLastPage(page)) {
+			return index.getPagesNumber();
+		}
+		return index.findPage(page.StartCursor) + 1;
 	}
 
 	private ZLTextPage getPage(PageIndex pageIndex) {
@@ -498,16 +858,28 @@ public abstract class ZLTextView extends ZLTextViewBase {
 
 	@Override
 	public final synchronized int getScrollbarFullSize() {
-		return sizeOfFullText();
+		final ZLTextPageIndex index = exactPageIndex();
+		return index != null ? index.getPagesNumber() : sizeOfFullText();
 	}
 
 	@Override
 	public final synchronized int getScrollbarThumbPosition(PageIndex pageIndex) {
-		return scrollbarType() == SCROLLBAR_SHOW_AS_PROGRESS ? 0 : getCurrentCharNumber(pageIndex, true);
+		if (scrollbarType() == SCROLLBAR_SHOW_AS_PROGRESS) {
+			return 0;
+		}
+		final ZLTextPageIndex index = exactPageIndex();
+		return index != null
+			? exactPageNumber(index, getPage(pageIndex)) - 1
+			: getCurrentCharNumber(pageIndex, true);
 	}
 
 	@Override
 	public final synchronized int getScrollbarThumbLength(PageIndex pageIndex) {
+		final ZLTextPageIndex index = exactPageIndex();
+		if (index != null) {
+			final int page = exactPageNumber(index, getPage(pageIndex));
+			return scrollbarType() == SCROLLBAR_SHOW_AS_PROGRESS ? page : 1;
+		}
 		int start = scrollbarType() == SCROLLBAR_SHOW_AS_PROGRESS
 			? 0 : getCurrentCharNumber(pageIndex, true);
 		int end = getCurrentCharNumber(pageIndex, false);
@@ -533,13 +905,19 @@ public abstract class ZLTextView extends ZLTextViewBase {
 
 	// Can be called only when (myModel.getParagraphsNumber() != 0)
 	private synchronized float computeCharsPerPage() {
-		setTextStyle(ZLTextStyleCollection.Instance().getBaseStyle());
-
 		final int textWidth = getTextAreaWidth();
 		final int textHeight = getTextAreaHeight();
 
 		final int num = myModel.getParagraphsNumber();
 		final int totalTextSize = myModel.getTextLength(num - 1);
+		if (myCharsPerPage > 0 &&
+			textWidth == myCharsPerPageWidth &&
+			textHeight == myCharsPerPageHeight &&
+			totalTextSize == myCharsPerPageTextSize) {
+			return myCharsPerPage;
+		}
+
+		setTextStyle(ZLTextStyleCollection.Instance().getBaseStyle());
 		final float charsPerParagraph = ((float)totalTextSize) / num;
 
 		final float charWidth = computeCharWidth();
@@ -554,7 +932,11 @@ public abstract class ZLTextView extends ZLTextViewBase {
 				+ getTextStyle().getSpaceAfter()) / charsPerParagraph);
 		final int linesPerPage = effectiveHeight / strHeight;
 
-		return charsPerLine * linesPerPage;
+		myCharsPerPage = charsPerLine * linesPerPage;
+		myCharsPerPageWidth = textWidth;
+		myCharsPerPageHeight = textHeight;
+		myCharsPerPageTextSize = totalTextSize;
+		return myCharsPerPage;
 	}
 
 	private synchronized int computeTextPageNumber(int textSize) {
@@ -614,11 +996,15 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	}
 
 	public final synchronized int computePageNumber() {
-		return computeTextPageNumber(sizeOfFullText());
+		final ZLTextPageIndex index = exactPageIndex();
+		return index != null ? index.getPagesNumber() : computeTextPageNumber(sizeOfFullText());
 	}
 
 	public final synchronized int computeCurrentPage() {
-		return computeTextPageNumber(getCurrentCharNumber(PageIndex.current, false));
+		final ZLTextPageIndex index = exactPageIndex();
+		return index != null
+			? exactPageNumber(index, myCurrentPage)
+			: computeTextPageNumber(getCurrentCharNumber(PageIndex.current, false));
 	}
 
 	public final synchronized void gotoPage(int page) {
@@ -626,6 +1012,13 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			return;
 		}
 
+		final ZLTextPageIndex index = exactPageIndex();
+		if (index != null) {
+			final int pageIndex = Math.max(0, Math.min(page, index.getPagesNumber()) - 1);
+			gotoPosition(index.getPageStart(pageIndex));
+			return;
+		}
+
 		final float factor = computeCharsPerPage();
 		final float textSize = page * factor;
 
@@ -917,7 +1310,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 				int spaceLeft = maxWidth - newWidth;
 				if ((word.Length > 3 && spaceLeft > 2 * context.getSpaceWidth())
 					|| info.EndElementIndex == startIndex) {
-					ZLTextHyphenationInfo hyphenationInfo = ZLTextHyphenator.Instance().getInfo(word);
+					ZLTextHyphenationInfo hyphenationInfo = paragraphCursor.getHyphenationInfo(currentElementIndex);
 					int hyphenationPosition = word.Length - 1;
 					int subwordWidth = 0;
 					for(; hyphenationPosition > currentCharIndex; hyphenationPosition--) {
@@ -1100,6 +1493,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		preparePaintInfo(myCurrentPage);
 		myPreviousPage.reset();
 		myNextPage.reset();
+		myPreparedPages.clear();
 		if (myCurrentPage.PaintState == PaintStateEnum.READY) {
 			myCurrentPage.PaintState = forward ? PaintStateEnum.TO_SCROLL_FORWARD : PaintStateEnum.TO_SCROLL_BACKWARD;
 			myScrollingMode = scrollingMode;
@@ -1119,6 +1513,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			myCurrentPage.moveStartCursor(paragraphIndex, wordIndex, charIndex);
 			myPreviousPage.reset();
 			myNextPage.reset();
+			myPreparedPages.clear();
 			preparePaintInfo(myCurrentPage);
 			if (myCurrentPage.isEmptyPage()) {
 				scrollPage(true, ScrollingMode.NO_OVERLAPPING, 0);
@@ -1131,6 +1526,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			myCurrentPage.moveEndCursor(paragraphIndex, wordIndex, charIndex);
 			myPreviousPage.reset();
 			myNextPage.reset();
+			myPreparedPages.clear();
 			preparePaintInfo(myCurrentPage);
 			if (myCurrentPage.isEmptyPage()) {
 				scrollPage(false, ScrollingMode.NO_OVERLAPPING, 0);
@@ -1141,6 +1537,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	protected synchronized void preparePaintInfo() {
 		myPreviousPage.reset();
 		myNextPage.reset();
+		myPreparedPages.clear();
 		preparePaintInfo(myCurrentPage);
 	}
 
@@ -1279,14 +1676,19 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		}
 	}
 
-	public void clearCaches() {
+	public synchronized void clearCaches() {
+		cancelPagination();
+		myPageIndexKey = null;
+		myCharsPerPage = -1;
+		clearWidthCache();
 		rebuildPaintInfo();
 		Application.getViewWidget().reset();
 	}
 
-	protected void rebuildPaintInfo() {
+	protected synchronized void rebuildPaintInfo() {
 		myPreviousPage.reset();
 		myNextPage.reset();
+		myPreparedPages.clear();
 		ZLTextParagraphCursorCache.clear();
 
 		if (myCurrentPage.PaintState != PaintStateEnum.NOTHING_TO_PAINT) {
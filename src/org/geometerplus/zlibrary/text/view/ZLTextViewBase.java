@@ -29,8 +29,13 @@ import org.geometerplus.zlibrary.text.view.style.ZLTextStyleCollection;
 import org.geometerplus.zlibrary.text.view.style.ZLTextStyleDecoration;
 
 abstract class ZLTextViewBase extends ZLView {
+	// shared by all views, since widths depend on fonts only
+	private static final ZLTextWidthCache ourWidthCache = new ZLTextWidthCache();
+
 	private ZLTextStyle myTextStyle;
 	private int myWordHeight = -1;
+	private String myFontFamily;
+	private int myFontKey;
 
 	ZLTextViewBase(ZLApplication application) {
 		super(application);
@@ -82,7 +87,34 @@ abstract class ZLTextViewBase extends ZLView {
 			myTextStyle = style;
 			myWordHeight = -1;
 		}
-		myContext.setFont(style.getFontFamily(), style.getFontSize(), style.isBold(), style.isItalic(), style.isUnderline());
+		myFontFamily = style.getFontFamily();
+		myFontKey = ZLTextWidthCache.fontKey(style.getFontSize(), style.isBold(), style.isItalic());
+		myContext.setFont(myFontFamily, style.getFontSize(), style.isBold(), style.isItalic(), style.isUnderline());
+	}
+
+	static void clearWidthCache() {
+		ourWidthCache.clear();
+	}
+
+	private int getStringWidth(char[] data, int offset, int length) {
+		if (length > ZLTextWidthCache.MAX_RUN_LENGTH || myFontFamily == null) {
+			return myContext.getStringWidth(data, offset, length);
+		}
+		int width = ourWidthCache.get(myFontFamily, myFontKey, data, offset, length);
+		if (width == -1) {
+			width = myContext.getStringWidth(data, offset, length);
+			ourWidthCache.put(myFontFamily, myFontKey, data, offset, length, width);
+		}
+		return width;
+	}
+
+	private int getWordWidth(ZLTextWord word) {
+		int width = word.getCachedWidth();
+		if (width <= 1) {
+			width = getStringWidth(word.Data, word.Offset, word.Length);
+			word.setCachedWidth(width);
+		}
+		return width;
 	}
 
 	final void resetTextStyle() {
@@ -142,12 +174,12 @@ abstract class ZLTextViewBase extends ZLView {
 	final int getWordWidth(ZLTextWord word, int start) {
 		return
 			start == 0 ?
-				word.getWidth(myContext) :
-				myContext.getStringWidth(word.Data, word.Offset + start, word.Length - start);
+				getWordWidth(word) :
+				getStringWidth(word.Data, word.Offset + start, word.Length - start);
 	}
 
 	final int getWordWidth(ZLTextWord word, int start, int length) {
-		return myContext.getStringWidth(word.Data, word.Offset + start, length);
+		return getStringWidth(word.Data, word.Offset + start, length);
 	}
 
 	private char[] myWordPartArray = new char[20];
@@ -155,12 +187,12 @@ abstract class ZLTextViewBase extends ZLView {
 	final int getWordWidth(ZLTextWord word, int start, int length, boolean addHyphenationSign) {
 		if (length == -1) {
 			if (start == 0) {
-				return word.getWidth(myContext);
+				return getWordWidth(word);
 			}
 			length = word.Length - start;
 		}
 		if (!addHyphenationSign) {
-			return myContext.getStringWidth(word.Data, word.Offset + start, length);
+			return getStringWidth(word.Data, word.Offset + start, length);
 		}
 		char[] part = myWordPartArray;
 		if (length + 1 > part.length) {
@@ -169,7 +201,7 @@ abstract class ZLTextViewBase extends ZLView {
 		}
 		System.arraycopy(word.Data, word.Offset + start, part, 0, length);
 		part[length] = '-';
-		return myContext.getStringWidth(part, 0, length + 1);
+		return getStringWidth(part, 0, length + 1);
 	}
 
 	int getAreaLength(ZLTextParagraphCursor paragraph, ZLTextElementArea area, int toCharIndex) {
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.util.Arrays;
+
+/**
+ * Widths of short char runs measured with given fonts.
+ * Open addressing table keyed by font and run hash; the run itself
+ * is stored as well, so hash collisions never produce wrong widths.
+ * The table is cleared when it becomes too full.
+ */
+final class ZLTextWidthCache {
+	// longer runs are measured directly
+	static final int MAX_RUN_LENGTH = 24;
+
+	private static final int TABLE_SIZE = 4096;
+	private static final int MAX_SIZE = TABLE_SIZE * 3 / 4;
+
+	// 0 means empty slot
+	private final int[] myHashes = new int[TABLE_SIZE];
+	private final String[] myFamilies = new String[TABLE_SIZE];
+	private final int[] myFontKeys = new int[TABLE_SIZE];
+	private final byte[] myLengths = new byte[TABLE_SIZE];
+	private final char[] myRuns = new char[TABLE_SIZE * MAX_RUN_LENGTH];
+	private final int[] myWidths = new int[TABLE_SIZE];
+	private int mySize;
+
+	static int fontKey(int size, boolean bold, boolean italic) {
+		return (size << 2) | (bold ? 2 : 0) | (italic ? 1 : 0);
+	}
+
+	private static int hash(String family, int fontKey, char[] data, int offset, int length) {
+		int hash = family.hashCode() * 31 + fontKey;
+		for (int i = offset; i < offset + length; ++i) {
+			hash = hash * 31 + data[i];
+		}
+		hash ^= hash >>> 16;
+		return hash != 0 ? hash : 1;
+	}
+
+	private boolean matches(int slot, int hash, String family, int fontKey, char[] data, int offset, int length) {
+		if (myHashes[slot] != hash ||
+			myFontKeys[slot] != fontKey ||
+			myLengths[slot] != length ||
+			!family.equals(myFamilies[slot])) {
+			return false;
+		}
+		final char[] runs = myRuns;
+		for (int i = 0, j = slot * MAX_RUN_LENGTH; i < length; ++i, ++j) {
+			if (runs[j] != data[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns cached width or -1.
+	 */
+	synchronized int get(String family, int fontKey, char[] data, int offset, int length) {
+		final int hash = hash(family, fontKey, data, offset, length);
+		for (int slot = hash & (TABLE_SIZE - 1); myHashes[slot] != 0; slot = (slot + 1) & (TABLE_SIZE - 1)) {
+			if (matches(slot, hash, family, fontKey, data, offset, length)) {
+				return myWidths[slot];
+			}
+		}
+		return -1;
+	}
+
+	synchronized void put(String family, int fontKey, char[] data, int offset, int length, int width) {
+		if (mySize >= MAX_SIZE) {
+			clear();
+		}
+		final int hash = hash(family, fontKey, data, offset, length);
+		int slot = hash & (TABLE_SIZE - 1);
+		for (; myHashes[slot] != 0; slot = (slot + 1) & (TABLE_SIZE - 1)) {
+			if (matches(slot, hash, family, fontKey, data, offset, length)) {
+				myWidths[slot] = width;
+				return;
+			}
+		}
+		myHashes[slot] = hash;
+		myFamilies[slot] = family;
+		myFontKeys[slot] = fontKey;
+		myLengths[slot] = (byte)length;
+		System.arraycopy(data, offset, myRuns, slot * MAX_RUN_LENGTH, length);
+		myWidths[slot] = width;
+		++mySize;
+	}
+
+	synchronized void clear() {
+		Arrays.fill(myHashes, 0);
+		Arrays.fill(myFamilies, null);
+		mySize = 0;
+	}
+}
@@ -97,6 +97,14 @@ public final class ZLTextWord extends ZLTextElement {
 		return width;
 	}
 
+	int getCachedWidth() {
+		return myWidth;
+	}
+
+	void setCachedWidth(int width) {
+		myWidth = width;
+	}
+
 	@Override
 	public String toString() {
 		return new String(Data, Offset, Length);
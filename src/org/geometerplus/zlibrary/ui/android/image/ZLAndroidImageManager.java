@@ -19,6 +19,10 @@
 
 package org.geometerplus.zlibrary.ui.android.image;
 
+import java.io.ByteArrayOutputStream;
+
+import android.graphics.Bitmap;
+
 import org.geometerplus.zlibrary.core.util.MimeType;
 import org.geometerplus.zlibrary.core.image.*;
 
@@ -39,6 +43,32 @@ public final class ZLAndroidImageManager extends ZLImageManager {
 		}
 	}
 
+	private static final int THUMBNAIL_QUALITY = 85;
+
+	@Override
+	public byte[] createThumbnail(ZLImage image, int maxWidth, int maxHeight) {
+		final ZLAndroidImageData data = getImageData(image);
+		if (data == null) {
+			return null;
+		}
+		final Bitmap bitmap = data.getBitmap(maxWidth, maxHeight);
+		if (bitmap == null) {
+			return null;
+		}
+		try {
+			final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			final boolean success = bitmap.hasAlpha()
+				? bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream)
+				: bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, stream);
+			return success ? stream.toByteArray() : null;
+		} finally {
+			// a data object created for this call is dropped, so its bitmap is not needed any more
+			if (data != image) {
+				bitmap.recycle();
+			}
+		}
+	}
+
 	private ZLAndroidImageLoader myLoader;
 
 	@Override
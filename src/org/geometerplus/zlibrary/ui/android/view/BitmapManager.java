@@ -19,79 +19,207 @@
 
 package org.geometerplus.zlibrary.ui.android.view;
 
+import java.util.LinkedList;
+
 import android.graphics.Bitmap;
 
 import org.geometerplus.zlibrary.core.view.ZLView;
 
+/**
+ * Ring of page bitmaps. A requested page that is not in the ring is rendered
+ * at once; the next and the previous pages are rendered in background into
+ * a spare bitmap that is put into the ring when it is ready.
+ */
 class BitmapManager {
-	private final int SIZE = 2;
-	private final Bitmap[] myBitmaps = new Bitmap[SIZE];
-	private final ZLView.PageIndex[] myIndexes = new ZLView.PageIndex[SIZE];
+	// the view paints the previous, the current and the next pages only
+	private static final int MAX_SLOTS_NUMBER = 3;
+	private static final int MIN_BITMAPS_NUMBER = 2;
+	// one more bitmap is needed to render a page in background
+	private static final int MAX_BITMAPS_NUMBER = MAX_SLOTS_NUMBER + 1;
+
+	private PageSlots<Bitmap> mySlots = new PageSlots<Bitmap>(MIN_BITMAPS_NUMBER);
+	// bitmaps of the current size that are not in the ring
+	private final LinkedList<Bitmap> mySpareBitmaps = new LinkedList<Bitmap>();
+	private int myBitmapsNumber;
+	private int myMaxBitmapsNumber = MIN_BITMAPS_NUMBER;
 
 	private int myWidth;
 	private int myHeight;
 
+	// between shift() and finishShift() the view is not scrolled yet,
+	// so pages are not rendered in background
+	private boolean myShiftIsInProgress;
+
 	private final ZLAndroidWidget myWidget;
 
+	private final Object myRenderingLock = new Object();
+	private Thread myRenderingThread;
+	private boolean myRenderingRequested;
+
 	BitmapManager(ZLAndroidWidget widget) {
 		myWidget = widget;
 	}
 
-	void setSize(int w, int h) {
+	synchronized void setSize(int w, int h) {
 		if (myWidth != w || myHeight != h) {
 			myWidth = w;
 			myHeight = h;
-			for (int i = 0; i < SIZE; ++i) {
-				myBitmaps[i] = null;
-				myIndexes[i] = null;
+			for (Bitmap bitmap : mySlots.clear()) {
+				bitmap.recycle();
+			}
+			for (Bitmap bitmap : mySpareBitmaps) {
+				bitmap.recycle();
 			}
-			System.gc();
-			System.gc();
-			System.gc();
+			mySpareBitmaps.clear();
+			myBitmapsNumber = 0;
+
+			// bitmaps take at most a quarter of the heap
+			final long bitmapSize = Math.max(2L * w * h, 1); // RGB_565
+			final long budget = Runtime.getRuntime().maxMemory() / 4;
+			myMaxBitmapsNumber =
+				(int)Math.max(MIN_BITMAPS_NUMBER, Math.min(MAX_BITMAPS_NUMBER, budget / bitmapSize));
+			mySlots = new PageSlots<Bitmap>(Math.min(myMaxBitmapsNumber, MAX_SLOTS_NUMBER));
 		}
 	}
 
+	private Bitmap createBitmap() {
+		++myBitmapsNumber;
+		return Bitmap.createBitmap(myWidth, myHeight, Bitmap.Config.RGB_565);
+	}
+
 	Bitmap getBitmap(ZLView.PageIndex index) {
-		for (int i = 0; i < SIZE; ++i) {
-			if (index == myIndexes[i]) {
-				return myBitmaps[i];
+		final PageSlots<Bitmap> slots;
+		Bitmap bitmap;
+		synchronized (this) {
+			slots = mySlots;
+			bitmap = slots.get(index);
+			if (bitmap != null) {
+				scheduleRendering();
+				return bitmap;
+			}
+			if (!mySpareBitmaps.isEmpty()) {
+				bitmap = mySpareBitmaps.removeFirst();
+			} else if (myBitmapsNumber < myMaxBitmapsNumber) {
+				bitmap = createBitmap();
+			} else {
+				// the least needed page is rendered again later
+				bitmap = slots.take();
+				if (bitmap == null) {
+					// there are no bitmaps in the ring at all
+					bitmap = createBitmap();
+				}
+			}
+		}
+
+		myWidget.drawOnBitmap(bitmap, index);
+
+		synchronized (this) {
+			if (slots == mySlots) {
+				Bitmap old = slots.put(index, bitmap);
+				if (old == bitmap) {
+					// no slot is free for the page, but the page is needed now
+					old = slots.take();
+					slots.put(index, bitmap);
+				}
+				if (old != null) {
+					mySpareBitmaps.add(old);
+				}
 			}
 		}
-		final int iIndex = getInternalIndex(index);
-		myIndexes[iIndex] = index;
-		if (myBitmaps[iIndex] == null) {
-			myBitmaps[iIndex] = Bitmap.createBitmap(myWidth, myHeight, Bitmap.Config.RGB_565);
+		scheduleRendering();
+		return bitmap;
+	}
+
+	private void scheduleRendering() {
+		synchronized (myRenderingLock) {
+			if (myRenderingThread != null) {
+				myRenderingRequested = true;
+				return;
+			}
+			// the thread stops when there is nothing to render,
+			// so it does not keep the widget after the activity is closed
+			myRenderingThread = new Thread("BitmapManager.render") {
+				public void run() {
+					while (true) {
+						while (renderOnePage()) {
+							Thread.yield();
+						}
+						synchronized (myRenderingLock) {
+							if (!myRenderingRequested) {
+								myRenderingThread = null;
+								return;
+							}
+							myRenderingRequested = false;
+						}
+					}
+				}
+			};
+			myRenderingThread.setDaemon(true);
+			myRenderingThread.setPriority((Thread.MIN_PRIORITY + Thread.NORM_PRIORITY) / 2);
+			myRenderingThread.start();
 		}
-		myWidget.drawOnBitmap(myBitmaps[iIndex], index);
-		return myBitmaps[iIndex];
 	}
 
-	private int getInternalIndex(ZLView.PageIndex index) {
-		for (int i = 0; i < SIZE; ++i) {
-			if (myIndexes[i] == null) {
-				return i;
+	// returns false if there is nothing to render
+	private boolean renderOnePage() {
+		final PageSlots<Bitmap> slots;
+		final ZLView.PageIndex index;
+		final int generation;
+		final Bitmap bitmap;
+		synchronized (this) {
+			slots = mySlots;
+			index = myShiftIsInProgress ? null : slots.pageToPrepare();
+			if (index == null) {
+				return false;
+			}
+			if (!mySpareBitmaps.isEmpty()) {
+				bitmap = mySpareBitmaps.removeFirst();
+			} else if (myBitmapsNumber < myMaxBitmapsNumber) {
+				bitmap = createBitmap();
+			} else {
+				return false;
 			}
+			generation = slots.generation();
 		}
-		for (int i = 0; i < SIZE; ++i) {
-			if (myIndexes[i] != ZLView.PageIndex.current) {
-				return i;
+
+		// the view is locked while painting, so this does not conflict with the UI thread
+		myWidget.drawOnBitmap(bitmap, index);
+
+		synchronized (this) {
+			if (slots != mySlots) {
+				// the size has been changed
+				bitmap.recycle();
+			} else if (generation == slots.generation() && slots.get(index) == null) {
+				final Bitmap old = slots.put(index, bitmap);
+				if (old != null) {
+					mySpareBitmaps.add(old);
+				}
+			} else {
+				// the pages have been changed while rendering
+				mySpareBitmaps.add(bitmap);
 			}
 		}
-		throw new RuntimeException("That's impossible");
+		return true;
 	}
 
-	void reset() {
-		for (int i = 0; i < SIZE; ++i) {
-			myIndexes[i] = null;
-		}
+	synchronized void reset() {
+		mySlots.reset();
 	}
 
-	void shift(boolean forward) {
-		for (int i = 0; i < SIZE; ++i) {
-			if (myIndexes[i] == null) {
-				continue;
-			}
-			myIndexes[i] = forward ? myIndexes[i].getPrevious() : myIndexes[i].getNext();
+	/**
+	 * Moves the pages in the ring; the view should be scrolled to the same page
+	 * and finishShift() should be called after that. A page being rendered now
+	 * is not put into the ring, since the generation is changed here.
+	 */
+	synchronized void shift(boolean forward) {
+		mySlots.shift(forward);
+		myShiftIsInProgress = true;
+	}
+
+	void finishShift() {
+		synchronized (this) {
+			myShiftIsInProgress = false;
 		}
+		scheduleRendering();
 	}
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.ui.android.view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geometerplus.zlibrary.core.view.ZLView;
+
+/**
+ * Pages kept in the slots of the page bitmap ring. An item stays in its slot
+ * after its page is forgotten, to be reused for another page. There are no
+ * Android dependencies here; T is the bitmap type.
+ */
+final class PageSlots<T> {
+	private final Object[] myItems;
+	private final ZLView.PageIndex[] myIndexes;
+	// time of the last use of every slot, in get() and put() calls
+	private final int[] myUseTimes;
+	private int myTime;
+	// changed on every reset and shift, so a page rendered for older state can be detected
+	private int myGeneration;
+
+	PageSlots(int size) {
+		myItems = new Object[size];
+		myIndexes = new ZLView.PageIndex[size];
+		myUseTimes = new int[size];
+	}
+
+	int size() {
+		return myItems.length;
+	}
+
+	int generation() {
+		return myGeneration;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T item(int slot) {
+		return (T)myItems[slot];
+	}
+
+	private int find(ZLView.PageIndex index) {
+		for (int i = 0; i < myIndexes.length; ++i) {
+			if (myIndexes[i] == index) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	T get(ZLView.PageIndex index) {
+		final int slot = find(index);
+		if (slot == -1) {
+			return null;
+		}
+		myUseTimes[slot] = ++myTime;
+		return item(slot);
+	}
+
+	// the current page is needed first, then the next one, then the previous one
+	private static int priority(ZLView.PageIndex index) {
+		if (index == null) {
+			return -1;
+		}
+		switch (index) {
+			case current:
+				return 2;
+			case next:
+				return 1;
+			default:
+				return 0;
+		}
+	}
+
+	// a slot without page, or the slot of a page with lower priority; -1 if there is no such slot
+	private int slotToReuse(ZLView.PageIndex index) {
+		int slot = -1;
+		for (int i = 0; i < myIndexes.length; ++i) {
+			if (slot == -1 || priority(myIndexes[i]) < priority(myIndexes[slot])) {
+				slot = i;
+			}
+		}
+		return priority(myIndexes[slot]) < priority(index) ? slot : -1;
+	}
+
+	boolean canPut(ZLView.PageIndex index) {
+		return find(index) != -1 || slotToReuse(index) != -1;
+	}
+
+	/**
+	 * Stores the item for the page. Returns the item that is not in the ring
+	 * any more: the previous item of the slot, or the given one if there is
+	 * no slot for the page.
+	 */
+	T put(ZLView.PageIndex index, T item) {
+		int slot = find(index);
+		if (slot == -1) {
+			slot = slotToReuse(index);
+			if (slot == -1) {
+				return item;
+			}
+		}
+		final T old = item(slot);
+		myItems[slot] = item;
+		myIndexes[slot] = index;
+		myUseTimes[slot] = ++myTime;
+		return old;
+	}
+
+	/**
+	 * Removes and returns an item to render a page that is needed now:
+	 * one without page, or one of the page with the lowest priority
+	 * (so the current page is the last choice), the least recently used
+	 * of such items. Returns null only if the ring has no items.
+	 */
+	T take() {
+		int slot = -1;
+		for (int i = 0; i < myIndexes.length; ++i) {
+			if (myItems[i] == null) {
+				continue;
+			}
+			if (slot == -1) {
+				slot = i;
+				continue;
+			}
+			final int diff = priority(myIndexes[i]) - priority(myIndexes[slot]);
+			if (diff < 0 || (diff == 0 && myUseTimes[i] < myUseTimes[slot])) {
+				slot = i;
+			}
+		}
+		if (slot == -1) {
+			return null;
+		}
+		final T item = item(slot);
+		myItems[slot] = null;
+		myIndexes[slot] = null;
+		return item;
+	}
+
+	// the page to be rendered in advance: next, then previous
+	ZLView.PageIndex pageToPrepare() {
+		if (find(ZLView.PageIndex.current) == -1) {
+			// the current page is rendered on demand
+			return null;
+		}
+		if (find(ZLView.PageIndex.next) == -1 && canPut(ZLView.PageIndex.next)) {
+			return ZLView.PageIndex.next;
+		}
+		if (find(ZLView.PageIndex.previous) == -1 && canPut(ZLView.PageIndex.previous)) {
+			return ZLView.PageIndex.previous;
+		}
+		return null;
+	}
+
+	void reset() {
+		for (int i = 0; i < myIndexes.length; ++i) {
+			myIndexes[i] = null;
+		}
+		++myGeneration;
+	}
+
+	void shift(boolean forward) {
+		for (int i = 0; i < myIndexes.length; ++i) {
+			if (myIndexes[i] != null) {
+				myIndexes[i] = forward ? myIndexes[i].getPrevious() : myIndexes[i].getNext();
+			}
+		}
+		++myGeneration;
+	}
+
+	// removes all items from the ring and returns them
+	List<T> clear() {
+		final ArrayList<T> items = new ArrayList<T>(myItems.length);
+		for (int i = 0; i < myItems.length; ++i) {
+			if (myItems[i] != null) {
+				items.add(item(i));
+			}
+			myItems[i] = null;
+			myIndexes[i] = null;
+		}
+		++myGeneration;
+		return items;
+	}
+}
@@ -68,10 +68,12 @@ public final class ZLAndroidPaintContext extends ZLPaintContext {
 		myOutlinePaint.setMaskFilter(new EmbossMaskFilter(new float[] {1, 1, 1}, .4f, 6f, 3.5f));
 	}
 
+	// pages are painted both in the UI thread and in background (see BitmapManager),
+	// so the wallpaper cache is accessed under the class lock only
 	private static ZLFile ourWallpaperFile;
 	private static Bitmap ourWallpaper;
-	@Override
-	public void clear(ZLFile wallpaperFile, boolean doMirror) {
+
+	private static synchronized Bitmap getWallpaper(ZLFile wallpaperFile, boolean doMirror) {
 		if (!wallpaperFile.equals(ourWallpaperFile)) {
 			ourWallpaperFile = wallpaperFile;
 			ourWallpaper = null;
@@ -99,13 +101,19 @@ public final class ZLAndroidPaintContext extends ZLPaintContext {
 				t.printStackTrace();
 			}
 		}
-		if (ourWallpaper != null) {
-			myBackgroundColor = ZLAndroidColorUtil.getAverageColor(ourWallpaper);
-			final int w = ourWallpaper.getWidth();
-			final int h = ourWallpaper.getHeight();
+		return ourWallpaper;
+	}
+
+	@Override
+	public void clear(ZLFile wallpaperFile, boolean doMirror) {
+		final Bitmap wallpaper = getWallpaper(wallpaperFile, doMirror);
+		if (wallpaper != null) {
+			myBackgroundColor = ZLAndroidColorUtil.getAverageColor(wallpaper);
+			final int w = wallpaper.getWidth();
+			final int h = wallpaper.getHeight();
 			for (int cw = 0, iw = 1; cw < myWidth; cw += w, ++iw) {
 				for (int ch = 0, ih = 1; ch < myHeight; ch += h, ++ih) {
-					myCanvas.drawBitmap(ourWallpaper, cw, ch, myFillPaint);
+					myCanvas.drawBitmap(wallpaper, cw, ch, myFillPaint);
 				}
 			}
 		} else {
@@ -38,6 +38,11 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 	private final Paint myPaint = new Paint();
 	private final BitmapManager myBitmapManager = new BitmapManager(this);
 	private Bitmap myFooterBitmap;
+	// the footer skips painting if this context already shows its current state,
+	// so the context is replaced whenever another footer is painted into the bitmap
+	private ZLAndroidPaintContext myFooterContext;
+	private ZLView.FooterArea myFooterArea;
+	private int myFooterScrollbarWidth;
 	private int heightExt = 0;
 	private int widthExt = 0;
     private int[] pixels=new int[600];
@@ -162,7 +167,11 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 				{
 					final ZLView.PageIndex index = animator.getPageToScrollTo();
 					myBitmapManager.shift(index == ZLView.PageIndex.next);
-					view.onScrollingFinished(index);
+					try {
+						view.onScrollingFinished(index);
+					} finally {
+						myBitmapManager.finishShift();
+					}
 					ZLApplication.Instance().onRepaintFinished();
 					break;
 				}
@@ -255,24 +264,34 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 
 		if (footer == null) {
 			myFooterBitmap = null;
+			myFooterContext = null;
+			myFooterArea = null;
 			return;
 		}
 
 		if (myFooterBitmap != null &&
-			(myFooterBitmap.getWidth() != getWidth() ||
+			(myFooterBitmap.getWidth() != getWidth()+widthExt ||
 			 myFooterBitmap.getHeight() != footer.getHeight())) {
 			myFooterBitmap = null;
 		}
 		if (myFooterBitmap == null) {
 			myFooterBitmap = Bitmap.createBitmap(getWidth()+widthExt, footer.getHeight(), Bitmap.Config.RGB_565);
+			myFooterContext = null;
 		}
-		final ZLAndroidPaintContext context = new ZLAndroidPaintContext(
-			new Canvas(myFooterBitmap),
-			getWidth()+widthExt,
-			footer.getHeight(),
-			view.isScrollbarShown() ? getVerticalScrollbarWidth() : 0
-		);
-		footer.paint(context);
+		final int scrollbarWidth = view.isScrollbarShown() ? getVerticalScrollbarWidth() : 0;
+		if (myFooterContext == null ||
+			myFooterScrollbarWidth != scrollbarWidth ||
+			myFooterArea != footer) {
+			myFooterContext = new ZLAndroidPaintContext(
+				new Canvas(myFooterBitmap),
+				getWidth()+widthExt,
+				footer.getHeight(),
+				scrollbarWidth
+			);
+			myFooterScrollbarWidth = scrollbarWidth;
+			myFooterArea = footer;
+		}
+		footer.paint(myFooterContext);
 		canvas.drawBitmap(myFooterBitmap, 0, getHeight()+heightExt - footer.getHeight(), myPaint);
 	}
 
@@ -0,0 +1,152 @@
+package org.amse.ys.zip;
+
+import java.io.*;
+import java.util.Random;
+
+/**
+ * Time to the first entry of a large archive: central directory lookup
+ * vs sequential scan of local headers (used for archives without
+ * central directory). Sizes in megabytes are set by -Dzip.sizes=1,50,300
+ */
+public class ZipFileBenchmark {
+	private static final int ENTRY_SIZE = 64 * 1024;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		final String sizes = System.getProperty("zip.sizes", "1,50,300");
+		for (String size : sizes.split(",")) {
+			run(Integer.parseInt(size.trim()));
+		}
+	}
+
+	private static void run(int megabytes) throws IOException {
+		final File file = File.createTempFile("zipbench", ".zip");
+		try {
+			final int entries = Math.max(1, megabytes * 1024 * 1024 / ENTRY_SIZE);
+			final int directoryOffset = createArchive(file, entries);
+			final String lastEntry = entryName(entries - 1);
+
+			long indexed = Long.MAX_VALUE;
+			long scanned = Long.MAX_VALUE;
+			for (int i = 0; i < ROUNDS; ++i) {
+				indexed = Math.min(indexed, timeToEntry(new ZipFile(file.getPath()), lastEntry));
+				scanned = Math.min(scanned, timeToEntry(
+					new ZipFile(new TruncatedStreamHolder(file, directoryOffset)), lastEntry
+				));
+			}
+			System.out.println(
+				megabytes + " MB, " + entries + " entries: central directory " +
+				indexed / 1000 + " us, local headers scan " + scanned / 1000 + " us"
+			);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static String entryName(int index) {
+		return "OEBPS/chapter" + index + ".xhtml";
+	}
+
+	// returns offset of the central directory
+	private static int createArchive(File file, int entries) throws IOException {
+		final byte[] data = new byte[ENTRY_SIZE];
+		new Random(entries).nextBytes(data);
+		final java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+		crc.update(data);
+
+		final CountingOutputStream counter =
+			new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		final java.util.zip.ZipOutputStream zip = new java.util.zip.ZipOutputStream(counter);
+		zip.setMethod(java.util.zip.ZipOutputStream.STORED);
+		for (int i = 0; i < entries; ++i) {
+			final java.util.zip.ZipEntry entry = new java.util.zip.ZipEntry(entryName(i));
+			entry.setSize(data.length);
+			entry.setCompressedSize(data.length);
+			entry.setCrc(crc.getValue());
+			zip.putNextEntry(entry);
+			zip.write(data);
+			zip.closeEntry();
+		}
+		zip.flush();
+		final int directoryOffset = (int)counter.Count;
+		zip.close();
+		return directoryOffset;
+	}
+
+	private static long timeToEntry(ZipFile zipFile, String entryName) throws IOException {
+		final long start = System.nanoTime();
+		final InputStream stream = zipFile.getInputStream(entryName);
+		final byte[] buffer = new byte[8192];
+		while (stream.read(buffer, 0, buffer.length) > 0) {
+		}
+		stream.close();
+		return System.nanoTime() - start;
+	}
+
+	private static final class CountingOutputStream extends FilterOutputStream {
+		long Count;
+
+		CountingOutputStream(OutputStream base) {
+			super(base);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			++Count;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			Count += len;
+		}
+	}
+
+	// the archive as if its central directory were lost
+	private static final class TruncatedStreamHolder implements ZipFile.InputStreamHolder {
+		private final File myFile;
+		private final int myLength;
+
+		TruncatedStreamHolder(File file, int length) {
+			myFile = file;
+			myLength = length;
+		}
+
+		public InputStream getInputStream() throws IOException {
+			return new FilterInputStream(new FileInputStream(myFile)) {
+				private int myPosition;
+
+				public int available() {
+					return myLength - myPosition;
+				}
+
+				public int read() throws IOException {
+					if (myPosition >= myLength) {
+						return -1;
+					}
+					final int b = in.read();
+					if (b != -1) {
+						++myPosition;
+					}
+					return b;
+				}
+
+				public int read(byte[] b, int off, int len) throws IOException {
+					if (myPosition >= myLength) {
+						return -1;
+					}
+					final int count = in.read(b, off, Math.min(len, myLength - myPosition));
+					if (count > 0) {
+						myPosition += count;
+					}
+					return count;
+				}
+
+				public long skip(long n) throws IOException {
+					final long skipped = in.skip(Math.min(n, myLength - myPosition));
+					myPosition += (int)skipped;
+					return skipped;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.formats.oeb;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.util.zip.*;
+
+import junit.framework.TestCase;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.library.TestLibrary;
+import org.geometerplus.zlibrary.text.model.*;
+
+import org.geometerplus.fbreader.bookmodel.*;
+import org.geometerplus.fbreader.library.Book;
+
+/**
+ * Spine files parsed in parallel must produce the same model
+ * as the files parsed one by one on the reading thread.
+ */
+public class TestOEBBookReader extends TestCase {
+	private static final int CHAPTERS_NUMBER = 12;
+	private static final int ANCHORS_NUMBER = 5;
+
+	private File myDirectory;
+	private File myEpub;
+
+	@Override
+	protected void setUp() throws IOException {
+		TestLibrary.init();
+		myDirectory = File.createTempFile("oeb", "");
+		myDirectory.delete();
+		myDirectory.mkdirs();
+		myEpub = new File(myDirectory, "book.epub");
+		createEpub(myEpub);
+	}
+
+	@Override
+	protected void tearDown() {
+		delete(myDirectory);
+	}
+
+	private static void delete(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	public void testParallelReadingIsDeterministic() throws Exception {
+		final String sequential = dump(read(1));
+		assertTrue(sequential.length() > 0);
+		for (int threads = 2; threads <= 4; ++threads) {
+			for (int i = 0; i < 3; ++i) {
+				assertEquals("threads: " + threads, sequential, dump(read(threads)));
+			}
+		}
+	}
+
+	private BookModel read(int threadsNumber) throws Exception {
+		final File cache = new File(myDirectory, "cache" + System.nanoTime());
+		cache.mkdirs();
+		final ZLFile opf = ZLFile.createFileByPath(myEpub.getPath() + ":OEBPS/content.opf");
+		final BookModel model = createModel(opf, cache.getPath());
+		assertTrue(new OEBBookReader(model).readBook(opf, threadsNumber));
+		return model;
+	}
+
+	// the constructors are not public: models are created by BookModel.createModel()
+	// from the books of library only
+	private static BookModel createModel(ZLFile file, String cacheDirectory) throws Exception {
+		final Constructor<Book> bookConstructor = Book.class.getDeclaredConstructor(
+			long.class, ZLFile.class, String.class, String.class, String.class
+		);
+		bookConstructor.setAccessible(true);
+		final Book book = bookConstructor.newInstance(1L, file, "Test", "utf-8", "en");
+		final Constructor<BookModel> modelConstructor =
+			BookModel.class.getDeclaredConstructor(Book.class, String.class);
+		modelConstructor.setAccessible(true);
+		return modelConstructor.newInstance(book, cacheDirectory);
+	}
+
+	private static String dump(BookModel model) {
+		final StringBuilder builder = new StringBuilder();
+		final ZLTextModel text = model.BookTextModel;
+		for (int i = 0; i < text.getParagraphsNumber(); ++i) {
+			final ZLTextParagraph paragraph = text.getParagraph(i);
+			builder.append('[').append(paragraph.getKind()).append(']');
+			for (ZLTextParagraph.EntryIterator it = paragraph.iterator(); it.hasNext(); ) {
+				it.next();
+				switch (it.getType()) {
+					case ZLTextParagraph.Entry.TEXT:
+						builder.append(it.getTextData(), it.getTextOffset(), it.getTextLength());
+						break;
+					case ZLTextParagraph.Entry.CONTROL:
+						builder.append('{').append(it.getControlKind());
+						builder.append(it.getControlIsStart() ? '+' : '-');
+						if (it.getHyperlinkType() != 0) {
+							builder.append(it.getHyperlinkId());
+						}
+						builder.append('}');
+						break;
+					default:
+						builder.append('{').append(it.getType()).append('}');
+						break;
+				}
+			}
+			builder.append('\n');
+		}
+		for (int file = 0; file <= CHAPTERS_NUMBER; ++file) {
+			appendLabel(builder, model, String.valueOf(file));
+			for (int chapter = 0; chapter < CHAPTERS_NUMBER; ++chapter) {
+				for (int anchor = 0; anchor < ANCHORS_NUMBER; ++anchor) {
+					appendLabel(builder, model, file + "#" + anchorId(chapter, anchor));
+				}
+			}
+		}
+		for (TOCTree tree : model.TOCTree) {
+			builder.append(tree.getText());
+			final TOCTree.Reference reference = tree.getReference();
+			if (reference != null) {
+				builder.append(" -> ").append(reference.ParagraphIndex);
+			}
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+
+	private static void appendLabel(StringBuilder builder, BookModel model, String id) {
+		final BookModel.Label label = model.getLabel(id);
+		if (label != null) {
+			builder.append(id).append(" = ").append(label.ModelId);
+			builder.append(':').append(label.ParagraphIndex).append('\n');
+		}
+	}
+
+	private static String chapterName(int chapter) {
+		return "chapter" + chapter + ".xhtml";
+	}
+
+	private static String anchorId(int chapter, int anchor) {
+		return "c" + chapter + "a" + anchor;
+	}
+
+	private static void createEpub(File file) throws IOException {
+		final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+		try {
+			addEntry(zip, "mimetype", "application/epub+zip");
+			addEntry(zip, "META-INF/container.xml",
+				"<?xml version=\"1.0\"?>\n" +
+				"<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">\n" +
+				"<rootfiles><rootfile full-path=\"OEBPS/content.opf\" media-type=\"application/oebps-package+xml\"/></rootfiles>\n" +
+				"</container>\n"
+			);
+
+			final StringBuilder opf = new StringBuilder();
+			opf.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+			opf.append("<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\">\n<manifest>\n");
+			opf.append("<item id=\"ncx\" href=\"toc.ncx\" media-type=\"application/x-dtbncx+xml\"/>\n");
+			for (int i = 0; i < CHAPTERS_NUMBER; ++i) {
+				opf.append("<item id=\"ch").append(i).append("\" href=\"").append(chapterName(i));
+				opf.append("\" media-type=\"application/xhtml+xml\"/>\n");
+			}
+			opf.append("</manifest>\n<spine toc=\"ncx\">\n");
+			for (int i = 0; i < CHAPTERS_NUMBER; ++i) {
+				opf.append("<itemref idref=\"ch").append(i).append("\"/>\n");
+			}
+			opf.append("</spine>\n</package>\n");
+			addEntry(zip, "OEBPS/content.opf", opf.toString());
+
+			final StringBuilder ncx = new StringBuilder();
+			ncx.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+			ncx.append("<ncx xmlns=\"http://www.daisy.org/z3986/2005/ncx/\" version=\"2005-1\"><navMap>\n");
+			for (int i = 0; i < CHAPTERS_NUMBER; ++i) {
+				ncx.append("<navPoint id=\"n").append(i).append("\" playOrder=\"").append(i + 1).append("\">");
+				ncx.append("<navLabel><text>Chapter ").append(i).append("</text></navLabel>");
+				ncx.append("<content src=\"").append(chapterName(i)).append('#').append(anchorId(i, 1));
+				ncx.append("\"/></navPoint>\n");
+			}
+			ncx.append("</navMap></ncx>\n");
+			addEntry(zip, "OEBPS/toc.ncx", ncx.toString());
+
+			for (int i = 0; i < CHAPTERS_NUMBER; ++i) {
+				addEntry(zip, "OEBPS/" + chapterName(i), chapter(i));
+			}
+		} finally {
+			zip.close();
+		}
+	}
+
+	private static String chapter(int index) {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+		builder.append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Chapter ");
+		builder.append(index).append("</title></head>\n<body>\n<h1>Chapter ").append(index).append("</h1>\n");
+		// chapters differ in size, so that parallel workers finish in a different order
+		final int paragraphs = 50 + 400 * ((index * 7) % 5);
+		for (int i = 0; i < paragraphs; ++i) {
+			builder.append("<p");
+			if (i % (paragraphs / ANCHORS_NUMBER) == 0 && i / (paragraphs / ANCHORS_NUMBER) < ANCHORS_NUMBER) {
+				builder.append(" id=\"").append(anchorId(index, i / (paragraphs / ANCHORS_NUMBER))).append('"');
+			}
+			builder.append(">Paragraph ").append(i).append(" of chapter ").append(index);
+			builder.append(", <em>emphasis</em>&#160;and&nbsp;<strong>strong</strong> &mdash; ");
+			final int target = (index + i) % CHAPTERS_NUMBER;
+			builder.append("<a href=\"").append(chapterName(target)).append('#');
+			builder.append(anchorId(target, i % ANCHORS_NUMBER)).append("\">link</a></p>\n");
+		}
+		builder.append("</body></html>\n");
+		return builder.toString();
+	}
+
+	// entries are stored: deflater is not required to build the book
+	private static void addEntry(ZipOutputStream zip, String name, String content) throws IOException {
+		final byte[] data = content.getBytes("utf-8");
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		final ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(data.length);
+		entry.setCompressedSize(data.length);
+		entry.setCrc(crc.getValue());
+		zip.putNextEntry(entry);
+		zip.write(data);
+		zip.closeEntry();
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.formats.pdb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Synthetic Mobipocket books for tests and benchmarks: PalmDOC and HUFF/CDIC
+ * encoders and a PDB writer with the record 0 layout of real files.
+ */
+final class MobipocketBooks {
+	private MobipocketBooks() {
+	}
+
+	// the only compressed CDIC phrase, see huffRecords()
+	static final String PHRASE = "the";
+
+	// multibyte character bytes and one more trailing entry after the text of every record
+	private static final int EXTRA_DATA_FLAGS = 3;
+	private static final byte[] TRAILING_ENTRIES = { 0, 'x', 'y', (byte)0x83 };
+
+	// HTML-like text, as in Mobipocket books, cut into records
+	static byte[][] textRecords(String[] words, int recordSize, int recordsNumber, long seed) throws IOException {
+		final Random random = new Random(seed);
+		final StringBuilder builder = new StringBuilder();
+		while (builder.length() < recordSize * recordsNumber) {
+			builder.append("<p>");
+			for (int i = 20 + random.nextInt(80); i > 0; --i) {
+				builder.append(words[random.nextInt(words.length)]).append(' ');
+			}
+			builder.append("</p>\n");
+		}
+		final byte[] text = builder.toString().getBytes("utf-8");
+		final byte[][] records = new byte[recordsNumber][];
+		for (int i = 0; i < recordsNumber; ++i) {
+			records[i] = new byte[recordSize];
+			System.arraycopy(text, i * recordSize, records[i], 0, recordSize);
+		}
+		return records;
+	}
+
+	private static boolean isAsciiLiteral(int b) {
+		return b >= 0x09 && b <= 0x7F;
+	}
+
+	// greedy LZ77 encoder producing all four kinds of PalmDOC tokens
+	static byte[] palmDocCompress(byte[] text) {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final int length = text.length;
+		for (int i = 0; i < length; ) {
+			int bestLength = 0;
+			int bestDistance = 0;
+			for (int distance = 1; distance <= Math.min(i, 2047) && bestLength < 10; ++distance) {
+				int l = 0;
+				while (l < 10 && i + l < length && text[i + l - distance] == text[i + l]) {
+					++l;
+				}
+				if (l > bestLength) {
+					bestLength = l;
+					bestDistance = distance;
+				}
+			}
+			if (bestLength >= 3) {
+				final int code = 0x8000 | (bestDistance << 3) | (bestLength - 3);
+				output.write(code >> 8);
+				output.write(code & 0xFF);
+				i += bestLength;
+				continue;
+			}
+			final int b = text[i] & 0xFF;
+			final int next = i + 1 < length ? text[i + 1] & 0xFF : -1;
+			if (b == ' ' && next >= 0x40 && next <= 0x7F) {
+				output.write(next ^ 0x80);
+				i += 2;
+			} else if (b == 0 || isAsciiLiteral(b)) {
+				output.write(b);
+				++i;
+			} else {
+				int end = i;
+				while (end < length && end - i < 8 && !isAsciiLiteral(text[end] & 0xFF)) {
+					++end;
+				}
+				output.write(end - i);
+				output.write(text, i, end - i);
+				i = end;
+			}
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * HUFF record with 8-bit codes only, code c stands for phrase 255 - c,
+	 * and CDIC record with 256 phrases: phrase b (b > 0) is byte b itself,
+	 * phrase 0 is PHRASE, compressed with the same codes.
+	 */
+	static byte[][] huffRecords() throws IOException {
+		final ByteArrayOutputStream huff = new ByteArrayOutputStream();
+		final DataOutputStream huffData = new DataOutputStream(huff);
+		huffData.writeBytes("HUFF");
+		huffData.writeInt(0x18);
+		huffData.writeInt(0x18);
+		huffData.writeInt(0x18 + 4 * 256);
+		huffData.writeLong(0);
+		for (int i = 0; i < 256; ++i) {
+			// max code 255, terminal, 8 bits
+			huffData.writeInt((255 << 8) | 0x80 | 8);
+		}
+		// min and max codes for every code length, not used by terminal codes
+		huffData.write(new byte[8 * 32]);
+
+		final ByteArrayOutputStream phrases = new ByteArrayOutputStream();
+		final DataOutputStream phrasesData = new DataOutputStream(phrases);
+		final int[] offsets = new int[256];
+		for (int i = 0; i < 256; ++i) {
+			offsets[i] = phrasesData.size();
+			if (i == 0) {
+				final byte[] phrase = PHRASE.getBytes("ascii");
+				phrasesData.writeShort(phrase.length);
+				for (byte b : phrase) {
+					phrasesData.write(255 - b);
+				}
+			} else {
+				phrasesData.writeShort(0x8000 | 1);
+				phrasesData.write(i);
+			}
+		}
+		final ByteArrayOutputStream cdic = new ByteArrayOutputStream();
+		final DataOutputStream cdicData = new DataOutputStream(cdic);
+		cdicData.writeBytes("CDIC");
+		cdicData.writeInt(0x10);
+		cdicData.writeInt(256);
+		cdicData.writeInt(8);
+		for (int offset : offsets) {
+			cdicData.writeShort(2 * 256 + offset);
+		}
+		phrases.writeTo(cdicData);
+		return new byte[][] { huff.toByteArray(), cdic.toByteArray() };
+	}
+
+	static byte[] huffEncode(byte[] text) throws IOException {
+		final byte[] phrase = PHRASE.getBytes("ascii");
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (int i = 0; i < text.length; ) {
+			boolean isPhrase = i + phrase.length <= text.length;
+			for (int j = 0; isPhrase && j < phrase.length; ++j) {
+				isPhrase = text[i + j] == phrase[j];
+			}
+			if (isPhrase) {
+				output.write(255);
+				i += phrase.length;
+			} else {
+				output.write(255 - (text[i++] & 0xFF));
+			}
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * PDB file with record 0 (PalmDOC and MOBI headers), compressed text records
+	 * followed by trailing entries, HUFF/CDIC records (if any) and one image record.
+	 */
+	static void writeBook(File file, int compressionType, int recordSize, int textLength, byte[][] text, byte[][] huff) throws IOException {
+		final int mobiHeaderLength = 0xE8;
+		final byte[] header = new byte[16 + mobiHeaderLength];
+		setShort(header, 0, compressionType);
+		setInt(header, 4, textLength);
+		setShort(header, 8, text.length);
+		setShort(header, 10, recordSize);
+		header[16] = 'M';
+		header[17] = 'O';
+		header[18] = 'B';
+		header[19] = 'I';
+		setInt(header, 20, mobiHeaderLength);
+		// book type, text encoding (utf-8), format version
+		setInt(header, 24, 2);
+		setInt(header, 28, 65001);
+		setInt(header, 36, 6);
+		final int huffIndex = text.length + 1;
+		final int imageIndex = huffIndex + huff.length;
+		setInt(header, 108, imageIndex);
+		if (huff.length > 0) {
+			setInt(header, 112, huffIndex);
+			setInt(header, 116, huff.length);
+		}
+		// EXTH flags (0x40, i.e. EXTH record present, is not set)
+		// and the unknown field after them, as in real files
+		setInt(header, 128, 0x10);
+		setInt(header, 132, -1);
+		setShort(header, 0xF2, EXTRA_DATA_FLAGS);
+
+		final ArrayList<byte[]> records = new ArrayList<byte[]>();
+		records.add(header);
+		for (byte[] record : text) {
+			final byte[] withEntries = new byte[record.length + TRAILING_ENTRIES.length];
+			System.arraycopy(record, 0, withEntries, 0, record.length);
+			System.arraycopy(TRAILING_ENTRIES, 0, withEntries, record.length, TRAILING_ENTRIES.length);
+			records.add(withEntries);
+		}
+		records.addAll(Arrays.asList(huff));
+		records.add("IMAGE".getBytes("ascii"));
+
+		final DataOutputStream output =
+			new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			output.write(new byte[60]);
+			output.writeBytes("BOOKMOBI");
+			output.write(new byte[8]);
+			output.writeShort(records.size());
+			int offset = 78 + 8 * records.size() + 2;
+			for (byte[] record : records) {
+				output.writeInt(offset);
+				output.writeInt(0);
+				offset += record.length;
+			}
+			output.writeShort(0);
+			for (byte[] record : records) {
+				output.write(record);
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	private static void setShort(byte[] data, int offset, int value) {
+		data[offset] = (byte)(value >> 8);
+		data[offset + 1] = (byte)value;
+	}
+
+	private static void setInt(byte[] data, int offset, int value) {
+		data[offset] = (byte)(value >> 24);
+		data[offset + 1] = (byte)(value >> 16);
+		data[offset + 2] = (byte)(value >> 8);
+		data[offset + 3] = (byte)value;
+	}
+}
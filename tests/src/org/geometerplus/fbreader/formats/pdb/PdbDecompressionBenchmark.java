@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.formats.pdb;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.library.TestLibrary;
+
+/**
+ * Decodes synthetic Mobipocket text records, PalmDOC and HUFF/CDIC compressed,
+ * and prints throughput (of decoded text) and allocation per pass over the book:
+ * for the decompressors called directly, and for MobipocketStream reading
+ * the book from a file. The text is made of the help book words; the books
+ * are written by MobipocketBooks, TestPdbDecompressors checks the round trip.
+ * Allocation is measured on the calling thread only, so it does not include
+ * records decoded by the stream's worker threads on multi-core machines.
+ */
+public class PdbDecompressionBenchmark {
+	private static final int RECORD_SIZE = 4096;
+	private static final int RECORDS_NUMBER = 128;
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) throws IOException {
+		TestLibrary.init();
+		final File help = new File(System.getProperty("assets.dir", "../assets"), "data/help");
+		final byte[][] text = MobipocketBooks.textRecords(
+			words(new File(help, "MiniHelp.en.fb2")), RECORD_SIZE, RECORDS_NUMBER, 1
+		);
+
+		final byte[][] doc = new byte[text.length][];
+		for (int i = 0; i < text.length; ++i) {
+			doc[i] = MobipocketBooks.palmDocCompress(text[i]);
+		}
+		final byte[][] huff = new byte[text.length][];
+		for (int i = 0; i < text.length; ++i) {
+			huff[i] = MobipocketBooks.huffEncode(text[i]);
+		}
+		final HuffdicDecompressor decompressor = new HuffdicDecompressor(MobipocketBooks.huffRecords());
+		final byte[] target = new byte[RECORD_SIZE];
+
+		final long textSize = (long)RECORD_SIZE * text.length;
+		run("PalmDOC, arrays", textSize, new Pass() {
+			void run() {
+				for (byte[] record : doc) {
+					DocDecompressor.decompress(record, record.length, target);
+				}
+			}
+		});
+		run("PalmDOC, streams", textSize, new Pass() {
+			void run() throws IOException {
+				for (byte[] record : doc) {
+					DocDecompressor.decompress(new ByteArrayInputStream(record), target, record.length);
+				}
+			}
+		});
+		run("HUFF/CDIC, arrays", textSize, new Pass() {
+			void run() throws IOException {
+				for (byte[] record : huff) {
+					decompressor.decompress(record, record.length, target);
+				}
+			}
+		});
+
+		final File docBook = File.createTempFile("doc", ".mobi");
+		final File huffBook = File.createTempFile("huff", ".mobi");
+		try {
+			MobipocketBooks.writeBook(
+				docBook, PalmDocLikeStream.CompressionType.DOC, RECORD_SIZE, (int)textSize, doc, new byte[0][]
+			);
+			MobipocketBooks.writeBook(
+				huffBook, PalmDocLikeStream.CompressionType.HUFFDIC, RECORD_SIZE, (int)textSize,
+				huff, MobipocketBooks.huffRecords()
+			);
+			run("PalmDOC, MobipocketStream", textSize, new BookPass(docBook, textSize));
+			run("HUFF/CDIC, MobipocketStream", textSize, new BookPass(huffBook, textSize));
+		} finally {
+			docBook.delete();
+			huffBook.delete();
+		}
+	}
+
+	private static abstract class Pass {
+		abstract void run() throws IOException;
+	}
+
+	private static final class BookPass extends Pass {
+		private final ZLFile myFile;
+		private final long myTextSize;
+		private final byte[] myBuffer = new byte[8192];
+
+		BookPass(File file, long textSize) {
+			myFile = ZLFile.createFileByPath(file.getPath());
+			myTextSize = textSize;
+		}
+
+		void run() throws IOException {
+			final MobipocketStream stream = new MobipocketStream(myFile);
+			long size = 0;
+			try {
+				for (int count; (count = stream.read(myBuffer, 0, myBuffer.length)) > 0; ) {
+					size += count;
+				}
+			} finally {
+				stream.close();
+			}
+			if (size != myTextSize) {
+				throw new IOException("Read " + size + " bytes of " + myTextSize);
+			}
+		}
+	}
+
+	private static void run(String name, long size, Pass pass) throws IOException {
+		long time = Long.MAX_VALUE;
+		long allocated = -1;
+		for (int i = 0; i < ROUNDS; ++i) {
+			final long allocatedBefore = allocatedBytes();
+			final long start = System.nanoTime();
+			pass.run();
+			time = Math.min(time, System.nanoTime() - start);
+			if (allocatedBefore >= 0) {
+				allocated = allocatedBytes() - allocatedBefore;
+			}
+		}
+		final String speed = size * 1000L / time + " MB/s";
+		System.out.println(
+			name + ", " + size / 1024 + " KB: " +
+			(allocated >= 0 ? speed + ", " + allocated / 1024 + " KB allocated" : speed)
+		);
+	}
+
+	private static long allocatedBytes() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(
+				Thread.currentThread().getId()
+			);
+		}
+		return -1;
+	}
+
+	private static String[] words(File file) throws IOException {
+		final InputStream stream = new FileInputStream(file);
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			final byte[] buffer = new byte[8192];
+			int count;
+			while ((count = stream.read(buffer)) > 0) {
+				output.write(buffer, 0, count);
+			}
+		} finally {
+			stream.close();
+		}
+		final String text = output.toString("utf-8");
+		final String body = text.substring(text.indexOf("<body>"));
+		return body.replaceAll("<[^>]*>", " ").replaceAll("&[a-z]+;", " ").trim().split("\\s+");
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.formats.pdb;
+
+import java.io.*;
+
+import junit.framework.TestCase;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.library.TestLibrary;
+
+/**
+ * Reads synthetic books, with record 0 laid out as in real files,
+ * through MobipocketStream.
+ */
+public class TestMobipocketStream extends TestCase {
+	private static final String[] WORDS = {
+		"the", "reader", "opens", "a", "book", "then", "<i>turns</i>", "pages", "with", "other", "theme"
+	};
+	private static final int RECORD_SIZE = 4096;
+
+	private File myFile;
+
+	@Override
+	protected void setUp() throws IOException {
+		TestLibrary.init();
+		myFile = File.createTempFile("book", ".mobi");
+	}
+
+	@Override
+	protected void tearDown() {
+		myFile.delete();
+	}
+
+	private byte[][] text() throws IOException {
+		final byte[][] records = MobipocketBooks.textRecords(WORDS, RECORD_SIZE, 5, 1);
+		// the last record is shorter
+		final byte[] last = new byte[1000];
+		System.arraycopy(records[4], 0, last, 0, last.length);
+		records[4] = last;
+		return records;
+	}
+
+	private void checkBook(byte[][] text) throws IOException {
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		for (byte[] record : text) {
+			expected.write(record);
+		}
+		final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		final MobipocketStream stream = new MobipocketStream(ZLFile.createFileByPath(myFile.getPath()));
+		try {
+			final byte[] buffer = new byte[1000];
+			for (int count; (count = stream.read(buffer, 0, buffer.length)) > 0; ) {
+				actual.write(buffer, 0, count);
+			}
+		} finally {
+			stream.close();
+		}
+		assertEquals(expected.toString("utf-8"), actual.toString("utf-8"));
+	}
+
+	private static int size(byte[][] records) {
+		int size = 0;
+		for (byte[] record : records) {
+			size += record.length;
+		}
+		return size;
+	}
+
+	public void testHuffdicBook() throws IOException {
+		final byte[][] text = text();
+		final byte[][] compressed = new byte[text.length][];
+		for (int i = 0; i < text.length; ++i) {
+			compressed[i] = MobipocketBooks.huffEncode(text[i]);
+		}
+		MobipocketBooks.writeBook(
+			myFile, PalmDocLikeStream.CompressionType.HUFFDIC, RECORD_SIZE, size(text),
+			compressed, MobipocketBooks.huffRecords()
+		);
+		checkBook(text);
+	}
+
+	public void testPalmDocBook() throws IOException {
+		final byte[][] text = text();
+		final byte[][] compressed = new byte[text.length][];
+		for (int i = 0; i < text.length; ++i) {
+			compressed[i] = MobipocketBooks.palmDocCompress(text[i]);
+		}
+		MobipocketBooks.writeBook(
+			myFile, PalmDocLikeStream.CompressionType.DOC, RECORD_SIZE, size(text),
+			compressed, new byte[0][]
+		);
+		checkBook(text);
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.formats.pdb;
+
+import java.io.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Round trip of the synthetic PalmDOC and HUFF/CDIC encoders of MobipocketBooks
+ * through DocDecompressor and HuffdicDecompressor.
+ */
+public class TestPdbDecompressors extends TestCase {
+	// non-ASCII words produce PalmDOC literal runs
+	private static final String[] WORDS = {
+		"the", "reader", "opens", "a", "book", "then", "turns", "pages", "other", "theme", "читатель", "книга"
+	};
+	private static final int RECORD_SIZE = 4096;
+
+	private byte[][] myText;
+
+	@Override
+	protected void setUp() throws IOException {
+		myText = MobipocketBooks.textRecords(WORDS, RECORD_SIZE, 8, 2);
+	}
+
+	private static void assertDecoded(byte[] expected, byte[] target, int size) {
+		assertEquals(expected.length, size);
+		for (int i = 0; i < size; ++i) {
+			assertEquals("byte " + i, expected[i], target[i]);
+		}
+	}
+
+	public void testPalmDoc() throws IOException {
+		final byte[] target = new byte[RECORD_SIZE];
+		for (byte[] record : myText) {
+			final byte[] compressed = MobipocketBooks.palmDocCompress(record);
+			assertTrue(compressed.length < record.length);
+			assertDecoded(record, target, DocDecompressor.decompress(compressed, compressed.length, target));
+			assertDecoded(record, target, DocDecompressor.decompress(
+				new ByteArrayInputStream(compressed), target, compressed.length
+			));
+		}
+	}
+
+	public void testPalmDocDropsOutputThatDoesNotFit() {
+		final byte[] record = myText[0];
+		final byte[] compressed = MobipocketBooks.palmDocCompress(record);
+		final byte[] target = new byte[1000];
+		assertEquals(target.length, DocDecompressor.decompress(compressed, compressed.length, target));
+		for (int i = 0; i < target.length; ++i) {
+			assertEquals(record[i], target[i]);
+		}
+	}
+
+	public void testHuffdic() throws IOException {
+		final HuffdicDecompressor decompressor = new HuffdicDecompressor(MobipocketBooks.huffRecords());
+		final byte[] target = new byte[RECORD_SIZE];
+		// the compressed phrase is expanded on the first use, and reused then
+		for (int round = 0; round < 2; ++round) {
+			for (byte[] record : myText) {
+				final byte[] compressed = MobipocketBooks.huffEncode(record);
+				assertTrue(compressed.length < record.length);
+				assertDecoded(record, target, decompressor.decompress(compressed, compressed.length, target));
+			}
+		}
+	}
+
+	public void testHuffdicTargetTooShort() throws IOException {
+		final HuffdicDecompressor decompressor = new HuffdicDecompressor(MobipocketBooks.huffRecords());
+		final byte[] compressed = MobipocketBooks.huffEncode(myText[0]);
+		assertEquals(-1, decompressor.decompress(compressed, compressed.length, new byte[1000]));
+	}
+}
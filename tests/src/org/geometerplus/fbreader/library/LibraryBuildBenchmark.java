@@ -0,0 +1,478 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.library;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import org.geometerplus.zlibrary.core.config.ZLConfig;
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.library.TestLibrary;
+import org.geometerplus.zlibrary.text.view.ZLTextPosition;
+
+import org.geometerplus.fbreader.Paths;
+
+/**
+ * First library build over a generated directory of small FB2 and EPUB books
+ * (-Dlibrary.books=3000), with an in-memory database that, like SQLite,
+ * lets one thread at a time in and spends -Dlibrary.commit.delay=2
+ * milliseconds per transaction commit.
+ */
+public class LibraryBuildBenchmark {
+	private static final long BUILD_TIMEOUT = 10 * 60 * 1000; // milliseconds
+
+	public static void main(String[] args) throws Exception {
+		final int booksNumber = Integer.parseInt(System.getProperty("library.books", "3000"));
+		final long commitDelay = Long.parseLong(System.getProperty("library.commit.delay", "2"));
+
+		TestLibrary.init();
+		new MemoryConfig();
+		final MemoryDatabase database = new MemoryDatabase(commitDelay);
+
+		final File directory = File.createTempFile("library", "");
+		directory.delete();
+		directory.mkdirs();
+		try {
+			createBooks(directory, booksNumber);
+			Paths.BooksDirectoryOption().setValue(directory.getPath());
+
+			final Library library = Library.Instance();
+			final long start = System.currentTimeMillis();
+			library.startBuild();
+			while (!library.isUpToDate()) {
+				if (System.currentTimeMillis() - start > BUILD_TIMEOUT) {
+					System.out.println("library build does not finish, a deadlock?");
+					System.exit(1);
+				}
+				Thread.sleep(10);
+			}
+			final long time = System.currentTimeMillis() - start;
+			System.out.println(
+				booksNumber + " files: " + database.booksNumber() + " books saved in " + time + " ms, " +
+				database.transactionsNumber() + " transactions, " +
+				Runtime.getRuntime().availableProcessors() + " cores"
+			);
+		} finally {
+			delete(directory);
+		}
+		// thumbnails creation thread is not a daemon
+		System.exit(0);
+	}
+
+	private static void delete(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static void createBooks(File directory, int number) throws IOException {
+		final Random random = new Random(number);
+		for (int i = 0; i < number; ++i) {
+			// a few books per subdirectory, as in real collections
+			final File subdirectory = new File(directory, "author" + i / 20);
+			subdirectory.mkdirs();
+			final String title = "Book " + i;
+			final String author = "Author " + random.nextInt(number / 10 + 1);
+			if (i % 2 == 0) {
+				writeFile(new File(subdirectory, "book" + i + ".fb2"), fb2(title, author, i));
+			} else {
+				writeEpub(new File(subdirectory, "book" + i + ".epub"), title, author, i);
+			}
+		}
+	}
+
+	private static String paragraphs(int index) {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 50; ++i) {
+			builder.append("<p>Paragraph ").append(i).append(" of book ").append(index);
+			builder.append(", some text to make the file look like a short story.</p>\n");
+		}
+		return builder.toString();
+	}
+
+	private static String fb2(String title, String author, int index) {
+		return
+			"<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+			"<FictionBook xmlns=\"http://www.gribuser.ru/xml/fictionbook/2.0\" " +
+			"xmlns:l=\"http://www.w3.org/1999/xlink\">\n<description><title-info>" +
+			"<genre>sf</genre><author><first-name>" + author + "</first-name><last-name>Test</last-name></author>" +
+			"<book-title>" + title + "</book-title><lang>en</lang>" +
+			"<sequence name=\"Series " + index / 10 + "\" number=\"" + index % 10 + "\"/>" +
+			"</title-info></description>\n<body><section>\n" + paragraphs(index) +
+			"</section></body>\n</FictionBook>\n";
+	}
+
+	private static void writeEpub(File file, String title, String author, int index) throws IOException {
+		final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+		try {
+			addEntry(zip, "mimetype", "application/epub+zip");
+			addEntry(zip, "META-INF/container.xml",
+				"<?xml version=\"1.0\"?>\n" +
+				"<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">" +
+				"<rootfiles><rootfile full-path=\"OEBPS/content.opf\" media-type=\"application/oebps-package+xml\"/>" +
+				"</rootfiles></container>\n"
+			);
+			addEntry(zip, "OEBPS/content.opf",
+				"<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+				"<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\">\n" +
+				"<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:opf=\"http://www.idpf.org/2007/opf\">" +
+				"<dc:title>" + title + "</dc:title><dc:creator opf:role=\"aut\">" + author + "</dc:creator>" +
+				"<dc:language>en</dc:language><dc:subject>Fiction</dc:subject></metadata>\n" +
+				"<manifest><item id=\"text\" href=\"text.xhtml\" media-type=\"application/xhtml+xml\"/></manifest>\n" +
+				"<spine><itemref idref=\"text\"/></spine>\n</package>\n"
+			);
+			addEntry(zip, "OEBPS/text.xhtml",
+				"<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+				"<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>" + title + "</title></head>\n" +
+				"<body>\n" + paragraphs(index) + "</body></html>\n"
+			);
+		} finally {
+			zip.close();
+		}
+	}
+
+	private static void writeFile(File file, String content) throws IOException {
+		final OutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(content.getBytes("utf-8"));
+		} finally {
+			stream.close();
+		}
+	}
+
+	// entries are stored: deflater is not required to build the books
+	private static void addEntry(ZipOutputStream zip, String name, String content) throws IOException {
+		final byte[] data = content.getBytes("utf-8");
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		final ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(data.length);
+		entry.setCompressedSize(data.length);
+		entry.setCrc(crc.getValue());
+		zip.putNextEntry(entry);
+		zip.write(data);
+		zip.closeEntry();
+	}
+
+	private static final class MemoryConfig extends ZLConfig {
+		private final HashMap<String,HashMap<String,String>> myGroups =
+			new HashMap<String,HashMap<String,String>>();
+
+		private synchronized HashMap<String,String> group(String name) {
+			HashMap<String,String> group = myGroups.get(name);
+			if (group == null) {
+				group = new HashMap<String,String>();
+				myGroups.put(name, group);
+			}
+			return group;
+		}
+
+		public synchronized List<String> listGroups() {
+			return new ArrayList<String>(myGroups.keySet());
+		}
+
+		public synchronized List<String> listNames(String group) {
+			return new ArrayList<String>(group(group).keySet());
+		}
+
+		public synchronized String getValue(String group, String name, String defaultValue) {
+			final String value = group(group).get(name);
+			return value != null ? value : defaultValue;
+		}
+
+		public synchronized void setValue(String group, String name, String value) {
+			group(group).put(name, value);
+		}
+
+		public synchronized void unsetValue(String group, String name) {
+			group(group).remove(name);
+		}
+
+		public synchronized void removeGroup(String name) {
+			myGroups.remove(name);
+		}
+	}
+
+	/**
+	 * Files and books tables only; every call holds the database monitor,
+	 * a transaction holds it until commit.
+	 */
+	private static final class MemoryDatabase extends BooksDatabase {
+		private static final class FileRow {
+			final long Id;
+			String Name;
+			long ParentId;
+			long Size;
+
+			FileRow(long id) {
+				Id = id;
+			}
+		}
+
+		private static final class BookRow {
+			long FileId;
+			String Encoding;
+			String Language;
+			String Title;
+		}
+
+		private final long myCommitDelay;
+		private final HashMap<Long,FileRow> myFiles = new HashMap<Long,FileRow>();
+		private final HashMap<Long,BookRow> myBooks = new HashMap<Long,BookRow>();
+		private long myLastFileId;
+		private long myLastBookId;
+		private int myTransactionLevel;
+		private int myTransactionsNumber;
+
+		MemoryDatabase(long commitDelay) {
+			myCommitDelay = commitDelay;
+		}
+
+		synchronized int booksNumber() {
+			return myBooks.size();
+		}
+
+		synchronized int transactionsNumber() {
+			return myTransactionsNumber;
+		}
+
+		protected synchronized void executeAsATransaction(Runnable actions) {
+			++myTransactionLevel;
+			try {
+				actions.run();
+			} finally {
+				if (--myTransactionLevel == 0) {
+					++myTransactionsNumber;
+					try {
+						Thread.sleep(myCommitDelay);
+					} catch (InterruptedException e) {
+					}
+				}
+			}
+		}
+
+		protected synchronized Map<Long,Book> loadBooks(FileInfoSet infos, boolean existing) {
+			return new HashMap<Long,Book>();
+		}
+
+		protected synchronized void setExistingFlag(Collection<Book> books, boolean flag) {
+		}
+
+		protected synchronized Book loadBook(long bookId) {
+			return null;
+		}
+
+		protected synchronized void reloadBook(Book book) {
+		}
+
+		protected synchronized Book loadBookByFile(long fileId, ZLFile file) {
+			return null;
+		}
+
+		protected synchronized List<Author> loadAuthors(long bookId) {
+			return Collections.emptyList();
+		}
+
+		protected synchronized List<Tag> loadTags(long bookId) {
+			return Collections.emptyList();
+		}
+
+		protected synchronized SeriesInfo loadSeriesInfo(long bookId) {
+			return null;
+		}
+
+		protected synchronized void updateBookInfo(long bookId, long fileId, String encoding, String language, String title) {
+			final BookRow row = myBooks.get(bookId);
+			if (row != null) {
+				row.FileId = fileId;
+				row.Encoding = encoding;
+				row.Language = language;
+				row.Title = title;
+			}
+		}
+
+		protected synchronized long insertBookInfo(ZLFile file, String encoding, String language, String title) {
+			final BookRow row = new BookRow();
+			row.FileId = new FileInfoSet(file).getId(file);
+			row.Encoding = encoding;
+			row.Language = language;
+			row.Title = title;
+			myBooks.put(++myLastBookId, row);
+			return myLastBookId;
+		}
+
+		protected synchronized void deleteAllBookAuthors(long bookId) {
+		}
+
+		protected synchronized void saveBookAuthorInfo(long bookId, long index, Author author) {
+		}
+
+		protected synchronized void deleteAllBookTags(long bookId) {
+		}
+
+		protected synchronized void saveBookTagInfo(long bookId, Tag tag) {
+		}
+
+		protected synchronized void saveBookSeriesInfo(long bookId, SeriesInfo seriesInfo) {
+		}
+
+		private FileInfo createFileInfo(FileRow row, FileInfo parent) {
+			final FileInfo info = createFileInfo(row.Id, row.Name, parent);
+			info.FileSize = row.Size;
+			return info;
+		}
+
+		protected synchronized Collection<FileInfo> loadFileInfos() {
+			final HashMap<Long,FileInfo> infos = new HashMap<Long,FileInfo>();
+			// rows are created after their parents
+			final TreeMap<Long,FileRow> rows = new TreeMap<Long,FileRow>(myFiles);
+			for (FileRow row : rows.values()) {
+				infos.put(row.Id, createFileInfo(row, infos.get(row.ParentId)));
+			}
+			return infos.values();
+		}
+
+		private FileRow findFile(String name, long parentId) {
+			for (FileRow row : myFiles.values()) {
+				if (row.ParentId == parentId && row.Name.equals(name)) {
+					return row;
+				}
+			}
+			return null;
+		}
+
+		protected synchronized Collection<FileInfo> loadFileInfos(ZLFile file) {
+			final LinkedList<ZLFile> fileStack = new LinkedList<ZLFile>();
+			for (; file != null; file = file.getParent()) {
+				fileStack.addFirst(file);
+			}
+			final ArrayList<FileInfo> infos = new ArrayList<FileInfo>(fileStack.size());
+			FileInfo current = null;
+			for (ZLFile f : fileStack) {
+				final FileRow row = findFile(f.getLongName(), current != null ? current.Id : -1);
+				if (row == null) {
+					break;
+				}
+				current = createFileInfo(row, current);
+				infos.add(current);
+			}
+			return infos;
+		}
+
+		protected synchronized Collection<FileInfo> loadFileInfos(long fileId) {
+			final LinkedList<FileRow> rows = new LinkedList<FileRow>();
+			for (FileRow row = myFiles.get(fileId); row != null; row = myFiles.get(row.ParentId)) {
+				rows.addFirst(row);
+			}
+			final ArrayList<FileInfo> infos = new ArrayList<FileInfo>(rows.size());
+			FileInfo current = null;
+			for (FileRow row : rows) {
+				current = createFileInfo(row, current);
+				infos.add(current);
+			}
+			return infos;
+		}
+
+		protected synchronized void removeFileInfo(long fileId) {
+			myFiles.remove(fileId);
+		}
+
+		protected synchronized void saveFileInfo(FileInfo fileInfo) {
+			final long parentId = fileInfo.Parent != null ? fileInfo.Parent.Id : -1;
+			FileRow row = myFiles.get(fileInfo.Id);
+			if (row == null) {
+				// INSERT OR IGNORE
+				row = findFile(fileInfo.Name, parentId);
+				if (row == null) {
+					row = new FileRow(++myLastFileId);
+					myFiles.put(row.Id, row);
+				}
+				fileInfo.Id = row.Id;
+			}
+			row.Name = fileInfo.Name;
+			row.ParentId = parentId;
+			row.Size = fileInfo.FileSize;
+		}
+
+		protected synchronized List<Long> loadRecentBookIds() {
+			return Collections.emptyList();
+		}
+
+		protected synchronized void saveRecentBookIds(List<Long> ids) {
+		}
+
+		protected synchronized List<Long> loadFavoritesIds() {
+			return Collections.emptyList();
+		}
+
+		protected synchronized void addToFavorites(long bookId) {
+		}
+
+		protected synchronized void removeFromFavorites(long bookId) {
+		}
+
+		protected synchronized List<Bookmark> loadBookmarks(long bookId, boolean isVisible) {
+			return Collections.emptyList();
+		}
+
+		protected synchronized List<Bookmark> loadAllVisibleBookmarks() {
+			return Collections.emptyList();
+		}
+
+		protected synchronized long saveBookmark(Bookmark bookmark) {
+			return -1;
+		}
+
+		protected synchronized void deleteBookmark(Bookmark bookmark) {
+		}
+
+		protected synchronized ZLTextPosition getStoredPosition(long bookId) {
+			return null;
+		}
+
+		protected synchronized void storePosition(long bookId, ZLTextPosition position) {
+		}
+
+		protected synchronized boolean insertIntoBookList(long bookId) {
+			return false;
+		}
+
+		protected synchronized boolean deleteFromBookList(long bookId) {
+			return false;
+		}
+
+		protected synchronized boolean checkBookList(long bookId) {
+			return false;
+		}
+
+		protected synchronized Collection<String> loadVisitedHyperlinks(long bookId) {
+			return Collections.emptyList();
+		}
+
+		protected synchronized void addVisitedHyperlink(long bookId, String hyperlinkId) {
+		}
+	}
+}
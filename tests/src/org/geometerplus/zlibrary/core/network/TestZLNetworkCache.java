@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.network;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.*;
+
+import org.geometerplus.zlibrary.core.library.TestLibrary;
+
+/**
+ * ZLNetworkManager with ZLNetworkCache against a local stub server.
+ */
+public class TestZLNetworkCache extends TestCase {
+	private static final String BODY = "<feed>cached content</feed>";
+	private static final String ETAG = "\"v1\"";
+
+	private HttpServer myServer;
+	private File myDirectory;
+	private ZLNetworkCache myCache;
+
+	// Cache-Control value of the next 304 response
+	private volatile String myNotModifiedCacheControl;
+	private final List<String> myConditions = Collections.synchronizedList(new ArrayList<String>());
+
+	@Override
+	protected void setUp() throws Exception {
+		TestLibrary.init();
+		myDirectory = File.createTempFile("netcache", "");
+		myDirectory.delete();
+		myCache = new ZLNetworkCache(myDirectory, 1024 * 1024);
+		ZLNetworkManager.Instance().setCache(myCache);
+
+		myServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		myServer.createContext("/feed", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				final String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+				myConditions.add(String.valueOf(condition));
+				final Headers headers = exchange.getResponseHeaders();
+				headers.set("ETag", ETAG);
+				if (ETAG.equals(condition)) {
+					headers.set("Cache-Control", myNotModifiedCacheControl);
+					exchange.sendResponseHeaders(304, -1);
+				} else {
+					final byte[] body = BODY.getBytes("utf-8");
+					headers.set("Cache-Control", "no-cache");
+					exchange.sendResponseHeaders(200, body.length);
+					exchange.getResponseBody().write(body);
+				}
+				exchange.close();
+			}
+		});
+		myServer.start();
+	}
+
+	@Override
+	protected void tearDown() {
+		myServer.stop(0);
+		ZLNetworkManager.Instance().setCache(null);
+		final File[] files = myDirectory.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		myDirectory.delete();
+	}
+
+	private String url() {
+		return "http://127.0.0.1:" + myServer.getAddress().getPort() + "/feed";
+	}
+
+	private String get() throws ZLNetworkException {
+		final ByteArrayOutputStream content = new ByteArrayOutputStream();
+		ZLNetworkManager.Instance().perform(new ZLNetworkRequest(url()) {
+			public void handleStream(InputStream stream, int length) throws IOException {
+				final byte[] buffer = new byte[1024];
+				for (int size = stream.read(buffer); size != -1; size = stream.read(buffer)) {
+					content.write(buffer, 0, size);
+				}
+			}
+		});
+		try {
+			return content.toString("utf-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private int storedBodies() {
+		final File[] files = myDirectory.listFiles();
+		int count = 0;
+		if (files != null) {
+			for (File f : files) {
+				if (f.getName().endsWith(".body")) {
+					++count;
+				}
+			}
+		}
+		return count;
+	}
+
+	public void testNotModifiedNoStoreServesCachedContentOnce() throws ZLNetworkException {
+		myNotModifiedCacheControl = "no-store";
+
+		assertEquals(BODY, get());
+		assertEquals(1, storedBodies());
+
+		// revalidated: the stored content is returned, but not kept any more
+		assertEquals(BODY, get());
+		assertEquals(0, storedBodies());
+
+		// so the next request is not conditional
+		assertEquals(BODY, get());
+		assertEquals(Arrays.asList("null", ETAG, "null"), myConditions);
+	}
+
+	public void testNotModifiedRefreshesEntry() throws ZLNetworkException {
+		myNotModifiedCacheControl = "max-age=3600";
+
+		assertEquals(BODY, get());
+		assertEquals(BODY, get());
+		assertEquals(1, storedBodies());
+
+		// fresh now, the server is not asked
+		assertEquals(BODY, get());
+		assertEquals(Arrays.asList("null", ETAG), myConditions);
+	}
+}
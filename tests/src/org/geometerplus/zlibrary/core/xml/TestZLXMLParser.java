@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.xml;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Feeds the same documents to ZLXMLParser with markup scanned in raw bytes
+ * and with the input decoded to chars, and compares the handler calls.
+ */
+public class TestZLXMLParser extends TestCase {
+	private static final int[] BUFFER_SIZES = { 256, 257, 300, 1024, 65536 };
+
+	private static final String FB2 =
+		"<FictionBook xmlns=\"http://www.gribuser.ru/xml/fictionbook/2.0\" xmlns:l=\"http://www.w3.org/1999/xlink\">\n" +
+		"<description><title-info><book-title>Über «Текст» &amp; Co</book-title></title-info></description>\n" +
+		"<body name='main'>\n" +
+		"<section id=\"s1\"><title><p>Глава&#160;1</p></title>\n" +
+		"<p>Текст <emphasis>с выделением</emphasis> и <a l:href=\"#n1\" type=\"note\">[1]</a> &lt;тег&gt; &#x41;&#66;</p>\n" +
+		"<!-- comment with <p>markup</p> inside -->\n" +
+		"<p>Entity &unknown; and &quot;quotes&quot; &apos;here&apos;</p>\n" +
+		"<empty-line/>\n" +
+		"<section xmlns:x=\"urn:example\"><p x:attr=\"значение &amp; ещё\">Вложенная секция</p></section>\n" +
+		"</section>\n" +
+		"</body>\n" +
+		"<body name=\"notes\"><section id=\"n1\"><p>Примечание</p></section></body>\n" +
+		"<binary id=\"cover.jpg\" content-type=\"image/jpeg\">/9j/4AAQSkZJRgABAQEASABIAAD</binary>\n" +
+		"</FictionBook>\n";
+
+	private static final String XHTML =
+		"<html xmlns=\"http://www.w3.org/1999/xhtml\">\n" +
+		"<head><title>Заголовок</title>\n" +
+		"<link rel=\"stylesheet\" type=\"text/css\" href=\"style.css\"/>\n" +
+		"<style type=\"text/css\"><![CDATA[ p > span { color: red; } ]]></style></head>\n" +
+		"<body>\n" +
+		"<div class=\"chapter\" id=\"c1\"><h2 class=\"title\">Первая глава</h2>\n" +
+		"<p class=\"text\">Текст <span class=\"italic\">курсив</span> <a href=\"notes.xhtml#n1\">1</a>&#160;ещё</p>\n" +
+		"<script><![CDATA[if (a < b && c > d) { x = ']]]]><![CDATA[>'; }]]></script>\n" +
+		"<p>Áccents: café, naïve, «quotes»</p>\n" +
+		"<br/><hr />\n" +
+		"</div>\n" +
+		"</body>\n" +
+		"</html>\n";
+
+	private static final class Recorder extends ZLXMLReaderAdapter {
+		private final byte[] myDocument;
+		private final String myEncoding;
+		private final boolean myProcessNamespaces;
+		private final boolean myDontCacheAttributeValues;
+		private final ArrayList<String> myEvents = new ArrayList<String>();
+		private final StringBuilder myText = new StringBuilder();
+		private long myTextOffset;
+
+		Recorder(byte[] document, String encoding, boolean processNamespaces, boolean dontCacheAttributeValues) {
+			myDocument = document;
+			myEncoding = encoding;
+			myProcessNamespaces = processNamespaces;
+			myDontCacheAttributeValues = dontCacheAttributeValues;
+		}
+
+		// text may come in different pieces, so adjacent pieces are merged
+		private void flushText() {
+			if (myText.length() > 0) {
+				myEvents.add("text @" + myTextOffset + ": " + myText);
+				myText.setLength(0);
+			}
+		}
+
+		@Override
+		public boolean processNamespaces() {
+			return myProcessNamespaces;
+		}
+
+		@Override
+		public boolean dontCacheAttributeValues() {
+			return myDontCacheAttributeValues;
+		}
+
+		@Override
+		public List<String> externalDTDs() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean startElementHandler(String tag, ZLStringMap attributes) {
+			flushText();
+			final StringBuilder event = new StringBuilder("<").append(tag);
+			for (int i = 0; i < attributes.getSize(); ++i) {
+				event.append(' ').append(attributes.getKey(i));
+				event.append("=\"").append(attributes.getValue(i)).append('"');
+			}
+			myEvents.add(event.append('>').toString());
+			return false;
+		}
+
+		@Override
+		public boolean endElementHandler(String tag) {
+			flushText();
+			myEvents.add("</" + tag + ">");
+			return false;
+		}
+
+		@Override
+		public void characterDataHandler(char[] ch, int start, int length) {
+			final long offset = getStreamOffset(start);
+			if (offset >= 0 && length > 0) {
+				final int end = Math.min(myDocument.length, (int)offset + 4);
+				try {
+					assertEquals("char at " + offset, ch[start], new String(myDocument, (int)offset, end - (int)offset, myEncoding).charAt(0));
+				} catch (UnsupportedEncodingException e) {
+					fail(myEncoding);
+				}
+			}
+			if (myText.length() == 0) {
+				myTextOffset = offset;
+			}
+			myText.append(ch, start, length);
+		}
+
+		@Override
+		public void namespaceMapChangedHandler(Map<String,String> namespaces) {
+			super.namespaceMapChangedHandler(namespaces);
+			flushText();
+			myEvents.add("namespaces " + (namespaces != null ? new TreeMap<String,String>(namespaces) : null));
+		}
+	}
+
+	private static List<String> parse(byte[] document, String encoding, int bufferSize, boolean processNamespaces, boolean dontCacheAttributeValues, boolean scanBytes) throws IOException {
+		final Recorder recorder = new Recorder(document, encoding, processNamespaces, dontCacheAttributeValues);
+		final ZLXMLParser parser =
+			new ZLXMLParser(recorder, new ByteArrayInputStream(document), bufferSize, scanBytes);
+		recorder.myParser = parser;
+		try {
+			parser.doIt();
+		} finally {
+			parser.finish();
+		}
+		recorder.flushText();
+		return recorder.myEvents;
+	}
+
+	private static void assertSameEvents(String name, String text, String encoding, boolean declaration) throws IOException {
+		final String prefix = declaration ? "<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n" : "";
+		final byte[] document = (prefix + text).getBytes(encoding);
+		final List<String> expected = parse(document, encoding, 65536, true, false, false);
+		assertTrue(name, expected.size() > 10);
+		for (int bufferSize : BUFFER_SIZES) {
+			for (int mode = 0; mode < 4; ++mode) {
+				final boolean processNamespaces = (mode & 1) != 0;
+				final boolean dontCacheAttributeValues = (mode & 2) != 0;
+				final String message = name + ", buffer " + bufferSize +
+					(processNamespaces ? ", namespaces" : "") +
+					(dontCacheAttributeValues ? ", uncached values" : "");
+				final List<String> chars = parse(document, encoding, bufferSize, processNamespaces, dontCacheAttributeValues, false);
+				final List<String> bytes = parse(document, encoding, bufferSize, processNamespaces, dontCacheAttributeValues, true);
+				assertEquals(message, chars, bytes);
+			}
+		}
+	}
+
+	private static String generated(long seed) {
+		final Random random = new Random(seed);
+		final String[] words = { "текст", "слово", "Über", "café", "word", "x", "" };
+		final String[] entities = { "&amp;", "&lt;", "&gt;", "&quot;", "&apos;", "&#160;", "&#x44F;", "&nbsp;" };
+		final StringBuilder builder = new StringBuilder("<root xmlns=\"urn:root\" xmlns:a=\"urn:a\">");
+		for (int i = 0; i < 400; ++i) {
+			switch (random.nextInt(8)) {
+				case 0:
+					builder.append("<p a:id=\"p").append(i).append("\" class='").append(words[random.nextInt(words.length)]).append("'>");
+					break;
+				case 1:
+					builder.append("</p>");
+					break;
+				case 2:
+					builder.append(entities[random.nextInt(entities.length)]);
+					break;
+				case 3:
+					builder.append("<![CDATA[").append(words[random.nextInt(words.length)]).append(" <b> ]] > ]]>");
+					break;
+				case 4:
+					builder.append("<element-with-a-rather-long-name-").append(i).append(" attribute-with-a-long-name=\"v&amp;").append(i).append("\"/>");
+					break;
+				case 5:
+					builder.append("<!-- ").append(words[random.nextInt(words.length)]).append(" -->");
+					break;
+				default:
+					builder.append(' ').append(words[random.nextInt(words.length)]);
+					break;
+			}
+		}
+		return builder.append("</root>\n").toString();
+	}
+
+	private static boolean scansBytes(String encoding) throws IOException {
+		final byte[] document = ("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n<a/>").getBytes(encoding);
+		final ZLXMLParser parser = new ZLXMLParser(
+			new Recorder(document, encoding, false, false), new ByteArrayInputStream(document), 256, true
+		);
+		parser.finish();
+		return parser.scansBytes();
+	}
+
+	public void testByteScanningEncodings() throws IOException {
+		assertTrue(scansBytes("windows-1251"));
+		assertTrue(scansBytes("iso-8859-1"));
+		assertFalse(scansBytes("utf-8"));
+		assertFalse(scansBytes("utf-16"));
+	}
+
+	public void testSingleByteEncodings() throws IOException {
+		assertSameEvents("FB2, windows-1251", FB2.replace('Ü', 'U'), "windows-1251", true);
+		assertSameEvents("XHTML, iso-8859-1", XHTML.replaceAll("[А-Яа-я]", "z"), "iso-8859-1", true);
+		assertSameEvents("XHTML, windows-1251", XHTML.replaceAll("[Áéï]", "e"), "windows-1251", true);
+	}
+
+	public void testUtf8() throws IOException {
+		assertSameEvents("FB2, utf-8", FB2, "utf-8", true);
+		assertSameEvents("XHTML, utf-8", XHTML, "utf-8", true);
+	}
+
+	public void testNoDeclaration() throws IOException {
+		assertSameEvents("FB2, no declaration", FB2.replaceAll("[^\\x00-\\x7F]", "?"), "utf-8", false);
+	}
+
+	public void testGenerated() throws IOException {
+		for (long seed = 1; seed <= 5; ++seed) {
+			final String text = generated(seed);
+			assertSameEvents("generated " + seed + ", windows-1251", text.replaceAll("[Üéï]", "e"), "windows-1251", true);
+			assertSameEvents("generated " + seed + ", utf-8", text, "utf-8", true);
+		}
+	}
+}
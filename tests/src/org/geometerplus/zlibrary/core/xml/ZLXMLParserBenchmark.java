@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.xml;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Parses FB2 and XHTML documents with markup scanned in raw bytes and with
+ * the whole input decoded to chars, and prints throughput and allocation per parse.
+ * The documents are built from the help books text, in UTF-8 and windows-1251;
+ * more files are set by -Dxml.files=a.fb2,b.xhtml
+ */
+public class ZLXMLParserBenchmark {
+	private static final int DOCUMENT_SIZE = 4 * 1024 * 1024;
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) throws IOException {
+		final File help = new File(System.getProperty("assets.dir", "../assets"), "data/help");
+		final String[] russian = words(new File(help, "MiniHelp.ru.fb2"));
+		final String[] english = words(new File(help, "MiniHelp.en.fb2"));
+		run("FB2, utf-8", fb2(russian, "utf-8"));
+		run("FB2, windows-1251", fb2(russian, "windows-1251"));
+		run("XHTML, utf-8", xhtml(english, "utf-8"));
+		final String files = System.getProperty("xml.files", "");
+		if (files.length() > 0) {
+			for (String name : files.split(",")) {
+				run(name, read(new File(name.trim())));
+			}
+		}
+	}
+
+	private static void run(String name, byte[] document) throws IOException {
+		final long[] chars = { Long.MAX_VALUE, -1 };
+		final long[] bytes = { Long.MAX_VALUE, -1 };
+		// modes alternate, so that both of them run on equally warmed up code
+		for (int i = 0; i < ROUNDS; ++i) {
+			measure(document, false, chars);
+			measure(document, true, bytes);
+		}
+		System.out.println(
+			name + ", " + document.length / 1024 + " KB: chars " + format(document, chars) +
+			"; bytes " + format(document, bytes)
+		);
+	}
+
+	private static String format(byte[] document, long[] result) {
+		final String speed = (document.length * 1000L / result[0]) + " MB/s";
+		return result[1] >= 0 ? speed + ", " + result[1] / 1024 + " KB allocated" : speed;
+	}
+
+	// updates best time in nanoseconds and allocated bytes of the last parse
+	private static void measure(byte[] document, boolean scanBytes, long[] result) throws IOException {
+		final CountingReader reader = new CountingReader();
+		final long allocatedBefore = allocatedBytes();
+		final long start = System.nanoTime();
+		final ZLXMLParser parser =
+			new ZLXMLParser(reader, new ByteArrayInputStream(document), 65536, scanBytes);
+		try {
+			parser.doIt();
+		} finally {
+			parser.finish();
+		}
+		result[0] = Math.min(result[0], System.nanoTime() - start);
+		if (allocatedBefore >= 0) {
+			result[1] = allocatedBytes() - allocatedBefore;
+		}
+		if (reader.Elements == 0) {
+			throw new IOException("nothing parsed");
+		}
+	}
+
+	private static long allocatedBytes() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(
+				Thread.currentThread().getId()
+			);
+		}
+		return -1;
+	}
+
+	private static String[] words(File file) throws IOException {
+		final String text = new String(read(file), "utf-8");
+		final String body = text.substring(text.indexOf("<body>"));
+		return body.replaceAll("<[^>]*>", " ").replaceAll("&[a-z]+;", " ").trim().split("\\s+");
+	}
+
+	private static String paragraph(String[] words, Random random) {
+		final StringBuilder builder = new StringBuilder();
+		final int length = 20 + random.nextInt(80);
+		for (int i = 0; i < length; ++i) {
+			if (i > 0) {
+				builder.append(' ');
+			}
+			builder.append(words[random.nextInt(words.length)]);
+		}
+		return builder.toString();
+	}
+
+	private static byte[] fb2(String[] words, String encoding) throws IOException {
+		final Random random = new Random(1);
+		final StringBuilder builder = new StringBuilder();
+		builder.append("<?xml version=\"1.0\" encoding=\"").append(encoding).append("\"?>\n");
+		builder.append("<FictionBook xmlns=\"http://www.gribuser.ru/xml/fictionbook/2.0\" ");
+		builder.append("xmlns:l=\"http://www.w3.org/1999/xlink\">\n<body>\n");
+		for (int note = 0; builder.length() < DOCUMENT_SIZE; ++note) {
+			builder.append("<section id=\"s").append(note).append("\">\n<title><p>");
+			builder.append(words[random.nextInt(words.length)]).append("</p></title>\n");
+			for (int i = 0; i < 20; ++i) {
+				builder.append("<p>").append(paragraph(words, random));
+				builder.append(" <emphasis>").append(words[random.nextInt(words.length)]);
+				builder.append("</emphasis> <a l:href=\"#n").append(note).append("\" type=\"note\">[");
+				builder.append(note).append("]</a> &lt;").append(paragraph(words, random)).append("</p>\n");
+			}
+			builder.append("<empty-line/>\n</section>\n");
+		}
+		builder.append("</body>\n</FictionBook>\n");
+		return builder.toString().getBytes(encoding);
+	}
+
+	private static byte[] xhtml(String[] words, String encoding) throws IOException {
+		final Random random = new Random(2);
+		final StringBuilder builder = new StringBuilder();
+		builder.append("<?xml version=\"1.0\" encoding=\"").append(encoding).append("\"?>\n");
+		builder.append("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n<head><title>");
+		builder.append(words[0]).append("</title>\n");
+		builder.append("<link rel=\"stylesheet\" type=\"text/css\" href=\"style.css\"/></head>\n<body>\n");
+		for (int chapter = 0; builder.length() < DOCUMENT_SIZE; ++chapter) {
+			builder.append("<div class=\"chapter\" id=\"c").append(chapter).append("\">\n");
+			builder.append("<h2 class=\"title\">").append(words[random.nextInt(words.length)]).append("</h2>\n");
+			for (int i = 0; i < 20; ++i) {
+				builder.append("<p class=\"text\">").append(paragraph(words, random));
+				builder.append(" <span class=\"italic\">").append(words[random.nextInt(words.length)]);
+				builder.append("</span> <a href=\"notes.xhtml#n").append(chapter).append("\">");
+				builder.append(chapter).append("</a>&#160;").append(paragraph(words, random)).append("</p>\n");
+			}
+			builder.append("<br/>\n</div>\n");
+		}
+		builder.append("</body>\n</html>\n");
+		return builder.toString().getBytes(encoding);
+	}
+
+	private static byte[] read(File file) throws IOException {
+		final InputStream stream = new FileInputStream(file);
+		try {
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int count;
+			while ((count = stream.read(buffer)) > 0) {
+				output.write(buffer, 0, count);
+			}
+			return output.toByteArray();
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static final class CountingReader extends ZLXMLReaderAdapter {
+		int Elements;
+		long Chars;
+
+		@Override
+		public boolean processNamespaces() {
+			return true;
+		}
+
+		@Override
+		public List<String> externalDTDs() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean startElementHandler(String tag, ZLStringMap attributes) {
+			++Elements;
+			return false;
+		}
+
+		@Override
+		public void characterDataHandler(char[] ch, int start, int length) {
+			Chars += length;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.hyphenation;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.library.TestLibrary;
+import org.geometerplus.zlibrary.text.view.ZLTextWord;
+
+/**
+ * Loads every bundled pattern file (compiling from XML and mapping the stored image)
+ * and hyphenates a million words with it. Words are taken from the file set by
+ * -Dhyph.words, or from the help book in the same language, or from the English one.
+ */
+public class ZLTextHyphenatorBenchmark {
+	private static final int WORDS_NUMBER = 1000000;
+
+	public static void main(String[] args) throws IOException {
+		TestLibrary.init();
+		final File assets = new File(System.getProperty("assets.dir", "../assets"));
+		final File cacheDirectory = createTempDirectory();
+		try {
+			final String[] names = new File(assets, "hyphenationPatterns").list();
+			Arrays.sort(names);
+			for (String name : names) {
+				if (name.endsWith(".pattern")) {
+					run(assets, name.substring(0, name.length() - ".pattern".length()), cacheDirectory);
+				}
+			}
+		} finally {
+			for (File file : cacheDirectory.listFiles()) {
+				file.delete();
+			}
+			cacheDirectory.delete();
+		}
+	}
+
+	private static File createTempDirectory() throws IOException {
+		final File directory = File.createTempFile("hyphenation", "");
+		directory.delete();
+		directory.mkdirs();
+		return directory;
+	}
+
+	private static void run(File assets, String language, File cacheDirectory) throws IOException {
+		final String wordsFile = System.getProperty("hyph.words", "");
+		File help = new File(wordsFile);
+		if (wordsFile.length() == 0) {
+			help = new File(assets, "data/help/MiniHelp." + language + ".fb2");
+			if (!help.exists()) {
+				help = new File(assets, "data/help/MiniHelp.en.fb2");
+			}
+		}
+		final List<ZLTextWord> words = words(help);
+
+		ZLTextHyphenator.deleteInstance();
+		long start = System.nanoTime();
+		ZLTextHyphenator hyphenator = ZLTextHyphenator.Instance();
+		hyphenator.setCacheDirectory(cacheDirectory.getPath());
+		hyphenator.load(language);
+		final long compiled = System.nanoTime() - start;
+
+		ZLTextHyphenator.deleteInstance();
+		start = System.nanoTime();
+		hyphenator = ZLTextHyphenator.Instance();
+		hyphenator.setCacheDirectory(cacheDirectory.getPath());
+		hyphenator.load(language);
+		final long mapped = System.nanoTime() - start;
+
+		// warm up
+		for (ZLTextWord word : words) {
+			hyphenator.getInfo(word);
+		}
+		int hyphens = 0;
+		start = System.nanoTime();
+		for (int i = 0, size = words.size(); i < WORDS_NUMBER; ++i) {
+			final ZLTextWord word = words.get(i % size);
+			final ZLTextHyphenationInfo info = hyphenator.getInfo(word);
+			for (int j = 0; j < word.Length; ++j) {
+				if (info.isHyphenationPossible(j)) {
+					++hyphens;
+				}
+			}
+		}
+		final long hyphenated = System.nanoTime() - start;
+
+		System.out.println(
+			language + ": compiled in " + compiled / 1000000 + " ms, mapped in " +
+			mapped / 1000 + " us, " +
+			(long)(WORDS_NUMBER * 1e9 / hyphenated) + " words/s (" +
+			words.size() + " distinct words of " + help.getName() + ", " + hyphens + " hyphens)"
+		);
+	}
+
+	private static List<ZLTextWord> words(File file) throws IOException {
+		final byte[] data = new byte[(int)file.length()];
+		final DataInputStream stream = new DataInputStream(new FileInputStream(file));
+		try {
+			stream.readFully(data);
+		} finally {
+			stream.close();
+		}
+		final String text = new String(data, "utf-8").replaceAll("<[^>]*>", " ");
+
+		final LinkedHashSet<String> distinct = new LinkedHashSet<String>();
+		final StringBuilder word = new StringBuilder();
+		for (int i = 0; i <= text.length(); ++i) {
+			final char ch = i < text.length() ? text.charAt(i) : ' ';
+			if (Character.isLetter(ch)) {
+				word.append(ch);
+			} else {
+				if (word.length() > 3) {
+					distinct.add(word.toString());
+				}
+				word.setLength(0);
+			}
+		}
+
+		final ArrayList<ZLTextWord> words = new ArrayList<ZLTextWord>(distinct.size());
+		for (String w : distinct) {
+			words.add(new ZLTextWord(w.toCharArray(), 0, w.length(), 0));
+		}
+		return words;
+	}
+}
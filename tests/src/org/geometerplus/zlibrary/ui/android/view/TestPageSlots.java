@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.ui.android.view;
+
+import junit.framework.TestCase;
+
+import org.geometerplus.zlibrary.core.view.ZLView;
+
+/**
+ * Slot bookkeeping of the page bitmap ring; strings stand for bitmaps.
+ */
+public class TestPageSlots extends TestCase {
+	private static final ZLView.PageIndex PREVIOUS = ZLView.PageIndex.previous;
+	private static final ZLView.PageIndex CURRENT = ZLView.PageIndex.current;
+	private static final ZLView.PageIndex NEXT = ZLView.PageIndex.next;
+
+	private PageSlots<String> fullRing() {
+		final PageSlots<String> slots = new PageSlots<String>(3);
+		assertNull(slots.put(PREVIOUS, "A"));
+		assertNull(slots.put(CURRENT, "B"));
+		assertNull(slots.put(NEXT, "C"));
+		return slots;
+	}
+
+	public void testShiftForward() {
+		final PageSlots<String> slots = fullRing();
+		final int generation = slots.generation();
+		slots.shift(true);
+		assertTrue(generation != slots.generation());
+		assertEquals("B", slots.get(PREVIOUS));
+		assertEquals("C", slots.get(CURRENT));
+		assertNull(slots.get(NEXT));
+		assertEquals(NEXT, slots.pageToPrepare());
+		// the slot of the forgotten page is reused
+		assertEquals("A", slots.put(NEXT, "D"));
+		assertNull(slots.pageToPrepare());
+	}
+
+	public void testShiftBackward() {
+		final PageSlots<String> slots = fullRing();
+		slots.shift(false);
+		assertNull(slots.get(PREVIOUS));
+		assertEquals("A", slots.get(CURRENT));
+		assertEquals("B", slots.get(NEXT));
+		assertEquals(PREVIOUS, slots.pageToPrepare());
+		assertEquals("C", slots.put(PREVIOUS, "D"));
+	}
+
+	public void testReset() {
+		final PageSlots<String> slots = fullRing();
+		final int generation = slots.generation();
+		slots.reset();
+		assertTrue(generation != slots.generation());
+		assertNull(slots.get(PREVIOUS));
+		assertNull(slots.get(CURRENT));
+		assertNull(slots.get(NEXT));
+		// the current page is rendered on demand, not in background
+		assertNull(slots.pageToPrepare());
+		// the items stay in the ring to be reused
+		assertNotNull(slots.put(CURRENT, "D"));
+	}
+
+	public void testPriorities() {
+		final PageSlots<String> slots = new PageSlots<String>(2);
+		slots.put(CURRENT, "A");
+		slots.put(NEXT, "B");
+		// the previous page is less needed than the next one
+		assertFalse(slots.canPut(PREVIOUS));
+		assertEquals("D", slots.put(PREVIOUS, "D"));
+		assertNull(slots.pageToPrepare());
+		slots.shift(true);
+		// the old current page is the previous one now; the new next page replaces it
+		assertEquals(NEXT, slots.pageToPrepare());
+		assertEquals("A", slots.put(NEXT, "C"));
+	}
+
+	public void testTakeLowestPriority() {
+		final PageSlots<String> slots = fullRing();
+		assertEquals("A", slots.take());
+		assertEquals("C", slots.take());
+		assertEquals("B", slots.get(CURRENT));
+	}
+
+	public void testTakeReusesCurrentPageAsLastChoice() {
+		final PageSlots<String> slots = new PageSlots<String>(2);
+		slots.put(CURRENT, "A");
+		assertEquals("A", slots.take());
+		assertNull(slots.get(CURRENT));
+		assertNull(slots.take());
+	}
+
+	public void testTakeLeastRecentlyUsed() {
+		final PageSlots<String> slots = fullRing();
+		slots.get(PREVIOUS);
+		slots.reset();
+		assertEquals("B", slots.take());
+		assertEquals("C", slots.take());
+		assertEquals("A", slots.take());
+		assertNull(slots.take());
+	}
+
+	public void testClear() {
+		final PageSlots<String> slots = fullRing();
+		final int generation = slots.generation();
+		assertEquals(3, slots.clear().size());
+		assertTrue(generation != slots.generation());
+		assertNull(slots.take());
+		assertEquals(3, slots.size());
+	}
+}
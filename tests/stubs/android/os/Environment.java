@@ -0,0 +1,11 @@
+package android.os;
+
+import java.io.File;
+
+// used by Paths, the platform-independent part of the tree,
+// stubbed for the JVM tests
+public class Environment {
+	public static File getExternalStorageDirectory() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+}
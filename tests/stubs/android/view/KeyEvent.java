@@ -0,0 +1,8 @@
+package android.view;
+
+// key codes used by ZLKeyBindings, stubbed for the JVM tests
+public class KeyEvent {
+	public static final int KEYCODE_BACK = 4;
+	public static final int KEYCODE_VOLUME_UP = 24;
+	public static final int KEYCODE_VOLUME_DOWN = 25;
+}